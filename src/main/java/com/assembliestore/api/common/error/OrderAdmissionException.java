@@ -0,0 +1,21 @@
+package com.assembliestore.api.common.error;
+
+public class OrderAdmissionException extends RuntimeException {
+
+    public enum Reason {
+        SOLD_OUT,
+        QUEUE_FULL,
+        TIMEOUT
+    }
+
+    private final Reason reason;
+
+    public OrderAdmissionException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,21 @@
+package com.assembliestore.api.common.error;
+
+public class StockHoldException extends RuntimeException {
+
+    public enum Reason {
+        TOO_MANY_HOLDS,
+        QUANTITY_LIMIT,
+        BELOW_HELD
+    }
+
+    private final Reason reason;
+
+    public StockHoldException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
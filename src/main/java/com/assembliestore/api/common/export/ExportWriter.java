@@ -0,0 +1,173 @@
+package com.assembliestore.api.common.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Escribe filas de una exportación directamente sobre la respuesta, una por vez, así que la
+ * memoria usada no depende de cuántas filas haya.
+ *
+ * En NDJSON cada elemento se serializa entero en su línea; en CSV se escriben las columnas
+ * indicadas, con el encabezado en la primera línea. Con gzip se comprime a medida que se escribe.
+ * Cada cierta cantidad de filas se vacía el buffer para que el cliente vaya recibiendo datos.
+ */
+public final class ExportWriter<T> implements Closeable {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int FLUSH_EVERY_ROWS = 1000;
+
+    /**
+     * Columna de la exportación CSV
+     */
+    public record Column<T>(String name, Function<T, Object> value) {
+    }
+
+    private final ExportFormat format;
+    private final List<Column<T>> columns;
+    private final GZIPOutputStream gzip;
+    private final Writer writer;
+    private final JsonGenerator json;
+    private long rows;
+
+    public ExportWriter(OutputStream out, ExportFormat format, boolean compress, ObjectMapper objectMapper,
+                        List<Column<T>> columns) throws IOException {
+        this.format = format;
+        this.columns = columns;
+        this.gzip = compress ? new GZIPOutputStream(out, BUFFER_BYTES, true) : null;
+        this.writer = new OutputStreamWriter(
+                new BufferedOutputStream(gzip != null ? gzip : out, BUFFER_BYTES), StandardCharsets.UTF_8);
+        if (format == ExportFormat.NDJSON) {
+            this.json = objectMapper.getFactory().createGenerator(writer);
+            // El generador no debe cerrar ni vaciar el writer por su cuenta: lo maneja esta clase
+            this.json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            this.json.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+            // Las líneas las separa esta clase; sin esto Jackson pone un espacio entre documentos
+            this.json.setRootValueSeparator(null);
+        } else {
+            this.json = null;
+            writeCsvLine(columns.stream().map(Column::name).map(Object.class::cast).toList());
+        }
+    }
+
+    public void write(T item) throws IOException {
+        if (json != null) {
+            json.writeObject(item);
+            json.flush();
+            writer.write('\n');
+        } else {
+            writeCsvLine(columns.stream().map(column -> column.value().apply(item)).toList());
+        }
+        if (++rows % FLUSH_EVERY_ROWS == 0) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Consumidor para los recorridos de los servicios; un error de escritura sale como
+     * UncheckedIOException y corta el recorrido
+     */
+    public Consumer<T> sink() {
+        return item -> {
+            try {
+                write(item);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (json != null) {
+            json.close();
+        }
+        writer.flush();
+        if (gzip != null) {
+            gzip.finish();
+        }
+        writer.close();
+    }
+
+    /**
+     * Si el encabezado Accept-Encoding admite gzip (sin q=0)
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            if (tokens[0].trim().equalsIgnoreCase("gzip")) {
+                for (int i = 1; i < tokens.length; i++) {
+                    String parameter = tokens[i].trim().replace(" ", "");
+                    if (parameter.matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encabezados de la respuesta: tipo, nombre de archivo para descargar y, si corresponde,
+     * Content-Encoding
+     */
+    public static HttpHeaders responseHeaders(String name, ExportFormat format, boolean compress) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(format.getMediaType());
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename(name + "." + format.getExtension())
+                .build());
+        headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        if (compress) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return headers;
+    }
+
+    private void writeCsvLine(List<Object> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(csvValue(values.get(i)));
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * Valor CSV según RFC 4180: entre comillas si tiene separadores, comillas o saltos de línea
+     */
+    static String csvValue(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value instanceof Date date ? date.toInstant().toString() : value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,265 @@
+package com.assembliestore.api.common.scheduling;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Rueda de tiempo (hashed timing wheel) para expirar muchos elementos con costo O(1)
+ * por alta, cancelación y tick, en lugar de una tarea programada por elemento.
+ *
+ * Un único hilo avanza la rueda. Las altas y cancelaciones hechas desde otros hilos se
+ * encolan y se aplican al inicio de cada tick, así los buckets nunca se comparten.
+ */
+public class HashedTimingWheel<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(HashedTimingWheel.class);
+
+    private final String name;
+    private final long tickNanos;
+    private final int mask;
+    private final Bucket<T>[] wheel;
+    private final Consumer<T> onExpire;
+
+    private final Queue<Timeout<T>> pendingAdds = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout<T>> pendingCancels = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingTimeouts = new AtomicInteger();
+
+    // Último tick procesado
+    private volatile long currentTick;
+
+    private volatile Thread worker;
+    private volatile boolean running;
+
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(String name, Duration tick, int wheelSize, Consumer<T> onExpire) {
+        if (tick.isNegative() || tick.isZero()) {
+            throw new IllegalArgumentException("tick must be positive");
+        }
+        if (wheelSize <= 0) {
+            throw new IllegalArgumentException("wheelSize must be positive");
+        }
+        // Tamaño potencia de dos para calcular el bucket con una máscara
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.name = name;
+        this.tickNanos = tick.toNanos();
+        this.mask = size - 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket<>();
+        }
+        this.onExpire = onExpire;
+    }
+
+    /**
+     * Programa la expiración de un elemento. Se puede llamar desde cualquier hilo.
+     */
+    public Timeout<T> schedule(T item, Duration delay) {
+        long ticks = Math.max(1, (delay.toNanos() + tickNanos - 1) / tickNanos);
+        Timeout<T> timeout = new Timeout<>(this, item, currentTick + ticks);
+        pendingTimeouts.incrementAndGet();
+        pendingAdds.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Arranca el hilo que avanza la rueda en tiempo real
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        worker = thread;
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        Thread thread = worker;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.NANOSECONDS.toMillis(tickNanos) + 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        worker = null;
+    }
+
+    /**
+     * Avanza la rueda un tick y expira los elementos vencidos.
+     * Solo debe invocarse desde un único hilo: el worker, o el llamador si la rueda no se arrancó.
+     */
+    public void tick() {
+        long tick = currentTick + 1;
+        drainCancels();
+        drainAdds(tick);
+
+        Bucket<T> bucket = wheel[(int) (tick & mask)];
+        Timeout<T> node = bucket.head;
+        while (node != null) {
+            Timeout<T> next = node.next;
+            if (node.deadlineTick <= tick) {
+                bucket.remove(node);
+                if (node.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                    pendingTimeouts.decrementAndGet();
+                    expire(node.item);
+                }
+            }
+            node = next;
+        }
+        currentTick = tick;
+    }
+
+    /**
+     * Elementos programados que aún no expiraron ni se cancelaron
+     */
+    public int pendingTimeouts() {
+        return pendingTimeouts.get();
+    }
+
+    private void run() {
+        long startedAt = System.nanoTime();
+        long ticks = 0;
+        while (running) {
+            long deadline = startedAt + (ticks + 1) * tickNanos;
+            long sleep = deadline - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(this, sleep);
+                continue;
+            }
+            try {
+                tick();
+            } catch (Exception e) {
+                logger.error("Error advancing timing wheel {}: {}", name, e.getMessage());
+            }
+            ticks++;
+        }
+    }
+
+    private void expire(T item) {
+        try {
+            onExpire.accept(item);
+        } catch (Exception e) {
+            logger.error("Error expiring item in timing wheel {}: {}", name, e.getMessage());
+        }
+    }
+
+    private void drainAdds(long tick) {
+        Timeout<T> timeout;
+        while ((timeout = pendingAdds.poll()) != null) {
+            if (timeout.state.get() != Timeout.PENDING) {
+                continue;
+            }
+            // Si el tick objetivo ya pasó mientras estaba en cola, expira en este tick
+            if (timeout.deadlineTick < tick) {
+                timeout.deadlineTick = tick;
+            }
+            wheel[(int) (timeout.deadlineTick & mask)].add(timeout);
+        }
+    }
+
+    private void drainCancels() {
+        Timeout<T> timeout;
+        while ((timeout = pendingCancels.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * Referencia a un elemento programado, permite cancelarlo en O(1)
+     */
+    public static final class Timeout<T> {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final HashedTimingWheel<T> owner;
+        private final T item;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long deadlineTick;
+
+        // Solo los manipula el hilo de la rueda
+        private Bucket<T> bucket;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(HashedTimingWheel<T> owner, T item, long deadlineTick) {
+            this.owner = owner;
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T item() {
+            return item;
+        }
+
+        /**
+         * @return true si se canceló antes de expirar
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            owner.pendingTimeouts.decrementAndGet();
+            owner.pendingCancels.add(this);
+            return true;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    private static final class Bucket<T> {
+        private Timeout<T> head;
+        private Timeout<T> tail;
+
+        void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout<T> timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+}
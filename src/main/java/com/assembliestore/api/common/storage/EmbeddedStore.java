@@ -0,0 +1,85 @@
+package com.assembliestore.api.common.storage;
+
+import com.assembliestore.api.common.error.InfrastructureException;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Almacenamiento embebido de la aplicación (app.storage.type=embedded): un único LogStore en
+ * disco compartido por todos los adaptadores, que guardan cada entidad como JSON en su colección.
+ *
+ * El JSON se arma desde los campos y no desde los getters, para que los valores derivados
+ * (subtotales, expiración de un OTP) no se guarden ni fallen al serializar.
+ */
+@Component
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "embedded")
+public class EmbeddedStore {
+
+    private final LogStore store;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+            .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+
+    @Autowired
+    public EmbeddedStore(
+            @Value("${app.storage.embedded.path:data/store}") String path,
+            @Value("${app.storage.embedded.segment-size:64MB}") DataSize segmentSize,
+            @Value("${app.storage.embedded.sync-writes:true}") boolean syncWrites,
+            @Value("${app.storage.embedded.compaction-threshold:0.5}") double compactionThreshold,
+            @Value("${app.storage.embedded.compaction-interval:5m}") Duration compactionInterval) {
+        this(open(Path.of(path), segmentBytes(segmentSize), syncWrites, compactionThreshold, compactionInterval));
+    }
+
+    EmbeddedStore(LogStore store) {
+        this.store = store;
+    }
+
+    public <T> StoredCollection<T> collection(String name, Class<T> type) {
+        return new StoredCollection<>(store, objectMapper, name, type);
+    }
+
+    public Map<String, Object> getStats() {
+        return store.getStats();
+    }
+
+    @PreDestroy
+    public void close() {
+        store.close();
+    }
+
+    /**
+     * Un segmento se mapea entero en memoria y el mapeo no puede pasar de Integer.MAX_VALUE bytes
+     */
+    static int segmentBytes(DataSize segmentSize) {
+        long bytes = segmentSize.toBytes();
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("app.storage.embedded.segment-size must be below 2GB, got " + segmentSize);
+        }
+        return (int) bytes;
+    }
+
+    private static LogStore open(Path path, int segmentBytes, boolean syncWrites, double compactionThreshold,
+                                 Duration compactionInterval) {
+        try {
+            return new LogStore(path, segmentBytes, syncWrites, compactionThreshold, compactionInterval);
+        } catch (IOException e) {
+            throw new InfrastructureException("Could not open embedded storage at " + path, e);
+        }
+    }
+}
@@ -0,0 +1,733 @@
+package com.assembliestore.api.common.storage;
+
+import com.assembliestore.api.common.error.InfrastructureException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Motor de almacenamiento embebido: un log de solo agregado repartido en segmentos mapeados en
+ * memoria, con un índice en memoria que ubica la última versión de cada clave.
+ *
+ * Cada registro es {@code crc, largo de clave, largo de valor (-1 si es un borrado), clave,
+ * valor}; la clave lleva la colección y el id. Escribir es copiar el registro al final del
+ * segmento activo y actualizar el índice; leer es buscar la ubicación y copiar el valor desde el
+ * mapeo, sin llamadas al sistema. Las escrituras concurrentes se confirman en grupo: un único
+ * hilo hace el fsync de todo lo agregado desde el anterior y libera a la vez a todos los que
+ * esperaban, así el costo del fsync se reparte entre las escrituras que llegaron juntas.
+ *
+ * Al abrir se reconstruye el índice releyendo los segmentos en orden; la lectura de cada segmento
+ * se corta en el primer registro incompleto o con crc inválido (una escritura que no llegó a
+ * confirmarse antes de una caída). La compactación copia al final lo que sigue vigente de los
+ * segmentos cerrados con poca información viva y después los borra. Por cada clave se lleva la
+ * cuenta de sus versiones anteriores que siguen en disco: el borrado de una clave se conserva
+ * mientras quede alguna, y cuando la última desaparece el borrado también se descarta.
+ */
+public class LogStore implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogStore.class);
+
+    static final int HEADER_BYTES = 12;
+    private static final char KEY_SEPARATOR = '\u0000';
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    // Con confirmación asíncrona, cada cuánto se bajan a disco las escrituras pendientes
+    private static final long ASYNC_FLUSH_MILLIS = 100;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean syncWrites;
+    private final double compactionThreshold;
+
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Map<String, ConcurrentSkipListMap<String, Location>> collections = new ConcurrentHashMap<>();
+    // Último borrado de cada clave borrada que sigue en disco, por clave completa; con el lock de escritura
+    private final Map<String, Location> tombstones = new HashMap<>();
+
+    // Escritura: el segmento activo, el número del último registro agregado y los segmentos
+    // con datos todavía sin fsync
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private Segment active;
+    private long appendedRecords;
+    private final Set<Segment> unsynced = new LinkedHashSet<>();
+
+    // Confirmación en grupo: durableRecords es el último registro que ya pasó por fsync. Si un
+    // fsync falla, syncFailure queda fijo y el almacenamiento deja de atender hasta reabrirlo
+    private final Object syncMonitor = new Object();
+    private volatile long durableRecords;
+    private volatile Throwable syncFailure;
+    private final Thread flusher;
+    private final ScheduledExecutorService compactor;
+    private volatile boolean open = true;
+
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong compactedSegments = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+
+    /**
+     * @param segmentBytes        tamaño de cada segmento; un registro más grande ocupa uno propio
+     * @param syncWrites          si las escrituras esperan a su fsync antes de volver
+     * @param compactionThreshold fracción de bytes vivos por debajo de la cual se compacta un segmento
+     * @param compactionInterval  cada cuánto compactar en segundo plano; cero para no hacerlo
+     */
+    public LogStore(Path directory, int segmentBytes, boolean syncWrites, double compactionThreshold,
+                    Duration compactionInterval) throws IOException {
+        if (segmentBytes <= HEADER_BYTES) {
+            throw new IllegalArgumentException("segmentBytes too small");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.syncWrites = syncWrites;
+        this.compactionThreshold = compactionThreshold;
+        Files.createDirectories(directory);
+        recover();
+
+        this.flusher = Thread.ofPlatform().daemon().name("log-store-flusher").start(this::flushLoop);
+        if (!compactionInterval.isZero() && !compactionInterval.isNegative()) {
+            this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "log-store-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = compactionInterval.toMillis();
+            this.compactor.scheduleWithFixedDelay(this::compactQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.compactor = null;
+        }
+    }
+
+    /**
+     * Escritura de una clave; value null es un borrado
+     */
+    public record Write(String collection, String key, byte[] value) {
+    }
+
+    public byte[] get(String collection, String key) {
+        ensureOpen();
+        ConcurrentSkipListMap<String, Location> index = collections.get(collection);
+        if (index == null) {
+            return null;
+        }
+        while (true) {
+            Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            Segment segment = segments.get(location.segmentId());
+            // Si el segmento se compactó entre medio, la clave ya apunta a su nueva ubicación
+            if (segment != null) {
+                return segment.readValue(location.offset());
+            }
+        }
+    }
+
+    public void put(String collection, String key, byte[] value) {
+        write(List.of(new Write(collection, key, value)));
+    }
+
+    public void delete(String collection, String key) {
+        write(List.of(new Write(collection, key, null)));
+    }
+
+    /**
+     * Agrega las escrituras en orden y, con syncWrites, vuelve cuando todas pasaron por fsync.
+     * Cada registro es atómico; el lote no lo es si el proceso cae a mitad de camino.
+     */
+    public void write(List<Write> batch) {
+        ensureOpen();
+        List<byte[]> records = new ArrayList<>(batch.size());
+        for (Write write : batch) {
+            records.add(encode(fullKey(write.collection(), write.key()), write.value()));
+        }
+        long sequence;
+        writeLock.lock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                Write write = batch.get(i);
+                byte[] record = records.get(i);
+                applyToIndex(write.collection(), write.key(), append(record), write.value() == null, active);
+            }
+            sequence = appendedRecords;
+        } finally {
+            writeLock.unlock();
+        }
+        writes.addAndGet(batch.size());
+        if (syncWrites) {
+            awaitDurable(sequence);
+        }
+    }
+
+    /**
+     * Claves vigentes de una colección, ordenadas; es una vista que refleja las escrituras
+     */
+    public NavigableSet<String> keys(String collection) {
+        ensureOpen();
+        ConcurrentSkipListMap<String, Location> index = collections.get(collection);
+        return index == null
+                ? Collections.emptyNavigableSet()
+                : Collections.unmodifiableNavigableSet(index.keySet());
+    }
+
+    /**
+     * Recorre los valores vigentes de una colección en orden de clave
+     */
+    public void forEach(String collection, BiConsumer<String, byte[]> consumer) {
+        for (String key : keys(collection)) {
+            byte[] value = get(collection, key);
+            if (value != null) {
+                consumer.accept(key, value);
+            }
+        }
+    }
+
+    /**
+     * Compacta los segmentos cerrados cuya fracción de bytes vivos quedó bajo el umbral
+     */
+    public synchronized void compact() {
+        ensureOpen();
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (!segment.sealed || segment.writePosition == 0) {
+                continue;
+            }
+            if (segment.liveBytes.get() < compactionThreshold * segment.writePosition) {
+                compactSegment(segment);
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long totalBytes = 0;
+        long liveBytes = 0;
+        for (Segment segment : segments.values()) {
+            totalBytes += segment.writePosition;
+            liveBytes += segment.liveBytes.get();
+        }
+        Map<String, Integer> keysByCollection = new HashMap<>();
+        collections.forEach((collection, index) -> keysByCollection.put(collection, index.size()));
+        stats.put("segments", segments.size());
+        stats.put("totalBytes", totalBytes);
+        stats.put("liveBytes", liveBytes);
+        stats.put("keys", keysByCollection);
+        writeLock.lock();
+        try {
+            stats.put("tombstones", tombstones.size());
+        } finally {
+            writeLock.unlock();
+        }
+        stats.put("writes", writes.get());
+        stats.put("syncs", syncs.get());
+        stats.put("compactedSegments", compactedSegments.get());
+        stats.put("reclaimedBytes", reclaimedBytes.get());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        if (!open) {
+            return;
+        }
+        open = false;
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        synchronized (syncMonitor) {
+            syncMonitor.notifyAll();
+        }
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeLock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                // Tras un fsync fallido no se vuelve a intentar: lo no confirmado queda como tras una caída
+                if (syncFailure == null) {
+                    force(segment);
+                }
+                segment.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // --- Escritura y confirmación ---
+
+    private Location append(byte[] record) {
+        if (active.size - active.writePosition < record.length) {
+            roll(record.length);
+        }
+        int offset = active.writePosition;
+        active.buffer.put(offset, record);
+        active.writePosition = offset + record.length;
+        unsynced.add(active);
+        appendedRecords++;
+        return new Location(active.id, offset, record.length, 0);
+    }
+
+    private void roll(int minBytes) {
+        active.sealed = true;
+        try {
+            active = createSegment(active.id + 1, Math.max(segmentBytes, minBytes));
+        } catch (IOException e) {
+            throw new InfrastructureException("Could not create storage segment", e);
+        }
+    }
+
+    /**
+     * Deja en el índice (o entre los borrados) la última versión de la clave, con la versión que
+     * reemplaza contada como anterior, y ajusta los bytes vivos de los segmentos
+     * @param location  ubicación del registro nuevo
+     * @param tombstone si el registro es un borrado
+     */
+    private void applyToIndex(String collection, String key, Location location, boolean tombstone, Segment segment) {
+        ConcurrentSkipListMap<String, Location> index = collections.computeIfAbsent(collection, c -> new ConcurrentSkipListMap<>());
+        String id = collection + KEY_SEPARATOR + key;
+        Location previousTombstone = tombstones.remove(id);
+        Location previous = index.get(key);
+        Location replaced = previous != null ? previous : previousTombstone;
+        Location latest = location.withOlderRecords(replaced != null ? replaced.olderRecords() + 1 : 0);
+        if (tombstone) {
+            index.remove(key);
+            tombstones.put(id, latest);
+        } else {
+            index.put(key, latest);
+            segment.liveBytes.addAndGet(location.length());
+        }
+        if (previous != null) {
+            Segment previousSegment = segments.get(previous.segmentId());
+            if (previousSegment != null) {
+                previousSegment.liveBytes.addAndGet(-previous.length());
+            }
+        }
+    }
+
+    private void awaitDurable(long sequence) {
+        synchronized (syncMonitor) {
+            syncMonitor.notifyAll();
+            while (durableRecords < sequence) {
+                if (syncFailure != null) {
+                    throw new InfrastructureException("Storage sync failed", syncFailure);
+                }
+                if (!open) {
+                    throw new InfrastructureException("Storage closed before the write was synced");
+                }
+                try {
+                    syncMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InfrastructureException("Interrupted while waiting for storage sync", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hilo de fsync: toma todo lo agregado desde la última vuelta, lo baja a disco y libera a
+     * todas las escrituras que esperaban por esos registros. Si el fsync falla no se reintenta:
+     * tras una falla no se sabe qué llegó a disco, y las escrituras ya quedaron visibles en el
+     * índice. Las que esperaban fallan y el almacenamiento deja de atender lecturas y escrituras;
+     * al reabrirlo, el índice se reconstruye con lo que realmente quedó en el log.
+     */
+    private void flushLoop() {
+        while (true) {
+            long target;
+            List<Segment> dirty;
+            writeLock.lock();
+            try {
+                target = appendedRecords;
+                dirty = new ArrayList<>(unsynced);
+                unsynced.clear();
+            } finally {
+                writeLock.unlock();
+            }
+            if (target == durableRecords) {
+                if (!open) {
+                    return;
+                }
+                synchronized (syncMonitor) {
+                    try {
+                        syncMonitor.wait(ASYNC_FLUSH_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                continue;
+            }
+            try {
+                for (Segment segment : dirty) {
+                    force(segment);
+                }
+                syncs.incrementAndGet();
+            } catch (UncheckedIOException e) {
+                logger.error("Storage sync failed, refusing further operations until reopened: {}", e.getMessage());
+                synchronized (syncMonitor) {
+                    syncFailure = e;
+                    syncMonitor.notifyAll();
+                }
+                return;
+            }
+            synchronized (syncMonitor) {
+                durableRecords = target;
+                syncMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Baja a disco lo escrito en el segmento desde su último fsync
+     */
+    private void force(Segment segment) {
+        int end = segment.writePosition;
+        if (end > segment.syncedPosition) {
+            forceRange(segment.buffer, segment.syncedPosition, end - segment.syncedPosition);
+            segment.syncedPosition = end;
+        }
+    }
+
+    /**
+     * fsync de un rango del mapeo; separado para que los tests simulen un disco que falla
+     */
+    void forceRange(MappedByteBuffer buffer, int offset, int length) {
+        buffer.force(offset, length);
+    }
+
+    private void ensureOpen() {
+        if (!open) {
+            throw new InfrastructureException("Storage is closed");
+        }
+        if (syncFailure != null) {
+            throw new InfrastructureException("Storage stopped after a failed sync", syncFailure);
+        }
+    }
+
+    // --- Compactación ---
+
+    private void compactQuietly() {
+        if (syncFailure != null) {
+            return;
+        }
+        try {
+            compact();
+        } catch (Exception e) {
+            logger.error("Storage compaction failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Copia al final lo vigente del segmento y lo borra cuando las copias ya están en disco.
+     * El último borrado de una clave se copia solo si todavía quedan versiones anteriores en otros
+     * segmentos, que si no reaparecerían al releer el log; si no queda ninguna se descarta. Las
+     * cuentas de versiones anteriores se descuentan recién cuando el segmento ya no está.
+     */
+    private void compactSegment(Segment segment) {
+        List<RecordView> records = new ArrayList<>();
+        Map<String, Integer> staleInSegment = new HashMap<>();
+        int position = 0;
+        long lastCopied = 0;
+        while (position < segment.writePosition) {
+            RecordView record = segment.readRecord(position);
+            records.add(record);
+            String id = record.collection() + KEY_SEPARATOR + record.key();
+            writeLock.lock();
+            try {
+                ConcurrentSkipListMap<String, Location> index = collections.get(record.collection());
+                Location latest = latestOf(index, id, record.key());
+                if (latest == null || !latest.isAt(segment.id, position)) {
+                    staleInSegment.merge(id, 1, Integer::sum);
+                } else if (!record.tombstone() || latest.olderRecords() > staleInSegment.getOrDefault(id, 0)) {
+                    byte[] copy = segment.readBytes(position, record.length());
+                    // El original sigue en disco hasta que se borre el segmento
+                    Location moved = append(copy).withOlderRecords(latest.olderRecords() + 1);
+                    if (record.tombstone()) {
+                        tombstones.put(id, moved);
+                    } else {
+                        index.put(record.key(), moved);
+                        active.liveBytes.addAndGet(copy.length);
+                        segment.liveBytes.addAndGet(-copy.length);
+                    }
+                    lastCopied = appendedRecords;
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            position += record.length();
+        }
+        if (lastCopied > 0) {
+            awaitDurable(lastCopied);
+        }
+        segments.remove(segment.id);
+        forgetRecords(segment, records);
+        segment.close();
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            logger.warn("Could not delete compacted segment {}: {}", segment.path, e.getMessage());
+        }
+        compactedSegments.incrementAndGet();
+        reclaimedBytes.addAndGet(segment.writePosition);
+        logger.debug("Compacted storage segment {}", segment.id);
+    }
+
+    /**
+     * Última versión de la clave, sea un valor vigente o un borrado que sigue en disco
+     */
+    private Location latestOf(ConcurrentSkipListMap<String, Location> index, String id, String key) {
+        Location live = index != null ? index.get(key) : null;
+        return live != null ? live : tombstones.get(id);
+    }
+
+    /**
+     * Descuenta de cada clave las versiones que se fueron con el segmento; un borrado que quedó en
+     * él sin copiarse deja de existir
+     */
+    private void forgetRecords(Segment segment, List<RecordView> records) {
+        writeLock.lock();
+        try {
+            int position = 0;
+            for (RecordView record : records) {
+                String id = record.collection() + KEY_SEPARATOR + record.key();
+                ConcurrentSkipListMap<String, Location> index = collections.get(record.collection());
+                Location latest = latestOf(index, id, record.key());
+                if (latest != null && latest.isAt(segment.id, position)) {
+                    tombstones.remove(id);
+                } else if (latest != null) {
+                    Location updated = latest.withOlderRecords(latest.olderRecords() - 1);
+                    if (index != null && index.containsKey(record.key())) {
+                        index.put(record.key(), updated);
+                    } else {
+                        tombstones.put(id, updated);
+                    }
+                }
+                position += record.length();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // --- Recuperación ---
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        int records = 0;
+        for (Path file : files) {
+            Segment segment = openSegment(file);
+            segments.put(segment.id, segment);
+            records += replay(segment);
+            segment.sealed = true;
+        }
+        if (segments.isEmpty()) {
+            active = createSegment(1, segmentBytes);
+        } else {
+            // Se sigue escribiendo en el último; lo que quede después del último registro válido
+            // es una escritura cortada y se limpia para que no se confunda con registros nuevos
+            active = segments.lastEntry().getValue();
+            active.sealed = false;
+            active.clearTail();
+        }
+        logger.info("Storage opened at {}: {} segments, {} records replayed", directory, segments.size(), records);
+    }
+
+    private int replay(Segment segment) {
+        int position = 0;
+        int records = 0;
+        while (true) {
+            RecordView record = segment.validRecordAt(position);
+            if (record == null) {
+                break;
+            }
+            applyToIndex(record.collection(), record.key(), new Location(segment.id, position, record.length(), 0),
+                    record.tombstone(), segment);
+            position += record.length();
+            records++;
+        }
+        segment.writePosition = position;
+        return records;
+    }
+
+    private Segment createSegment(int id, int size) throws IOException {
+        Path path = directory.resolve(String.format("%s%09d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size), size);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private Segment openSegment(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int size = (int) channel.size();
+        return new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size), size);
+    }
+
+    // --- Formato de registro ---
+
+    private static byte[] fullKey(String collection, String key) {
+        return (collection + KEY_SEPARATOR + key).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] encode(byte[] key, byte[] value) {
+        int length = HEADER_BYTES + key.length + (value != null ? value.length : 0);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(0);
+        buffer.putInt(key.length);
+        buffer.putInt(value != null ? value.length : -1);
+        buffer.put(key);
+        if (value != null) {
+            buffer.put(value);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 4, length - 4);
+        buffer.putInt(0, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Ubicación de la última versión de una clave
+     * @param olderRecords versiones anteriores de la clave que siguen en disco, borrados incluidos
+     */
+    private record Location(int segmentId, int offset, int length, int olderRecords) {
+
+        Location withOlderRecords(int count) {
+            return new Location(segmentId, offset, length, count);
+        }
+
+        boolean isAt(int segmentId, int offset) {
+            return this.segmentId == segmentId && this.offset == offset;
+        }
+    }
+
+    private record RecordView(String collection, String key, boolean tombstone, int length) {
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int size;
+        final AtomicLong liveBytes = new AtomicLong();
+        // Lo escribe solo quien tiene el lock de escritura; lo leen el flusher y la compactación
+        volatile int writePosition;
+        volatile boolean sealed;
+        // Solo lo toca el flusher (y close, con el flusher detenido)
+        private int syncedPosition;
+
+        Segment(int id, Path path, FileChannel channel, MappedByteBuffer buffer, int size) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.size = size;
+        }
+
+        byte[] readValue(int offset) {
+            int keyLength = buffer.getInt(offset + 4);
+            int valueLength = buffer.getInt(offset + 8);
+            byte[] value = new byte[valueLength];
+            buffer.get(offset + HEADER_BYTES + keyLength, value);
+            return value;
+        }
+
+        byte[] readBytes(int offset, int length) {
+            byte[] bytes = new byte[length];
+            buffer.get(offset, bytes);
+            return bytes;
+        }
+
+        RecordView readRecord(int offset) {
+            int keyLength = buffer.getInt(offset + 4);
+            int valueLength = buffer.getInt(offset + 8);
+            byte[] key = new byte[keyLength];
+            buffer.get(offset + HEADER_BYTES, key);
+            String fullKey = new String(key, StandardCharsets.UTF_8);
+            int separator = fullKey.indexOf(KEY_SEPARATOR);
+            return new RecordView(fullKey.substring(0, separator), fullKey.substring(separator + 1), valueLength < 0,
+                    HEADER_BYTES + keyLength + Math.max(valueLength, 0));
+        }
+
+        /**
+         * El registro en offset si está completo y su crc coincide; null al final del log
+         */
+        RecordView validRecordAt(int offset) {
+            if (size - offset < HEADER_BYTES) {
+                return null;
+            }
+            int keyLength = buffer.getInt(offset + 4);
+            int valueLength = buffer.getInt(offset + 8);
+            if (keyLength <= 0 || valueLength < -1) {
+                return null;
+            }
+            long length = (long) HEADER_BYTES + keyLength + Math.max(valueLength, 0);
+            if (length > size - offset) {
+                return null;
+            }
+            byte[] body = readBytes(offset + 4, (int) length - 4);
+            CRC32C crc = new CRC32C();
+            crc.update(body);
+            if ((int) crc.getValue() != buffer.getInt(offset)) {
+                return null;
+            }
+            RecordView record = readRecord(offset);
+            return record.collection().isEmpty() && record.key().isEmpty() ? null : record;
+        }
+
+        void clearTail() {
+            for (int position = writePosition; position < size; position++) {
+                if (buffer.get(position) != 0) {
+                    buffer.put(position, (byte) 0);
+                }
+            }
+            buffer.force();
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // El mapeo sigue válido hasta que lo libere el GC
+            }
+        }
+    }
+}
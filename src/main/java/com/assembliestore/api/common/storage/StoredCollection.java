@@ -0,0 +1,104 @@
+package com.assembliestore.api.common.storage;
+
+import com.assembliestore.api.common.error.InfrastructureException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+/**
+ * Colección tipada sobre el LogStore: cada documento se guarda como JSON bajo su id.
+ * Cada lectura deserializa un objeto nuevo, así que lo devuelto se puede modificar libremente.
+ */
+public final class StoredCollection<T> {
+
+    private final LogStore store;
+    private final ObjectMapper objectMapper;
+    private final String name;
+    private final Class<T> type;
+
+    StoredCollection(LogStore store, ObjectMapper objectMapper, String name, Class<T> type) {
+        this.store = store;
+        this.objectMapper = objectMapper;
+        this.name = name;
+        this.type = type;
+    }
+
+    public Optional<T> find(String id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        byte[] value = store.get(name, id);
+        return value != null ? Optional.of(read(value)) : Optional.empty();
+    }
+
+    public void put(String id, T document) {
+        store.put(name, id, write(document));
+    }
+
+    /**
+     * Guarda los documentos en un solo lote: comparten la espera del fsync
+     */
+    public void putAll(Map<String, T> documents) {
+        List<LogStore.Write> writes = new ArrayList<>(documents.size());
+        documents.forEach((id, document) -> writes.add(new LogStore.Write(name, id, write(document))));
+        store.write(writes);
+    }
+
+    public void remove(String id) {
+        store.delete(name, id);
+    }
+
+    /**
+     * Todos los documentos en orden de id
+     */
+    public List<T> findAll() {
+        List<T> documents = new ArrayList<>();
+        store.forEach(name, (id, value) -> documents.add(read(value)));
+        return documents;
+    }
+
+    /**
+     * Hasta limit documentos con id mayor que afterId (desde el primero si es null), en orden de
+     * id; solo se leen los documentos devueltos
+     */
+    public List<T> findAfter(String afterId, int limit) {
+        NavigableSet<String> keys = store.keys(name);
+        List<T> documents = new ArrayList<>(Math.min(limit, 256));
+        for (String id : afterId != null ? keys.tailSet(afterId, false) : keys) {
+            if (documents.size() >= limit) {
+                break;
+            }
+            byte[] value = store.get(name, id);
+            if (value != null) {
+                documents.add(read(value));
+            }
+        }
+        return documents;
+    }
+
+    public void forEach(BiConsumer<String, T> consumer) {
+        store.forEach(name, (id, value) -> consumer.accept(id, read(value)));
+    }
+
+    private T read(byte[] value) {
+        try {
+            return objectMapper.readValue(value, type);
+        } catch (IOException e) {
+            throw new InfrastructureException("Could not read " + name + " document", e);
+        }
+    }
+
+    private byte[] write(T document) {
+        try {
+            return objectMapper.writeValueAsBytes(document);
+        } catch (IOException e) {
+            throw new InfrastructureException("Could not write " + name + " document", e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.assembliestore.api.common.type;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Página de un listado paginado por cursor (keyset).
+ *
+ * El cursor es opaco para el cliente: codifica la clave de orden del último elemento devuelto y
+ * la página siguiente empieza justo después de ella, así que agregar o borrar elementos no
+ * desplaza ni repite resultados. nextCursor es null en la última página.
+ *
+ * Los repositorios reciben la clave después de la cual empezar y un límite; quien arma la página
+ * les pide limit + 1 elementos para saber si hay más sin tener que contarlos.
+ */
+public record CursorPage<T>(List<T> items, String nextCursor) {
+
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+
+    /**
+     * Tamaño de página efectivo: el pedido acotado a [1, MAX_LIMIT], o DEFAULT_LIMIT si no se indicó
+     */
+    public static int limit(Integer requested) {
+        if (requested == null) {
+            return DEFAULT_LIMIT;
+        }
+        return Math.max(1, Math.min(requested, MAX_LIMIT));
+    }
+
+    /**
+     * Arma la página a partir de hasta limit + 1 elementos leídos en orden
+     * @param keyOf clave de orden de un elemento, la misma que entiende el repositorio
+     */
+    public static <T> CursorPage<T> of(List<T> fetched, int limit, Function<T, String> keyOf) {
+        if (fetched.size() <= limit) {
+            return new CursorPage<>(List.copyOf(fetched), null);
+        }
+        List<T> items = List.copyOf(fetched.subList(0, limit));
+        return new CursorPage<>(items, encode(keyOf.apply(items.get(limit - 1))));
+    }
+
+    public static String encode(String key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Clave codificada en el cursor, o null si no hay cursor (primera página)
+     */
+    public static String decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    /**
+     * Misma página con los elementos transformados; el cursor no cambia
+     */
+    public <R> CursorPage<R> map(Function<T, R> mapper) {
+        return new CursorPage<>(items.stream().map(mapper).toList(), nextCursor);
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
@@ -1,22 +1,54 @@
 package com.assembliestore.api.module.product.application.controller;
 
+import com.assembliestore.api.common.error.StockHoldException;
 import com.assembliestore.api.module.product.domain.port.StockPort;
 import com.assembliestore.api.common.response.ApiResponse;
+import com.assembliestore.api.module.user.application.port.TokenPort;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/products/stock")
 @CrossOrigin(originPatterns = "*")
 public class StockController {
 
+    private static final long MAX_HOLD_SECONDS = 1800;
+
     @Autowired
     private StockPort stockPort;
 
+    @Autowired
+    private TokenPort tokenPort;
+
+    /**
+     * Extrae el userId del token JWT
+     */
+    private String getUserIdFromToken(HttpServletRequest request) {
+        final String authHeader = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            throw new RuntimeException("Invalid authorization header");
+        }
+        
+        final String jwtToken = authHeader.substring(7);
+        var jwtTokenDto = tokenPort.findByToken(jwtToken);
+        
+        if (jwtTokenDto == null) {
+            throw new RuntimeException("Invalid token");
+        }
+        
+        return jwtTokenDto.getUserId();
+    }
+
     @GetMapping("/{productId}")
     public ResponseEntity<ApiResponse<Integer>> getProductStock(@PathVariable String productId) {
         try {
@@ -54,4 +86,81 @@ public class StockController {
                 .body(ApiResponse.error("Error checking stock availability: " + e.getMessage()));
         }
     }
+
+    @PostMapping("/holds")
+    @PreAuthorize("hasRole('CLIENT') or hasRole('ADMIN') or hasRole('MANAGEMENT')")
+    public ResponseEntity<ApiResponse<String>> holdStock(
+            @RequestBody Map<String, Integer> productQuantities,
+            @RequestParam(defaultValue = "600") long ttlSeconds,
+            HttpServletRequest request) {
+        try {
+            // La reserva de un carrito no puede durar más de 30 minutos
+            Duration ttl = Duration.ofSeconds(Math.max(1, Math.min(ttlSeconds, MAX_HOLD_SECONDS)));
+            Optional<String> holdId = stockPort.hold(getUserIdFromToken(request), productQuantities, ttl);
+            
+            if (holdId.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error("Insufficient stock to hold the requested products"));
+            }
+            
+            return ResponseEntity.ok(ApiResponse.success("Stock held successfully", holdId.get()));
+        } catch (StockHoldException e) {
+            HttpStatus status = e.getReason() == StockHoldException.Reason.TOO_MANY_HOLDS
+                ? HttpStatus.TOO_MANY_REQUESTS
+                : HttpStatus.BAD_REQUEST;
+            return ResponseEntity.status(status).body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                .body(ApiResponse.error("Error holding stock: " + e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/holds/{holdId}")
+    @PreAuthorize("hasRole('CLIENT') or hasRole('ADMIN') or hasRole('MANAGEMENT')")
+    public ResponseEntity<ApiResponse<Void>> releaseHold(@PathVariable String holdId, HttpServletRequest request) {
+        try {
+            // Una reserva de otro usuario se responde igual que una inexistente
+            if (!stockPort.release(holdId, getUserIdFromToken(request))) {
+                return ResponseEntity.notFound().build();
+            }
+            
+            return ResponseEntity.ok(ApiResponse.success("Stock hold released successfully", null));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                .body(ApiResponse.error("Error releasing stock hold: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{productId}/sharded")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('MANAGEMENT')")
+    public ResponseEntity<ApiResponse<Boolean>> getShardedMode(@PathVariable String productId) {
+        try {
+            if (stockPort.getCurrentStock(productId) == -1) {
+                return ResponseEntity.notFound().build();
+            }
+            
+            return ResponseEntity.ok(ApiResponse.success("Stock counter mode retrieved successfully",
+                stockPort.isShardedMode(productId)));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                .body(ApiResponse.error("Error retrieving stock counter mode: " + e.getMessage()));
+        }
+    }
+
+    @PutMapping("/{productId}/sharded")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('MANAGEMENT')")
+    public ResponseEntity<ApiResponse<Boolean>> setShardedMode(
+            @PathVariable String productId,
+            @RequestParam boolean enabled) {
+        try {
+            if (!stockPort.setShardedMode(productId, enabled)) {
+                return ResponseEntity.notFound().build();
+            }
+            
+            return ResponseEntity.ok(ApiResponse.success("Stock counter mode updated successfully", enabled));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                .body(ApiResponse.error("Error updating stock counter mode: " + e.getMessage()));
+        }
+    }
 }
@@ -2,6 +2,7 @@ package com.assembliestore.api.module.product.application.port;
 
 import java.util.Optional;
 
+import com.assembliestore.api.common.type.CursorPage;
 import com.assembliestore.api.module.product.application.command.CategorySaveCommand;
 import com.assembliestore.api.module.product.application.dto.CategoryFindDto;
 
@@ -19,6 +20,8 @@ public interface CategoryPort {
 
     Iterable<CategoryFindDto> findAllCategories();
 
+    CursorPage<CategoryFindDto> findCategoriesPage(String cursor, Integer limit);
+
     void toggleActiveCategory(String categoryId);
 
     void toggleVisibleCategory(String categoryId);
@@ -1,16 +1,24 @@
 package com.assembliestore.api.module.product.application.port;
 
+import com.assembliestore.api.common.type.CursorPage;
 import com.assembliestore.api.module.product.domain.entity.Product;
 import com.assembliestore.api.module.product.domain.entity.Gallery;
 import com.assembliestore.api.module.product.domain.entity.Specification;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface ProductPort {
     void upsertProduct(Product product);
     void upsertProducts(List<Product> products);
     Optional<Product> findProductById(String productId, String role);
     List<Product> findAllProducts(String role);
+    CursorPage<Product> findProductsPage(String role, String cursor, Integer limit);
+    /**
+     * Recorre en orden de id los productos que ve el rol, opcionalmente de una subcategoría,
+     * leyendo de a una página; devuelve cuántos entregó a sink
+     */
+    long forEachProduct(String role, String subCategoryId, Consumer<Product> sink);
 
     // Gallery
     void addGalleryImage(String productId, Gallery image);
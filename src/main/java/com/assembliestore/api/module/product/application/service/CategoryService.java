@@ -1,12 +1,14 @@
 package com.assembliestore.api.module.product.application.service;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.StreamSupport;
 
 import org.springframework.stereotype.Service;
 
+import com.assembliestore.api.common.type.CursorPage;
 import com.assembliestore.api.module.product.application.command.CategorySaveCommand;
 import com.assembliestore.api.module.product.application.dto.CategoryFindDto;
 import com.assembliestore.api.module.product.application.mapper.CategoryMapper;
@@ -99,6 +101,15 @@ public class CategoryService implements CategoryPort {
                 .toList();
     }
 
+    @Override
+    public CursorPage<CategoryFindDto> findCategoriesPage(String cursor, Integer limit) {
+
+        int pageSize = CursorPage.limit(limit);
+        List<Category> categories = _categoryRepository.findPage(CursorPage.decode(cursor), pageSize + 1);
+
+        return CursorPage.of(categories, pageSize, Category::getId).map(CategoryMapper::toDto);
+    }
+
     @Override
     public void toggleActiveCategory(String categoryId) {
 
@@ -1,5 +1,6 @@
 package com.assembliestore.api.module.product.application.service;
 
+import com.assembliestore.api.common.type.CursorPage;
 import com.assembliestore.api.module.product.application.port.ProductPort;
 import com.assembliestore.api.module.product.domain.entity.Product;
 import com.assembliestore.api.module.product.domain.entity.Gallery;
@@ -9,13 +10,19 @@ import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 @Service
 public class ProductService implements ProductPort {
+    // Productos leídos por vuelta al recorrer una exportación
+    private static final int EXPORT_PAGE_SIZE = 500;
+
     private final ProductRepository productRepository;
+    private final StockEngine stockEngine;
 
-    public ProductService(ProductRepository productRepository) {
+    public ProductService(ProductRepository productRepository, StockEngine stockEngine) {
         this.productRepository = productRepository;
+        this.stockEngine = stockEngine;
     }
 
     @Override
@@ -26,7 +33,9 @@ public class ProductService implements ProductPort {
         if (product.getName() == null || product.getName().trim().isEmpty()) {
             throw new RuntimeException("El nombre del producto es requerido");
         }
+        stockEngine.ensureCoversHolds(List.of(product));
         productRepository.upsert(product);
+        stockEngine.overwrite(product);
     }
 
     @Override
@@ -45,7 +54,9 @@ public class ProductService implements ProductPort {
             }
         }
         
+        stockEngine.ensureCoversHolds(products);
         productRepository.upsertBatch(products);
+        products.forEach(stockEngine::overwrite);
     }
 
     @Override
@@ -54,39 +65,64 @@ public class ProductService implements ProductPort {
             throw new RuntimeException("El ID del producto es requerido");
         }
         
-        Optional<Product> product = productRepository.findById(productId);
-        
-        if (product.isEmpty()) {
-            return Optional.empty();
-        }
-        
-        // Aplicar filtros según el rol
-        Product foundProduct = product.get();
-        
+        // Las vistas por rol ya vienen armadas del repositorio
         switch (role.toUpperCase()) {
             case "CLIENT":
                 // Cliente: solo productos activos, visibles y no borrados
-                if (foundProduct.isDeleted() || !foundProduct.isActived() || !foundProduct.isVisible()) {
-                    return Optional.empty();
-                }
-                return Optional.of(filterForClient(foundProduct));
+                return productRepository.findByIdForClient(productId);
                 
             case "MANAGEMENT":
                 // Management: todo menos los borrados
-                if (foundProduct.isDeleted()) {
-                    return Optional.empty();
-                }
-                return Optional.of(filterForManagement(foundProduct));
+                return productRepository.findByIdForManagement(productId);
                 
             case "ADMIN":
                 // Admin: todo
-                return product;
+                return productRepository.findById(productId);
                 
             default:
                 throw new RuntimeException("Rol no válido: " + role);
         }
     }
 
+    @Override
+    public CursorPage<Product> findProductsPage(String role, String cursor, Integer limit) {
+        int pageSize = CursorPage.limit(limit);
+        List<Product> fetched = findPage(role, CursorPage.decode(cursor), pageSize + 1);
+        return CursorPage.of(fetched, pageSize, Product::getId);
+    }
+
+    @Override
+    public long forEachProduct(String role, String subCategoryId, Consumer<Product> sink) {
+        String afterId = null;
+        long delivered = 0;
+        while (true) {
+            List<Product> page = findPage(role, afterId, EXPORT_PAGE_SIZE);
+            for (Product product : page) {
+                if (subCategoryId == null || subCategoryId.equals(product.getSubCategoryId())) {
+                    sink.accept(product);
+                    delivered++;
+                }
+            }
+            if (page.size() < EXPORT_PAGE_SIZE) {
+                return delivered;
+            }
+            afterId = page.get(page.size() - 1).getId();
+        }
+    }
+
+    private List<Product> findPage(String role, String afterId, int limit) {
+        switch (role.toUpperCase()) {
+            case "CLIENT":
+                return productRepository.findPageForClient(afterId, limit);
+            case "MANAGEMENT":
+                return productRepository.findPageForManagement(afterId, limit);
+            case "ADMIN":
+                return productRepository.findPage(afterId, limit);
+            default:
+                throw new RuntimeException("Rol no válido: " + role);
+        }
+    }
+
     @Override
     public List<Product> findAllProducts(String role) {
         switch (role.toUpperCase()) {
@@ -109,7 +145,7 @@ public class ProductService implements ProductPort {
         Product product = productRepository.findById(productId)
             .orElseThrow(() -> new RuntimeException("Producto no encontrado"));
         product.addGalleryImage(image);
-        productRepository.upsert(product);
+        saveEdit(product);
     }
 
     @Override
@@ -117,7 +153,7 @@ public class ProductService implements ProductPort {
         Product product = productRepository.findById(productId)
             .orElseThrow(() -> new RuntimeException("Producto no encontrado"));
         product.removeGalleryImage(imageId);
-        productRepository.upsert(product);
+        saveEdit(product);
     }
 
     @Override
@@ -127,7 +163,7 @@ public class ProductService implements ProductPort {
         if (visible != null) product.setGalleryImageVisible(imageId, visible);
         if (actived != null) product.setGalleryImageActived(imageId, actived);
         if (deleted != null) product.setGalleryImageDeleted(imageId, deleted);
-        productRepository.upsert(product);
+        saveEdit(product);
     }
 
     @Override
@@ -135,7 +171,7 @@ public class ProductService implements ProductPort {
         Product product = productRepository.findById(productId)
             .orElseThrow(() -> new RuntimeException("Producto no encontrado"));
         product.addSpecification(spec);
-        productRepository.upsert(product);
+        saveEdit(product);
     }
 
     @Override
@@ -143,7 +179,7 @@ public class ProductService implements ProductPort {
         Product product = productRepository.findById(productId)
             .orElseThrow(() -> new RuntimeException("Producto no encontrado"));
         product.removeSpecification(specId);
-        productRepository.upsert(product);
+        saveEdit(product);
     }
 
     @Override
@@ -153,39 +189,15 @@ public class ProductService implements ProductPort {
         if (visible != null) product.setSpecificationVisible(specId, visible);
         if (actived != null) product.setSpecificationActived(specId, actived);
         if (deleted != null) product.setSpecificationDeleted(specId, deleted);
-        productRepository.upsert(product);
-    }
-
-    private Product filterForClient(Product product) {
-        // Para clientes: solo datos básicos
-        return Product.builder()
-            .id(product.getId())
-            .name(product.getName())
-            .description(product.getDescription())
-            .specifications(product.getSpecifications())
-            .brandName(product.getBrandName())
-            .price(product.getPrice())
-            .gallery(product.getGallery())
-            .build();
+        saveEdit(product);
     }
 
-    private Product filterForManagement(Product product) {
-        // Para management: todo menos deletedAt
-        return Product.builder()
-            .id(product.getId())
-            .name(product.getName())
-            .description(product.getDescription())
-            .specifications(product.getSpecifications())
-            .brandName(product.getBrandName())
-            .price(product.getPrice())
-            .gallery(product.getGallery())
-            .subCategoryId(product.getSubCategoryId())
-            .stockQuantity(product.getStockQuantity())
-            .actived(product.isActived())
-            .visible(product.isVisible())
-            .deleted(product.isDeleted())
-            .createdAt(product.getCreatedAt())
-            .updatedAt(product.getUpdatedAt())
-            .build();
+    /**
+     * Guarda una edición parcial del producto. La copia se leyó antes de editarla, así que el
+     * stock se vuelve a persistir desde el motor para no dejar en el repositorio uno viejo.
+     */
+    private void saveEdit(Product product) {
+        productRepository.upsert(product);
+        stockEngine.persistStock(product.getId());
     }
 }
@@ -0,0 +1,119 @@
+package com.assembliestore.api.module.product.application.service;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Contador de stock repartido en porciones, una por núcleo, para productos muy
+ * disputados (ventas flash). Cada hilo descuenta de su porción; cuando esta no
+ * alcanza, toma prestado de las demás y, si entre todas no alcanza, devuelve lo
+ * que tomó. El total (y por lo tanto el stock previo informado) es aproximado
+ * mientras haya operaciones en curso.
+ */
+final class ShardedStockCounter implements StockCounter {
+
+    // Separación entre porciones para que cada una quede en su propia línea de caché
+    private static final int PADDING = 16;
+
+    private final AtomicIntegerArray slices;
+    private final int mask;
+
+    ShardedStockCounter(int quantity) {
+        this(quantity, Runtime.getRuntime().availableProcessors());
+    }
+
+    ShardedStockCounter(int quantity, int shards) {
+        int size = 1;
+        while (size < shards) {
+            size <<= 1;
+        }
+        this.slices = new AtomicIntegerArray(size * PADDING);
+        this.mask = size - 1;
+        set(quantity);
+    }
+
+    @Override
+    public int tryTake(int amount) {
+        int home = homeSlice();
+
+        // Camino rápido: alcanza con la porción propia
+        while (true) {
+            int current = slices.get(home * PADDING);
+            if (current < amount) {
+                break;
+            }
+            if (slices.compareAndSet(home * PADDING, current, current - amount)) {
+                return get() + amount;
+            }
+        }
+
+        // Tomar prestado de las demás porciones, todo o nada
+        int[] taken = new int[mask + 1];
+        int total = 0;
+        for (int k = 0; k <= mask && total < amount; k++) {
+            int slice = (home + k) & mask;
+            while (true) {
+                int current = slices.get(slice * PADDING);
+                if (current <= 0) {
+                    break;
+                }
+                int portion = Math.min(current, amount - total);
+                if (slices.compareAndSet(slice * PADDING, current, current - portion)) {
+                    taken[slice] = portion;
+                    total += portion;
+                    break;
+                }
+            }
+        }
+
+        if (total < amount) {
+            for (int slice = 0; slice <= mask; slice++) {
+                if (taken[slice] > 0) {
+                    slices.addAndGet(slice * PADDING, taken[slice]);
+                }
+            }
+            return -1;
+        }
+        return get() + amount;
+    }
+
+    @Override
+    public int give(int amount) {
+        slices.addAndGet(homeSlice() * PADDING, amount);
+        return get() - amount;
+    }
+
+    @Override
+    public int get() {
+        int total = 0;
+        for (int slice = 0; slice <= mask; slice++) {
+            total += slices.get(slice * PADDING);
+        }
+        return total;
+    }
+
+    @Override
+    public void set(int value) {
+        int shards = mask + 1;
+        for (int slice = 0; slice < shards; slice++) {
+            slices.set(slice * PADDING, value / shards + (slice < value % shards ? 1 : 0));
+        }
+    }
+
+    @Override
+    public int drain() {
+        int total = 0;
+        for (int slice = 0; slice <= mask; slice++) {
+            total += slices.getAndSet(slice * PADDING, 0);
+        }
+        return total;
+    }
+
+    @Override
+    public boolean isSharded() {
+        return true;
+    }
+
+    private int homeSlice() {
+        return (int) Thread.currentThread().threadId() & mask;
+    }
+}
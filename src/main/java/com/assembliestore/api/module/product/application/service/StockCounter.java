@@ -0,0 +1,80 @@
+package com.assembliestore.api.module.product.application.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Contador del stock disponible para la venta de un producto
+ */
+interface StockCounter {
+
+    /**
+     * Descuenta si hay suficiente stock.
+     * @return el stock previo, o -1 si no alcanza
+     */
+    int tryTake(int amount);
+
+    /**
+     * @return el stock previo
+     */
+    int give(int amount);
+
+    int get();
+
+    void set(int value);
+
+    /**
+     * Deja el contador en cero y devuelve lo que tenía
+     */
+    int drain();
+
+    boolean isSharded();
+
+    /**
+     * Un único contador atómico: lo más barato mientras el producto no tenga contención
+     */
+    final class Single implements StockCounter {
+        private final AtomicInteger quantity;
+
+        Single(int quantity) {
+            this.quantity = new AtomicInteger(quantity);
+        }
+
+        @Override
+        public int tryTake(int amount) {
+            while (true) {
+                int current = quantity.get();
+                if (current < amount) {
+                    return -1;
+                }
+                if (quantity.compareAndSet(current, current - amount)) {
+                    return current;
+                }
+            }
+        }
+
+        @Override
+        public int give(int amount) {
+            return quantity.getAndAdd(amount);
+        }
+
+        @Override
+        public int get() {
+            return quantity.get();
+        }
+
+        @Override
+        public void set(int value) {
+            quantity.set(value);
+        }
+
+        @Override
+        public int drain() {
+            return quantity.getAndSet(0);
+        }
+
+        @Override
+        public boolean isSharded() {
+            return false;
+        }
+    }
+}
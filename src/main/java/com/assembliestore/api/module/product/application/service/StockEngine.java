@@ -0,0 +1,622 @@
+package com.assembliestore.api.module.product.application.service;
+
+import com.assembliestore.api.common.error.StockHoldException;
+import com.assembliestore.api.common.scheduling.HashedTimingWheel;
+import com.assembliestore.api.module.product.domain.entity.Product;
+import com.assembliestore.api.module.product.domain.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Motor de stock en memoria: un contador atómico por producto.
+ *
+ * Las reservas multi-producto son todo-o-nada y se resuelven con compare-and-set,
+ * sin lock global. Los cambios se escriben en {@link ProductRepository} de forma
+ * asíncrona desde un único hilo de escritura, que guarda solo la existencia para no pisar
+ * ediciones del producto hechas en paralelo.
+ *
+ * Las reservas temporales (holds) mueven stock de "disponible" a "apartado" y expiran
+ * mediante una {@link HashedTimingWheel}; lo disponible para la venta es siempre el
+ * propio contador, sin recorrer las reservas. Cada reserva pertenece a un usuario: solo él
+ * puede confirmarla o liberarla, y la cantidad de reservas activas por usuario está acotada.
+ *
+ * Los productos muy disputados pueden pasar en caliente a un contador repartido
+ * por núcleo ({@link ShardedStockCounter}).
+ */
+@Component
+public class StockEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockEngine.class);
+
+    private final ProductRepository productRepository;
+
+    // Contador en memoria por producto (fuente de verdad del stock en este nodo)
+    private final Map<String, StockCell> cells = new ConcurrentHashMap<>();
+
+    // Productos con cambios pendientes de persistir
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    private final ExecutorService writer;
+
+    // Reservas temporales activas por id
+    private final Map<String, StockHold> holds = new ConcurrentHashMap<>();
+
+    // Reservas activas por usuario
+    private final Map<String, Integer> holdsByOwner = new ConcurrentHashMap<>();
+
+    // Expiración de reservas: un tick por segundo, sin una tarea programada por reserva
+    private final HashedTimingWheel<StockHold> holdExpiry =
+            new HashedTimingWheel<>("stock-hold-expiry", Duration.ofSeconds(1), 1024, this::expireHold);
+
+    private volatile Consumer<List<StockChange>> holdExpiredListener = changes -> { };
+
+    @Autowired
+    public StockEngine(ProductRepository productRepository) {
+        this(productRepository, Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-write-through");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    StockEngine(ProductRepository productRepository, ExecutorService writer, boolean startHoldExpiry) {
+        this.productRepository = productRepository;
+        this.writer = writer;
+        if (startHoldExpiry) {
+            holdExpiry.start();
+        }
+    }
+
+    /**
+     * Reserva (descuenta) todas las cantidades o ninguna.
+     * @return los cambios aplicados, o vacío si algún producto no existe o no tiene stock suficiente
+     */
+    public Optional<List<StockChange>> reserve(Map<String, Integer> productQuantities) {
+        Map<String, StockCell> loaded = cells(productQuantities.keySet());
+        Optional<List<StockChange>> changes = take(productQuantities, loaded);
+        if (changes.isPresent()) {
+            markDirty(productQuantities.keySet());
+        }
+        return changes;
+    }
+
+    /**
+     * Aparta stock por un tiempo limitado. Lo apartado deja de estar disponible para la venta
+     * pero sigue contando como existencia hasta que la reserva se confirma.
+     * @param ownerId usuario dueño de la reserva
+     * @param maxActiveHolds reservas activas que el usuario puede tener a la vez
+     * @return la reserva creada, o vacío si algún producto no tiene stock suficiente
+     * @throws StockHoldException si el usuario ya tiene maxActiveHolds reservas activas
+     */
+    public Optional<Hold> hold(String ownerId, Map<String, Integer> productQuantities, Duration ttl, int maxActiveHolds) {
+        if (ownerId == null) {
+            throw new IllegalArgumentException("A stock hold needs an owner");
+        }
+        if (!acquireHoldSlot(ownerId, maxActiveHolds)) {
+            throw new StockHoldException(StockHoldException.Reason.TOO_MANY_HOLDS,
+                    "Se alcanzó el máximo de " + maxActiveHolds + " reservas activas por usuario");
+        }
+        Map<String, StockCell> loaded = cells(productQuantities.keySet());
+        Optional<List<StockChange>> changes = take(productQuantities, loaded);
+        if (changes.isEmpty()) {
+            releaseHoldSlot(ownerId);
+            return Optional.empty();
+        }
+
+        StockHold hold = new StockHold(UUID.randomUUID().toString(), ownerId, Map.copyOf(productQuantities), loaded);
+        hold.forEachLine((cell, quantity) -> cell.held.addAndGet(quantity));
+        holds.put(hold.id, hold);
+        hold.timeout = holdExpiry.schedule(hold, ttl);
+
+        // La existencia no cambia, pero el hilo de escritura pudo leer un valor intermedio
+        markDirty(productQuantities.keySet());
+        return Optional.of(new Hold(hold.id, changes.get()));
+    }
+
+    /**
+     * Confirma una reserva: el stock apartado se descuenta definitivamente de la existencia.
+     * @param expectedQuantities si no es null, la reserva solo se confirma si cubre exactamente estas cantidades
+     * @return false si la reserva no existe, ya expiró, es de otro usuario o no coincide
+     */
+    public boolean confirmHold(String holdId, String ownerId, Map<String, Integer> expectedQuantities) {
+        StockHold hold = find(holdId, ownerId);
+        if (hold == null) {
+            return false;
+        }
+        if (expectedQuantities != null && !hold.quantities.equals(expectedQuantities)) {
+            return false;
+        }
+        if (!holds.remove(holdId, hold)) {
+            return false;
+        }
+        cancelExpiry(hold);
+        releaseHoldSlot(hold.ownerId);
+        hold.forEachLine((cell, quantity) -> cell.held.addAndGet(-quantity));
+        markDirty(hold.quantities.keySet());
+        return true;
+    }
+
+    /**
+     * Libera una reserva y devuelve su stock a la venta
+     * @return los cambios aplicados, o vacío si la reserva no existe, ya terminó o es de otro usuario
+     */
+    public Optional<List<StockChange>> releaseHold(String holdId, String ownerId) {
+        StockHold hold = find(holdId, ownerId);
+        if (hold == null || !holds.remove(holdId, hold)) {
+            return Optional.empty();
+        }
+        cancelExpiry(hold);
+        releaseHoldSlot(hold.ownerId);
+        return Optional.of(returnHeld(hold));
+    }
+
+    /**
+     * @return true si la reserva sigue activa, pertenece al usuario y cubre exactamente estas cantidades
+     */
+    public boolean isHeldBy(String holdId, String ownerId, Map<String, Integer> expectedQuantities) {
+        StockHold hold = find(holdId, ownerId);
+        return hold != null && hold.quantities.equals(expectedQuantities);
+    }
+
+    /**
+     * Registra quién recibe los cambios de stock producidos por reservas que expiran
+     */
+    public void onHoldExpired(Consumer<List<StockChange>> listener) {
+        this.holdExpiredListener = listener;
+    }
+
+    public int getActiveHolds() {
+        return holds.size();
+    }
+
+    public int getActiveHolds(String ownerId) {
+        return ownerId == null ? 0 : holdsByOwner.getOrDefault(ownerId, 0);
+    }
+
+    /**
+     * Descuenta todas las cantidades o ninguna, sin marcar cambios pendientes
+     */
+    private Optional<List<StockChange>> take(Map<String, Integer> productQuantities, Map<String, StockCell> loaded) {
+        List<StockChange> changes = new ArrayList<>(productQuantities.size());
+
+        for (Map.Entry<String, Integer> entry : productQuantities.entrySet()) {
+            Integer quantity = entry.getValue();
+            StockCell cell = loaded.get(entry.getKey());
+            int previousStock = (cell == null || quantity == null || quantity <= 0) ? -1 : cell.tryTake(quantity);
+
+            if (previousStock < 0) {
+                // Deshacer lo ya descontado en esta reserva. Se marca como pendiente porque
+                // el hilo de escritura pudo haber leído el valor intermedio.
+                for (StockChange change : changes) {
+                    loaded.get(change.productId()).give(change.previousStock() - change.newStock());
+                    dirty.add(change.productId());
+                }
+                if (!changes.isEmpty()) {
+                    scheduleFlush();
+                }
+                return Optional.empty();
+            }
+
+            changes.add(new StockChange(entry.getKey(), cell.productName, cell.subCategoryId, previousStock, previousStock - quantity));
+        }
+
+        return Optional.of(changes);
+    }
+
+    /**
+     * Devuelve stock a los productos indicados. Los productos inexistentes se ignoran.
+     */
+    public List<StockChange> release(Map<String, Integer> productQuantities) {
+        List<StockChange> changes = new ArrayList<>(productQuantities.size());
+        Map<String, StockCell> loaded = cells(productQuantities.keySet());
+
+        for (Map.Entry<String, Integer> entry : productQuantities.entrySet()) {
+            Integer quantity = entry.getValue();
+            StockCell cell = loaded.get(entry.getKey());
+            if (cell == null || quantity == null || quantity <= 0) {
+                continue;
+            }
+            int previousStock = cell.give(quantity);
+            changes.add(new StockChange(entry.getKey(), cell.productName, cell.subCategoryId, previousStock, previousStock + quantity));
+            dirty.add(entry.getKey());
+        }
+
+        if (!changes.isEmpty()) {
+            scheduleFlush();
+        }
+        return changes;
+    }
+
+    /**
+     * Stock disponible de un producto, -1 si el producto no existe
+     */
+    public int getAvailable(String productId) {
+        if (productId == null) {
+            return -1;
+        }
+        StockCell cell = cells.get(productId);
+        if (cell == null) {
+            cell = cells(List.of(productId)).get(productId);
+        }
+        return cell == null ? -1 : cell.available();
+    }
+
+    /**
+     * Stock disponible de varios productos con una sola lectura al repositorio, -1 si no existe
+     */
+    public Map<String, Integer> getAvailable(Collection<String> productIds) {
+        Map<String, StockCell> loaded = cells(productIds);
+        Map<String, Integer> stock = new HashMap<>();
+        for (String productId : productIds) {
+            StockCell cell = loaded.get(productId);
+            stock.put(productId, cell == null ? -1 : cell.available());
+        }
+        return stock;
+    }
+
+    /**
+     * Verifica, antes de guardar, que la existencia nueva de cada producto cubra lo que tiene apartado
+     * @throws StockHoldException si alguna queda por debajo de sus reservas activas
+     */
+    public void ensureCoversHolds(Collection<Product> products) {
+        for (Product product : products) {
+            StockCell cell = product != null && product.getId() != null ? cells.get(product.getId()) : null;
+            if (cell == null) {
+                continue;
+            }
+            int quantity = product.getStockQuantity() != null ? product.getStockQuantity() : 0;
+            int held = cell.held.get();
+            if (quantity < held) {
+                throw new StockHoldException(StockHoldException.Reason.BELOW_HELD,
+                        "El stock de " + product.getName() + " no puede quedar en " + quantity
+                                + ": hay " + held + " unidades apartadas");
+            }
+        }
+    }
+
+    /**
+     * Sincroniza el contador con un producto que se acaba de guardar en el repositorio. Si la
+     * existencia nueva no cubre lo apartado (una reserva entró después de ensureCoversHolds), se
+     * queda sin stock a la venta y se vuelve a guardar la existencia con lo apartado, para que las
+     * reservas al confirmarse no la dejen negativa.
+     */
+    public void overwrite(Product product) {
+        if (product == null || product.getId() == null) {
+            return;
+        }
+        int quantity = product.getStockQuantity() != null ? product.getStockQuantity() : 0;
+        StockCell cell = cells.computeIfAbsent(product.getId(), id -> new StockCell(product, quantity));
+        cell.productName = product.getName();
+        cell.subCategoryId = product.getSubCategoryId();
+        // La existencia guardada incluye lo apartado; lo disponible es el resto
+        int held = cell.held.get();
+        if (quantity < held) {
+            logger.warn("Stock for product {} set to {} below {} held units, keeping the held units",
+                    product.getId(), quantity, held);
+            cell.set(0);
+            markDirty(List.of(product.getId()));
+        } else {
+            cell.set(quantity - held);
+        }
+    }
+
+    /**
+     * Vuelve a persistir la existencia de un producto que se acaba de guardar completo sin pasar
+     * por el motor (por ejemplo al editar su galería): esa copia pudo leerse antes de la última
+     * reserva y traer un stock viejo
+     */
+    public void persistStock(String productId) {
+        if (productId != null && cells.containsKey(productId)) {
+            markDirty(List.of(productId));
+        }
+    }
+
+    /**
+     * Activa o desactiva el modo de contador repartido para un producto muy disputado
+     * @return false si el producto no existe
+     */
+    public boolean setSharded(String productId, boolean sharded) {
+        StockCell cell = productId == null ? null : cells(List.of(productId)).get(productId);
+        if (cell == null) {
+            return false;
+        }
+        cell.switchMode(sharded);
+        logger.info("Stock counter for product {} switched to {} mode", productId, sharded ? "sharded" : "single");
+        return true;
+    }
+
+    /**
+     * @return true si el producto usa contador repartido
+     */
+    public boolean isSharded(String productId) {
+        StockCell cell = productId == null ? null : cells.get(productId);
+        return cell != null && cell.isSharded();
+    }
+
+    /**
+     * Persiste de forma síncrona los cambios pendientes
+     */
+    public void flush() {
+        flushScheduled.set(false);
+
+        List<String> productIds = new ArrayList<>();
+        Iterator<String> iterator = dirty.iterator();
+        while (iterator.hasNext()) {
+            productIds.add(iterator.next());
+            iterator.remove();
+        }
+        if (!productIds.isEmpty()) {
+            writeThrough(productIds);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        holdExpiry.stop();
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Devuelve los contadores de los productos pedidos, cargando los que falten
+     * con una única lectura por lote. Los productos inexistentes no aparecen en el resultado.
+     */
+    private Map<String, StockCell> cells(Collection<String> productIds) {
+        Map<String, StockCell> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String productId : productIds) {
+            if (productId == null) {
+                continue;
+            }
+            StockCell cell = cells.get(productId);
+            if (cell != null) {
+                result.put(productId, cell);
+            } else {
+                missing.add(productId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        // Carga fuera de computeIfAbsent para no bloquear el mapa durante la lectura
+        for (Product product : productRepository.findAllById(missing)) {
+            Integer stock = product.getStockQuantity();
+            StockCell loaded = new StockCell(product, stock != null ? stock : 0);
+            StockCell existing = cells.putIfAbsent(product.getId(), loaded);
+            result.put(product.getId(), existing != null ? existing : loaded);
+        }
+        return result;
+    }
+
+    /**
+     * Avanza la expiración de reservas un tick (para pruebas con la rueda detenida)
+     */
+    void advanceHoldExpiry() {
+        holdExpiry.tick();
+    }
+
+    private void expireHold(StockHold hold) {
+        if (!holds.remove(hold.id, hold)) {
+            return;
+        }
+        releaseHoldSlot(hold.ownerId);
+        List<StockChange> changes = returnHeld(hold);
+        logger.info("Stock hold {} expired, {} products returned to sale", hold.id, changes.size());
+        holdExpiredListener.accept(changes);
+    }
+
+    private List<StockChange> returnHeld(StockHold hold) {
+        List<StockChange> changes = new ArrayList<>(hold.quantities.size());
+        hold.quantities.forEach((productId, quantity) -> {
+            StockCell cell = hold.cells.get(productId);
+            cell.held.addAndGet(-quantity);
+            int previousStock = cell.give(quantity);
+            changes.add(new StockChange(productId, cell.productName, cell.subCategoryId, previousStock, previousStock + quantity));
+        });
+        markDirty(hold.quantities.keySet());
+        return changes;
+    }
+
+    private StockHold find(String holdId, String ownerId) {
+        StockHold hold = holdId == null ? null : holds.get(holdId);
+        return hold != null && hold.ownerId.equals(ownerId) ? hold : null;
+    }
+
+    /**
+     * Ocupa un lugar entre las reservas activas del usuario si todavía no llegó al máximo
+     */
+    private boolean acquireHoldSlot(String ownerId, int maxActiveHolds) {
+        boolean[] acquired = {false};
+        holdsByOwner.compute(ownerId, (id, active) -> {
+            int current = active != null ? active : 0;
+            if (current >= maxActiveHolds) {
+                return active;
+            }
+            acquired[0] = true;
+            return current + 1;
+        });
+        return acquired[0];
+    }
+
+    private void releaseHoldSlot(String ownerId) {
+        holdsByOwner.computeIfPresent(ownerId, (id, active) -> active > 1 ? active - 1 : null);
+    }
+
+    private void cancelExpiry(StockHold hold) {
+        HashedTimingWheel.Timeout<StockHold> timeout = hold.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private void markDirty(Collection<String> productIds) {
+        dirty.addAll(productIds);
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                writer.execute(this::flush);
+            } catch (Exception e) {
+                flushScheduled.set(false);
+                logger.warn("Stock write-through could not be scheduled: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void writeThrough(List<String> productIds) {
+        try {
+            Map<String, Integer> stock = new HashMap<>();
+            for (String productId : productIds) {
+                StockCell cell = cells.get(productId);
+                if (cell != null) {
+                    stock.put(productId, cell.onHand());
+                }
+            }
+            productRepository.updateStock(stock);
+        } catch (Exception e) {
+            // Se reintenta en el siguiente flush
+            dirty.addAll(productIds);
+            logger.error("Error persisting stock for {} products: {}", productIds.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Cambio de stock aplicado a un producto
+     */
+    public record StockChange(String productId, String productName, String subCategoryId, int previousStock, int newStock) {
+    }
+
+    /**
+     * Reserva temporal creada
+     */
+    public record Hold(String holdId, List<StockChange> changes) {
+    }
+
+    private static final class StockHold {
+        private final String id;
+        private final String ownerId;
+        private final Map<String, Integer> quantities;
+        private final Map<String, StockCell> cells;
+        private volatile HashedTimingWheel.Timeout<StockHold> timeout;
+
+        StockHold(String id, String ownerId, Map<String, Integer> quantities, Map<String, StockCell> cells) {
+            this.id = id;
+            this.ownerId = ownerId;
+            this.quantities = quantities;
+            this.cells = cells;
+        }
+
+        void forEachLine(BiConsumer<StockCell, Integer> action) {
+            quantities.forEach((productId, quantity) -> action.accept(cells.get(productId), quantity));
+        }
+    }
+
+    private static final class StockCell {
+        // Disponible para la venta; se reemplaza al cambiar de modo
+        private volatile StockCounter counter;
+        // Apartado por reservas activas
+        private final AtomicInteger held = new AtomicInteger();
+        private volatile String productName;
+        private volatile String subCategoryId;
+
+        StockCell(Product product, int quantity) {
+            this.productName = product.getName();
+            this.subCategoryId = product.getSubCategoryId();
+            this.counter = new StockCounter.Single(quantity);
+        }
+
+        int tryTake(int amount) {
+            StockCounter current = counter;
+            int previous = current.tryTake(amount);
+            if (counter != current) {
+                // Un intento fallido del contador repartido devuelve lo que tomó prestado; si el
+                // modo cambió mientras tanto, eso quedó en el contador viejo y hay que moverlo
+                migrate(current);
+            }
+            return previous;
+        }
+
+        int give(int amount) {
+            StockCounter current = counter;
+            int previous = current.give(amount);
+            if (counter != current) {
+                // El modo cambió mientras se devolvía stock: mover lo que quedó en el contador viejo
+                migrate(current);
+            }
+            return previous;
+        }
+
+        int available() {
+            return counter.get();
+        }
+
+        void set(int quantity) {
+            counter.set(quantity);
+        }
+
+        int onHand() {
+            return counter.get() + held.get();
+        }
+
+        boolean isSharded() {
+            return counter.isSharded();
+        }
+
+        /**
+         * Cambia entre contador único y contador repartido sin detener las ventas:
+         * se publica el contador nuevo y luego se vacía el viejo hacia él.
+         */
+        synchronized void switchMode(boolean sharded) {
+            StockCounter previous = counter;
+            if (previous.isSharded() == sharded) {
+                return;
+            }
+            counter = sharded ? new ShardedStockCounter(0) : new StockCounter.Single(0);
+            migrate(previous);
+        }
+
+        private void migrate(StockCounter from) {
+            int drained = from.drain();
+            if (drained != 0) {
+                StockCounter to = counter;
+                to.give(drained);
+                if (counter != to) {
+                    // Otro cambio de modo vació a "to" antes de recibir lo migrado
+                    migrate(to);
+                }
+            }
+        }
+    }
+}
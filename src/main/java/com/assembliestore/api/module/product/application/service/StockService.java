@@ -1,12 +1,16 @@
 package com.assembliestore.api.module.product.application.service;
 
-import com.assembliestore.api.module.product.domain.entity.Product;
+import com.assembliestore.api.common.error.StockHoldException;
+import com.assembliestore.api.module.product.application.service.StockEngine.StockChange;
 import com.assembliestore.api.module.product.domain.port.StockPort;
-import com.assembliestore.api.module.product.domain.repository.ProductRepository;
 import com.assembliestore.api.service.realtime.service.RealtimeNotificationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -14,45 +18,45 @@ import java.util.Optional;
 
 @Service
 public class StockService implements StockPort {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockService.class);
     
-    private final ProductRepository productRepository;
+    private final StockEngine stockEngine;
+    
+    private final StockUpdateCoalescer stockUpdateCoalescer;
+
+    // Reservas activas que un usuario puede tener a la vez
+    private final int maxHoldsPerUser;
+
+    // Unidades que puede apartar una sola reserva, sumando todos sus productos
+    private final int maxHoldUnits;
     
     @Autowired
     private RealtimeNotificationService realtimeNotificationService;
 
-    public StockService(ProductRepository productRepository) {
-        this.productRepository = productRepository;
+    public StockService(StockEngine stockEngine, StockUpdateCoalescer stockUpdateCoalescer,
+                        @Value("${app.stock.holds.max-per-user:3}") int maxHoldsPerUser,
+                        @Value("${app.stock.holds.max-units:20}") int maxHoldUnits) {
+        this.stockEngine = stockEngine;
+        this.stockUpdateCoalescer = stockUpdateCoalescer;
+        this.maxHoldsPerUser = maxHoldsPerUser;
+        this.maxHoldUnits = maxHoldUnits;
+        this.stockEngine.onHoldExpired(changes -> changes.forEach(change -> notifyStockChange(change, "HOLD_EXPIRED")));
     }
 
     @Override
     public boolean reduceStock(Map<String, Integer> productQuantities) {
-        Map<String, Boolean> availability = checkStockAvailability(productQuantities);
-        
-        for (Map.Entry<String, Boolean> entry : availability.entrySet()) {
-            if (!entry.getValue()) {
-                return false;
-            }
+        // Reserva atómica todo-o-nada: no hay ventana entre verificar y descontar
+        Optional<List<StockChange>> changes = stockEngine.reserve(productQuantities);
+        if (changes.isEmpty()) {
+            return false;
         }
         
-        for (Map.Entry<String, Integer> entry : productQuantities.entrySet()) {
-            String productId = entry.getKey();
-            Integer quantityToReduce = entry.getValue();
+        for (StockChange change : changes.get()) {
+            notifyStockChange(change, "SALE");
             
-            Optional<Product> productOpt = productRepository.findById(productId);
-            if (productOpt.isPresent()) {
-                Product product = productOpt.get();
-                int previousStock = product.getStockQuantity();
-                int newStock = previousStock - quantityToReduce;
-                
-                product.setStockQuantity(newStock);
-                product.refreshUpdatedAt();
-                productRepository.upsert(product);
-                
-                notifyStockChange(product, previousStock, newStock, "SALE");
-                
-                if (newStock == 0) {
-                    notifyOutOfStock(product);
-                }
+            if (change.newStock() == 0) {
+                notifyOutOfStock(change);
             }
         }
         
@@ -61,46 +65,77 @@ public class StockService implements StockPort {
 
     @Override
     public void restoreStock(Map<String, Integer> productQuantities) {
-        for (Map.Entry<String, Integer> entry : productQuantities.entrySet()) {
-            String productId = entry.getKey();
-            Integer quantityToRestore = entry.getValue();
+        for (StockChange change : stockEngine.release(productQuantities)) {
+            notifyStockChange(change, "RESTORE");
+        }
+    }
+
+    @Override
+    public Optional<String> hold(String userId, Map<String, Integer> productQuantities, Duration ttl) {
+        long units = 0;
+        for (Integer quantity : productQuantities.values()) {
+            units += quantity != null ? quantity : 0;
+        }
+        if (units > maxHoldUnits) {
+            throw new StockHoldException(StockHoldException.Reason.QUANTITY_LIMIT,
+                    "Una reserva no puede apartar más de " + maxHoldUnits + " unidades");
+        }
+        Optional<StockEngine.Hold> hold = stockEngine.hold(userId, productQuantities, ttl, maxHoldsPerUser);
+        if (hold.isEmpty()) {
+            return Optional.empty();
+        }
+        
+        for (StockChange change : hold.get().changes()) {
+            notifyStockChange(change, "HOLD");
             
-            Optional<Product> productOpt = productRepository.findById(productId);
-            if (productOpt.isPresent()) {
-                Product product = productOpt.get();
-                int previousStock = product.getStockQuantity();
-                int newStock = previousStock + quantityToRestore;
-                
-                product.setStockQuantity(newStock);
-                product.refreshUpdatedAt();
-                productRepository.upsert(product);
-                
-                notifyStockChange(product, previousStock, newStock, "RESTORE");
+            if (change.newStock() == 0) {
+                notifyOutOfStock(change);
             }
         }
+        
+        return Optional.of(hold.get().holdId());
+    }
+
+    @Override
+    public boolean confirm(String holdId, String userId, Map<String, Integer> productQuantities) {
+        return stockEngine.confirmHold(holdId, userId, productQuantities);
+    }
+
+    @Override
+    public boolean isHeldBy(String holdId, String userId, Map<String, Integer> productQuantities) {
+        return stockEngine.isHeldBy(holdId, userId, productQuantities);
+    }
+
+    @Override
+    public boolean release(String holdId, String userId) {
+        Optional<List<StockChange>> changes = stockEngine.releaseHold(holdId, userId);
+        changes.ifPresent(list -> list.forEach(change -> notifyStockChange(change, "RELEASE")));
+        return changes.isPresent();
+    }
+
+    @Override
+    public boolean setShardedMode(String productId, boolean sharded) {
+        return stockEngine.setSharded(productId, sharded);
+    }
+
+    @Override
+    public boolean isShardedMode(String productId) {
+        return stockEngine.isSharded(productId);
     }
 
     public void restoreStockForOrder(String orderId) {
        
-        System.out.println("Restaurando stock para la orden: " + orderId);
+        logger.info("Restaurando stock para la orden: {}", orderId);
     }
     
     @Override
     public Map<String, Boolean> checkStockAvailability(Map<String, Integer> productQuantities) {
         Map<String, Boolean> availability = new HashMap<>();
+        Map<String, Integer> stock = stockEngine.getAvailable(productQuantities.keySet());
         
         for (Map.Entry<String, Integer> entry : productQuantities.entrySet()) {
-            String productId = entry.getKey();
-            Integer requiredQuantity = entry.getValue();
-            
-            Optional<Product> productOpt = productRepository.findById(productId);
-            if (productOpt.isPresent()) {
-                Product product = productOpt.get();
-                boolean hasEnoughStock = product.getStockQuantity() >= requiredQuantity;
-                availability.put(productId, hasEnoughStock);
-            } else {
-                availability.put(productId, false); 
-            }
+            int available = stock.get(entry.getKey());
+            availability.put(entry.getKey(), available >= 0 && available >= entry.getValue());
         }
         
         return availability;
@@ -108,53 +143,37 @@ public class StockService implements StockPort {
 
     @Override
     public int getCurrentStock(String productId) {
-        Optional<Product> productOpt = productRepository.findById(productId);
-        return productOpt.map(Product::getStockQuantity).orElse(-1);
+        return stockEngine.getAvailable(productId);
     }
 
     @Override
     public Map<String, Integer> getCurrentStock(List<String> productIds) {
-        Map<String, Integer> stockMap = new HashMap<>();
-        
-        for (String productId : productIds) {
-            int stock = getCurrentStock(productId);
-            stockMap.put(productId, stock);
-        }
-        
-        return stockMap;
+        // Una sola lectura por lote para los productos que aún no están en memoria
+        return stockEngine.getAvailable(productIds);
     }
     
-    private void notifyStockChange(Product product, int previousStock, int newStock, String changeType) {
-        // Notificación en consola para debug
-        System.out.println("Stock updated: " + product.getName() + " from " + previousStock + " to " + newStock + " (" + changeType + ")");
+    private void notifyStockChange(StockChange change, String changeType) {
+        logger.debug("Stock updated: {} from {} to {} ({})",
+                change.productName(), change.previousStock(), change.newStock(), changeType);
         
         try {
-            // Enviar notificación específica a MANAGEMENT y ADMIN
-            realtimeNotificationService.sendStockUpdateToManagement(
-                product.getId(), 
-                product.getName(), 
-                previousStock, 
-                newStock, 
-                changeType
-            );
+            // Se acumula por producto y se envía a MANAGEMENT y ADMIN en un lote por ventana
+            stockUpdateCoalescer.submit(change, changeType);
             
         } catch (Exception e) {
-            System.err.println("Error sending stock notification: " + e.getMessage());
-            e.printStackTrace();
+            logger.error("Error sending stock notification: {}", e.getMessage(), e);
         }
     }
     
-    private void notifyOutOfStock(Product product) {
-        // Notificación en consola para debug
-        System.out.println("OUT OF STOCK ALERT: " + product.getName() + " is out of stock!");
+    private void notifyOutOfStock(StockChange change) {
+        logger.warn("OUT OF STOCK ALERT: {} is out of stock!", change.productName());
         
         try {
             // Usar el método específico del servicio de notificaciones para productos agotados
-            realtimeNotificationService.sendOutOfStockAlert(product.getId(), product.getName());
+            realtimeNotificationService.sendOutOfStockAlert(change.productId(), change.productName());
             
         } catch (Exception e) {
-            System.err.println("Error sending out of stock notification: " + e.getMessage());
-            e.printStackTrace();
+            logger.error("Error sending out of stock notification: {}", e.getMessage(), e);
         }
     }
 }
@@ -0,0 +1,160 @@
+package com.assembliestore.api.module.product.application.service;
+
+import com.assembliestore.api.module.product.application.service.StockEngine.StockChange;
+import com.assembliestore.api.service.realtime.dto.StockUpdateMessage;
+import com.assembliestore.api.service.realtime.service.RealtimeNotificationService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agrupa las notificaciones de stock por ventana de tiempo.
+ *
+ * Cada cambio solo actualiza la entrada pendiente de su producto, así que el hilo que vende
+ * no hace ningún envío. Al cerrar la ventana se publica un único mensaje con un elemento por
+ * producto: el stock anterior es el del primer cambio de la ventana y el actual se lee del
+ * motor en ese momento, de modo que cambios concurrentes que llegan desordenados no dejan un
+ * valor viejo publicado.
+ */
+@Component
+public class StockUpdateCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockUpdateCoalescer.class);
+
+    private final StockEngine stockEngine;
+    private final RealtimeNotificationService realtimeNotificationService;
+    private final Map<String, PendingUpdate> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    @Autowired
+    public StockUpdateCoalescer(StockEngine stockEngine, RealtimeNotificationService realtimeNotificationService,
+                                @Value("${app.realtime.stock-coalesce-window-ms:100}") long windowMillis) {
+        this(stockEngine, realtimeNotificationService, windowMillis, true);
+    }
+
+    StockUpdateCoalescer(StockEngine stockEngine, RealtimeNotificationService realtimeNotificationService,
+                         long windowMillis, boolean start) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("windowMillis must be positive");
+        }
+        this.stockEngine = stockEngine;
+        this.realtimeNotificationService = realtimeNotificationService;
+        if (start) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "stock-notification-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.flusher.scheduleWithFixedDelay(this::safeFlush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * Registra un cambio de stock para el próximo envío. No bloquea ni toca sockets.
+     */
+    public void submit(StockChange change, String reason) {
+        pending.merge(change.productId(), new PendingUpdate(change, reason),
+                (first, latest) -> first.followedBy(latest));
+    }
+
+    /**
+     * Publica los cambios acumulados desde el último envío en un solo mensaje
+     */
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<PendingUpdate> window = new ArrayList<>(pending.size());
+        for (String productId : pending.keySet()) {
+            PendingUpdate update = pending.remove(productId);
+            if (update != null) {
+                window.add(update);
+            }
+        }
+        if (window.isEmpty()) {
+            return;
+        }
+
+        List<String> productIds = new ArrayList<>(window.size());
+        window.forEach(update -> productIds.add(update.productId));
+        Map<String, Integer> current = stockEngine.getAvailable(productIds);
+
+        List<StockUpdateMessage> updates = new ArrayList<>(window.size());
+        for (PendingUpdate update : window) {
+            Integer available = current.get(update.productId);
+            // Si el producto ya no está en memoria se publica el último valor conocido
+            int currentStock = available != null && available >= 0 ? available : update.lastStock;
+            StockUpdateMessage message = new StockUpdateMessage(update.productId, update.productName,
+                    update.previousStock, currentStock);
+            message.setSubCategoryId(update.subCategoryId);
+            message.setReason(update.reason);
+            updates.add(message);
+        }
+        realtimeNotificationService.sendStockUpdateBatch(updates);
+    }
+
+    /**
+     * Cambios pendientes de publicar
+     */
+    public int getPendingProducts() {
+        return pending.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        safeFlush();
+    }
+
+    private void safeFlush() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("Error flushing stock notifications: {}", e.getMessage());
+        }
+    }
+
+    private static final class PendingUpdate {
+        private final String productId;
+        private final String productName;
+        private final String subCategoryId;
+        private final int previousStock;
+        private final int lastStock;
+        private final String reason;
+
+        PendingUpdate(StockChange change, String reason) {
+            this(change.productId(), change.productName(), change.subCategoryId(), change.previousStock(),
+                    change.newStock(), reason);
+        }
+
+        private PendingUpdate(String productId, String productName, String subCategoryId, int previousStock,
+                              int lastStock, String reason) {
+            this.productId = productId;
+            this.productName = productName;
+            this.subCategoryId = subCategoryId;
+            this.previousStock = previousStock;
+            this.lastStock = lastStock;
+            this.reason = reason;
+        }
+
+        PendingUpdate followedBy(PendingUpdate latest) {
+            return new PendingUpdate(productId, latest.productName, latest.subCategoryId, previousStock,
+                    latest.lastStock, latest.reason);
+        }
+    }
+}
@@ -42,6 +42,59 @@ public class Product {
     public void refreshUpdatedAt() {
         this.updatedAt = new Date();
     }
+
+    /**
+     * Vista para clientes: solo datos básicos
+     */
+    public Product toClientView() {
+        return Product.builder()
+            .id(id)
+            .name(name)
+            .description(description)
+            .specifications(specifications)
+            .brandName(brandName)
+            .price(price)
+            .gallery(gallery)
+            .build();
+    }
+
+    /**
+     * Vista para management: todo menos deletedAt
+     */
+    public Product toManagementView() {
+        return Product.builder()
+            .id(id)
+            .name(name)
+            .description(description)
+            .specifications(specifications)
+            .brandName(brandName)
+            .price(price)
+            .gallery(gallery)
+            .subCategoryId(subCategoryId)
+            .stockQuantity(stockQuantity)
+            .actived(actived)
+            .visible(visible)
+            .deleted(deleted)
+            .createdAt(createdAt)
+            .updatedAt(updatedAt)
+            .build();
+    }
+
+    /**
+     * Copia completa con sus propias listas de galería y especificaciones
+     */
+    public Product copy() {
+        return new Product(id, name, description,
+            specifications != null ? new java.util.ArrayList<>(specifications) : null,
+            brandName, price,
+            gallery != null ? new java.util.ArrayList<>(gallery) : null,
+            subCategoryId, stockQuantity, actived, visible, deleted,
+            copyOf(createdAt), copyOf(updatedAt), copyOf(deletedAt));
+    }
+
+    private static Date copyOf(Date date) {
+        return date != null ? new Date(date.getTime()) : null;
+    }
     // Métodos para galería
     public void addGalleryImage(Gallery image) {
         if (this.gallery == null) this.gallery = new java.util.ArrayList<>();
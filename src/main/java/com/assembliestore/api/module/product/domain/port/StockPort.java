@@ -1,7 +1,9 @@
 package com.assembliestore.api.module.product.domain.port;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 public interface StockPort {
     /**
@@ -37,4 +39,57 @@ public interface StockPort {
      * @return Map con productId como key y stock actual como value
      */
     Map<String, Integer> getCurrentStock(List<String> productIds);
+    
+    /**
+     * Aparta stock de forma temporal (por ejemplo, mientras el cliente completa el carrito).
+     * Lo apartado deja de estar disponible para la venta y vuelve automáticamente al expirar.
+     * @param userId Usuario dueño de la reserva
+     * @param productQuantities Map con productId como key y quantity como value
+     * @param ttl Tiempo máximo que se mantiene la reserva
+     * @return ID de la reserva, vacío si no hay suficiente stock
+     * @throws com.assembliestore.api.common.error.StockHoldException si la reserva supera las unidades
+     *         permitidas o el usuario ya tiene el máximo de reservas activas
+     */
+    Optional<String> hold(String userId, Map<String, Integer> productQuantities, Duration ttl);
+    
+    /**
+     * Confirma una reserva solo si es del usuario y cubre exactamente las cantidades indicadas
+     * @param holdId ID de la reserva
+     * @param userId Usuario dueño de la reserva
+     * @param productQuantities Cantidades que la reserva debe cubrir
+     * @return true si la reserva existía, seguía activa, era del usuario y coincidía
+     */
+    boolean confirm(String holdId, String userId, Map<String, Integer> productQuantities);
+    
+    /**
+     * Indica si una reserva se podría confirmar para estas cantidades, sin confirmarla
+     * @param holdId ID de la reserva
+     * @param userId Usuario dueño de la reserva
+     * @param productQuantities Cantidades que la reserva debe cubrir
+     * @return true si la reserva sigue activa, es del usuario y cubre exactamente las cantidades
+     */
+    boolean isHeldBy(String holdId, String userId, Map<String, Integer> productQuantities);
+    
+    /**
+     * Libera una reserva y devuelve su stock a la venta
+     * @param holdId ID de la reserva
+     * @param userId Usuario dueño de la reserva
+     * @return true si la reserva existía, seguía activa y era del usuario
+     */
+    boolean release(String holdId, String userId);
+    
+    /**
+     * Activa o desactiva el contador repartido por núcleo para un producto con mucha demanda
+     * @param productId ID del producto
+     * @param sharded true para repartir el contador, false para volver al contador único
+     * @return false si el producto no existe
+     */
+    boolean setShardedMode(String productId, boolean sharded);
+    
+    /**
+     * Indica si un producto usa el contador repartido
+     * @param productId ID del producto
+     * @return true si el producto está en modo repartido
+     */
+    boolean isShardedMode(String productId);
 }
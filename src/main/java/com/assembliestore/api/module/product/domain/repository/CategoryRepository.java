@@ -1,5 +1,6 @@
 package com.assembliestore.api.module.product.domain.repository;
 
+import java.util.List;
 import java.util.Optional;
 import com.assembliestore.api.module.product.domain.entity.Category;
 
@@ -16,6 +17,11 @@ public interface CategoryRepository {
 
     Iterable<Category> findAll();
 
+    /**
+     * Hasta limit categorías con id mayor que afterId (desde la primera si es null), en orden de id
+     */
+    List<Category> findPage(String afterId, int limit);
+
     void markToogleActive(String categoryId);
 
     void markToogleVisible(String categoryId);
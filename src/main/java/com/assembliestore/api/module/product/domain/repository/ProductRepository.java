@@ -1,14 +1,45 @@
 package com.assembliestore.api.module.product.domain.repository;
 
 import com.assembliestore.api.module.product.domain.entity.Product;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface ProductRepository {
     void upsert(Product product);
     void upsertBatch(List<Product> products);
+    /**
+     * Guarda solo la existencia de cada producto, sin pisar el resto de sus campos con una copia
+     * vieja. Es atómico respecto de upsert y upsertBatch; los productos inexistentes se ignoran.
+     */
+    void updateStock(Map<String, Integer> stockByProductId);
     Optional<Product> findById(String productId);
+    List<Product> findAllById(Collection<String> productIds);
     List<Product> findAll();
     List<Product> findAllForClient();
     List<Product> findAllForManagement();
+    /**
+     * Vista de cliente del producto si está activo, visible y no borrado
+     */
+    Optional<Product> findByIdForClient(String productId);
+    /**
+     * Vista de management del producto si no está borrado
+     */
+    Optional<Product> findByIdForManagement(String productId);
+
+    /**
+     * Hasta limit productos con id mayor que afterId (desde el primero si es null), en orden de id
+     */
+    List<Product> findPage(String afterId, int limit);
+
+    /**
+     * Como findPage, sobre las vistas de cliente
+     */
+    List<Product> findPageForClient(String afterId, int limit);
+
+    /**
+     * Como findPage, sobre las vistas de management
+     */
+    List<Product> findPageForManagement(String afterId, int limit);
 }
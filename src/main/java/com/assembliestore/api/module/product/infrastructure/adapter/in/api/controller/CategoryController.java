@@ -2,7 +2,6 @@ package com.assembliestore.api.module.product.infrastructure.adapter.in.api.cont
 
 import java.util.List;
 import java.util.Map;
-import java.util.stream.StreamSupport;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -15,15 +14,19 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.RequestBody;
 
+import com.assembliestore.api.common.type.CursorPage;
+import com.assembliestore.api.module.product.application.dto.CategoryFindDto;
 import com.assembliestore.api.module.product.application.port.CategoryPort;
 import com.assembliestore.api.module.product.infrastructure.adapter.dto.CategoryRequestDto;
 import com.assembliestore.api.module.product.infrastructure.adapter.mapper.CategoryMapperInfras;
 
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -99,16 +102,21 @@ public class CategoryController {
 
     @GetMapping("/find-all")
     @PreAuthorize("hasAnyRole('MANAGEMENT', 'ADMIN', 'CLIENT')")
-    @Operation(summary = "Obtener todas las categorías", description = "Obtiene la lista completa de categorías")
+    @Operation(summary = "Obtener todas las categorías", description = "Obtiene una página de categorías ordenadas por id; las que el rol no ve se omiten, así que una página puede traer menos elementos que el límite")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "Lista de categorías obtenida exitosamente"),
+            @ApiResponse(responseCode = "200", description = "Página de categorías obtenida exitosamente"),
             @ApiResponse(responseCode = "401", description = "No autorizado")
     })
-    public ResponseEntity<?> findAllCategories() {
-        var categories = categoryPort.findAllCategories();
-        if (categories == null) {
-            categories = List.of(); // O Collections.emptyList()
+    public ResponseEntity<?> findAllCategories(
+            @Parameter(description = "nextCursor de la página anterior") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Tamaño de página (máximo 100)") @RequestParam(required = false) Integer limit) {
+        CursorPage<CategoryFindDto> page;
+        try {
+            page = categoryPort.findCategoriesPage(cursor, limit);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
         }
+        var categories = page.items();
 
         var authentication = SecurityContextHolder.getContext().getAuthentication();
         var roles = authentication.getAuthorities().stream()
@@ -116,7 +124,7 @@ public class CategoryController {
                 .toList();
 
         if (roles.contains("ROLE_CLIENT")) {
-            var result = StreamSupport.stream(categories.spliterator(), false)
+            var result = categories.stream()
                     .filter(c -> !c.deleted() && c.visible() && c.actived())
                     .map(c -> Map.of(
                             "name", c.name(),
@@ -125,18 +133,16 @@ public class CategoryController {
                             "subCategories", c.subCategories() != null ? c.subCategories() : List.of()
                     ))
                     .toList();
-            return new ResponseEntity<>(result, HttpStatus.OK);
+            return new ResponseEntity<>(new CursorPage<>(result, page.nextCursor()), HttpStatus.OK);
         } else if (roles.contains("ROLE_MANAGEMENT")) {
-            var result = StreamSupport.stream(categories.spliterator(), false)
+            var result = categories.stream()
                     .filter(c -> !c.deleted())
                     .toList();
-            return new ResponseEntity<>(result, HttpStatus.OK);
+            return new ResponseEntity<>(new CursorPage<>(result, page.nextCursor()), HttpStatus.OK);
         } else if (roles.contains("ROLE_ADMIN")) {
-            var result = StreamSupport.stream(categories.spliterator(), false)
-                    .toList();
-            return new ResponseEntity<>(result, HttpStatus.OK);
+            return new ResponseEntity<>(page, HttpStatus.OK);
         } else {
-            return new ResponseEntity<>(List.of(), HttpStatus.OK);
+            return new ResponseEntity<>(new CursorPage<>(List.of(), null), HttpStatus.OK);
         }
     }
 
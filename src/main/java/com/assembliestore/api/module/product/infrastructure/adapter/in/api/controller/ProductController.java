@@ -1,6 +1,9 @@
 package com.assembliestore.api.module.product.infrastructure.adapter.in.api.controller;
 
+import com.assembliestore.api.common.export.ExportFormat;
+import com.assembliestore.api.common.export.ExportWriter;
 import com.assembliestore.api.common.interfaces.SuccessfulResponse;
+import com.assembliestore.api.common.type.CursorPage;
 import com.assembliestore.api.module.product.application.dto.request.ProductBatchRequestDto;
 import com.assembliestore.api.module.product.application.dto.request.ProductRequestDto;
 import com.assembliestore.api.module.product.application.dto.response.ProductResponseDto;
@@ -11,20 +14,26 @@ import com.assembliestore.api.module.product.domain.entity.Gallery;
 import com.assembliestore.api.module.product.domain.entity.Specification;
 import com.assembliestore.api.module.product.application.dto.request.GalleryActionRequestDto;
 import com.assembliestore.api.module.product.application.dto.request.SpecificationActionRequestDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @RestController
@@ -33,12 +42,27 @@ import java.util.stream.Collectors;
 @SecurityRequirement(name = "bearerAuth")
 public class ProductController {
 
+    private static final List<ExportWriter.Column<ProductResponseDto>> EXPORT_COLUMNS = List.of(
+        new ExportWriter.Column<>("id", ProductResponseDto::getId),
+        new ExportWriter.Column<>("name", ProductResponseDto::getName),
+        new ExportWriter.Column<>("brandName", ProductResponseDto::getBrandName),
+        new ExportWriter.Column<>("subCategoryId", ProductResponseDto::getSubCategoryId),
+        new ExportWriter.Column<>("price", ProductResponseDto::getPrice),
+        new ExportWriter.Column<>("stockQuantity", ProductResponseDto::getStockQuantity),
+        new ExportWriter.Column<>("actived", ProductResponseDto::getActived),
+        new ExportWriter.Column<>("visible", ProductResponseDto::getVisible),
+        new ExportWriter.Column<>("deleted", ProductResponseDto::getDeleted),
+        new ExportWriter.Column<>("createdAt", ProductResponseDto::getCreatedAt),
+        new ExportWriter.Column<>("updatedAt", ProductResponseDto::getUpdatedAt));
+
     private final ProductPort productPort;
     private final ProductMapper productMapper;
+    private final ObjectMapper objectMapper;
 
-    public ProductController(ProductPort productPort, ProductMapper productMapper) {
+    public ProductController(ProductPort productPort, ProductMapper productMapper, ObjectMapper objectMapper) {
         this.productPort = productPort;
         this.productMapper = productMapper;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -152,22 +176,22 @@ public class ProductController {
     }
 
     @GetMapping
-    @Operation(summary = "Obtener todos los productos", description = "Retorna productos filtrados según el rol del usuario autenticado")
+    @Operation(summary = "Obtener todos los productos", description = "Retorna una página de productos, ordenados por id y filtrados según el rol del usuario autenticado")
     @ApiResponses(value = {
-        @ApiResponse(responseCode = "200", description = "Lista de productos obtenida"),
+        @ApiResponse(responseCode = "200", description = "Página de productos obtenida"),
+        @ApiResponse(responseCode = "400", description = "Cursor inválido"),
         @ApiResponse(responseCode = "401", description = "No autorizado")
     })
     @PreAuthorize("hasRole('ADMIN') or hasRole('MANAGEMENT') or hasRole('CLIENT')")
-    public ResponseEntity<?> getAllProducts() {
+    public ResponseEntity<?> getAllProducts(
+            @Parameter(description = "nextCursor de la página anterior") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Tamaño de página (máximo 100)") @RequestParam(required = false) Integer limit) {
         try {
             String userRole = getUserRole();
-            List<Product> products = productPort.findAllProducts(userRole);
-            
-            List<ProductResponseDto> productDtos = products.stream()
-                .map(productMapper::toDto)
-                .collect(Collectors.toList());
-                
-            return ResponseEntity.ok(productDtos);
+            CursorPage<ProductResponseDto> page = productPort.findProductsPage(userRole, cursor, limit)
+                .map(productMapper::toDto);
+
+            return ResponseEntity.ok(page);
                 
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -175,6 +199,43 @@ public class ProductController {
         }
     }
 
+    @GetMapping("/export")
+    @Operation(summary = "Exportar productos", description = "Descarga el catálogo que ve el rol en NDJSON o CSV, escrito a medida que se recorre; se comprime con gzip si el cliente lo acepta")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Exportación en curso"),
+        @ApiResponse(responseCode = "400", description = "Formato inválido"),
+        @ApiResponse(responseCode = "401", description = "No autorizado")
+    })
+    @PreAuthorize("hasRole('ADMIN') or hasRole('MANAGEMENT')")
+    public ResponseEntity<?> exportProducts(
+            @Parameter(description = "ndjson o csv") @RequestParam(defaultValue = "ndjson") String format,
+            @Parameter(description = "Filtrar por subcategoría") @RequestParam(required = false) String subCategoryId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.fromValue(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(new SuccessfulResponse("Error: " + e.getMessage()));
+        }
+
+        // El rol se resuelve antes de empezar: el cuerpo se escribe fuera del hilo de la petición
+        String userRole = getUserRole();
+        boolean gzip = ExportWriter.acceptsGzip(acceptEncoding);
+        StreamingResponseBody body = out -> {
+            try (ExportWriter<ProductResponseDto> writer =
+                     new ExportWriter<>(out, exportFormat, gzip, objectMapper, EXPORT_COLUMNS)) {
+                Consumer<ProductResponseDto> sink = writer.sink();
+                productPort.forEachProduct(userRole, subCategoryId, product -> sink.accept(productMapper.toDto(product)));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok()
+            .headers(ExportWriter.responseHeaders("products", exportFormat, gzip))
+            .body(body);
+    }
+
     @PostMapping("/{id}/gallery")
     @PreAuthorize("hasRole('ADMIN') or hasRole('MANAGEMENT')")
     public ResponseEntity<SuccessfulResponse> addGalleryImage(@PathVariable String id, @RequestBody Gallery image) {
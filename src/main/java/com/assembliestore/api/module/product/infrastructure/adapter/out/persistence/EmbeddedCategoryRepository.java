@@ -0,0 +1,113 @@
+package com.assembliestore.api.module.product.infrastructure.adapter.out.persistence;
+
+import com.assembliestore.api.common.storage.EmbeddedStore;
+import com.assembliestore.api.common.storage.StoredCollection;
+import com.assembliestore.api.module.product.domain.entity.Category;
+import com.assembliestore.api.module.product.domain.repository.CategoryRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Categorías en el almacenamiento embebido, con un índice en memoria de nombre a id.
+ * delete es un borrado lógico, igual que el resto del catálogo.
+ */
+@Repository
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "embedded")
+public class EmbeddedCategoryRepository implements CategoryRepository {
+
+    static final String COLLECTION = "categories";
+
+    private final StoredCollection<Category> categories;
+    private final Map<String, String> idsByName = new ConcurrentHashMap<>();
+
+    public EmbeddedCategoryRepository(EmbeddedStore store) {
+        this.categories = store.collection(COLLECTION, Category.class);
+        categories.forEach((id, category) -> indexName(null, category));
+    }
+
+    @Override
+    public synchronized void save(Category category) {
+        if (category.getId() == null || category.getId().isEmpty()) {
+            category.setId(UUID.randomUUID().toString());
+        }
+        Date now = new Date();
+        if (category.getCreatedAt() == null) {
+            category.setCreatedAt(now);
+        }
+        if (category.getUpdatedAt() == null) {
+            category.setUpdatedAt(now);
+        }
+        store(category);
+    }
+
+    @Override
+    public synchronized void update(Category category) {
+        category.refreshUpdatedAt();
+        store(category);
+    }
+
+    @Override
+    public void delete(String categoryId) {
+        modify(categoryId, Category::markAsDeleted);
+    }
+
+    @Override
+    public Optional<Category> findById(String categoryId) {
+        return categories.find(categoryId);
+    }
+
+    @Override
+    public Optional<Category> findByName(String name) {
+        return name != null ? categories.find(idsByName.get(name)) : Optional.empty();
+    }
+
+    @Override
+    public Iterable<Category> findAll() {
+        return categories.findAll();
+    }
+
+    @Override
+    public List<Category> findPage(String afterId, int limit) {
+        return categories.findAfter(afterId, limit);
+    }
+
+    @Override
+    public void markToogleActive(String categoryId) {
+        modify(categoryId, Category::markToogleActive);
+    }
+
+    @Override
+    public void markToogleVisible(String categoryId) {
+        modify(categoryId, Category::markToogleVisible);
+    }
+
+    private synchronized void modify(String categoryId, Consumer<Category> change) {
+        Category category = categories.find(categoryId)
+                .orElseThrow(() -> new IllegalArgumentException("Category not found: " + categoryId));
+        change.accept(category);
+        store(category);
+    }
+
+    private void store(Category category) {
+        Category previous = categories.find(category.getId()).orElse(null);
+        categories.put(category.getId(), category);
+        indexName(previous, category);
+    }
+
+    private void indexName(Category previous, Category category) {
+        if (previous != null && previous.getName() != null && !previous.getName().equals(category.getName())) {
+            idsByName.remove(previous.getName(), previous.getId());
+        }
+        if (category.getName() != null) {
+            idsByName.put(category.getName(), category.getId());
+        }
+    }
+}
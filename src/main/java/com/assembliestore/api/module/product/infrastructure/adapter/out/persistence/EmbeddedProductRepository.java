@@ -0,0 +1,123 @@
+package com.assembliestore.api.module.product.infrastructure.adapter.out.persistence;
+
+import com.assembliestore.api.common.storage.EmbeddedStore;
+import com.assembliestore.api.common.storage.StoredCollection;
+import com.assembliestore.api.module.product.domain.entity.Product;
+import com.assembliestore.api.module.product.domain.repository.ProductRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Catálogo de productos en el almacenamiento embebido (app.storage.type=embedded).
+ *
+ * El disco es la fuente de verdad y las lecturas se sirven desde un InMemoryProductRepository
+ * que se carga al arrancar: cada lote se escribe primero en el log y, una vez confirmado,
+ * se aplica a las vistas por rol.
+ */
+@Repository
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "embedded")
+public class EmbeddedProductRepository implements ProductRepository {
+
+    static final String COLLECTION = "products";
+
+    private final StoredCollection<Product> products;
+    private final InMemoryProductRepository views = new InMemoryProductRepository();
+
+    public EmbeddedProductRepository(EmbeddedStore store) {
+        this.products = store.collection(COLLECTION, Product.class);
+        views.upsertBatch(products.findAll());
+    }
+
+    @Override
+    public void upsert(Product product) {
+        upsertBatch(Collections.singletonList(product));
+    }
+
+    @Override
+    public synchronized void upsertBatch(List<Product> batch) {
+        Date now = new Date();
+        Map<String, Product> documents = new LinkedHashMap<>();
+        for (Product product : batch) {
+            if (product.getId() == null || product.getId().isEmpty()) {
+                product.setId(UUID.randomUUID().toString());
+            }
+            // Los timestamps se fijan antes de escribir para que disco y memoria coincidan
+            if (product.getCreatedAt() == null) {
+                product.setCreatedAt(views.findById(product.getId()).map(Product::getCreatedAt).orElse(now));
+            }
+            if (product.getUpdatedAt() == null) {
+                product.setUpdatedAt(now);
+            }
+            documents.put(product.getId(), product);
+        }
+        products.putAll(documents);
+        views.upsertBatch(batch);
+    }
+
+    @Override
+    public synchronized void updateStock(Map<String, Integer> stockByProductId) {
+        List<Product> updated = views.withStock(stockByProductId);
+        if (!updated.isEmpty()) {
+            upsertBatch(updated);
+        }
+    }
+
+    @Override
+    public Optional<Product> findById(String productId) {
+        return views.findById(productId);
+    }
+
+    @Override
+    public List<Product> findAllById(Collection<String> productIds) {
+        return views.findAllById(productIds);
+    }
+
+    @Override
+    public List<Product> findAll() {
+        return views.findAll();
+    }
+
+    @Override
+    public List<Product> findAllForClient() {
+        return views.findAllForClient();
+    }
+
+    @Override
+    public List<Product> findAllForManagement() {
+        return views.findAllForManagement();
+    }
+
+    @Override
+    public Optional<Product> findByIdForClient(String productId) {
+        return views.findByIdForClient(productId);
+    }
+
+    @Override
+    public Optional<Product> findByIdForManagement(String productId) {
+        return views.findByIdForManagement(productId);
+    }
+
+    @Override
+    public List<Product> findPage(String afterId, int limit) {
+        return views.findPage(afterId, limit);
+    }
+
+    @Override
+    public List<Product> findPageForClient(String afterId, int limit) {
+        return views.findPageForClient(afterId, limit);
+    }
+
+    @Override
+    public List<Product> findPageForManagement(String afterId, int limit) {
+        return views.findPageForManagement(afterId, limit);
+    }
+}
@@ -0,0 +1,81 @@
+package com.assembliestore.api.module.product.infrastructure.adapter.out.persistence;
+
+import com.assembliestore.api.common.storage.EmbeddedStore;
+import com.assembliestore.api.common.storage.StoredCollection;
+import com.assembliestore.api.module.product.domain.entity.SubCategory;
+import com.assembliestore.api.module.product.domain.repository.SubCategoryRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Subcategorías en el almacenamiento embebido; delete es un borrado lógico
+ */
+@Repository
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "embedded")
+public class EmbeddedSubCategoryRepository implements SubCategoryRepository {
+
+    static final String COLLECTION = "subcategories";
+
+    private final StoredCollection<SubCategory> subCategories;
+
+    public EmbeddedSubCategoryRepository(EmbeddedStore store) {
+        this.subCategories = store.collection(COLLECTION, SubCategory.class);
+    }
+
+    @Override
+    public void save(SubCategory subCategory) {
+        if (subCategory.getId() == null || subCategory.getId().isEmpty()) {
+            subCategory.setId(UUID.randomUUID().toString());
+        }
+        Date now = new Date();
+        if (subCategory.getCreatedAt() == null) {
+            subCategory.setCreatedAt(now);
+        }
+        subCategory.setUpdatedAt(now);
+        subCategories.put(subCategory.getId(), subCategory);
+    }
+
+    @Override
+    public void update(SubCategory subCategory) {
+        subCategory.setUpdatedAt(new Date());
+        subCategories.put(subCategory.getId(), subCategory);
+    }
+
+    @Override
+    public void delete(String subCategoryId) {
+        modify(subCategoryId, SubCategory::markAsDeleted);
+    }
+
+    @Override
+    public Optional<SubCategory> findById(String subCategoryId) {
+        return subCategories.find(subCategoryId);
+    }
+
+    @Override
+    public List<SubCategory> findAll() {
+        return subCategories.findAll();
+    }
+
+    @Override
+    public void toggleActiveSubCategory(String subCategoryId) {
+        modify(subCategoryId, SubCategory::markToogleActive);
+    }
+
+    @Override
+    public void toggleVisibleSubCategory(String subCategoryId) {
+        modify(subCategoryId, SubCategory::markToogleVisible);
+    }
+
+    private synchronized void modify(String subCategoryId, Consumer<SubCategory> change) {
+        SubCategory subCategory = subCategories.find(subCategoryId)
+                .orElseThrow(() -> new IllegalArgumentException("SubCategory not found: " + subCategoryId));
+        change.accept(subCategory);
+        subCategories.put(subCategoryId, subCategory);
+    }
+}
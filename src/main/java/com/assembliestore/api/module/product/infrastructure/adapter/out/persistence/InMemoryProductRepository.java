@@ -0,0 +1,256 @@
+package com.assembliestore.api.module.product.infrastructure.adapter.out.persistence;
+
+import com.assembliestore.api.module.product.domain.entity.Product;
+import com.assembliestore.api.module.product.domain.repository.ProductRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Catálogo de productos en memoria (app.storage.type=memory, el adaptador por defecto).
+ *
+ * Además de cada producto guarda sus vistas por rol ya armadas (cliente y management) y tres
+ * listados inmutables ordenados por id: admin, cliente y management. Las escrituras copian
+ * solo los listados que cambian, ubican cada producto por búsqueda binaria y publican los
+ * listados nuevos de una vez, así que listar el catálogo es leer una referencia: no se filtra
+ * ni se construye ningún Product por pedido.
+ *
+ * Los listados y las vistas por rol se comparten entre pedidos y no deben modificarse.
+ * findById y findAllById devuelven copias, porque los servicios las modifican antes de
+ * volver a guardarlas.
+ */
+@Repository
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "memory", matchIfMissing = true)
+public class InMemoryProductRepository implements ProductRepository {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile Listings listings = new Listings(List.of(), List.of(), List.of());
+
+    @Override
+    public void upsert(Product product) {
+        upsertBatch(Collections.singletonList(product));
+    }
+
+    @Override
+    public synchronized void upsertBatch(List<Product> products) {
+        Listings current = listings;
+        List<Product> all = null;
+        List<Product> client = null;
+        List<Product> management = null;
+        Map<String, Entry> changed = new HashMap<>();
+
+        for (Product product : products) {
+            if (product.getId() == null || product.getId().isEmpty()) {
+                product.setId(UUID.randomUUID().toString());
+            }
+            String id = product.getId();
+            Entry previous = changed.containsKey(id) ? changed.get(id) : entries.get(id);
+            Entry entry = Entry.of(product, previous);
+            changed.put(id, entry);
+
+            if (all == null) {
+                all = new ArrayList<>(current.all());
+            }
+            place(all, id, previous != null ? previous.stored() : null, entry.stored());
+
+            Product previousClient = previous != null ? previous.client() : null;
+            if (previousClient != null || entry.client() != null) {
+                if (client == null) {
+                    client = new ArrayList<>(current.client());
+                }
+                place(client, id, previousClient, entry.client());
+            }
+
+            Product previousManagement = previous != null ? previous.management() : null;
+            if (previousManagement != null || entry.management() != null) {
+                if (management == null) {
+                    management = new ArrayList<>(current.management());
+                }
+                place(management, id, previousManagement, entry.management());
+            }
+        }
+
+        entries.putAll(changed);
+        listings = new Listings(
+                all != null ? Collections.unmodifiableList(all) : current.all(),
+                client != null ? Collections.unmodifiableList(client) : current.client(),
+                management != null ? Collections.unmodifiableList(management) : current.management());
+    }
+
+    @Override
+    public synchronized void updateStock(Map<String, Integer> stockByProductId) {
+        List<Product> updated = withStock(stockByProductId);
+        if (!updated.isEmpty()) {
+            upsertBatch(updated);
+        }
+    }
+
+    /**
+     * Copias de los productos guardados con la existencia nueva; el llamador debe tener el
+     * lock de escritura para que nadie los modifique entre la lectura y el guardado
+     */
+    List<Product> withStock(Map<String, Integer> stockByProductId) {
+        List<Product> updated = new ArrayList<>(stockByProductId.size());
+        stockByProductId.forEach((productId, stock) -> {
+            Entry entry = entries.get(productId);
+            if (entry != null) {
+                Product product = entry.stored().copy();
+                product.setStockQuantity(stock);
+                product.refreshUpdatedAt();
+                updated.add(product);
+            }
+        });
+        return updated;
+    }
+
+    @Override
+    public Optional<Product> findById(String productId) {
+        Entry entry = entries.get(productId);
+        return entry != null ? Optional.of(entry.stored().copy()) : Optional.empty();
+    }
+
+    @Override
+    public List<Product> findAllById(Collection<String> productIds) {
+        List<Product> found = new ArrayList<>(productIds.size());
+        for (String productId : productIds) {
+            Entry entry = entries.get(productId);
+            if (entry != null) {
+                found.add(entry.stored().copy());
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public List<Product> findAll() {
+        return listings.all();
+    }
+
+    @Override
+    public List<Product> findAllForClient() {
+        return listings.client();
+    }
+
+    @Override
+    public List<Product> findAllForManagement() {
+        return listings.management();
+    }
+
+    @Override
+    public Optional<Product> findByIdForClient(String productId) {
+        Entry entry = entries.get(productId);
+        return entry != null ? Optional.ofNullable(entry.client()) : Optional.empty();
+    }
+
+    @Override
+    public Optional<Product> findByIdForManagement(String productId) {
+        Entry entry = entries.get(productId);
+        return entry != null ? Optional.ofNullable(entry.management()) : Optional.empty();
+    }
+
+    @Override
+    public List<Product> findPage(String afterId, int limit) {
+        return page(listings.all(), afterId, limit);
+    }
+
+    @Override
+    public List<Product> findPageForClient(String afterId, int limit) {
+        return page(listings.client(), afterId, limit);
+    }
+
+    @Override
+    public List<Product> findPageForManagement(String afterId, int limit) {
+        return page(listings.management(), afterId, limit);
+    }
+
+    /**
+     * Tramo del listado después de afterId: la posición sale por búsqueda binaria y el tramo es
+     * una vista del snapshot, sin copiar
+     */
+    private static List<Product> page(List<Product> listing, String afterId, int limit) {
+        int from = 0;
+        if (afterId != null) {
+            int index = indexOf(listing, afterId);
+            from = index >= 0 ? index + 1 : -index - 1;
+        }
+        return listing.subList(from, Math.min(listing.size(), from + Math.max(limit, 0)));
+    }
+
+    /**
+     * Reemplaza, agrega o quita el producto en un listado ordenado por id
+     */
+    private static void place(List<Product> listing, String id, Product previous, Product next) {
+        int index = indexOf(listing, id);
+        if (previous != null && next != null) {
+            listing.set(index, next);
+        } else if (previous != null) {
+            listing.remove(index);
+        } else if (next != null) {
+            listing.add(-index - 1, next);
+        }
+    }
+
+    /**
+     * Búsqueda binaria por id; si no está devuelve -(punto de inserción) - 1
+     */
+    private static int indexOf(List<Product> listing, String id) {
+        int low = 0;
+        int high = listing.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = listing.get(mid).getId().compareTo(id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Producto guardado y sus vistas por rol; client o management son null si el rol no lo ve
+     */
+    private record Entry(Product stored, Product client, Product management) {
+
+        static Entry of(Product product, Entry previous) {
+            Product stored = product.copy();
+            Date now = new Date();
+            // Igual que los @ServerTimestamp del documento: se completan al guardar
+            if (stored.getCreatedAt() == null) {
+                stored.setCreatedAt(previous != null && previous.stored().getCreatedAt() != null
+                        ? previous.stored().getCreatedAt()
+                        : now);
+            }
+            if (stored.getUpdatedAt() == null) {
+                stored.setUpdatedAt(now);
+            }
+            if (stored.getSpecifications() != null) {
+                stored.setSpecifications(Collections.unmodifiableList(stored.getSpecifications()));
+            }
+            if (stored.getGallery() != null) {
+                stored.setGallery(Collections.unmodifiableList(stored.getGallery()));
+            }
+            Product client = !stored.isDeleted() && stored.isActived() && stored.isVisible()
+                    ? stored.toClientView()
+                    : null;
+            Product management = !stored.isDeleted() ? stored.toManagementView() : null;
+            return new Entry(stored, client, management);
+        }
+    }
+
+    private record Listings(List<Product> all, List<Product> client, List<Product> management) {
+    }
+}
@@ -18,4 +18,7 @@ public class CreateOrderRequestDto {
     
     @NotNull(message = "Payment method is required")
     private String paymentMethod;
+    
+    // Reserva de stock del carrito (opcional); si sigue activa se confirma en lugar de descontar de nuevo
+    private String holdId;
 }
@@ -0,0 +1,48 @@
+package com.assembliestore.api.module.sale.application.port;
+
+import com.assembliestore.api.module.sale.domain.entity.Order;
+
+/**
+ * Clave de orden estable de las órdenes en los listados paginados: fecha de la orden y, a igual
+ * fecha, id. Es lo que codifica el cursor de una página de órdenes.
+ */
+public record OrderPageKey(long orderDate, String orderId) implements Comparable<OrderPageKey> {
+
+    private static final char SEPARATOR = ':';
+
+    public static OrderPageKey of(Order order) {
+        return new OrderPageKey(order.getOrderDate() != null ? order.getOrderDate().getTime() : 0L, order.getId());
+    }
+
+    /**
+     * Primera clave posible de una fecha, para abrir rangos
+     */
+    public static OrderPageKey first(long orderDate) {
+        return new OrderPageKey(orderDate, "");
+    }
+
+    /**
+     * Clave escrita con format(), o null si no hay
+     */
+    public static OrderPageKey parse(String key) {
+        if (key == null) {
+            return null;
+        }
+        int separator = key.indexOf(SEPARATOR);
+        try {
+            return new OrderPageKey(Long.parseLong(key.substring(0, separator)), key.substring(separator + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    public String format() {
+        return Long.toString(orderDate) + SEPARATOR + orderId;
+    }
+
+    @Override
+    public int compareTo(OrderPageKey other) {
+        int cmp = Long.compare(orderDate, other.orderDate);
+        return cmp != 0 ? cmp : orderId.compareTo(other.orderId);
+    }
+}
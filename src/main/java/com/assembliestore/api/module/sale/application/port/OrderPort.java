@@ -3,6 +3,7 @@ package com.assembliestore.api.module.sale.application.port;
 import com.assembliestore.api.module.sale.domain.entity.Order;
 import com.assembliestore.api.module.sale.domain.entity.OrderStatus;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -32,6 +33,31 @@ public interface OrderPort {
      * Buscar órdenes por estado
      */
     List<Order> findOrdersByStatus(OrderStatus status);
+
+    /**
+     * Buscar órdenes con fecha en [from, to), de la más vieja a la más nueva; null deja el extremo abierto
+     */
+    List<Order> findOrdersByDateRange(Date from, Date to);
+
+    /**
+     * Hasta limit órdenes posteriores a after (desde la primera si es null), por fecha e id
+     */
+    List<Order> findAllOrders(OrderPageKey after, int limit);
+
+    /**
+     * Hasta limit órdenes del usuario posteriores a after, por fecha e id
+     */
+    List<Order> findOrdersByUserId(String userId, OrderPageKey after, int limit);
+
+    /**
+     * Hasta limit órdenes en el estado posteriores a after, por fecha e id
+     */
+    List<Order> findOrdersByStatus(OrderStatus status, OrderPageKey after, int limit);
+
+    /**
+     * Hasta limit órdenes con fecha en [from, to) posteriores a after, por fecha e id
+     */
+    List<Order> findOrdersByDateRange(Date from, Date to, OrderPageKey after, int limit);
     
     /**
      * Actualizar estado de orden
@@ -0,0 +1,397 @@
+package com.assembliestore.api.module.sale.application.service;
+
+import com.assembliestore.api.common.error.OrderAdmissionException;
+import com.assembliestore.api.common.scheduling.HashedTimingWheel;
+import com.assembliestore.api.module.product.domain.port.StockPort;
+import com.assembliestore.api.module.sale.application.dto.response.OrderPaymentResponse;
+import com.assembliestore.api.module.sale.domain.entity.Order;
+import com.assembliestore.api.module.sale.domain.entity.OrderProduct;
+import com.assembliestore.api.service.realtime.service.RealtimeNotificationService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Control de admisión de órdenes para productos en venta flash.
+ *
+ * Cada producto marcado como "hot" tiene una sala de espera FIFO acotada que se drena a
+ * un ritmo configurable hacia {@link OrderService#createOrder(Order, String)}, así las
+ * llamadas a stock, Stripe y persistencia no se disparan todas a la vez. Si las unidades
+ * en cola ya superan el stock restante la orden se rechaza al instante como agotada.
+ *
+ * La posición y el tiempo estimado se publican por /ws/notifications: cada cliente recibe su
+ * turno solo en sus propias sesiones y el avance de la cola ("now serving") se publica
+ * una vez por segundo en "order-queue-{productId}", con lo que el costo no crece con la cola.
+ */
+@Service
+public class OrderAdmissionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderAdmissionService.class);
+
+    // Cada cuánto se liberan turnos de las salas de espera
+    static final long DRAIN_INTERVAL_MS = 100;
+    // Cada cuántos ciclos de drenado se publica el avance de las colas
+    private static final int PROGRESS_EVERY_DRAINS = 10;
+
+    private final OrderService orderService;
+    private final StockPort stockPort;
+    private final RealtimeNotificationService realtimeNotificationService;
+    private final int capacity;
+    private final int defaultDrainPerSecond;
+    private final Duration waitTimeout;
+
+    private final Map<String, WaitingRoom> rooms = new ConcurrentHashMap<>();
+    private final ExecutorService worker;
+    private final ScheduledExecutorService drainer;
+    private final HashedTimingWheel<Ticket> waitExpiry;
+
+    // Solo lo toca el hilo de drenado
+    private long drains;
+
+    @Autowired
+    public OrderAdmissionService(OrderService orderService, StockPort stockPort,
+                                 RealtimeNotificationService realtimeNotificationService,
+                                 @Value("${app.orders.admission.capacity:10000}") int capacity,
+                                 @Value("${app.orders.admission.drain-per-second:50}") int drainPerSecond,
+                                 @Value("${app.orders.admission.wait-timeout-seconds:120}") long waitTimeoutSeconds) {
+        this(orderService, stockPort, realtimeNotificationService, capacity, drainPerSecond,
+                Duration.ofSeconds(waitTimeoutSeconds), Executors.newVirtualThreadPerTaskExecutor(), true);
+    }
+
+    OrderAdmissionService(OrderService orderService, StockPort stockPort,
+                          RealtimeNotificationService realtimeNotificationService,
+                          int capacity, int drainPerSecond, Duration waitTimeout,
+                          ExecutorService worker, boolean start) {
+        if (capacity <= 0 || drainPerSecond <= 0) {
+            throw new IllegalArgumentException("capacity and drainPerSecond must be positive");
+        }
+        this.orderService = orderService;
+        this.stockPort = stockPort;
+        this.realtimeNotificationService = realtimeNotificationService;
+        this.capacity = capacity;
+        this.defaultDrainPerSecond = drainPerSecond;
+        this.waitTimeout = waitTimeout;
+        this.worker = worker;
+        this.waitExpiry = new HashedTimingWheel<>("order-admission-expiry", Duration.ofSeconds(1), 512,
+                ticket -> abandon(ticket, new OrderAdmissionException(OrderAdmissionException.Reason.TIMEOUT,
+                        "Tiempo de espera agotado en la cola del producto: " + ticket.room.productId)));
+        if (start) {
+            this.drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "order-admission-drain");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.drainer.scheduleAtFixedRate(this::safeDrain, DRAIN_INTERVAL_MS, DRAIN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            this.waitExpiry.start();
+        } else {
+            this.drainer = null;
+        }
+    }
+
+    /**
+     * Activa o ajusta la sala de espera de un producto
+     * @param drainPerSecond órdenes por segundo que pasan a procesarse; 0 o negativo usa el valor por defecto
+     */
+    public void enable(String productId, int drainPerSecond) {
+        int rate = drainPerSecond > 0 ? drainPerSecond : defaultDrainPerSecond;
+        rooms.compute(productId, (id, room) -> {
+            if (room == null) {
+                return new WaitingRoom(id, capacity, rate);
+            }
+            // Una sala que se estaba cerrando se reabre con los turnos que aún tenga
+            room.closed = false;
+            room.drainPerSecond = rate;
+            return room;
+        });
+        logger.info("Admission queue enabled for product {} at {} orders/s", productId, rate);
+    }
+
+    /**
+     * Desactiva la sala de espera: deja de admitir órdenes nuevas y termina de drenar las encoladas
+     * @return false si el producto no tenía sala de espera
+     */
+    public boolean disable(String productId) {
+        WaitingRoom room = rooms.get(productId);
+        if (room == null || room.closed) {
+            return false;
+        }
+        room.closed = true;
+        logger.info("Admission queue disabled for product {}, {} orders left to drain", productId, room.queue.size());
+        return true;
+    }
+
+    public boolean isEnabled(String productId) {
+        WaitingRoom room = rooms.get(productId);
+        return room != null && !room.closed;
+    }
+
+    /**
+     * Máximo que una orden puede esperar su turno antes de rechazarse
+     */
+    public Duration getWaitTimeout() {
+        return waitTimeout;
+    }
+
+    /**
+     * Estado de la sala de espera de un producto
+     */
+    public Optional<Map<String, Object>> getStatus(String productId) {
+        WaitingRoom room = rooms.get(productId);
+        if (room == null) {
+            return Optional.empty();
+        }
+        Map<String, Object> status = new HashMap<>();
+        status.put("productId", productId);
+        status.put("enabled", !room.closed);
+        status.put("queued", room.queue.size());
+        status.put("queuedUnits", room.queuedUnits.get());
+        status.put("capacity", capacity);
+        status.put("drainPerSecond", room.drainPerSecond);
+        status.put("nowServing", room.servedTicket.get());
+        status.put("lastTicket", room.nextTicket.get());
+        status.put("rejectedSoldOut", room.rejectedSoldOut.get());
+        status.put("rejectedFull", room.rejectedFull.get());
+        status.put("expired", room.expired.get());
+        return Optional.of(status);
+    }
+
+    /**
+     * Admite una orden. Si no incluye productos con sala de espera, o trae una reserva de stock
+     * del mismo usuario que cubre exactamente la orden, se procesa en el hilo del llamador; si no,
+     * se encola y el futuro se completa cuando le llega el turno. Una reserva ajena, vencida o que
+     * no coincide no evita la cola.
+     */
+    public CompletableFuture<OrderPaymentResponse> submit(Order order, String holdId) {
+        boolean confirmableHold = holdId != null
+                && stockPort.isHeldBy(holdId, order.getUserId(), OrderService.toProductQuantities(order));
+        WaitingRoom room = confirmableHold ? null : roomFor(order);
+        if (room == null) {
+            try {
+                return CompletableFuture.completedFuture(orderService.createOrder(order, holdId));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        int units = unitsOf(order, room.productId);
+        int remaining = stockPort.getCurrentStock(room.productId);
+        // Se cuentan las unidades y no las solicitudes: una orden de 3 unidades ocupa 3 del stock restante
+        if (remaining < 0 || room.queuedUnits.addAndGet(units) > remaining) {
+            room.queuedUnits.addAndGet(-units);
+            room.rejectedSoldOut.incrementAndGet();
+            return CompletableFuture.failedFuture(new OrderAdmissionException(OrderAdmissionException.Reason.SOLD_OUT,
+                    "Producto agotado: " + room.productId));
+        }
+
+        Ticket ticket = new Ticket(room, room.nextTicket.incrementAndGet(), order, holdId, units);
+        ticket.timeout = waitExpiry.schedule(ticket, waitTimeout);
+        if (!room.queue.offer(ticket)) {
+            ticket.timeout.cancel();
+            room.queuedUnits.addAndGet(-units);
+            room.rejectedFull.incrementAndGet();
+            return CompletableFuture.failedFuture(new OrderAdmissionException(OrderAdmissionException.Reason.QUEUE_FULL,
+                    "La cola del producto está llena, intenta nuevamente: " + room.productId));
+        }
+        if (ticket.state.get() != Ticket.QUEUED) {
+            // Venció antes de quedar encolado; abandon no lo encontró en la cola
+            room.queue.remove(ticket);
+        }
+        // Si el llamador abandona (p. ej. se corta la petición) el turno se libera
+        ticket.result.whenComplete((response, error) -> {
+            if (ticket.result.isCancelled()) {
+                abandon(ticket, null);
+            }
+        });
+
+        // Los turnos abandonados salen de la cola, así que su tamaño es la posición real
+        long position = Math.max(1, room.queue.size());
+        realtimeNotificationService.sendQueuePosition(order.getUserId(), room.productId, ticket.number,
+                position, etaSeconds(position, room.drainPerSecond));
+        return ticket.result;
+    }
+
+    /**
+     * Un ciclo de drenado: libera los turnos que corresponden al intervalo en cada sala
+     */
+    void drain() {
+        boolean publishProgress = ++drains % PROGRESS_EVERY_DRAINS == 0;
+        for (WaitingRoom room : rooms.values()) {
+            double perInterval = room.drainPerSecond * DRAIN_INTERVAL_MS / 1000.0;
+            // Sin cola no se acumulan turnos más allá de un intervalo, para no soltar ráfagas
+            room.tokens = Math.min(room.tokens + perInterval, Math.max(1.0, perInterval));
+            while (room.tokens >= 1) {
+                Ticket ticket = room.queue.poll();
+                if (ticket == null) {
+                    break;
+                }
+                if (!ticket.state.compareAndSet(Ticket.QUEUED, Ticket.DISPATCHED)) {
+                    // Expiró o se abandonó mientras esperaba: no consume turno
+                    continue;
+                }
+                ticket.timeout.cancel();
+                room.tokens -= 1;
+                room.servedTicket.set(ticket.number);
+                // Se descuenta al despachar para no contar dos veces sus unidades mientras se reduce el stock
+                room.queuedUnits.addAndGet(-ticket.units);
+                worker.execute(() -> process(ticket));
+            }
+            if (room.closed && room.queue.isEmpty()) {
+                // Dentro del mapa, para no perder un enable() que reabra la sala entre medio
+                rooms.computeIfPresent(room.productId, (id, current) ->
+                        current.closed && current.queue.isEmpty() ? null : current);
+            }
+            if (publishProgress && room.publishedTicket != room.servedTicket.get()) {
+                room.publishedTicket = room.servedTicket.get();
+                realtimeNotificationService.sendQueueProgress(room.productId, room.publishedTicket,
+                        room.queue.size(), room.drainPerSecond);
+            }
+        }
+    }
+
+    /**
+     * Avanza la expiración de turnos un tick. Solo para pruebas sin hilos propios.
+     */
+    void advanceWaitExpiry() {
+        waitExpiry.tick();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (drainer != null) {
+            drainer.shutdownNow();
+        }
+        waitExpiry.stop();
+        worker.shutdown();
+    }
+
+    private void safeDrain() {
+        try {
+            drain();
+        } catch (Exception e) {
+            logger.error("Error draining admission queues: {}", e.getMessage());
+        }
+    }
+
+    private void process(Ticket ticket) {
+        try {
+            // Si la reserva era del usuario pero no coincidía, createOrder la libera
+            ticket.result.complete(orderService.createOrder(ticket.order, ticket.holdId));
+        } catch (Exception e) {
+            ticket.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Saca de la cola un turno que todavía no se despachó, para que no ocupe lugar ni cuente en
+     * la posición de los que siguen. A esta capacidad, recorrer la cola para quitarlo es barato.
+     */
+    private void abandon(Ticket ticket, OrderAdmissionException error) {
+        if (!ticket.state.compareAndSet(Ticket.QUEUED, Ticket.ABANDONED)) {
+            return;
+        }
+        ticket.timeout.cancel();
+        ticket.room.queue.remove(ticket);
+        ticket.room.queuedUnits.addAndGet(-ticket.units);
+        if (error != null) {
+            ticket.room.expired.incrementAndGet();
+            ticket.result.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Sala de espera que aplica a la orden: la del primer producto hot por id, para que la
+     * elección sea estable entre órdenes con los mismos productos
+     */
+    private WaitingRoom roomFor(Order order) {
+        if (rooms.isEmpty() || order.getProducts() == null) {
+            return null;
+        }
+        WaitingRoom selected = null;
+        for (OrderProduct orderProduct : order.getProducts()) {
+            WaitingRoom room = rooms.get(orderProduct.getProductId());
+            if (room != null && !room.closed
+                    && (selected == null || room.productId.compareTo(selected.productId) < 0)) {
+                selected = room;
+            }
+        }
+        return selected;
+    }
+
+    private static int unitsOf(Order order, String productId) {
+        int units = 0;
+        for (OrderProduct orderProduct : order.getProducts()) {
+            if (productId.equals(orderProduct.getProductId())) {
+                units += orderProduct.getQuantity();
+            }
+        }
+        return units;
+    }
+
+    private static long etaSeconds(long position, int drainPerSecond) {
+        return (position + drainPerSecond - 1) / drainPerSecond;
+    }
+
+    private static final class WaitingRoom {
+        private final String productId;
+        private final BlockingQueue<Ticket> queue;
+        private final AtomicLong nextTicket = new AtomicLong();
+        private final AtomicLong servedTicket = new AtomicLong();
+        private final AtomicInteger queuedUnits = new AtomicInteger();
+        private final AtomicInteger rejectedSoldOut = new AtomicInteger();
+        private final AtomicInteger rejectedFull = new AtomicInteger();
+        private final AtomicInteger expired = new AtomicInteger();
+        private volatile int drainPerSecond;
+        private volatile boolean closed;
+
+        // Solo los toca el hilo de drenado
+        private double tokens;
+        private long publishedTicket;
+
+        WaitingRoom(String productId, int capacity, int drainPerSecond) {
+            this.productId = productId;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.drainPerSecond = drainPerSecond;
+        }
+    }
+
+    private static final class Ticket {
+        private static final int QUEUED = 0;
+        private static final int DISPATCHED = 1;
+        private static final int ABANDONED = 2;
+
+        private final WaitingRoom room;
+        private final long number;
+        private final Order order;
+        private final String holdId;
+        private final int units;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private final CompletableFuture<OrderPaymentResponse> result = new CompletableFuture<>();
+        private volatile HashedTimingWheel.Timeout<Ticket> timeout;
+
+        Ticket(WaitingRoom room, long number, Order order, String holdId, int units) {
+            this.room = room;
+            this.number = number;
+            this.order = order;
+            this.holdId = holdId;
+            this.units = units;
+        }
+    }
+}
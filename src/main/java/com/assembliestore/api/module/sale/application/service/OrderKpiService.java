@@ -0,0 +1,198 @@
+package com.assembliestore.api.module.sale.application.service;
+
+import com.assembliestore.api.module.sale.domain.entity.OrderStatus;
+import com.assembliestore.api.service.realtime.service.RealtimeNotificationService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Indicadores de órdenes en vivo para los tableros de administración.
+ *
+ * Los indicadores se calculan sobre una ventana deslizante de tamaño fijo (por defecto los
+ * últimos 5 minutos en cubetas de 5 segundos) que se alimenta de los eventos de
+ * {@link OrderService}: altas de órdenes, cambios de estado y resultado de los pagos. Registrar
+ * un evento suma en la cubeta actual y leer la ventana recorre las cubetas, sin consultar el
+ * repositorio ni guardar nada por orden; la memoria es la misma con diez órdenes o con un millón.
+ *
+ * Los conteos por estado son las órdenes que entraron a cada estado dentro de la ventana, no el
+ * total histórico en ese estado (eso exigiría recorrer el repositorio al arrancar). La tasa de
+ * fallos de pago es PAYMENT_FAILED sobre PAYMENT_FAILED más CONFIRMED.
+ *
+ * Cada publish-interval se publica el resumen en el canal "admin-kpis" si cambió desde el
+ * anterior. Con varios nodos cada uno publica lo suyo identificado por nodo.
+ */
+@Service
+public class OrderKpiService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderKpiService.class);
+
+    // Métricas por cubeta: órdenes, ingresos en centavos, pagos fallidos y una por estado
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+    private static final int ORDERS = 0;
+    private static final int REVENUE_CENTS = 1;
+    private static final int FIRST_STATUS = 2;
+    private static final int METRICS = FIRST_STATUS + STATUSES.length;
+
+    private final RealtimeNotificationService realtimeNotificationService;
+    private final long bucketMillis;
+    private final int bucketCount;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService publisher;
+
+    // counters[cubeta * METRICS + métrica]; epochs[cubeta] es el número de cubeta que contiene
+    private final long[] counters;
+    private final long[] epochs;
+
+    private Map<String, Object> lastPublished;
+
+    @Autowired
+    public OrderKpiService(RealtimeNotificationService realtimeNotificationService,
+                           @Value("${app.orders.kpi.window:5m}") Duration window,
+                           @Value("${app.orders.kpi.bucket:5s}") Duration bucket,
+                           @Value("${app.orders.kpi.publish-interval:5s}") Duration publishInterval) {
+        this(realtimeNotificationService, window, bucket, publishInterval, System::currentTimeMillis, true);
+    }
+
+    OrderKpiService(RealtimeNotificationService realtimeNotificationService, Duration window, Duration bucket,
+                    Duration publishInterval, LongSupplier clock, boolean startPublisher) {
+        if (bucket.isNegative() || bucket.isZero() || window.compareTo(bucket) < 0) {
+            throw new IllegalArgumentException("bucket must be positive and no longer than the window");
+        }
+        this.realtimeNotificationService = realtimeNotificationService;
+        this.bucketMillis = bucket.toMillis();
+        this.bucketCount = (int) Math.ceilDiv(window.toMillis(), bucketMillis);
+        this.clock = clock;
+        this.counters = new long[bucketCount * METRICS];
+        this.epochs = new long[bucketCount];
+        if (startPublisher) {
+            this.publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "order-kpi-publisher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = publishInterval.toMillis();
+            this.publisher.scheduleWithFixedDelay(this::publish, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.publisher = null;
+        }
+    }
+
+    /**
+     * Una orden nueva: cuenta para órdenes por minuto, ingresos y su estado inicial
+     */
+    public void recordOrderCreated(OrderStatus status, BigDecimal total) {
+        long cents = total == null ? 0 : total.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+        synchronized (this) {
+            int base = currentBucket();
+            counters[base + ORDERS]++;
+            counters[base + REVENUE_CENTS] += cents;
+            if (status != null) {
+                counters[base + FIRST_STATUS + status.ordinal()]++;
+            }
+        }
+    }
+
+    /**
+     * Una orden entró a un estado; CONFIRMED y PAYMENT_FAILED son además el resultado del pago
+     */
+    public synchronized void recordStatusChange(OrderStatus newStatus) {
+        if (newStatus != null) {
+            counters[currentBucket() + FIRST_STATUS + newStatus.ordinal()]++;
+        }
+    }
+
+    /**
+     * Resumen de la ventana actual
+     */
+    public Map<String, Object> getSnapshot() {
+        long[] totals = new long[METRICS];
+        long windowMillis;
+        synchronized (this) {
+            long currentEpoch = clock.getAsLong() / bucketMillis;
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                if (currentEpoch - epochs[bucket] >= bucketCount) {
+                    continue;
+                }
+                int base = bucket * METRICS;
+                for (int metric = 0; metric < METRICS; metric++) {
+                    totals[metric] += counters[base + metric];
+                }
+            }
+            windowMillis = bucketCount * bucketMillis;
+        }
+
+        long confirmed = totals[FIRST_STATUS + OrderStatus.CONFIRMED.ordinal()];
+        long failed = totals[FIRST_STATUS + OrderStatus.PAYMENT_FAILED.ordinal()];
+        Map<String, Object> byStatus = new LinkedHashMap<>();
+        for (OrderStatus status : STATUSES) {
+            byStatus.put(status.name(), totals[FIRST_STATUS + status.ordinal()]);
+        }
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("windowSeconds", windowMillis / 1000);
+        snapshot.put("orders", totals[ORDERS]);
+        snapshot.put("ordersPerMinute", round(totals[ORDERS] * 60_000.0 / windowMillis));
+        snapshot.put("revenue", BigDecimal.valueOf(totals[REVENUE_CENTS], 2));
+        snapshot.put("ordersByStatus", byStatus);
+        snapshot.put("paymentFailureRate", confirmed + failed == 0 ? 0.0 : round((double) failed / (confirmed + failed)));
+        return snapshot;
+    }
+
+    /**
+     * Publica el resumen si cambió desde la última publicación
+     */
+    void publish() {
+        try {
+            Map<String, Object> snapshot = getSnapshot();
+            if (snapshot.equals(lastPublished)) {
+                return;
+            }
+            realtimeNotificationService.sendOrderKpis(snapshot);
+            lastPublished = snapshot;
+        } catch (Exception e) {
+            logger.error("Error publishing order KPIs: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (publisher != null) {
+            publisher.shutdownNow();
+        }
+    }
+
+    /**
+     * Posición de la cubeta actual en counters; si la cubeta quedó de una vuelta anterior del
+     * anillo se pone en cero antes de usarla
+     */
+    private int currentBucket() {
+        long epoch = clock.getAsLong() / bucketMillis;
+        int bucket = (int) (epoch % bucketCount);
+        int base = bucket * METRICS;
+        if (epochs[bucket] != epoch) {
+            epochs[bucket] = epoch;
+            for (int metric = 0; metric < METRICS; metric++) {
+                counters[base + metric] = 0;
+            }
+        }
+        return base;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
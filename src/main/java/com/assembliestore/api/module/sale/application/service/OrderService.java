@@ -1,6 +1,8 @@
 package com.assembliestore.api.module.sale.application.service;
 
 import com.assembliestore.api.module.sale.application.dto.response.OrderPaymentResponse;
+import com.assembliestore.api.common.type.CursorPage;
+import com.assembliestore.api.module.sale.application.port.OrderPageKey;
 import com.assembliestore.api.module.sale.application.port.OrderPort;
 import com.assembliestore.api.module.sale.domain.entity.Order;
 import com.assembliestore.api.module.sale.domain.entity.OrderProduct;
@@ -18,16 +20,20 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 @Service
 public class OrderService {
 
     private static final Logger logger = LoggerFactory.getLogger(OrderService.class);
+    // Órdenes leídas por vuelta al recorrer una exportación
+    private static final int EXPORT_PAGE_SIZE = 500;
 
     @Autowired
     private OrderPort orderPort;
@@ -44,7 +50,19 @@ public class OrderService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private OrderKpiService orderKpiService;
+
     public OrderPaymentResponse createOrder(Order order) {
+        return createOrder(order, null);
+    }
+
+    /**
+     * Crea la orden consumiendo la reserva de stock del carrito si sigue activa, es del mismo
+     * usuario y cubre exactamente los productos de la orden; en caso contrario descuenta el
+     * stock normalmente.
+     */
+    public OrderPaymentResponse createOrder(Order order, String holdId) {
         // Generate UUID if not present
         if (order.getId() == null || order.getId().isEmpty()) {
             order.setId(UUID.randomUUID().toString());
@@ -59,27 +77,25 @@ public class OrderService {
         order.calculateTotal();
         
         // Verificar y reducir stock antes de procesar el pago
-        Map<String, Integer> productQuantities = new HashMap<>();
-        if (order.getProducts() != null) {
-            for (OrderProduct orderProduct : order.getProducts()) {
-                productQuantities.put(orderProduct.getProductId(), orderProduct.getQuantity());
-            }
-        }
+        Map<String, Integer> productQuantities = toProductQuantities(order);
         
-        // Verificar disponibilidad de stock
-        if (!productQuantities.isEmpty()) {
-            Map<String, Boolean> stockAvailability = stockPort.checkStockAvailability(productQuantities);
-            
-            // Verificar si todos los productos tienen suficiente stock
-            for (Map.Entry<String, Boolean> entry : stockAvailability.entrySet()) {
-                if (!entry.getValue()) {
-                    throw new RuntimeException("Stock insuficiente para el producto: " + entry.getKey());
-                }
-            }
-            
-            // Reducir el stock
+        // Reducir el stock: la reserva es atómica y verifica disponibilidad en la misma operación
+        boolean heldStockConfirmed = holdId != null && !productQuantities.isEmpty()
+                && stockPort.confirm(holdId, order.getUserId(), productQuantities);
+        if (holdId != null && !heldStockConfirmed) {
+            // La reserva no coincide con la orden: se libera para no apartar el stock dos veces
+            stockPort.release(holdId, order.getUserId());
+        }
+        if (!heldStockConfirmed && !productQuantities.isEmpty()) {
             boolean stockReduced = stockPort.reduceStock(productQuantities);
             if (!stockReduced) {
+                // Solo en el camino de error se consulta qué producto no alcanzó
+                Map<String, Boolean> stockAvailability = stockPort.checkStockAvailability(productQuantities);
+                for (Map.Entry<String, Boolean> entry : stockAvailability.entrySet()) {
+                    if (!entry.getValue()) {
+                        throw new RuntimeException("Stock insuficiente para el producto: " + entry.getKey());
+                    }
+                }
                 throw new RuntimeException("Error al reducir el stock de los productos");
             }
         }
@@ -91,6 +107,7 @@ public class OrderService {
         }
         
         Order savedOrder = orderPort.createOrder(order);
+        orderKpiService.recordOrderCreated(savedOrder.getStatus(), savedOrder.getTotal());
         return new OrderPaymentResponse(savedOrder, clientSecret); // clientSecret ahora contiene la URL de pago
     }
 
@@ -110,6 +127,67 @@ public class OrderService {
         return orderPort.findOrdersByStatus(status);
     }
 
+    public CursorPage<Order> findOrdersPage(String cursor, Integer limit) {
+        int pageSize = CursorPage.limit(limit);
+        return toPage(orderPort.findAllOrders(pageKey(cursor), pageSize + 1), pageSize);
+    }
+
+    public CursorPage<Order> findOrdersByUserIdPage(String userId, String cursor, Integer limit) {
+        int pageSize = CursorPage.limit(limit);
+        return toPage(orderPort.findOrdersByUserId(userId, pageKey(cursor), pageSize + 1), pageSize);
+    }
+
+    public CursorPage<Order> findOrdersByStatusPage(OrderStatus status, String cursor, Integer limit) {
+        int pageSize = CursorPage.limit(limit);
+        return toPage(orderPort.findOrdersByStatus(status, pageKey(cursor), pageSize + 1), pageSize);
+    }
+
+    public CursorPage<Order> findOrdersByDateRangePage(Date from, Date to, String cursor, Integer limit) {
+        int pageSize = CursorPage.limit(limit);
+        return toPage(orderPort.findOrdersByDateRange(from, to, pageKey(cursor), pageSize + 1), pageSize);
+    }
+
+    private static OrderPageKey pageKey(String cursor) {
+        return OrderPageKey.parse(CursorPage.decode(cursor));
+    }
+
+    private static CursorPage<Order> toPage(List<Order> orders, int pageSize) {
+        return CursorPage.of(orders, pageSize, order -> OrderPageKey.of(order).format());
+    }
+
+    /**
+     * Recorre las órdenes que cumplen los filtros en orden de fecha, leyendo de a una página para
+     * no tener nunca el conjunto entero en memoria. Con rango de fechas se recorre ese rango y el
+     * estado se filtra al pasar; si no, se recorre el índice del estado o todas las órdenes.
+     * @return cantidad de órdenes entregadas a sink
+     */
+    public long forEachOrder(OrderStatus status, Date from, Date to, Consumer<Order> sink) {
+        boolean byDate = from != null || to != null;
+        OrderPageKey after = null;
+        long delivered = 0;
+        while (true) {
+            List<Order> page;
+            if (byDate) {
+                page = orderPort.findOrdersByDateRange(from, to, after, EXPORT_PAGE_SIZE);
+            } else if (status != null) {
+                page = orderPort.findOrdersByStatus(status, after, EXPORT_PAGE_SIZE);
+            } else {
+                page = orderPort.findAllOrders(after, EXPORT_PAGE_SIZE);
+            }
+            for (Order order : page) {
+                if (status == null || order.getStatus() == status) {
+                    sink.accept(order);
+                    delivered++;
+                }
+            }
+            if (page.isEmpty()) {
+                return delivered;
+            }
+            after = OrderPageKey.of(page.get(page.size() - 1));
+        }
+    }
+
+
     public Order updateOrderStatus(String orderId, OrderStatus newStatus) {
         Optional<Order> existingOrder = orderPort.findOrderById(orderId);
         if (existingOrder.isEmpty()) {
@@ -117,7 +195,9 @@ public class OrderService {
         }
         // Validate status transition
         validateStatusTransition(existingOrder.get().getStatus(), newStatus);
-        return orderPort.updateOrderStatus(orderId, newStatus);
+        Order updatedOrder = orderPort.updateOrderStatus(orderId, newStatus);
+        orderKpiService.recordStatusChange(newStatus);
+        return updatedOrder;
     }
 
     public Order updateOrder(Order order) {
@@ -164,12 +244,7 @@ public class OrderService {
         if (orderOpt.isPresent()) {
             Order order = orderOpt.get();
             
-            Map<String, Integer> productQuantities = new HashMap<>();
-            if (order.getProducts() != null) {
-                for (OrderProduct orderProduct : order.getProducts()) {
-                    productQuantities.put(orderProduct.getProductId(), orderProduct.getQuantity());
-                }
-            }
+            Map<String, Integer> productQuantities = toProductQuantities(order);
             
             if (!productQuantities.isEmpty()) {
                 stockPort.restoreStock(productQuantities);
@@ -178,6 +253,19 @@ public class OrderService {
         }
     }
 
+    /**
+     * Agrupa las líneas de la orden por producto para operar el stock en un solo lote
+     */
+    static Map<String, Integer> toProductQuantities(Order order) {
+        Map<String, Integer> productQuantities = new HashMap<>();
+        if (order.getProducts() != null) {
+            for (OrderProduct orderProduct : order.getProducts()) {
+                productQuantities.merge(orderProduct.getProductId(), orderProduct.getQuantity(), Integer::sum);
+            }
+        }
+        return productQuantities;
+    }
+
     private void validateStatusTransition(OrderStatus currentStatus, OrderStatus newStatus) {
         // Business rules for status transitions
         switch (currentStatus) {
@@ -243,11 +331,8 @@ public class OrderService {
         
         // Restaurar stock si la orden había reducido stock
         if (order.getStatus() == OrderStatus.PROCESSING || order.getStatus() == OrderStatus.CONFIRMED || order.getStatus() == OrderStatus.PREPARING) {
-            if (order.getProducts() != null) {
-                Map<String, Integer> productQuantities = new HashMap<>();
-                for (OrderProduct orderProduct : order.getProducts()) {
-                    productQuantities.put(orderProduct.getProductId(), orderProduct.getQuantity());
-                }
+            Map<String, Integer> productQuantities = toProductQuantities(order);
+            if (!productQuantities.isEmpty()) {
                 stockPort.restoreStock(productQuantities);
             }
         }
@@ -257,6 +342,7 @@ public class OrderService {
         
         // Guardar la orden actualizada
         Order updatedOrder = orderPort.updateOrder(order);
+        orderKpiService.recordStatusChange(OrderStatus.CANCELLED);
         
         // Enviar email de cancelación
         try {
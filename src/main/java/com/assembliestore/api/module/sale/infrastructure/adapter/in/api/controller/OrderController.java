@@ -1,27 +1,44 @@
 package com.assembliestore.api.module.sale.infrastructure.adapter.in.api.controller;
 
+import com.assembliestore.api.common.error.OrderAdmissionException;
+import com.assembliestore.api.common.export.ExportFormat;
+import com.assembliestore.api.common.export.ExportWriter;
 import com.assembliestore.api.common.response.ApiResponse;
+import com.assembliestore.api.common.type.CursorPage;
 import com.assembliestore.api.module.sale.application.dto.request.CreateOrderRequestDto;
 import com.assembliestore.api.module.sale.application.dto.request.UpdateOrderStatusRequestDto;
+import com.assembliestore.api.module.sale.application.dto.response.OrderPaymentResponse;
 import com.assembliestore.api.module.sale.application.dto.response.OrderResponseDto;
 import com.assembliestore.api.module.sale.application.mapper.OrderMapper;
+import com.assembliestore.api.module.sale.application.service.OrderAdmissionService;
+import com.assembliestore.api.module.sale.application.service.OrderKpiService;
 import com.assembliestore.api.module.sale.application.service.OrderService;
 import com.assembliestore.api.module.sale.domain.entity.Order;
 import com.assembliestore.api.module.sale.domain.entity.OrderStatus;
 import com.assembliestore.api.module.user.application.port.TokenPort;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Parameter;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.UncheckedIOException;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/orders")
@@ -30,12 +47,33 @@ public class OrderController {
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private OrderAdmissionService orderAdmissionService;
+
+    @Autowired
+    private OrderKpiService orderKpiService;
+
     @Autowired
     private OrderMapper orderMapper;
 
     @Autowired
     private TokenPort tokenPort;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private static final List<ExportWriter.Column<OrderResponseDto>> EXPORT_COLUMNS = List.of(
+            new ExportWriter.Column<>("id", OrderResponseDto::getId),
+            new ExportWriter.Column<>("userId", OrderResponseDto::getUserId),
+            new ExportWriter.Column<>("status", OrderResponseDto::getStatus),
+            new ExportWriter.Column<>("total", OrderResponseDto::getTotal),
+            new ExportWriter.Column<>("items", order -> order.getProducts() != null ? order.getProducts().size() : 0),
+            new ExportWriter.Column<>("paymentMethod", OrderResponseDto::getPaymentMethod),
+            new ExportWriter.Column<>("orderDate", OrderResponseDto::getOrderDate),
+            new ExportWriter.Column<>("statusUpdateDate", OrderResponseDto::getStatusUpdateDate),
+            new ExportWriter.Column<>("city", order -> order.getShippingAddress() != null ? order.getShippingAddress().getCity() : null),
+            new ExportWriter.Column<>("country", order -> order.getShippingAddress() != null ? order.getShippingAddress().getCountry() : null));
+
     /**
      * Extrae el userId del token JWT
      */
@@ -57,20 +95,134 @@ public class OrderController {
 
     @PostMapping
     @PreAuthorize("hasRole('CLIENT') or hasRole('ADMIN') or hasRole('MANAGEMENT')")
-    public ResponseEntity<ApiResponse<Object>> createOrder(
+    public DeferredResult<ResponseEntity<ApiResponse<Object>>> createOrder(
             @Valid @RequestBody CreateOrderRequestDto createOrderDto,
             HttpServletRequest request) {
+        // La respuesta puede esperar turno en la cola de admisión sin retener el hilo de la petición
+        DeferredResult<ResponseEntity<ApiResponse<Object>>> result = new DeferredResult<>(
+                orderAdmissionService.getWaitTimeout().plusSeconds(60).toMillis(),
+                ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .body(ApiResponse.error("Error creating order: request timed out")));
         try {
             // Extract userId from token instead of request body
             String userId = getUserIdFromToken(request);
             Order order = orderMapper.toEntity(createOrderDto, userId);
-            var response = orderService.createOrder(order);
-            return ResponseEntity.status(HttpStatus.CREATED)
-                    .body(ApiResponse.success("Order created successfully", response));
+            CompletableFuture<OrderPaymentResponse> admission =
+                    orderAdmissionService.submit(order, createOrderDto.getHoldId());
+            // Si la petición se corta o vence, el turno se retira de la cola para que la orden
+            // no se cree después de haberle respondido error al cliente
+            result.onError(error -> admission.cancel(false));
+            result.onTimeout(() -> admission.cancel(false));
+            admission.whenComplete((response, error) -> {
+                if (error == null) {
+                    result.setResult(ResponseEntity.status(HttpStatus.CREATED)
+                            .body(ApiResponse.success("Order created successfully", response)));
+                } else {
+                    result.setResult(toErrorResponse(error));
+                }
+            });
         } catch (Exception e) {
-            return ResponseEntity.badRequest()
-                    .body(ApiResponse.error("Error creating order: " + e.getMessage()));
+            result.setResult(toErrorResponse(e));
+        }
+        return result;
+    }
+
+    @GetMapping("/admission/{productId}")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('MANAGEMENT')")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getAdmissionStatus(
+            @Parameter(description = "ID del producto") @PathVariable String productId) {
+
+        Optional<Map<String, Object>> status = orderAdmissionService.getStatus(productId);
+        if (status.isPresent()) {
+            return ResponseEntity.ok(ApiResponse.success("Admission queue status retrieved", status.get()));
+        } else {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error("El producto no tiene cola de admisión"));
+        }
+    }
+
+    @PutMapping("/admission/{productId}")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('MANAGEMENT')")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> enableAdmission(
+            @Parameter(description = "ID del producto") @PathVariable String productId,
+            @Parameter(description = "Órdenes por segundo que salen de la cola") @RequestParam(defaultValue = "0") int drainPerSecond) {
+
+        orderAdmissionService.enable(productId, drainPerSecond);
+        return ResponseEntity.ok(ApiResponse.success("Admission queue enabled",
+                orderAdmissionService.getStatus(productId).orElse(null)));
+    }
+
+    @DeleteMapping("/admission/{productId}")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('MANAGEMENT')")
+    public ResponseEntity<ApiResponse<Void>> disableAdmission(
+            @Parameter(description = "ID del producto") @PathVariable String productId) {
+
+        if (!orderAdmissionService.disable(productId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error("El producto no tiene cola de admisión"));
+        }
+        return ResponseEntity.ok(ApiResponse.success("Admission queue disabled", null));
+    }
+
+    /**
+     * Indicadores de la ventana actual, para cargar el tablero antes de suscribirse a admin-kpis
+     */
+    @GetMapping("/kpis")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('MANAGEMENT')")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getOrderKpis() {
+        return ResponseEntity.ok(ApiResponse.success("Order KPIs retrieved", orderKpiService.getSnapshot()));
+    }
+
+    /**
+     * Exportación de órdenes para finanzas y operaciones. Se escribe a medida que se recorre el
+     * repositorio, así que no se arma la lista en memoria; se comprime con gzip si el cliente lo acepta.
+     */
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('MANAGEMENT')")
+    public ResponseEntity<?> exportOrders(
+            @Parameter(description = "ndjson o csv") @RequestParam(defaultValue = "ndjson") String format,
+            @Parameter(description = "Filtrar por estado") @RequestParam(required = false) String status,
+            @Parameter(description = "Desde (ISO-8601, inclusive)") @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+            @Parameter(description = "Hasta (ISO-8601, exclusivo)") @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        ExportFormat exportFormat;
+        OrderStatus orderStatus;
+        try {
+            exportFormat = ExportFormat.fromValue(format);
+            orderStatus = status != null ? OrderStatus.fromValue(status) : null;
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("Invalid export parameters: " + e.getMessage()));
         }
+
+        boolean gzip = ExportWriter.acceptsGzip(acceptEncoding);
+        StreamingResponseBody body = out -> {
+            try (ExportWriter<OrderResponseDto> writer =
+                         new ExportWriter<>(out, exportFormat, gzip, objectMapper, EXPORT_COLUMNS)) {
+                Consumer<OrderResponseDto> sink = writer.sink();
+                orderService.forEachOrder(orderStatus, from, to, order -> sink.accept(orderMapper.toResponseDto(order)));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok()
+                .headers(ExportWriter.responseHeaders("orders", exportFormat, gzip))
+                .body(body);
+    }
+
+    private ResponseEntity<ApiResponse<Object>> toErrorResponse(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof OrderAdmissionException admissionError) {
+            HttpStatus status = admissionError.getReason() == OrderAdmissionException.Reason.SOLD_OUT
+                    ? HttpStatus.CONFLICT
+                    : HttpStatus.SERVICE_UNAVAILABLE;
+            return ResponseEntity.status(status)
+                    .body(ApiResponse.error("Error creating order: " + cause.getMessage()));
+        }
+        return ResponseEntity.badRequest()
+                .body(ApiResponse.error("Error creating order: " + cause.getMessage()));
     }
 
     @GetMapping("/{id}")
@@ -90,41 +242,76 @@ public class OrderController {
 
     @GetMapping
     @PreAuthorize("hasRole('ADMIN') or hasRole('MANAGEMENT')")
-    public ResponseEntity<ApiResponse<List<OrderResponseDto>>> getAllOrders() {
-        
-        List<Order> orders = orderService.findAllOrders();
-        List<OrderResponseDto> response = orderMapper.toResponseDtoList(orders);
-        
-        return ResponseEntity.ok(ApiResponse.success("Órdenes obtenidas exitosamente", response));
+    public ResponseEntity<ApiResponse<CursorPage<OrderResponseDto>>> getAllOrders(
+            @Parameter(description = "nextCursor de la página anterior") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Tamaño de página (máximo 100)") @RequestParam(required = false) Integer limit) {
+
+        try {
+            CursorPage<OrderResponseDto> response = orderService.findOrdersPage(cursor, limit)
+                    .map(orderMapper::toResponseDto);
+            return ResponseEntity.ok(ApiResponse.success("Órdenes obtenidas exitosamente", response));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
     }
 
     @GetMapping("/user/{userId}")
     @PreAuthorize("hasRole('CLIENT') or hasRole('ADMIN') or hasRole('MANAGEMENT')")
-    public ResponseEntity<ApiResponse<List<OrderResponseDto>>> getOrdersByUserId(
-            @Parameter(description = "ID del usuario") @PathVariable String userId) {
-        
-        List<Order> orders = orderService.findOrdersByUserId(userId);
-        List<OrderResponseDto> response = orderMapper.toResponseDtoList(orders);
-        
-        return ResponseEntity.ok(ApiResponse.success("Órdenes del usuario obtenidas", response));
+    public ResponseEntity<ApiResponse<CursorPage<OrderResponseDto>>> getOrdersByUserId(
+            @Parameter(description = "ID del usuario") @PathVariable String userId,
+            @Parameter(description = "nextCursor de la página anterior") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Tamaño de página (máximo 100)") @RequestParam(required = false) Integer limit) {
+
+        try {
+            CursorPage<OrderResponseDto> response = orderService.findOrdersByUserIdPage(userId, cursor, limit)
+                    .map(orderMapper::toResponseDto);
+            return ResponseEntity.ok(ApiResponse.success("Órdenes del usuario obtenidas", response));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
     }
 
     @GetMapping("/status/{status}")
 
     @PreAuthorize("hasRole('ADMIN') or hasRole('MANAGEMENT')")
-    public ResponseEntity<ApiResponse<List<OrderResponseDto>>> getOrdersByStatus(
-            @Parameter(description = "Order status") @PathVariable String status) {
-        
+    public ResponseEntity<ApiResponse<CursorPage<OrderResponseDto>>> getOrdersByStatus(
+            @Parameter(description = "Order status") @PathVariable String status,
+            @Parameter(description = "nextCursor de la página anterior") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Tamaño de página (máximo 100)") @RequestParam(required = false) Integer limit) {
+
+        OrderStatus orderStatus;
         try {
-            OrderStatus orderStatus = OrderStatus.fromValue(status);
-            List<Order> orders = orderService.findOrdersByStatus(orderStatus);
-            List<OrderResponseDto> response = orderMapper.toResponseDtoList(orders);
-            
-            return ResponseEntity.ok(ApiResponse.success("Orders by status retrieved", response));
+            orderStatus = OrderStatus.fromValue(status);
         } catch (Exception e) {
             return ResponseEntity.badRequest()
                     .body(ApiResponse.error("Invalid status: " + status));
         }
+        try {
+            CursorPage<OrderResponseDto> response = orderService.findOrdersByStatusPage(orderStatus, cursor, limit)
+                    .map(orderMapper::toResponseDto);
+            return ResponseEntity.ok(ApiResponse.success("Orders by status retrieved", response));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/date-range")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('MANAGEMENT')")
+    public ResponseEntity<ApiResponse<CursorPage<OrderResponseDto>>> getOrdersByDateRange(
+            @Parameter(description = "Desde (ISO-8601, inclusive)") @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+            @Parameter(description = "Hasta (ISO-8601, exclusivo)") @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+            @Parameter(description = "nextCursor de la página anterior") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Tamaño de página (máximo 100)") @RequestParam(required = false) Integer limit) {
+
+        try {
+            CursorPage<OrderResponseDto> response = orderService.findOrdersByDateRangePage(from, to, cursor, limit)
+                    .map(orderMapper::toResponseDto);
+            return ResponseEntity.ok(ApiResponse.success("Orders by date range retrieved", response));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
     }
 
     @PatchMapping("/{id}/status")
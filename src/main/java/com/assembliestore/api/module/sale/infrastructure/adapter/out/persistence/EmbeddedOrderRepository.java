@@ -0,0 +1,140 @@
+package com.assembliestore.api.module.sale.infrastructure.adapter.out.persistence;
+
+import com.assembliestore.api.common.storage.EmbeddedStore;
+import com.assembliestore.api.common.storage.StoredCollection;
+import com.assembliestore.api.module.sale.application.port.OrderPageKey;
+import com.assembliestore.api.module.sale.application.port.OrderPort;
+import com.assembliestore.api.module.sale.domain.entity.Order;
+import com.assembliestore.api.module.sale.domain.entity.OrderStatus;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Órdenes en el almacenamiento embebido. deleteOrder es un borrado lógico y los listados
+ * no incluyen las órdenes borradas.
+ *
+ * Las consultas por usuario, estado y fecha se resuelven con OrderIndex, que se reconstruye al
+ * arrancar y se actualiza después de cada escritura confirmada.
+ */
+@Repository
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "embedded")
+public class EmbeddedOrderRepository implements OrderPort {
+
+    static final String COLLECTION = "orders";
+
+    private final StoredCollection<Order> orders;
+    private final OrderIndex index = new OrderIndex();
+
+    public EmbeddedOrderRepository(EmbeddedStore store) {
+        this.orders = store.collection(COLLECTION, Order.class);
+        orders.forEach((id, order) -> index.put(order));
+    }
+
+    @Override
+    public synchronized Order createOrder(Order order) {
+        if (order.getId() == null || order.getId().isEmpty()) {
+            order.setId(UUID.randomUUID().toString());
+        }
+        Date now = new Date();
+        if (order.getOrderDate() == null) {
+            order.setOrderDate(now);
+        }
+        if (order.getStatusUpdateDate() == null) {
+            order.setStatusUpdateDate(now);
+        }
+        store(order);
+        return order;
+    }
+
+    @Override
+    public Optional<Order> findOrderById(String orderId) {
+        return orders.find(orderId);
+    }
+
+    @Override
+    public List<Order> findAllOrders() {
+        return load(index.allIds());
+    }
+
+    @Override
+    public List<Order> findOrdersByUserId(String userId) {
+        return load(index.idsByUser(userId));
+    }
+
+    @Override
+    public List<Order> findOrdersByStatus(OrderStatus status) {
+        return load(index.idsByStatus(status));
+    }
+
+    @Override
+    public List<Order> findOrdersByDateRange(Date from, Date to) {
+        return load(index.idsBetween(from != null ? from.getTime() : Long.MIN_VALUE,
+                to != null ? to.getTime() : Long.MAX_VALUE));
+    }
+
+    @Override
+    public List<Order> findAllOrders(OrderPageKey after, int limit) {
+        return load(index.allIds(after, limit));
+    }
+
+    @Override
+    public List<Order> findOrdersByUserId(String userId, OrderPageKey after, int limit) {
+        return load(index.idsByUser(userId, after, limit));
+    }
+
+    @Override
+    public List<Order> findOrdersByStatus(OrderStatus status, OrderPageKey after, int limit) {
+        return load(index.idsByStatus(status, after, limit));
+    }
+
+    @Override
+    public List<Order> findOrdersByDateRange(Date from, Date to, OrderPageKey after, int limit) {
+        return load(index.idsBetween(from != null ? from.getTime() : Long.MIN_VALUE,
+                to != null ? to.getTime() : Long.MAX_VALUE, after, limit));
+    }
+
+    @Override
+    public synchronized Order updateOrderStatus(String orderId, OrderStatus newStatus) {
+        Order order = orders.find(orderId)
+                .orElseThrow(() -> new IllegalArgumentException("Order not found: " + orderId));
+        order.updateStatus(newStatus);
+        store(order);
+        return order;
+    }
+
+    @Override
+    public synchronized Order updateOrder(Order order) {
+        store(order);
+        return order;
+    }
+
+    @Override
+    public synchronized void deleteOrder(String orderId) {
+        orders.find(orderId).ifPresent(order -> {
+            order.setDeleted(true);
+            order.setDeletedAt(new Date());
+            store(order);
+        });
+    }
+
+    private void store(Order order) {
+        orders.put(order.getId(), order);
+        index.put(order);
+    }
+
+    private List<Order> load(Collection<String> orderIds) {
+        List<Order> found = new ArrayList<>(orderIds.size());
+        for (String orderId : orderIds) {
+            // Una orden borrada entre la consulta al índice y la lectura se omite
+            orders.find(orderId).filter(order -> !order.isDeleted()).ifPresent(found::add);
+        }
+        return found;
+    }
+}
@@ -0,0 +1,171 @@
+package com.assembliestore.api.module.sale.infrastructure.adapter.out.persistence;
+
+import com.assembliestore.api.module.sale.application.port.OrderPageKey;
+import com.assembliestore.api.module.sale.domain.entity.Order;
+import com.assembliestore.api.module.sale.domain.entity.OrderStatus;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Índices secundarios de las órdenes vigentes (no borradas), mantenidos en cada escritura:
+ *
+ * - por usuario, la lista de sus órdenes;
+ * - por estado, el conjunto de órdenes en ese estado: cambiar el estado de una orden es sacarla
+ *   de un conjunto y ponerla en otro, sin tocar los demás índices;
+ * - por fecha, una skip list de todas las órdenes para consultas por rango.
+ *
+ * Los tres se ordenan por OrderPageKey (fecha y id), así que cada consulta se puede retomar
+ * después de la última clave leída. El historial de un usuario, la vista por estado y un rango
+ * de fechas cuestan lo que mide el resultado y no la cantidad total de órdenes. Las escrituras
+ * las serializa el repositorio; las lecturas pueden correr en paralelo con ellas.
+ */
+final class OrderIndex {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<OrderPageKey>> byUser = new ConcurrentHashMap<>();
+    private final Map<OrderStatus, NavigableSet<OrderPageKey>> byStatus = new EnumMap<>(OrderStatus.class);
+    private final ConcurrentSkipListSet<OrderPageKey> byDate = new ConcurrentSkipListSet<>();
+
+    OrderIndex() {
+        for (OrderStatus status : OrderStatus.values()) {
+            byStatus.put(status, new ConcurrentSkipListSet<>());
+        }
+    }
+
+    /**
+     * Indexa la orden o la reubica si ya estaba; una orden borrada sale de los índices
+     */
+    void put(Order order) {
+        if (order.isDeleted()) {
+            remove(order.getId());
+            return;
+        }
+        Entry next = new Entry(order.getUserId(), order.getStatus(), OrderPageKey.of(order));
+        Entry previous = entries.put(order.getId(), next);
+        if (previous == null) {
+            addStatus(next);
+            addPosition(next);
+            return;
+        }
+        boolean moved = !previous.key().equals(next.key());
+        if (moved || previous.status() != next.status()) {
+            removeStatus(previous);
+            addStatus(next);
+        }
+        if (moved || !sameUser(previous, next)) {
+            removePosition(previous);
+            addPosition(next);
+        }
+    }
+
+    void remove(String orderId) {
+        Entry previous = entries.remove(orderId);
+        if (previous != null) {
+            removeStatus(previous);
+            removePosition(previous);
+        }
+    }
+
+    /**
+     * Órdenes del usuario, de la más vieja a la más nueva
+     */
+    List<String> idsByUser(String userId) {
+        return idsByUser(userId, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Hasta limit órdenes del usuario posteriores a after (desde la primera si es null)
+     */
+    List<String> idsByUser(String userId, OrderPageKey after, int limit) {
+        NavigableSet<OrderPageKey> keys = userId != null ? byUser.get(userId) : null;
+        return keys != null ? ids(keys, after, limit) : List.of();
+    }
+
+    List<String> idsByStatus(OrderStatus status) {
+        return idsByStatus(status, null, Integer.MAX_VALUE);
+    }
+
+    List<String> idsByStatus(OrderStatus status, OrderPageKey after, int limit) {
+        return status != null ? ids(byStatus.get(status), after, limit) : List.of();
+    }
+
+    /**
+     * Órdenes con orderDate en [fromMillis, toMillis), de la más vieja a la más nueva
+     */
+    List<String> idsBetween(long fromMillis, long toMillis) {
+        return idsBetween(fromMillis, toMillis, null, Integer.MAX_VALUE);
+    }
+
+    List<String> idsBetween(long fromMillis, long toMillis, OrderPageKey after, int limit) {
+        if (fromMillis >= toMillis) {
+            return List.of();
+        }
+        return ids(byDate.subSet(OrderPageKey.first(fromMillis), true, OrderPageKey.first(toMillis), false),
+                after, limit);
+    }
+
+    List<String> allIds() {
+        return allIds(null, Integer.MAX_VALUE);
+    }
+
+    List<String> allIds(OrderPageKey after, int limit) {
+        return ids(byDate, after, limit);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void addStatus(Entry entry) {
+        if (entry.status() != null) {
+            byStatus.get(entry.status()).add(entry.key());
+        }
+    }
+
+    private void removeStatus(Entry entry) {
+        if (entry.status() != null) {
+            byStatus.get(entry.status()).remove(entry.key());
+        }
+    }
+
+    private void addPosition(Entry entry) {
+        byDate.add(entry.key());
+        if (entry.userId() != null) {
+            byUser.computeIfAbsent(entry.userId(), userId -> new ConcurrentSkipListSet<>()).add(entry.key());
+        }
+    }
+
+    private void removePosition(Entry entry) {
+        byDate.remove(entry.key());
+        if (entry.userId() != null) {
+            byUser.computeIfPresent(entry.userId(), (userId, keys) -> {
+                keys.remove(entry.key());
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    private static boolean sameUser(Entry previous, Entry next) {
+        return previous.userId() == null ? next.userId() == null : previous.userId().equals(next.userId());
+    }
+
+    private static List<String> ids(NavigableSet<OrderPageKey> keys, OrderPageKey after, int limit) {
+        List<String> ids = new ArrayList<>();
+        for (OrderPageKey key : after != null ? keys.tailSet(after, false) : keys) {
+            if (ids.size() >= limit) {
+                break;
+            }
+            ids.add(key.orderId());
+        }
+        return ids;
+    }
+
+    private record Entry(String userId, OrderStatus status, OrderPageKey key) {
+    }
+}
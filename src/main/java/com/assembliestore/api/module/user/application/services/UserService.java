@@ -1,11 +1,13 @@
 package com.assembliestore.api.module.user.application.services;
 
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.stereotype.Service;
 
 import com.assembliestore.api.module.user.infrastructure.adapter.dto.UpdateUserRequest;
 import com.assembliestore.api.common.error.UserNotFoundException;
+import com.assembliestore.api.common.type.CursorPage;
 import com.assembliestore.api.module.user.application.dto.UserDto;
 import com.assembliestore.api.module.user.application.mapper.UserMapper;
 import com.assembliestore.api.module.user.application.port.UserPort;
@@ -62,6 +64,12 @@ public class UserService implements UserPort {
         return this._userRepository.findAll();
     }
 
+    public CursorPage<User> getUsersPage(String cursor, Integer limit) {
+        int pageSize = CursorPage.limit(limit);
+        List<User> users = this._userRepository.findPage(CursorPage.decode(cursor), pageSize + 1);
+        return CursorPage.of(users, pageSize, User::getId);
+    }
+
     public void deleteAllUsers() {
         Iterable<User> users = this._userRepository.findAll();
         for (User user : users) {
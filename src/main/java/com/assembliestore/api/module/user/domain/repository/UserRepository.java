@@ -1,5 +1,6 @@
 package com.assembliestore.api.module.user.domain.repository;
 
+import java.util.List;
 import java.util.Optional;
 
 import com.assembliestore.api.module.user.domain.entities.User;
@@ -12,6 +13,11 @@ public interface UserRepository {
 
     Iterable<User> findAll();
 
+    /**
+     * Hasta limit usuarios con id mayor que afterId (desde el primero si es null), en orden de id
+     */
+    List<User> findPage(String afterId, int limit);
+
     void update(User user);
 
     void delete(String id);
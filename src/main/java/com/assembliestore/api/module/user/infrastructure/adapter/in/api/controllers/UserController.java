@@ -20,6 +20,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.assembliestore.api.common.interfaces.SuccessfulResponse;
+import com.assembliestore.api.common.type.CursorPage;
 import com.assembliestore.api.module.user.infrastructure.adapter.dto.SignInRequest;
 import com.assembliestore.api.module.user.infrastructure.adapter.dto.SignInResponse;
 import com.assembliestore.api.module.user.infrastructure.adapter.dto.SignUpRequest;
@@ -121,8 +122,10 @@ public class UserController {
 	}*/
 
 	@GetMapping
-	public ResponseEntity<Iterable<User>> getAllUsers() {
-		Iterable<User> users = _userService.getAllUsers();
+	public ResponseEntity<CursorPage<User>> getAllUsers(
+			@RequestParam(required = false) String cursor,
+			@RequestParam(required = false) Integer limit) {
+		CursorPage<User> users = _userService.getUsersPage(cursor, limit);
 		return ResponseEntity.ok(users);
 	}
 
@@ -0,0 +1,98 @@
+package com.assembliestore.api.module.user.infrastructure.adapter.out.persistence;
+
+import com.assembliestore.api.common.storage.EmbeddedStore;
+import com.assembliestore.api.common.storage.StoredCollection;
+import com.assembliestore.api.module.user.domain.entities.OTPVerification;
+import com.assembliestore.api.module.user.domain.repository.OTPRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Códigos OTP en el almacenamiento embebido, con un índice en memoria de email a ids
+ */
+@Repository
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "embedded")
+public class EmbeddedOTPRepository implements OTPRepository {
+
+    static final String COLLECTION = "otps";
+    private static final Comparator<OTPVerification> NEWEST =
+            Comparator.comparing(OTPVerification::getCreatedAt, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final StoredCollection<OTPVerification> otps;
+    private final Map<String, Set<String>> idsByEmail = new ConcurrentHashMap<>();
+
+    public EmbeddedOTPRepository(EmbeddedStore store) {
+        this.otps = store.collection(COLLECTION, OTPVerification.class);
+        otps.forEach((id, otp) -> index(otp));
+    }
+
+    @Override
+    public OTPVerification save(OTPVerification otp) {
+        if (otp.getId() == null || otp.getId().isEmpty()) {
+            otp.setId(UUID.randomUUID().toString());
+        }
+        otps.put(otp.getId(), otp);
+        index(otp);
+        return otp;
+    }
+
+    @Override
+    public Optional<OTPVerification> findByEmailAndOtpCode(String email, String otpCode) {
+        return byEmail(email).stream()
+                .filter(otp -> otp.getOtpCode() != null && otp.getOtpCode().equals(otpCode))
+                .max(NEWEST);
+    }
+
+    @Override
+    public Optional<OTPVerification> findActiveByEmail(String email) {
+        return byEmail(email).stream()
+                .filter(OTPVerification::isActive)
+                .max(NEWEST);
+    }
+
+    @Override
+    public synchronized void deactivatePreviousOTPs(String email) {
+        Map<String, OTPVerification> changed = new LinkedHashMap<>();
+        for (OTPVerification otp : byEmail(email)) {
+            if (otp.isActive()) {
+                otp.setActive(false);
+                changed.put(otp.getId(), otp);
+            }
+        }
+        if (!changed.isEmpty()) {
+            otps.putAll(changed);
+        }
+    }
+
+    @Override
+    public synchronized OTPVerification markAsVerified(String id) {
+        OTPVerification otp = otps.find(id).orElseThrow(() -> new IllegalArgumentException("OTP not found: " + id));
+        otp.setVerified(true);
+        otp.setActive(false);
+        otps.put(id, otp);
+        return otp;
+    }
+
+    private List<OTPVerification> byEmail(String email) {
+        Set<String> ids = email != null ? idsByEmail.get(email) : null;
+        if (ids == null) {
+            return List.of();
+        }
+        return ids.stream().map(otps::find).flatMap(Optional::stream).toList();
+    }
+
+    private void index(OTPVerification otp) {
+        if (otp.getEmail() != null) {
+            idsByEmail.computeIfAbsent(otp.getEmail(), email -> ConcurrentHashMap.newKeySet()).add(otp.getId());
+        }
+    }
+}
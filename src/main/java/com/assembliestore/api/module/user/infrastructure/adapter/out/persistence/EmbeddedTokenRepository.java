@@ -0,0 +1,39 @@
+package com.assembliestore.api.module.user.infrastructure.adapter.out.persistence;
+
+import com.assembliestore.api.common.storage.EmbeddedStore;
+import com.assembliestore.api.common.storage.StoredCollection;
+import com.assembliestore.api.module.user.domain.entities.Token;
+import com.assembliestore.api.module.user.domain.repository.TokenRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.Optional;
+
+/**
+ * Tokens en el almacenamiento embebido, guardados bajo el propio token porque es la única
+ * forma en que se buscan
+ */
+@Repository
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "embedded")
+public class EmbeddedTokenRepository implements TokenRepository {
+
+    static final String COLLECTION = "tokens";
+
+    private final StoredCollection<Token> tokens;
+
+    public EmbeddedTokenRepository(EmbeddedStore store) {
+        this.tokens = store.collection(COLLECTION, Token.class);
+    }
+
+    @Override
+    public void saveToken(Token token) {
+        token.setUpdatedAt(new Date());
+        tokens.put(token.getToken(), token);
+    }
+
+    @Override
+    public Optional<Token> findByToken(String token) {
+        return tokens.find(token);
+    }
+}
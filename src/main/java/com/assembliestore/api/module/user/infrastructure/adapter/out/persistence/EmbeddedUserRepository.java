@@ -0,0 +1,123 @@
+package com.assembliestore.api.module.user.infrastructure.adapter.out.persistence;
+
+import com.assembliestore.api.common.storage.EmbeddedStore;
+import com.assembliestore.api.common.storage.StoredCollection;
+import com.assembliestore.api.module.user.domain.entities.User;
+import com.assembliestore.api.module.user.domain.repository.UserRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Usuarios en el almacenamiento embebido, con índices en memoria por email y por userName
+ * para el login. delete es un borrado lógico; hardDelete quita el documento.
+ */
+@Repository
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "embedded")
+public class EmbeddedUserRepository implements UserRepository {
+
+    static final String COLLECTION = "users";
+
+    private final StoredCollection<User> users;
+    private final Map<String, String> idsByEmail = new ConcurrentHashMap<>();
+    private final Map<String, String> idsByUserName = new ConcurrentHashMap<>();
+
+    public EmbeddedUserRepository(EmbeddedStore store) {
+        this.users = store.collection(COLLECTION, User.class);
+        users.forEach((id, user) -> index(null, user));
+    }
+
+    @Override
+    public synchronized User create(User user) {
+        if (user.getId() == null || user.getId().isEmpty()) {
+            user.setId(UUID.randomUUID().toString());
+        }
+        Date now = new Date();
+        if (user.getCreatedAt() == null) {
+            user.setCreatedAt(now);
+        }
+        user.setUpdatedAt(now);
+        store(user);
+        return user;
+    }
+
+    @Override
+    public Optional<User> findById(String id) {
+        return users.find(id);
+    }
+
+    @Override
+    public Iterable<User> findAll() {
+        return users.findAll();
+    }
+
+    @Override
+    public List<User> findPage(String afterId, int limit) {
+        return users.findAfter(afterId, limit);
+    }
+
+    @Override
+    public synchronized void update(User user) {
+        user.setUpdatedAt(new Date());
+        store(user);
+    }
+
+    @Override
+    public synchronized void delete(String id) {
+        User user = users.find(id).orElseThrow(() -> new IllegalArgumentException("User not found: " + id));
+        user.setDeleted(true);
+        user.setDeletedAt(new Date());
+        users.put(id, user);
+    }
+
+    @Override
+    public synchronized void hardDelete(String id) {
+        users.find(id).ifPresent(user -> {
+            users.remove(id);
+            unindex(user);
+        });
+    }
+
+    @Override
+    public Optional<User> findByEmail(String email) {
+        return email != null ? users.find(idsByEmail.get(email)) : Optional.empty();
+    }
+
+    @Override
+    public Optional<User> findByUserName(String userName) {
+        return userName != null ? users.find(idsByUserName.get(userName)) : Optional.empty();
+    }
+
+    private void store(User user) {
+        User previous = users.find(user.getId()).orElse(null);
+        users.put(user.getId(), user);
+        index(previous, user);
+    }
+
+    private void index(User previous, User user) {
+        if (previous != null) {
+            unindex(previous);
+        }
+        if (user.getEmail() != null) {
+            idsByEmail.put(user.getEmail(), user.getId());
+        }
+        if (user.getUserName() != null) {
+            idsByUserName.put(user.getUserName(), user.getId());
+        }
+    }
+
+    private void unindex(User user) {
+        if (user.getEmail() != null) {
+            idsByEmail.remove(user.getEmail(), user.getId());
+        }
+        if (user.getUserName() != null) {
+            idsByUserName.remove(user.getUserName(), user.getId());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.assembliestore.api.service.realtime.broker;
+
+import com.assembliestore.api.service.realtime.dto.RealtimeEvent;
+import com.assembliestore.api.service.realtime.port.RealtimeBroker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Base de los adaptadores: identidad del nodo, numeración de eventos propios y entrega local
+ * con descarte de duplicados.
+ *
+ * Los eventos recibidos de otros nodos pasan por una ventana deslizante por origen (como el
+ * anti-replay de IPsec): se aceptan desordenados dentro de la ventana y se descartan los ya
+ * vistos o demasiado viejos. Los eventos propios que vuelven (un nodo listado como su propio
+ * par, multicast con loopback) se descartan por origen.
+ */
+public abstract class AbstractRealtimeBroker implements RealtimeBroker {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractRealtimeBroker.class);
+
+    static final int DUPLICATE_WINDOW = 1024;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final AtomicLong nextEventId = new AtomicLong();
+    private final List<Consumer<RealtimeEvent>> deliveries = new CopyOnWriteArrayList<>();
+    private final Map<String, SeenWindow> seenByOrigin = new ConcurrentHashMap<>();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    @Override
+    public void onDelivery(Consumer<RealtimeEvent> delivery) {
+        deliveries.add(delivery);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("publishedEvents", published.get());
+        stats.put("receivedEvents", received.get());
+        stats.put("duplicateEvents", duplicates.get());
+        return stats;
+    }
+
+    /**
+     * Asigna origen e id a un evento publicado en este nodo
+     */
+    protected RealtimeEvent stamp(RealtimeEvent event) {
+        event.setOrigin(nodeId);
+        event.setId(nextEventId.incrementAndGet());
+        published.incrementAndGet();
+        return event;
+    }
+
+    /**
+     * Entrega a las sesiones locales un evento publicado aquí
+     */
+    protected void deliverOwn(RealtimeEvent event) {
+        deliver(event);
+    }
+
+    /**
+     * Entrega un evento recibido de otro nodo, salvo que sea propio o ya se haya entregado
+     * @return false si se descartó como duplicado
+     */
+    protected boolean deliverRemote(RealtimeEvent event) {
+        received.incrementAndGet();
+        if (nodeId.equals(event.getOrigin())
+                || !seenByOrigin.computeIfAbsent(event.getOrigin(), k -> new SeenWindow()).markFirstSeen(event.getId())) {
+            duplicates.incrementAndGet();
+            logger.debug("Duplicate realtime event dropped: {}", event);
+            return false;
+        }
+        deliver(event);
+        return true;
+    }
+
+    private void deliver(RealtimeEvent event) {
+        for (Consumer<RealtimeEvent> delivery : deliveries) {
+            try {
+                delivery.accept(event);
+            } catch (Exception e) {
+                logger.error("Error delivering realtime event {}: {}", event, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Ids vistos de un origen: el más alto y cuáles de los DUPLICATE_WINDOW anteriores llegaron
+     */
+    private static final class SeenWindow {
+        private long highest;
+        private final BitSet seen = new BitSet(DUPLICATE_WINDOW);
+
+        synchronized boolean markFirstSeen(long id) {
+            if (id > highest) {
+                long shift = id - highest;
+                if (shift >= DUPLICATE_WINDOW) {
+                    seen.clear();
+                } else {
+                    // Los ids que salen de la ventana liberan su bit para reutilizarlo
+                    for (long old = highest + 1; old <= id; old++) {
+                        seen.clear((int) (old % DUPLICATE_WINDOW));
+                    }
+                }
+                highest = id;
+                seen.set((int) (id % DUPLICATE_WINDOW));
+                return true;
+            }
+            if (highest - id >= DUPLICATE_WINDOW) {
+                return false;
+            }
+            int bit = (int) (id % DUPLICATE_WINDOW);
+            if (seen.get(bit)) {
+                return false;
+            }
+            seen.set(bit);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.assembliestore.api.service.realtime.broker;
+
+import com.assembliestore.api.service.realtime.dto.RealtimeEvent;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Broker de una sola instancia: entrega cada evento en este mismo proceso, sin serializarlo.
+ * Es el adaptador por defecto (app.realtime.broker.type=loopback).
+ */
+@Component
+@ConditionalOnProperty(name = "app.realtime.broker.type", havingValue = "loopback", matchIfMissing = true)
+public class LoopbackRealtimeBroker extends AbstractRealtimeBroker {
+
+    @Override
+    public void publish(RealtimeEvent event) {
+        deliverOwn(stamp(event));
+    }
+
+    @Override
+    public boolean isDistributed() {
+        return false;
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = super.getStats();
+        stats.put("type", "loopback");
+        return stats;
+    }
+}
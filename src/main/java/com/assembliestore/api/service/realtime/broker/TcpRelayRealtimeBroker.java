@@ -0,0 +1,414 @@
+package com.assembliestore.api.service.realtime.broker;
+
+import com.assembliestore.api.service.realtime.dto.RealtimeEvent;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Broker que reenvía cada evento a los demás nodos por TCP (app.realtime.broker.type=tcp).
+ *
+ * Cada nodo escucha en app.realtime.broker.tcp.port y mantiene una conexión saliente por par
+ * listado en app.realtime.broker.tcp.peers (host:puerto separados por coma). Los frames son
+ * un int con la longitud seguido del evento en JSON. Publicar no bloquea: el evento se entrega
+ * localmente y se encola para cada par; si la cola de un par se llena (par caído o lento) el
+ * evento se descarta para ese par. La entrega entre nodos es "como mucho una vez", igual que
+ * un cliente WebSocket que se desconecta y pierde lo que se envió mientras tanto.
+ *
+ * El puerto escucha en app.realtime.broker.tcp.bind-address, por defecto solo loopback; para
+ * nodos en otras máquinas se configura la interfaz de la red interna. Cada conexión se
+ * autentica en los dos sentidos con HMAC-SHA256 bajo el secreto compartido
+ * app.realtime.broker.tcp.secret, que es obligatorio y no viaja por la red: el que conecta envía
+ * un nonce, el que escucha responde con el suyo y la firma de ambos con la etiqueta de servidor,
+ * y recién si esa firma es válida el que conecta firma ambos nonces con la etiqueta de cliente.
+ * Así quien conecta no firma nada, ni envía eventos, para alguien que no probó tener el secreto,
+ * y una firma de un sentido no sirve para el otro. Una conexión que no responde bien se cierra
+ * sin leer ni enviar eventos.
+ *
+ * Para probar dos nodos en una sola máquina basta con puertos distintos y el mismo secreto:
+ * nodo A con port=7400 y peers=localhost:7401, nodo B con port=7401 y peers=localhost:7400.
+ */
+@Component
+@ConditionalOnProperty(name = "app.realtime.broker.type", havingValue = "tcp")
+public class TcpRelayRealtimeBroker extends AbstractRealtimeBroker {
+
+    private static final Logger logger = LoggerFactory.getLogger(TcpRelayRealtimeBroker.class);
+
+    // Un evento más grande que esto es un error de protocolo, no un lote de stock
+    static final int MAX_FRAME_BYTES = 4 * 1024 * 1024;
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+    static final int NONCE_BYTES = 32;
+    static final int MAC_BYTES = 32;
+    private static final byte[] SERVER_LABEL = "relay-server".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CLIENT_LABEL = "relay-client".getBytes(StandardCharsets.US_ASCII);
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private final ServerSocket serverSocket;
+    private final SecretKeySpec secret;
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicLong rejectedConnections = new AtomicLong();
+    private final int queueCapacity;
+    private final List<PeerLink> peers = new CopyOnWriteArrayList<>();
+    private final List<Socket> inbound = new CopyOnWriteArrayList<>();
+    private volatile boolean running = true;
+
+    @Autowired
+    public TcpRelayRealtimeBroker(@Value("${app.realtime.broker.tcp.bind-address:127.0.0.1}") String bindAddress,
+                                  @Value("${app.realtime.broker.tcp.port:7400}") int port,
+                                  @Value("${app.realtime.broker.tcp.secret:}") String secret,
+                                  @Value("${app.realtime.broker.tcp.peers:}") String peers,
+                                  @Value("${app.realtime.broker.tcp.queue-capacity:10000}") int queueCapacity) throws IOException {
+        this(InetAddress.getByName(bindAddress), port, secret, parsePeers(peers), queueCapacity);
+    }
+
+    TcpRelayRealtimeBroker(InetAddress bindAddress, int port, String secret, List<InetSocketAddress> peers,
+                           int queueCapacity) throws IOException {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalArgumentException("app.realtime.broker.tcp.secret is required for the TCP relay");
+        }
+        this.secret = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        this.queueCapacity = queueCapacity;
+        this.serverSocket = new ServerSocket(port, 50, bindAddress);
+        Thread.ofVirtual().name("realtime-relay-accept").start(this::acceptLoop);
+        for (InetSocketAddress peer : peers) {
+            addPeer(peer);
+        }
+        logger.info("Realtime TCP relay listening on {}:{} with {} peers", bindAddress.getHostAddress(),
+                getLocalPort(), peers.size());
+    }
+
+    static List<InetSocketAddress> parsePeers(String peers) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String peer : peers.split(",")) {
+            String trimmed = peer.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int colon = trimmed.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Invalid realtime peer, expected host:port: " + trimmed);
+            }
+            addresses.add(InetSocketAddress.createUnresolved(trimmed.substring(0, colon),
+                    Integer.parseInt(trimmed.substring(colon + 1))));
+        }
+        return addresses;
+    }
+
+    @Override
+    public void publish(RealtimeEvent event) {
+        stamp(event);
+        deliverOwn(event);
+        if (peers.isEmpty()) {
+            return;
+        }
+        byte[] frame;
+        try {
+            frame = objectMapper.writeValueAsBytes(event);
+        } catch (IOException e) {
+            logger.error("Error serializing realtime event {}: {}", event, e.getMessage());
+            return;
+        }
+        for (PeerLink peer : peers) {
+            peer.offer(frame);
+        }
+    }
+
+    @Override
+    public boolean isDistributed() {
+        return !peers.isEmpty();
+    }
+
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Agrega un par al que reenviar los eventos publicados en este nodo
+     */
+    void addPeer(InetSocketAddress address) {
+        PeerLink peer = new PeerLink(address);
+        peers.add(peer);
+        Thread.ofVirtual().name("realtime-relay-peer-" + address).start(peer::writeLoop);
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = super.getStats();
+        stats.put("type", "tcp");
+        stats.put("port", getLocalPort());
+        stats.put("bindAddress", serverSocket.getInetAddress().getHostAddress());
+        stats.put("inboundConnections", inbound.size());
+        stats.put("rejectedConnections", rejectedConnections.get());
+        List<Map<String, Object>> peerStats = new ArrayList<>();
+        for (PeerLink peer : peers) {
+            peerStats.add(peer.getStats());
+        }
+        stats.put("peers", peerStats);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        closeQuietly(serverSocket);
+        for (Socket socket : inbound) {
+            closeQuietly(socket);
+        }
+        for (PeerLink peer : peers) {
+            peer.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                inbound.add(socket);
+                Thread.ofVirtual().name("realtime-relay-read-" + socket.getRemoteSocketAddress())
+                        .start(() -> readLoop(socket));
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn("Error accepting realtime relay connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void readLoop(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            if (!authenticate(socket, in)) {
+                rejectedConnections.incrementAndGet();
+                logger.warn("Realtime relay connection from {} failed authentication, closing",
+                        socket.getRemoteSocketAddress());
+                return;
+            }
+            while (running) {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_FRAME_BYTES) {
+                    logger.warn("Invalid realtime relay frame of {} bytes from {}, closing",
+                            length, socket.getRemoteSocketAddress());
+                    return;
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                RealtimeEvent event;
+                try {
+                    event = objectMapper.readValue(frame, RealtimeEvent.class);
+                } catch (IOException e) {
+                    logger.warn("Unreadable realtime relay frame from {}: {}", socket.getRemoteSocketAddress(), e.getMessage());
+                    continue;
+                }
+                deliverRemote(event);
+            }
+        } catch (EOFException e) {
+            logger.debug("Realtime relay peer {} closed the connection", socket.getRemoteSocketAddress());
+        } catch (IOException e) {
+            if (running) {
+                logger.warn("Realtime relay connection from {} failed: {}", socket.getRemoteSocketAddress(), e.getMessage());
+            }
+        } finally {
+            inbound.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Lado que escucha del handshake: lee el nonce del par, responde con el propio y la firma de
+     * servidor, y espera la firma de cliente sobre ambos. Mientras tanto la conexión tiene un
+     * timeout de lectura, para que un par mudo no retenga el hilo.
+     */
+    private boolean authenticate(Socket socket, DataInputStream in) throws IOException {
+        byte[] clientNonce = new byte[NONCE_BYTES];
+        byte[] response = new byte[MAC_BYTES];
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+        try {
+            in.readFully(clientNonce);
+            byte[] serverNonce = new byte[NONCE_BYTES];
+            random.nextBytes(serverNonce);
+            OutputStream out = socket.getOutputStream();
+            out.write(serverNonce);
+            out.write(sign(SERVER_LABEL, clientNonce, serverNonce));
+            out.flush();
+            in.readFully(response);
+            socket.setSoTimeout(0);
+            return MessageDigest.isEqual(sign(CLIENT_LABEL, clientNonce, serverNonce), response);
+        } catch (SocketTimeoutException | EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Lado que conecta del handshake: solo firma si el par probó primero tener el secreto
+     * @return false si el par no es un nodo con el mismo secreto
+     */
+    private boolean authenticatePeer(Socket socket, DataOutputStream out) throws IOException {
+        byte[] clientNonce = new byte[NONCE_BYTES];
+        random.nextBytes(clientNonce);
+        out.write(clientNonce);
+        out.flush();
+        byte[] serverNonce = new byte[NONCE_BYTES];
+        byte[] serverMac = new byte[MAC_BYTES];
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        in.readFully(serverNonce);
+        in.readFully(serverMac);
+        socket.setSoTimeout(0);
+        if (!MessageDigest.isEqual(sign(SERVER_LABEL, clientNonce, serverNonce), serverMac)) {
+            return false;
+        }
+        out.write(sign(CLIENT_LABEL, clientNonce, serverNonce));
+        out.flush();
+        return true;
+    }
+
+    private byte[] sign(byte[] label, byte[] clientNonce, byte[] serverNonce) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(secret);
+            mac.update(label);
+            mac.update(clientNonce);
+            return mac.doFinal(serverNonce);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+            // Cerrando de todas formas
+        }
+    }
+
+    /**
+     * Conexión saliente hacia un par, con su cola y su hilo escritor. Reconecta con espera
+     * exponencial; lo que se encola mientras tanto se envía al reconectar si cabe en la cola.
+     */
+    private final class PeerLink {
+        private final InetSocketAddress address;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong reconnects = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private volatile Socket socket;
+
+        PeerLink(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        void offer(byte[] frame) {
+            if (!queue.offer(frame)) {
+                dropped.incrementAndGet();
+            }
+        }
+
+        void writeLoop() {
+            long backoff = MIN_BACKOFF_MILLIS;
+            while (running) {
+                try (Socket connection = new Socket()) {
+                    socket = connection;
+                    connection.connect(new InetSocketAddress(address.getHostString(), address.getPort()), 5000);
+                    connection.setTcpNoDelay(true);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+                    // Nada de eventos hasta que el par pruebe tener el secreto
+                    if (!authenticatePeer(connection, out)) {
+                        rejected.incrementAndGet();
+                        logger.warn("Realtime relay peer {} failed authentication, not sending events", address);
+                        throw new IOException("peer failed authentication");
+                    }
+                    backoff = MIN_BACKOFF_MILLIS;
+                    logger.info("Realtime relay connected to peer {}", address);
+                    while (running) {
+                        byte[] frame = queue.poll(1, TimeUnit.SECONDS);
+                        if (frame == null) {
+                            continue;
+                        }
+                        // Lo que ya esté encolado sale en el mismo flush
+                        do {
+                            out.writeInt(frame.length);
+                            out.write(frame);
+                            sent.incrementAndGet();
+                        } while ((frame = queue.poll()) != null);
+                        out.flush();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (IOException e) {
+                    if (!running) {
+                        return;
+                    }
+                    reconnects.incrementAndGet();
+                    logger.debug("Realtime relay peer {} unavailable: {}", address, e.getMessage());
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+
+        void close() {
+            Socket current = socket;
+            if (current != null) {
+                closeQuietly(current);
+            }
+        }
+
+        Map<String, Object> getStats() {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("address", address.getHostString() + ":" + address.getPort());
+            stats.put("queued", queue.size());
+            stats.put("sent", sent.get());
+            stats.put("dropped", dropped.get());
+            stats.put("reconnects", reconnects.get());
+            stats.put("rejected", rejected.get());
+            return stats;
+        }
+    }
+}
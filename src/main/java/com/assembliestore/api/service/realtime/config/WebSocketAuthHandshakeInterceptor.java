@@ -0,0 +1,77 @@
+package com.assembliestore.api.service.realtime.config;
+
+import com.assembliestore.api.module.user.application.port.TokenPort;
+import com.assembliestore.api.service.realtime.service.WebSocketSessionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resuelve el usuario autenticado durante el handshake y lo deja en los atributos de la
+ * sesión, para que el registro de sesiones pueda indexarla por userId. También guarda su rol,
+ * que decide si la sesión puede suscribirse a los canales de administración.
+ */
+@Component
+public class WebSocketAuthHandshakeInterceptor implements HandshakeInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketAuthHandshakeInterceptor.class);
+
+    @Autowired
+    private TokenPort tokenPort;
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String authHeader = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            return true;
+        }
+        String role = resolveRole();
+        if (role != null) {
+            attributes.put(WebSocketSessionManager.ROLE_ATTRIBUTE, role);
+        }
+        try {
+            var jwtTokenDto = tokenPort.findByToken(authHeader.substring(7));
+            if (jwtTokenDto != null && jwtTokenDto.getUserId() != null) {
+                attributes.put(WebSocketSessionManager.USER_ID_ATTRIBUTE, jwtTokenDto.getUserId());
+            }
+        } catch (Exception e) {
+            // Sin usuario la sesión sigue funcionando, solo no recibe mensajes personales
+            logger.warn("Could not resolve user for WebSocket handshake: {}", e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Rol más alto del usuario que autenticó el filtro JWT: ADMIN > MANAGEMENT > CLIENT
+     */
+    private String resolveRole() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication.getAuthorities() == null) {
+            return null;
+        }
+        for (String role : List.of("ADMIN", "MANAGEMENT", "CLIENT")) {
+            if (authentication.getAuthorities().stream()
+                    .anyMatch(auth -> auth.getAuthority().equals("ROLE_" + role))) {
+                return role;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
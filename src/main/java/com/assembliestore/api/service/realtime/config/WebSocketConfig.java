@@ -7,6 +7,15 @@ import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
 
+/**
+ * Endpoints WebSocket.
+ *
+ * Codificación: JSON por defecto. El cliente puede pedir en Sec-WebSocket-Protocol el
+ * subprotocolo binario de stock ({@code assemblies.stock-binary.v1}); los subprotocolos los
+ * declara el handler y el handshake elige el primero que pida el cliente. La compresión
+ * permessage-deflate la negocia el contenedor (Tomcat la trae instalada) cuando el cliente la
+ * ofrece en Sec-WebSocket-Extensions, y se combina con cualquiera de las dos codificaciones.
+ */
 @Configuration
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
@@ -14,18 +23,24 @@ public class WebSocketConfig implements WebSocketConfigurer {
     @Autowired
     private WebSocketHandler webSocketHandler;
 
+    @Autowired
+    private WebSocketAuthHandshakeInterceptor webSocketAuthHandshakeInterceptor;
+
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         // Endpoint para stock updates (solo MANAGEMENT)
         registry.addHandler(webSocketHandler, "/ws/stock")
+                .addInterceptors(webSocketAuthHandshakeInterceptor)
                 .setAllowedOrigins("*"); // En producción, especifica dominios permitidos
 
         // Endpoint para notificaciones generales (CLIENT, ADMIN, MANAGEMENT)
         registry.addHandler(webSocketHandler, "/ws/notifications")
+                .addInterceptors(webSocketAuthHandshakeInterceptor)
                 .setAllowedOrigins("*"); // En producción, especifica dominios permitidos
 
         // Endpoint general para cualquier tipo de comunicación
         registry.addHandler(webSocketHandler, "/ws/general")
+                .addInterceptors(webSocketAuthHandshakeInterceptor)
                 .setAllowedOrigins("*"); // En producción, especifica dominios permitidos
     }
 }
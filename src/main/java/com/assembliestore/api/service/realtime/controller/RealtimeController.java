@@ -1,17 +1,29 @@
 package com.assembliestore.api.service.realtime.controller;
 
+import com.assembliestore.api.module.user.application.port.TokenPort;
 import com.assembliestore.api.service.realtime.dto.NotificationMessage;
 import com.assembliestore.api.service.realtime.dto.StockUpdateMessage;
+import com.assembliestore.api.service.realtime.service.NotificationInbox;
 import com.assembliestore.api.service.realtime.service.RealtimeNotificationService;
+import com.assembliestore.api.service.realtime.service.SseStreamService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -22,6 +34,85 @@ public class RealtimeController {
     @Autowired
     private RealtimeNotificationService notificationService;
 
+    @Autowired
+    private SseStreamService sseStreamService;
+
+    @Autowired
+    private TokenPort tokenPort;
+
+    /**
+     * Extrae el userId del token JWT
+     */
+    private String getUserIdFromToken(HttpServletRequest request) {
+        final String authHeader = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            throw new RuntimeException("Invalid authorization header");
+        }
+
+        var jwtTokenDto = tokenPort.findByToken(authHeader.substring(7));
+        if (jwtTokenDto == null) {
+            throw new RuntimeException("Invalid token");
+        }
+        return jwtTokenDto.getUserId();
+    }
+
+    /**
+     * Extrae el rol del usuario autenticado desde el contexto de seguridad
+     */
+    private String getUserRole() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication.getAuthorities() == null) {
+            return null;
+        }
+        // Rol más alto en orden de prioridad: ADMIN > MANAGEMENT > CLIENT
+        for (String role : List.of("ADMIN", "MANAGEMENT", "CLIENT")) {
+            if (authentication.getAuthorities().stream()
+                    .anyMatch(auth -> auth.getAuthority().equals("ROLE_" + role))) {
+                return role;
+            }
+        }
+        return null;
+    }
+
+    @GetMapping("/inbox")
+    @Operation(summary = "Get pending notifications", description = "Returns personal notifications stored while the user was offline, oldest first. Passing after acknowledges every notification up to that id")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Page of pending notifications"),
+            @ApiResponse(responseCode = "400", description = "Invalid request")
+    })
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<NotificationInbox.Page> getInbox(
+            HttpServletRequest request,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            String userId = getUserIdFromToken(request);
+            return ResponseEntity.ok(notificationService.fetchInbox(userId, after, limit));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Open notification stream", description = "Server-Sent Events stream of the given channels, resumable with Last-Event-ID")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Stream opened"),
+            @ApiResponse(responseCode = "400", description = "Invalid channels"),
+            @ApiResponse(responseCode = "403", description = "Admin channel requested without ADMIN or MANAGEMENT role")
+    })
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<SseEmitter> stream(
+            @RequestParam List<String> channels,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        try {
+            return ResponseEntity.ok(sseStreamService.open(channels, lastEventId, getUserRole()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+    }
+
     @GetMapping("/stats")
     @Operation(summary = "Get WebSocket connection statistics", description = "Returns current WebSocket connection statistics")
     @ApiResponses(value = {
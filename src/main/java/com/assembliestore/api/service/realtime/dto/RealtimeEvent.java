@@ -0,0 +1,181 @@
+package com.assembliestore.api.service.realtime.dto;
+
+import java.util.List;
+
+/**
+ * Evento de tiempo real que viaja por el broker entre nodos. Describe qué entregar, no a qué
+ * sesiones: cada nodo lo aplica sobre las suyas, así los frames binarios, los conflados y los
+ * tópicos se arman según los clientes que tiene cada nodo.
+ */
+public class RealtimeEvent {
+
+    public enum Type {
+        STOCK_UPDATE,   // una actualización de stock, con conflación por producto
+        STOCK_BATCH,    // lote de actualizaciones de una ventana del coalescer
+        BROADCAST,      // mensaje JSON a tipos de conexión y canales
+        USER,           // mensaje JSON a las sesiones de un usuario
+        SESSION         // mensaje JSON a una sesión puntual
+    }
+
+    private String origin;         // nodo que lo publicó
+    private long id;               // secuencia del evento en su nodo de origen
+    private Type type;
+    private List<StockUpdateMessage> stockUpdates;
+    private List<String> connectionTypes;
+    private List<String> channels;
+    private String message;
+    private String conflationKey;
+    private String target;         // userId o sessionId
+    private String priority;       // HIGH, MEDIUM o LOW; null equivale a MEDIUM
+    private boolean keepIfOffline; // USER: guardar en la bandeja del nodo si no tiene sesiones del usuario
+
+    public RealtimeEvent() {
+    }
+
+    public static RealtimeEvent stockUpdate(StockUpdateMessage stockUpdate) {
+        RealtimeEvent event = new RealtimeEvent();
+        event.type = Type.STOCK_UPDATE;
+        event.stockUpdates = List.of(stockUpdate);
+        return event;
+    }
+
+    public static RealtimeEvent stockBatch(List<StockUpdateMessage> stockUpdates) {
+        RealtimeEvent event = new RealtimeEvent();
+        event.type = Type.STOCK_BATCH;
+        event.stockUpdates = stockUpdates;
+        return event;
+    }
+
+    public static RealtimeEvent broadcast(List<String> connectionTypes, List<String> channels, String message,
+                                          String conflationKey) {
+        RealtimeEvent event = new RealtimeEvent();
+        event.type = Type.BROADCAST;
+        event.connectionTypes = connectionTypes;
+        event.channels = channels;
+        event.message = message;
+        event.conflationKey = conflationKey;
+        return event;
+    }
+
+    public static RealtimeEvent toUser(String userId, String message) {
+        RealtimeEvent event = new RealtimeEvent();
+        event.type = Type.USER;
+        event.target = userId;
+        event.message = message;
+        return event;
+    }
+
+    public static RealtimeEvent toSession(String sessionId, String message) {
+        RealtimeEvent event = new RealtimeEvent();
+        event.type = Type.SESSION;
+        event.target = sessionId;
+        event.message = message;
+        return event;
+    }
+
+    // Getters y Setters
+    public String getOrigin() {
+        return origin;
+    }
+
+    public void setOrigin(String origin) {
+        this.origin = origin;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public List<StockUpdateMessage> getStockUpdates() {
+        return stockUpdates;
+    }
+
+    public void setStockUpdates(List<StockUpdateMessage> stockUpdates) {
+        this.stockUpdates = stockUpdates;
+    }
+
+    public List<String> getConnectionTypes() {
+        return connectionTypes;
+    }
+
+    public void setConnectionTypes(List<String> connectionTypes) {
+        this.connectionTypes = connectionTypes;
+    }
+
+    public List<String> getChannels() {
+        return channels;
+    }
+
+    public void setChannels(List<String> channels) {
+        this.channels = channels;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public String getConflationKey() {
+        return conflationKey;
+    }
+
+    public void setConflationKey(String conflationKey) {
+        this.conflationKey = conflationKey;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    public String getPriority() {
+        return priority;
+    }
+
+    public void setPriority(String priority) {
+        this.priority = priority;
+    }
+
+    public boolean isKeepIfOffline() {
+        return keepIfOffline;
+    }
+
+    public void setKeepIfOffline(boolean keepIfOffline) {
+        this.keepIfOffline = keepIfOffline;
+    }
+
+    /**
+     * Identificador único entre nodos: nodo de origen y secuencia en ese nodo
+     */
+    public String globalId() {
+        return origin + ":" + id;
+    }
+
+    @Override
+    public String toString() {
+        return "RealtimeEvent{" +
+                "origin='" + origin + '\'' +
+                ", id=" + id +
+                ", type=" + type +
+                ", target='" + target + '\'' +
+                '}';
+    }
+}
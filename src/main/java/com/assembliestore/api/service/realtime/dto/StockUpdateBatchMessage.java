@@ -0,0 +1,55 @@
+package com.assembliestore.api.service.realtime.dto;
+
+import java.util.List;
+
+public class StockUpdateBatchMessage {
+
+    private String type;                  // STOCK_UPDATE_BATCH
+    private List<String> targetRoles;     // MANAGEMENT, ADMIN
+    private List<StockUpdateMessage> updates;
+    private Long timestamp;
+
+    public StockUpdateBatchMessage() {
+        this.type = "STOCK_UPDATE_BATCH";
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    public StockUpdateBatchMessage(List<StockUpdateMessage> updates, List<String> targetRoles) {
+        this();
+        this.updates = updates;
+        this.targetRoles = targetRoles;
+    }
+
+    // Getters y Setters
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public List<String> getTargetRoles() {
+        return targetRoles;
+    }
+
+    public void setTargetRoles(List<String> targetRoles) {
+        this.targetRoles = targetRoles;
+    }
+
+    public List<StockUpdateMessage> getUpdates() {
+        return updates;
+    }
+
+    public void setUpdates(List<StockUpdateMessage> updates) {
+        this.updates = updates;
+    }
+
+    public Long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(Long timestamp) {
+        this.timestamp = timestamp;
+    }
+}
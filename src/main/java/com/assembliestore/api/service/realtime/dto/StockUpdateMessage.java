@@ -4,6 +4,7 @@ public class StockUpdateMessage {
     
     private String productId;
     private String productName;
+    private String subCategoryId;
     private Integer previousStock;
     private Integer currentStock;
     private Integer stockChange;
@@ -55,6 +56,14 @@ public class StockUpdateMessage {
         this.productName = productName;
     }
 
+    public String getSubCategoryId() {
+        return subCategoryId;
+    }
+
+    public void setSubCategoryId(String subCategoryId) {
+        this.subCategoryId = subCategoryId;
+    }
+
     public Integer getPreviousStock() {
         return previousStock;
     }
@@ -108,6 +117,7 @@ public class StockUpdateMessage {
         return "StockUpdateMessage{" +
                 "productId='" + productId + '\'' +
                 ", productName='" + productName + '\'' +
+                ", subCategoryId='" + subCategoryId + '\'' +
                 ", previousStock=" + previousStock +
                 ", currentStock=" + currentStock +
                 ", stockChange=" + stockChange +
@@ -1,20 +1,28 @@
 package com.assembliestore.api.service.realtime.handler;
 
+import com.assembliestore.api.service.realtime.service.StockDeltaCodec;
 import com.assembliestore.api.service.realtime.service.WebSocketSessionManager;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
 
+import java.util.List;
 import java.util.Map;
 
 @Component
-public class WebSocketHandler implements org.springframework.web.socket.WebSocketHandler {
+public class WebSocketHandler implements org.springframework.web.socket.WebSocketHandler, SubProtocolCapable {
 
     private static final Logger logger = LoggerFactory.getLogger(WebSocketHandler.class);
 
+    /**
+     * Subprotocolo JSON explícito; sin subprotocolo también se usa JSON
+     */
+    public static final String JSON_SUBPROTOCOL = "assemblies.json.v1";
+
     @Autowired
     private WebSocketSessionManager sessionManager;
 
@@ -32,12 +40,14 @@ public class WebSocketHandler implements org.springframework.web.socket.WebSocke
         sessionManager.addSession(session, connectionType);
         
         // Enviar mensaje de bienvenida
-        String welcomeMessage = createWelcomeMessage(connectionType);
-        session.sendMessage(new TextMessage(welcomeMessage));
+        String welcomeMessage = createWelcomeMessage(connectionType, session.getAcceptedProtocol());
+        sessionManager.send(session, welcomeMessage);
     }
 
     @Override
     public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        // Cualquier frame del cliente, incluidos los pong a los pings del servidor, prueba que sigue vivo
+        sessionManager.markActive(session);
         if (message instanceof TextMessage) {
             String payload = ((TextMessage) message).getPayload();
             logger.info("Message received from session {}: {}", session.getId(), payload);
@@ -69,6 +79,16 @@ public class WebSocketHandler implements org.springframework.web.socket.WebSocke
         return false;
     }
 
+    /**
+     * Subprotocolos que se negocian en el handshake (Sec-WebSocket-Protocol). Con el binario,
+     * las actualizaciones de stock llegan como frames de {@link StockDeltaCodec} y el resto de
+     * los mensajes sigue en JSON.
+     */
+    @Override
+    public List<String> getSubProtocols() {
+        return List.of(StockDeltaCodec.SUBPROTOCOL, JSON_SUBPROTOCOL);
+    }
+
     private String extractConnectionType(String uri) {
         if (uri.contains("/ws/stock")) {
             return "STOCK";
@@ -80,11 +100,12 @@ public class WebSocketHandler implements org.springframework.web.socket.WebSocke
         return "UNKNOWN";
     }
 
-    private String createWelcomeMessage(String connectionType) {
+    private String createWelcomeMessage(String connectionType, String protocol) {
         try {
             Map<String, Object> welcomeData = Map.of(
                 "type", "WELCOME",
                 "connectionType", connectionType,
+                "protocol", protocol != null && !protocol.isEmpty() ? protocol : JSON_SUBPROTOCOL,
                 "message", "Connected successfully to " + connectionType + " channel",
                 "timestamp", System.currentTimeMillis()
             );
@@ -131,22 +152,71 @@ public class WebSocketHandler implements org.springframework.web.socket.WebSocke
             "timestamp", System.currentTimeMillis()
         );
         String pongMessage = objectMapper.writeValueAsString(pongData);
-        session.sendMessage(new TextMessage(pongMessage));
+        sessionManager.send(session, pongMessage);
     }
 
     private void handleSubscriptionMessage(WebSocketSession session, Map<String, Object> messageData) throws Exception {
         String channel = (String) messageData.get("channel");
         if (channel != null) {
-            sessionManager.subscribeToChannel(session, channel);
+            // mode CONFLATED: solo el último valor pendiente por producto si la sesión se atrasa
+            Object mode = messageData.get("mode");
+            if ("CONFLATED".equals(mode)) {
+                sessionManager.setConflated(session, true);
+            } else if ("FULL".equals(mode)) {
+                sessionManager.setConflated(session, false);
+            }
+            try {
+                Object fromSeq = messageData.get("fromSeq");
+                if (fromSeq instanceof Number number) {
+                    handleResumeMessage(session, channel, number.longValue());
+                    return;
+                }
+                sessionManager.subscribeToChannel(session, channel);
+            } catch (IllegalArgumentException | AccessDeniedException e) {
+                // Patrón de tópico inválido o canal de administración sin el rol
+                sendErrorMessage(session, e.getMessage());
+                return;
+            }
             
             Map<String, Object> confirmData = Map.of(
                 "type", "SUBSCRIPTION_CONFIRMED",
                 "channel", channel,
-                "message", "Subscribed to channel: " + channel
+                "message", "Subscribed to channel: " + channel,
+                "lastSeq", sessionManager.getLastSequence(channel)
             );
             String confirmMessage = objectMapper.writeValueAsString(confirmData);
-            session.sendMessage(new TextMessage(confirmMessage));
+            sessionManager.send(session, confirmMessage);
+        }
+    }
+
+    /**
+     * SUBSCRIBE con fromSeq: reenvía lo publicado en el canal desde esa secuencia o, si ya no
+     * está en el anillo, pide al cliente que recargue un snapshot (queda suscrito a lo nuevo)
+     */
+    private void handleResumeMessage(WebSocketSession session, String channel, long fromSeq) throws Exception {
+        int replayed = sessionManager.subscribeToChannel(session, channel, fromSeq);
+        long lastSeq = sessionManager.getLastSequence(channel);
+
+        Map<String, Object> responseData;
+        if (replayed < 0) {
+            responseData = Map.of(
+                "type", "RESYNC_REQUIRED",
+                "channel", channel,
+                "fromSeq", fromSeq,
+                "lastSeq", lastSeq,
+                "message", "Requested messages are no longer available, reload a snapshot of channel: " + channel
+            );
+        } else {
+            responseData = Map.of(
+                "type", "SUBSCRIPTION_CONFIRMED",
+                "channel", channel,
+                "message", "Subscribed to channel: " + channel,
+                "fromSeq", fromSeq,
+                "replayed", replayed,
+                "lastSeq", lastSeq
+            );
         }
+        sessionManager.send(session, objectMapper.writeValueAsString(responseData));
     }
 
     private void handleUnsubscriptionMessage(WebSocketSession session, Map<String, Object> messageData) throws Exception {
@@ -160,7 +230,7 @@ public class WebSocketHandler implements org.springframework.web.socket.WebSocke
                 "message", "Unsubscribed from channel: " + channel
             );
             String confirmMessage = objectMapper.writeValueAsString(confirmData);
-            session.sendMessage(new TextMessage(confirmMessage));
+            sessionManager.send(session, confirmMessage);
         }
     }
 
@@ -174,7 +244,7 @@ public class WebSocketHandler implements org.springframework.web.socket.WebSocke
             "response", "Message received: " + payload
         );
         String responseMessage = objectMapper.writeValueAsString(responseData);
-        session.sendMessage(new TextMessage(responseMessage));
+        sessionManager.send(session, responseMessage);
     }
 
     private void sendErrorMessage(WebSocketSession session, String errorMessage) {
@@ -185,7 +255,7 @@ public class WebSocketHandler implements org.springframework.web.socket.WebSocke
                 "timestamp", System.currentTimeMillis()
             );
             String errorJson = objectMapper.writeValueAsString(errorData);
-            session.sendMessage(new TextMessage(errorJson));
+            sessionManager.send(session, errorJson);
         } catch (Exception e) {
             logger.error("Error sending error message to session {}: {}", session.getId(), e.getMessage());
         }
@@ -0,0 +1,34 @@
+package com.assembliestore.api.service.realtime.port;
+
+import com.assembliestore.api.service.realtime.dto.RealtimeEvent;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reparto de eventos de tiempo real entre las instancias de la API.
+ *
+ * Cada nodo guarda sus propias sesiones WebSocket; publicar por el broker hace que el evento
+ * se aplique en las sesiones locales y en las de los demás nodos, una sola vez en cada uno.
+ */
+public interface RealtimeBroker {
+
+    /**
+     * Publica un evento originado en este nodo. No bloquea esperando a otros nodos.
+     */
+    void publish(RealtimeEvent event);
+
+    /**
+     * Registra quién aplica los eventos, propios o recibidos, sobre las sesiones de este nodo
+     */
+    void onDelivery(Consumer<RealtimeEvent> delivery);
+
+    /**
+     * Indica si hay otros nodos a los que se reenvían los eventos
+     */
+    boolean isDistributed();
+
+    String getNodeId();
+
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,80 @@
+package com.assembliestore.api.service.realtime.service;
+
+import org.springframework.web.socket.TextMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Secuencia y últimos mensajes publicados en un canal.
+ *
+ * Cada publicación recibe el siguiente número de secuencia y su frame queda en un anillo de
+ * tamaño fijo, para que un cliente que reconecta pida lo que se perdió en lugar de recargar
+ * todo. El {@link WebSocketSessionManager} lo usa solo bajo el {@link #lock()} del canal, así
+ * que asignar la secuencia, guardar el frame y encolarlo a los suscriptores ocurren en orden
+ * sin frenar las publicaciones de los demás canales.
+ */
+final class ChannelReplayBuffer {
+
+    private final TextMessage[] frames;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Última secuencia asignada; 0 si el canal todavía no publicó nada
+    private volatile long lastSeq;
+
+    ChannelReplayBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.frames = new TextMessage[capacity];
+    }
+
+    /**
+     * Lock de publicación del canal
+     */
+    ReentrantLock lock() {
+        return lock;
+    }
+
+    long nextSeq() {
+        return lastSeq + 1;
+    }
+
+    /**
+     * Guarda el frame ya sellado con {@link #nextSeq()} y avanza la secuencia
+     */
+    void append(TextMessage frame) {
+        long seq = lastSeq + 1;
+        frames[(int) (seq % frames.length)] = frame;
+        lastSeq = seq;
+    }
+
+    long lastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Secuencia más antigua que todavía está en el anillo
+     */
+    long oldestSeq() {
+        return Math.max(1, lastSeq - frames.length + 1);
+    }
+
+    /**
+     * Frames desde fromSeq (inclusive) hasta el último publicado
+     * @return null si parte del hueco ya salió del anillo o fromSeq es de una secuencia que
+     *         este canal no conoce (por ejemplo, tras reiniciar el servidor)
+     */
+    List<TextMessage> since(long fromSeq) {
+        long last = lastSeq;
+        long from = Math.max(fromSeq, 1);
+        if (from > last + 1 || from < oldestSeq()) {
+            return null;
+        }
+        List<TextMessage> gap = new ArrayList<>((int) (last - from + 1));
+        for (long seq = from; seq <= last; seq++) {
+            gap.add(frames[(int) (seq % frames.length)]);
+        }
+        return gap;
+    }
+}
@@ -0,0 +1,289 @@
+package com.assembliestore.api.service.realtime.service;
+
+import com.assembliestore.api.service.realtime.dto.NotificationMessage;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bandeja de notificaciones personales que no se pudieron entregar porque el usuario no tenía
+ * sesiones abiertas.
+ *
+ * Cada usuario tiene un anillo de tamaño fijo que se reserva una sola vez: guardar es escribir
+ * tres posiciones de arreglo bajo el monitor de su bandeja, sin asignar memoria, porque esto
+ * corre debajo de cada evento de pedido y de pago. Al llenarse, lo nuevo pisa lo más viejo; lo
+ * que supera el TTL se saltea al leer y un barrido periódico libera las bandejas vencidas.
+ *
+ * Cada notificación guardada recibe un id creciente que sirve de cursor: pedir la página
+ * siguiente a un id confirma (y libera) todo lo anterior. Los ids son globales y no por
+ * usuario, así un cursor viejo sigue siendo válido aunque la bandeja se haya liberado y
+ * vuelto a crear. Con el broker distribuido se guarda además el id global del evento de origen:
+ * si el mismo evento llega dos veces (enlaces duplicados entre nodos), la página lo entrega una
+ * sola vez, y el cliente que lee bandejas de varios nodos puede descartar repetidos con él.
+ */
+@Component
+public class NotificationInbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationInbox.class);
+
+    static final int MAX_PAGE_SIZE = 100;
+
+    private final Map<String, UserInbox> inboxes = new ConcurrentHashMap<>();
+    private final int capacity;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService sweeper;
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong overwritten = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    @Autowired
+    public NotificationInbox(@Value("${app.realtime.inbox.capacity:50}") int capacity,
+                             @Value("${app.realtime.inbox.ttl:72h}") Duration ttl) {
+        this(capacity, ttl, System::currentTimeMillis, true);
+    }
+
+    NotificationInbox(int capacity, Duration ttl, LongSupplier clock, boolean startSweeper) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        this.capacity = capacity;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+        if (startSweeper) {
+            long sweepMillis = Math.max(1000, Math.min(ttlMillis / 10, TimeUnit.MINUTES.toMillis(10)));
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "notification-inbox-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.sweeper.scheduleWithFixedDelay(this::sweep, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.sweeper = null;
+        }
+    }
+
+    /**
+     * Guarda una notificación para un usuario desconectado. O(1) y sin asignaciones salvo la
+     * primera vez que el usuario recibe algo.
+     */
+    public void store(String userId, NotificationMessage notification) {
+        store(userId, null, notification);
+    }
+
+    /**
+     * @param eventId id global del evento que la trajo; null si no vino del broker
+     */
+    public void store(String userId, String eventId, NotificationMessage notification) {
+        long id = nextId.getAndIncrement();
+        long now = clock.getAsLong();
+        while (true) {
+            UserInbox inbox = inboxes.get(userId);
+            if (inbox == null) {
+                inbox = inboxes.computeIfAbsent(userId, k -> new UserInbox(capacity));
+            }
+            int result = inbox.add(id, eventId, notification, now);
+            // Una bandeja retirada ya no está en el mapa: se reintenta con una nueva
+            if (result != UserInbox.RETIRED) {
+                if (result == UserInbox.OVERWROTE) {
+                    overwritten.incrementAndGet();
+                }
+                stored.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Página de notificaciones pendientes posteriores al cursor, de la más vieja a la más nueva.
+     * Confirma todo lo que tenga id menor o igual a after, que ya no se vuelve a entregar.
+     * @param after último id procesado por el cliente; 0 para empezar desde el principio
+     */
+    public Page fetch(String userId, long after, int limit) {
+        UserInbox inbox = inboxes.get(userId);
+        if (inbox == null) {
+            return new Page(List.of(), Math.max(after, 0), false);
+        }
+        Page page = inbox.fetch(after, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)), clock.getAsLong() - ttlMillis);
+        if (page.items().isEmpty() && !page.hasMore()) {
+            // Nada pendiente: se libera el anillo; si llegó algo entre medio, la bandeja sigue
+            inboxes.computeIfPresent(userId, (k, current) -> current.retireIfEmpty() ? null : current);
+        }
+        return page;
+    }
+
+    /**
+     * Libera lo vencido y las bandejas que quedaron vacías
+     */
+    void sweep() {
+        long expiredBefore = clock.getAsLong() - ttlMillis;
+        int released = 0;
+        for (String userId : inboxes.keySet()) {
+            UserInbox removed = inboxes.computeIfPresent(userId, (k, inbox) -> {
+                expired.addAndGet(inbox.expire(expiredBefore));
+                return inbox.retireIfEmpty() ? null : inbox;
+            });
+            if (removed == null) {
+                released++;
+            }
+        }
+        if (released > 0) {
+            logger.debug("Notification inbox sweep released {} empty inboxes, {} remain", released, inboxes.size());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("users", inboxes.size());
+        stats.put("capacityPerUser", capacity);
+        stats.put("ttlSeconds", ttlMillis / 1000);
+        stats.put("storedNotifications", stored.get());
+        stats.put("overwrittenNotifications", overwritten.get());
+        stats.put("expiredNotifications", expired.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * @param eventId id global del evento de origen, o null
+     */
+    public record Entry(long id, String eventId, NotificationMessage notification) {
+    }
+
+    /**
+     * @param nextCursor id a enviar como after para la página siguiente (y para confirmar esta)
+     */
+    public record Page(List<Entry> items, long nextCursor, boolean hasMore) {
+    }
+
+    /**
+     * Anillo de un usuario. Las posiciones ocupadas van de first a next - 1 (contadores locales;
+     * la posición n está en n % capacidad) y sus ids y horas de guardado crecen en ese orden,
+     * así lo confirmado y lo vencido siempre está al principio.
+     */
+    private static final class UserInbox {
+        static final int ADDED = 0;
+        static final int OVERWROTE = 1;
+        static final int RETIRED = 2;
+
+        private final NotificationMessage[] messages;
+        private final String[] eventIds;
+        private final long[] ids;
+        private final long[] storedAt;
+        private long next;
+        private long first;
+        private boolean retired;
+
+        UserInbox(int capacity) {
+            this.messages = new NotificationMessage[capacity];
+            this.eventIds = new String[capacity];
+            this.ids = new long[capacity];
+            this.storedAt = new long[capacity];
+        }
+
+        /**
+         * @return ADDED, OVERWROTE si pisó una notificación sin leer, o RETIRED si la bandeja
+         *         ya se quitó del mapa
+         */
+        synchronized int add(long id, String eventId, NotificationMessage notification, long now) {
+            if (retired) {
+                return RETIRED;
+            }
+            boolean overwrites = next - first == messages.length;
+            if (overwrites) {
+                first++;
+            }
+            int slot = slot(next);
+            messages[slot] = notification;
+            eventIds[slot] = eventId;
+            ids[slot] = id;
+            storedAt[slot] = now;
+            next++;
+            return overwrites ? OVERWROTE : ADDED;
+        }
+
+        synchronized Page fetch(long after, int limit, long expiredBefore) {
+            // Confirmar lo ya procesado y descartar lo vencido
+            long acked = first;
+            while (acked < next && ids[slot(acked)] <= after) {
+                acked++;
+            }
+            release(acked);
+            expire(expiredBefore);
+            List<Entry> items = new ArrayList<>((int) Math.min(limit, next - first));
+            Set<String> seen = new HashSet<>();
+            long cursor = Math.max(after, 0);
+            long position = first;
+            for (; position < next && items.size() < limit; position++) {
+                int slot = slot(position);
+                cursor = ids[slot];
+                // El mismo evento recibido dos veces se entrega una sola
+                if (eventIds[slot] == null || seen.add(eventIds[slot])) {
+                    items.add(new Entry(ids[slot], eventIds[slot], messages[slot]));
+                }
+            }
+            return new Page(items, cursor, position < next);
+        }
+
+        /**
+         * @return cantidad de notificaciones vencidas que se liberaron
+         */
+        synchronized int expire(long expiredBefore) {
+            long start = first;
+            long until = first;
+            while (until < next && storedAt[slot(until)] < expiredBefore) {
+                until++;
+            }
+            release(until);
+            return (int) (until - start);
+        }
+
+        /**
+         * Marca la bandeja como retirada si está vacía; después de esto no acepta más altas
+         */
+        synchronized boolean retireIfEmpty() {
+            retired = first == next;
+            return retired;
+        }
+
+        private void release(long until) {
+            while (first < until) {
+                messages[slot(first)] = null;
+                eventIds[slot(first)] = null;
+                first++;
+            }
+        }
+
+        private int slot(long position) {
+            return (int) (position % messages.length);
+        }
+    }
+}
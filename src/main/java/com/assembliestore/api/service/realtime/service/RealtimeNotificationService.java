@@ -1,17 +1,29 @@
 package com.assembliestore.api.service.realtime.service;
 
 import com.assembliestore.api.service.realtime.dto.NotificationMessage;
+import com.assembliestore.api.service.realtime.dto.RealtimeEvent;
+import com.assembliestore.api.service.realtime.dto.StockUpdateBatchMessage;
 import com.assembliestore.api.service.realtime.dto.StockUpdateMessage;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.assembliestore.api.service.realtime.port.RealtimeBroker;
+import com.assembliestore.api.service.realtime.service.SessionOutboundQueue.Priority;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * Notificaciones en tiempo real. Cada envío se publica como {@link RealtimeEvent} por el
+ * {@link RealtimeBroker}, que lo aplica en las sesiones de este nodo y en las de los demás;
+ * la entrega a sesiones concretas ocurre en {@link #deliver(RealtimeEvent)}.
+ */
 @Service
 public class RealtimeNotificationService {
 
@@ -20,41 +32,141 @@ public class RealtimeNotificationService {
     @Autowired
     private WebSocketSessionManager sessionManager;
 
+    @Autowired
+    private RealtimeBroker broker;
+
+    @Autowired
+    private NotificationInbox inbox;
+
+    // Destinos de las actualizaciones de stock
+    private static final List<String> STOCK_TYPES = List.of("STOCK", "NOTIFICATIONS");
+    private static final List<String> STOCK_CHANNELS = List.of("stock-updates", "inventory-alerts");
+
+    // Tópico jerárquico por producto: stock.<subCategoryId>.<productId>
+    private static final String STOCK_TOPIC_PREFIX = "stock.";
+    private static final String NO_SUBCATEGORY = "none";
+
     private final ObjectMapper objectMapper;
 
     public RealtimeNotificationService() {
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
         this.objectMapper.disable(com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.objectMapper.disable(com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
     }
 
     /**
      * Enviar notificación de stock a usuarios MANAGEMENT y ADMIN
      */
     public void sendStockUpdate(StockUpdateMessage stockUpdate) {
+        broker.publish(RealtimeEvent.stockUpdate(stockUpdate));
+        logger.info("Stock update sent to MANAGEMENT/ADMIN for product: {} - Stock: {}",
+                   stockUpdate.getProductId(), stockUpdate.getCurrentStock());
+    }
+
+    /**
+     * Enviar en un solo mensaje los cambios de stock acumulados en una ventana.
+     * MANAGEMENT y ADMIN comparten tipo de conexión (NOTIFICATIONS) y canal (stock-updates),
+     * así que un único envío a esos destinos los cubre a ambos sin duplicar mensajes.
+     */
+    public void sendStockUpdateBatch(List<StockUpdateMessage> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        broker.publish(RealtimeEvent.stockBatch(updates));
+        logger.info("Stock update batch sent to MANAGEMENT/ADMIN with {} products", updates.size());
+    }
+
+    @PostConstruct
+    public void registerLocalDelivery() {
+        broker.onDelivery(this::deliver);
+    }
+
+    /**
+     * Aplicar un evento, publicado aquí o recibido de otro nodo, sobre las sesiones locales
+     */
+    private void deliver(RealtimeEvent event) {
+        switch (event.getType()) {
+            case STOCK_UPDATE -> deliverStockUpdate(event.getStockUpdates().get(0));
+            case STOCK_BATCH -> deliverStockUpdateBatch(event.getStockUpdates());
+            case BROADCAST -> sessionManager.broadcast(event.getConnectionTypes(), event.getChannels(),
+                    event.getMessage(), event.getConflationKey(), Priority.of(event.getPriority()));
+            case USER -> {
+                int recipients = sessionManager.sendToUser(event.getTarget(), event.getMessage(),
+                        Priority.of(event.getPriority()));
+                logger.debug("Event {} delivered to {} local sessions of user {}", event.getId(), recipients, event.getTarget());
+                if (recipients == 0 && event.isKeepIfOffline()) {
+                    keepInInbox(event);
+                }
+            }
+            case SESSION -> sessionManager.sendToSession(event.getTarget(), event.getMessage());
+        }
+    }
+
+    private void deliverStockUpdate(StockUpdateMessage stockUpdate) {
         try {
             String jsonMessage = objectMapper.writeValueAsString(stockUpdate);
+            // Si un cliente se atrasa, basta con el último stock de cada producto
+            String conflationKey = "stock:" + stockUpdate.getProductId();
             
-            // Enviar a conexiones de tipo STOCK (para clientes conectados específicamente al canal de stock)
-            sessionManager.broadcastToType("STOCK", jsonMessage);
-            
-            // También enviar a conexiones NOTIFICATIONS (donde estarán MANAGEMENT y ADMIN)
-            sessionManager.broadcastToType("NOTIFICATIONS", jsonMessage);
-            
-            // Enviar al canal específico de stock-updates
-            sessionManager.broadcastToChannel("stock-updates", jsonMessage);
-            
-            // Enviar también al canal de alertas de inventario para MANAGEMENT
-            sessionManager.broadcastToChannel("inventory-alerts", jsonMessage);
-            
-            logger.info("Stock update sent to MANAGEMENT/ADMIN for product: {} - Stock: {}", 
-                       stockUpdate.getProductId(), stockUpdate.getCurrentStock());
-            
+            // Conexiones STOCK y NOTIFICATIONS (MANAGEMENT y ADMIN) más los canales stock-updates
+            // e inventory-alerts; cada sesión lo recibe una vez aunque esté en varios destinos.
+            // El tópico del producto se agrega solo si alguien lo escucha.
+            String topic = stockTopic(stockUpdate);
+            List<String> channels = sessionManager.hasSubscribers(topic)
+                    ? List.of(STOCK_CHANNELS.get(0), STOCK_CHANNELS.get(1), topic)
+                    : STOCK_CHANNELS;
+            byte[] binaryFrame = sessionManager.hasBinarySessions() ? StockDeltaCodec.encode(List.of(stockUpdate)) : null;
+            sessionManager.broadcast(STOCK_TYPES, channels, jsonMessage, conflationKey, null, binaryFrame);
         } catch (Exception e) {
             logger.error("Error sending stock update: {}", e.getMessage());
         }
     }
 
+    private void deliverStockUpdateBatch(List<StockUpdateMessage> updates) {
+        try {
+            StockUpdateBatchMessage batch = new StockUpdateBatchMessage(updates, List.of("MANAGEMENT", "ADMIN"));
+            String jsonMessage = objectMapper.writeValueAsString(batch);
+
+            // Las sesiones en modo conflado reciben un mensaje por producto que reemplaza al pendiente
+            Map<String, String> latestByProduct = new LinkedHashMap<>();
+            if (sessionManager.hasConflatedSessions()) {
+                for (StockUpdateMessage update : updates) {
+                    latestByProduct.put("stock:" + update.getProductId(), objectMapper.writeValueAsString(update));
+                }
+            }
+            // Las que negociaron el subprotocolo binario reciben el lote en formato de ancho fijo
+            byte[] binaryFrame = sessionManager.hasBinarySessions() ? StockDeltaCodec.encode(updates) : null;
+            sessionManager.broadcast(STOCK_TYPES, STOCK_CHANNELS, jsonMessage, null, latestByProduct, binaryFrame);
+            publishToStockTopics(updates);
+        } catch (Exception e) {
+            logger.error("Error sending stock update batch: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Tópico de stock de un producto, para suscripciones como stock.<subCategoryId>.* o stock.#
+     */
+    public static String stockTopic(StockUpdateMessage stockUpdate) {
+        String subCategoryId = stockUpdate.getSubCategoryId() != null ? stockUpdate.getSubCategoryId() : NO_SUBCATEGORY;
+        return STOCK_TOPIC_PREFIX + subCategoryId + "." + stockUpdate.getProductId();
+    }
+
+    /**
+     * Publicar cada elemento del lote en el tópico de su producto. Un tablero que sigue una
+     * subcategoría o un producto recibe solo lo suyo en lugar del lote completo; los tópicos
+     * sin suscriptores se saltean sin serializar nada.
+     */
+    private void publishToStockTopics(List<StockUpdateMessage> updates) throws Exception {
+        for (StockUpdateMessage update : updates) {
+            String topic = stockTopic(update);
+            if (sessionManager.hasSubscribers(topic)) {
+                sessionManager.broadcastToChannel(topic, objectMapper.writeValueAsString(update),
+                        "stock:" + update.getProductId());
+            }
+        }
+    }
+
     /**
      * Enviar notificación general a diferentes roles
      */
@@ -63,21 +175,19 @@ public class RealtimeNotificationService {
             String jsonMessage = objectMapper.writeValueAsString(notification);
             
             // Determinar a qué tipo de conexión enviar
-            String targetType = determineTargetType(notification.getTargetRole());
+            List<String> targetTypes = "ALL".equals(notification.getTargetRole())
+                    ? List.of("NOTIFICATIONS", "GENERAL")
+                    : List.of(determineTargetType(notification.getTargetRole()));
             
-            if ("ALL".equals(notification.getTargetRole())) {
-                // Enviar a todas las conexiones de notificaciones
-                sessionManager.broadcastToType("NOTIFICATIONS", jsonMessage);
-                sessionManager.broadcastToType("GENERAL", jsonMessage);
-            } else {
-                // Enviar a tipo específico
-                sessionManager.broadcastToType(targetType, jsonMessage);
-            }
+            // También enviar a canal específico si está definido, sin duplicar a quien ya lo recibe por tipo
+            List<String> targetChannels = notification.getTargetChannel() != null
+                    ? List.of(notification.getTargetChannel())
+                    : List.of();
             
-            // También enviar a canal específico si está definido
-            if (notification.getTargetChannel() != null) {
-                sessionManager.broadcastToChannel(notification.getTargetChannel(), jsonMessage);
-            }
+            // La prioridad de la notificación decide el carril de cada cola de salida
+            RealtimeEvent event = RealtimeEvent.broadcast(targetTypes, targetChannels, jsonMessage, null);
+            event.setPriority(notification.getPriority());
+            broker.publish(event);
             
             logger.info("Notification sent - Type: {} - Target: {} - Title: {}", 
                        notification.getType(), notification.getTargetRole(), notification.getTitle());
@@ -88,7 +198,8 @@ public class RealtimeNotificationService {
     }
 
     /**
-     * Enviar notificación de cambio de estado de orden
+     * Enviar notificación de cambio de estado de orden. Solo la reciben las sesiones del
+     * dueño del pedido; antes se difundía a todos los clientes conectados.
      */
     public void sendOrderStatusUpdate(String orderId, String oldStatus, String newStatus, String userId) {
         NotificationMessage notification = new NotificationMessage();
@@ -96,7 +207,6 @@ public class RealtimeNotificationService {
         notification.setTitle("Order Status Updated");
         notification.setMessage("Your order #" + orderId + " status changed from " + oldStatus + " to " + newStatus);
         notification.setTargetRole("CLIENT"); // Principalmente para clientes
-        notification.setTargetChannel("order-updates");
         notification.setPriority("MEDIUM");
         
         // Crear datos específicos del pedido
@@ -107,7 +217,7 @@ public class RealtimeNotificationService {
         orderData.put("userId", userId);
         notification.setData(orderData);
         
-        sendNotification(notification);
+        sendToUser(userId, notification, true);
     }
 
     /**
@@ -160,7 +270,8 @@ public class RealtimeNotificationService {
     }
 
     /**
-     * Enviar mensaje personalizado a una sesión específica
+     * Enviar mensaje personalizado a una sesión específica. Si la sesión no está en este nodo
+     * y hay otros nodos, se reenvía y se da por enviado.
      */
     public boolean sendPersonalMessage(String sessionId, String title, String message, Object data) {
         try {
@@ -172,7 +283,14 @@ public class RealtimeNotificationService {
             personalMessage.put("timestamp", System.currentTimeMillis());
             
             String jsonMessage = objectMapper.writeValueAsString(personalMessage);
-            return sessionManager.sendToSession(sessionId, jsonMessage);
+            if (sessionManager.sendToSession(sessionId, jsonMessage)) {
+                return true;
+            }
+            if (broker.isDistributed()) {
+                broker.publish(RealtimeEvent.toSession(sessionId, jsonMessage));
+                return true;
+            }
+            return false;
             
         } catch (Exception e) {
             logger.error("Error sending personal message to session {}: {}", sessionId, e.getMessage());
@@ -180,11 +298,134 @@ public class RealtimeNotificationService {
         }
     }
 
+    /**
+     * Enviar al cliente su turno en la cola de admisión de un producto, solo a sus sesiones
+     */
+    public void sendQueuePosition(String userId, String productId, long ticket, long position, long etaSeconds) {
+        NotificationMessage notification = new NotificationMessage();
+        notification.setType("ORDER_QUEUE_POSITION");
+        notification.setTitle("Order Queued");
+        notification.setMessage("Your order is #" + position + " in line, estimated wait " + etaSeconds + "s");
+        notification.setTargetRole("CLIENT");
+        notification.setPriority("HIGH");
+
+        Map<String, Object> queueData = new HashMap<>();
+        queueData.put("productId", productId);
+        queueData.put("ticket", ticket);
+        queueData.put("position", position);
+        queueData.put("etaSeconds", etaSeconds);
+        notification.setData(queueData);
+
+        // Una posición vieja no sirve al reconectar: no pasa por la bandeja
+        sendToUser(userId, notification, false);
+    }
+
+    /**
+     * Publicar el avance de la cola de admisión de un producto (canal order-queue-{productId}).
+     * Cada cliente calcula su posición como ticket - nowServing.
+     */
+    public void sendQueueProgress(String productId, long nowServing, int queued, int drainPerSecond) {
+        NotificationMessage notification = new NotificationMessage();
+        notification.setType("ORDER_QUEUE_PROGRESS");
+        notification.setTitle("Order Queue Progress");
+        notification.setMessage("Now serving ticket #" + nowServing);
+        notification.setTargetRole("CLIENT");
+        notification.setTargetChannel("order-queue-" + productId);
+        notification.setPriority("MEDIUM");
+
+        Map<String, Object> queueData = new HashMap<>();
+        queueData.put("productId", productId);
+        queueData.put("nowServing", nowServing);
+        queueData.put("queued", queued);
+        queueData.put("drainPerSecond", drainPerSecond);
+        notification.setData(queueData);
+
+        sendToChannel(notification, "order-queue:" + productId);
+    }
+
+    /**
+     * Publicar los indicadores de órdenes de este nodo en el canal admin-kpis. Cada nodo
+     * publica los suyos con su id; una sesión atrasada solo conserva el último de cada nodo.
+     */
+    public void sendOrderKpis(Map<String, Object> kpis) {
+        NotificationMessage notification = new NotificationMessage();
+        notification.setType("ORDER_KPIS");
+        notification.setTitle("Order KPIs");
+        notification.setMessage("Orders in window: " + kpis.get("orders"));
+        notification.setTargetRole("ADMIN");
+        notification.setTargetChannel("admin-kpis");
+        notification.setPriority("LOW");
+
+        Map<String, Object> kpiData = new LinkedHashMap<>(kpis);
+        kpiData.put("node", broker.getNodeId());
+        notification.setData(kpiData);
+
+        sendToChannel(notification, "order-kpis:" + broker.getNodeId());
+    }
+
+    /**
+     * Enviar una notificación personal a las sesiones abiertas de un usuario. Cada nodo que al
+     * recibirla no tiene sesiones del usuario la deja en su bandeja, de donde la recupera con
+     * GET /realtime/inbox en el nodo al que se conecte.
+     * @param keepIfOffline false para avisos que caducan enseguida (posición en una cola) y
+     *                      no tienen sentido leídos más tarde
+     */
+    private void sendToUser(String userId, NotificationMessage notification, boolean keepIfOffline) {
+        try {
+            String jsonMessage = objectMapper.writeValueAsString(notification);
+            RealtimeEvent event = RealtimeEvent.toUser(userId, jsonMessage);
+            event.setPriority(notification.getPriority());
+            event.setKeepIfOffline(keepIfOffline && userId != null);
+            broker.publish(event);
+            logger.debug("Notification {} sent to user {}", notification.getType(), userId);
+        } catch (Exception e) {
+            logger.error("Error sending notification to user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * Enviar una notificación solo a los suscriptores de su canal, sin difundirla por tipo de conexión
+     */
+    private void sendToChannel(NotificationMessage notification, String conflationKey) {
+        try {
+            String jsonMessage = objectMapper.writeValueAsString(notification);
+            RealtimeEvent event = RealtimeEvent.broadcast(List.of(), List.of(notification.getTargetChannel()),
+                    jsonMessage, conflationKey);
+            event.setPriority(notification.getPriority());
+            broker.publish(event);
+        } catch (Exception e) {
+            logger.error("Error sending notification to channel {}: {}", notification.getTargetChannel(), e.getMessage());
+        }
+    }
+
+    /**
+     * Guarda en la bandeja de este nodo una notificación personal que no tuvo sesiones locales.
+     * El evento puede llegar por más de un enlace; la bandeja lo identifica por su id global.
+     */
+    private void keepInInbox(RealtimeEvent event) {
+        try {
+            NotificationMessage notification = objectMapper.readValue(event.getMessage(), NotificationMessage.class);
+            inbox.store(event.getTarget(), event.globalId(), notification);
+        } catch (Exception e) {
+            logger.error("Error keeping notification for user {} in the inbox: {}", event.getTarget(), e.getMessage());
+        }
+    }
+
+    /**
+     * Página de la bandeja de notificaciones pendientes de un usuario; confirma lo anterior a after
+     */
+    public NotificationInbox.Page fetchInbox(String userId, long after, int limit) {
+        return inbox.fetch(userId, after, limit);
+    }
+
     /**
      * Obtener estadísticas de conexiones WebSocket
      */
     public Map<String, Object> getConnectionStats() {
-        return sessionManager.getConnectionStats();
+        Map<String, Object> stats = sessionManager.getConnectionStats();
+        stats.put("broker", broker.getStats());
+        stats.put("inbox", inbox.getStats());
+        return stats;
     }
 
     /**
@@ -206,55 +447,4 @@ public class RealtimeNotificationService {
                 return "GENERAL";
         }
     }
-
-    /**
-     * Enviar notificación de stock específicamente a roles MANAGEMENT y ADMIN
-     */
-    public void sendStockUpdateToManagement(String productId, String productName, int previousStock, int currentStock, String changeType) {
-        // Primero, crear y enviar un StockUpdateMessage para compatibilidad con el cliente
-        StockUpdateMessage stockUpdate = new StockUpdateMessage(productId, productName, previousStock, currentStock);
-        stockUpdate.setChangeType(changeType);
-        stockUpdate.setReason("SALE"); // O el reason apropiado
-        
-        // Enviar el StockUpdateMessage
-        sendStockUpdate(stockUpdate);
-        
-        // También crear mensaje de notificación para MANAGEMENT
-        NotificationMessage managementNotification = new NotificationMessage();
-        managementNotification.setType("STOCK_UPDATE");
-        managementNotification.setTitle("Stock Update");
-        managementNotification.setMessage(String.format("Stock for %s changed from %d to %d (%s)", 
-            productName, previousStock, currentStock, changeType));
-        managementNotification.setTargetRole("MANAGEMENT");
-        managementNotification.setTargetChannel("stock-updates");
-        managementNotification.setPriority("MEDIUM");
-        
-        Map<String, Object> stockData = new HashMap<>();
-        stockData.put("productId", productId);
-        stockData.put("productName", productName);
-        stockData.put("previousStock", previousStock);
-        stockData.put("currentStock", currentStock);
-        stockData.put("stockChange", currentStock - previousStock);
-        stockData.put("changeType", changeType);
-        managementNotification.setData(stockData);
-        
-        // Enviar a MANAGEMENT
-        sendNotification(managementNotification);
-        
-        // Crear mensaje similar para ADMIN
-        NotificationMessage adminNotification = new NotificationMessage();
-        adminNotification.setType("STOCK_UPDATE");
-        adminNotification.setTitle("Stock Update");
-        adminNotification.setMessage(managementNotification.getMessage());
-        adminNotification.setTargetRole("ADMIN");
-        adminNotification.setTargetChannel("stock-updates");
-        adminNotification.setPriority("MEDIUM");
-        adminNotification.setData(stockData);
-        
-        // Enviar a ADMIN
-        sendNotification(adminNotification);
-        
-        logger.info("Stock update sent to MANAGEMENT and ADMIN for product: {} - Previous: {}, Current: {}", 
-                   productName, previousStock, currentStock);
-    }
 }
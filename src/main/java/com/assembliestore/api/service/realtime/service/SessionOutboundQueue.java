@@ -0,0 +1,375 @@
+package com.assembliestore.api.service.realtime.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Cola de salida acotada de una sesión WebSocket.
+ *
+ * Quien difunde solo encola y vuelve; los envíos reales los hace una tarea en el executor
+ * (un hilo virtual por sesión activa), de a un mensaje por vez, así un cliente lento no frena
+ * al hilo que publica ni a las demás sesiones. Como todos los envíos de la sesión pasan por
+ * aquí, nunca hay dos sendMessage concurrentes sobre el mismo socket.
+ *
+ * Los frames se comparten entre sesiones: un broadcast crea un único TextMessage y cada cola
+ * guarda la referencia, sin copias por destinatario.
+ *
+ * Una sesión puede pedir modo conflado ({@link #setConflating(boolean)}): los mensajes con
+ * clave reemplazan al pendiente con la misma clave sea cual sea la política, y no cuentan
+ * para la capacidad, que queda para los mensajes sin clave. Lo pendiente de un consumidor
+ * lento queda acotado por la cantidad de claves (productos), no por el atraso.
+ *
+ * Cada mensaje viaja en un carril según su {@link Priority}: se drena HIGH antes que MEDIUM y
+ * MEDIUM antes que LOW, pero un carril con pendientes que fue salteado {@link #STARVATION_LIMIT}
+ * veces seguidas pasa primero, así el tráfico alto sostenido no deja sin turno a los demás.
+ * La capacidad es común a los tres carriles y ningún carril, tampoco HIGH, la supera. Al
+ * desbordar se descarta primero el LOW más viejo, y un LOW que llega con la cola llena de
+ * MEDIUM y HIGH se descarta. Sin LOW pendiente decide la política configurada: DISCONNECT
+ * cierra la sesión (el cliente reconecta y reanuda con fromSeq o resincroniza) y DROP_OLDEST
+ * o CONFLATE descartan el más viejo del carril menos prioritario con pendientes, lo que deja
+ * un hueco en la secuencia del canal que el cliente recupera al reanudar.
+ */
+public final class SessionOutboundQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionOutboundQueue.class);
+
+    /**
+     * Qué hacer cuando la cola está llena
+     */
+    public enum OverflowPolicy {
+        // Descarta el mensaje más viejo pendiente
+        DROP_OLDEST,
+        // Reemplaza el pendiente con la misma clave; si no hay, descarta el más viejo
+        CONFLATE,
+        // Cierra la sesión: el cliente debe reconectar y resincronizar
+        DISCONNECT
+    }
+
+    /**
+     * Prioridad de entrega; los mensajes sin prioridad explícita van como MEDIUM
+     */
+    public enum Priority {
+        HIGH,
+        MEDIUM,
+        LOW;
+
+        /**
+         * Prioridad a partir del campo priority de una notificación; MEDIUM si no se reconoce
+         */
+        public static Priority of(String priority) {
+            if (priority != null) {
+                for (Priority value : values()) {
+                    if (value.name().equalsIgnoreCase(priority)) {
+                        return value;
+                    }
+                }
+            }
+            return MEDIUM;
+        }
+    }
+
+    // Envíos seguidos de carriles más prioritarios que tolera un carril con pendientes
+    static final int STARVATION_LIMIT = 16;
+
+    private final WebSocketSession session;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final Executor executor;
+    private final Consumer<WebSocketSession> onFailure;
+
+    // Protegidos por el monitor de la cola. Un carril por prioridad; los elementos son frames,
+    // u Outgoing cuando llevan clave de conflación y su contenido puede reemplazarse mientras esperan
+    private final ArrayDeque<Object>[] lanes;
+    private final int[] skipped = new int[Priority.values().length];
+    private final Map<String, Outgoing> pendingByKey = new HashMap<>();
+    private int depth;
+    private int maxDepth;
+
+    private final Runnable drainTask = this::drain;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong conflated = new AtomicLong();
+    private final AtomicLong shed = new AtomicLong();
+    private volatile boolean closed;
+    private volatile boolean conflating;
+
+    SessionOutboundQueue(WebSocketSession session, int capacity, OverflowPolicy policy,
+                         Executor executor, Consumer<WebSocketSession> onFailure) {
+        this.session = session;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.executor = executor;
+        this.onFailure = onFailure;
+        @SuppressWarnings("unchecked")
+        ArrayDeque<Object>[] byPriority = new ArrayDeque[Priority.values().length];
+        for (int i = 0; i < byPriority.length; i++) {
+            byPriority[i] = new ArrayDeque<>();
+        }
+        this.lanes = byPriority;
+    }
+
+    /**
+     * Encola un mensaje sin bloquear
+     * @param conflationKey clave para reemplazar un pendiente equivalente con la política CONFLATE; puede ser null
+     * @return false si la sesión está cerrada o se desconectó por desbordar la cola
+     */
+    public boolean enqueue(String message, String conflationKey) {
+        return enqueue(new TextMessage(message), conflationKey);
+    }
+
+    /**
+     * Encola un frame ya codificado, que puede estar compartido con otras sesiones si es de
+     * texto. Un BinaryMessage no se comparte: el envío avanza la posición de su buffer.
+     */
+    public boolean enqueue(WebSocketMessage<?> frame, String conflationKey) {
+        return enqueue(frame, conflationKey, Priority.MEDIUM);
+    }
+
+    /**
+     * Encola un frame en el carril de su prioridad
+     */
+    public boolean enqueue(WebSocketMessage<?> frame, String conflationKey, Priority priority) {
+        if (closed) {
+            return false;
+        }
+        boolean overflow = false;
+        boolean admitted = true;
+        boolean latestOnly = conflating;
+        boolean keyed = conflationKey != null && (policy == OverflowPolicy.CONFLATE || latestOnly);
+        synchronized (this) {
+            Outgoing existing = keyed ? pendingByKey.get(conflationKey) : null;
+            if (existing != null) {
+                // Conserva su lugar en la cola con el valor más reciente
+                existing.frame = frame;
+                conflated.incrementAndGet();
+            } else {
+                // En modo conflado las claves no ocupan capacidad: a lo sumo una pendiente por clave
+                boolean full = latestOnly
+                        ? !keyed && depth - pendingByKey.size() >= capacity
+                        : depth >= capacity;
+                if (full && !dropOldest(Priority.LOW, latestOnly)) {
+                    if (priority == Priority.LOW) {
+                        admitted = false;
+                    } else if (policy == OverflowPolicy.DISCONNECT) {
+                        overflow = true;
+                    } else if (!dropOldest(Priority.MEDIUM, latestOnly) && !dropOldest(Priority.HIGH, latestOnly)) {
+                        // Nada descartable (solo claves en modo conflado): no se pasa de la capacidad
+                        overflow = true;
+                    }
+                }
+                if (!admitted && priority == Priority.LOW) {
+                    shed.incrementAndGet();
+                    dropped.incrementAndGet();
+                }
+            }
+            if (existing == null && admitted && !overflow) {
+                ArrayDeque<Object> lane = lanes[priority.ordinal()];
+                if (keyed) {
+                    Outgoing outgoing = new Outgoing(frame, conflationKey);
+                    lane.add(outgoing);
+                    pendingByKey.put(conflationKey, outgoing);
+                } else {
+                    lane.add(frame);
+                }
+                depth++;
+                maxDepth = Math.max(maxDepth, depth);
+            }
+        }
+        if (overflow) {
+            logger.warn("Outbound queue overflow for session {}, disconnecting slow consumer", session.getId());
+            dropped.incrementAndGet();
+            disconnect(CloseStatus.SESSION_NOT_RELIABLE);
+            return false;
+        }
+        scheduleDrain();
+        return true;
+    }
+
+    /**
+     * Activa o desactiva el modo conflado de la sesión
+     */
+    public void setConflating(boolean conflating) {
+        this.conflating = conflating;
+    }
+
+    public boolean isConflating() {
+        return conflating;
+    }
+
+    public synchronized int depth() {
+        return depth;
+    }
+
+    public synchronized int maxDepth() {
+        return maxDepth;
+    }
+
+    public long sent() {
+        return sent.get();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    public long conflated() {
+        return conflated.get();
+    }
+
+    /**
+     * Mensajes LOW descartados para hacer lugar o por llegar con la cola llena
+     */
+    public long shed() {
+        return shed.get();
+    }
+
+    /**
+     * Descarta lo pendiente; la sesión ya se cerró o se está cerrando
+     */
+    void close() {
+        closed = true;
+        synchronized (this) {
+            for (ArrayDeque<Object> lane : lanes) {
+                lane.clear();
+            }
+            pendingByKey.clear();
+            depth = 0;
+        }
+    }
+
+    /**
+     * Descarta el mensaje más viejo del carril. En modo conflado solo los que no tienen clave:
+     * los que tienen clave son el último valor de algo.
+     * @return false si el carril no tenía nada descartable
+     */
+    private boolean dropOldest(Priority priority, boolean unkeyedOnly) {
+        Iterator<Object> iterator = lanes[priority.ordinal()].iterator();
+        while (iterator.hasNext()) {
+            Object oldest = iterator.next();
+            if (oldest instanceof Outgoing keyedOldest) {
+                if (unkeyedOnly) {
+                    continue;
+                }
+                pendingByKey.remove(keyedOldest.key, keyedOldest);
+            }
+            iterator.remove();
+            depth--;
+            dropped.incrementAndGet();
+            if (priority == Priority.LOW) {
+                shed.incrementAndGet();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Siguiente elemento a enviar: el del carril más prioritario con pendientes, salvo que otro
+     * carril haya esperado STARVATION_LIMIT envíos. Se llama con el monitor tomado.
+     */
+    private Object pollNext() {
+        int chosen = -1;
+        for (int i = lanes.length - 1; i > 0; i--) {
+            if (!lanes[i].isEmpty() && skipped[i] >= STARVATION_LIMIT) {
+                chosen = i;
+                break;
+            }
+        }
+        if (chosen < 0) {
+            for (int i = 0; i < lanes.length; i++) {
+                if (!lanes[i].isEmpty()) {
+                    chosen = i;
+                    break;
+                }
+            }
+        }
+        if (chosen < 0) {
+            return null;
+        }
+        skipped[chosen] = 0;
+        for (int i = chosen + 1; i < lanes.length; i++) {
+            if (!lanes[i].isEmpty()) {
+                skipped[i]++;
+            }
+        }
+        depth--;
+        return lanes[chosen].poll();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(drainTask);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            WebSocketMessage<?> next;
+            synchronized (this) {
+                Object polled = pollNext();
+                if (polled == null) {
+                    // Se baja la bandera con el monitor tomado: un enqueue posterior ve la
+                    // cola vacía liberada y programa un nuevo drenado
+                    draining.set(false);
+                    return;
+                }
+                if (polled instanceof Outgoing keyedNext) {
+                    pendingByKey.remove(keyedNext.key, keyedNext);
+                    next = keyedNext.frame;
+                } else {
+                    next = (WebSocketMessage<?>) polled;
+                }
+            }
+            if (closed) {
+                continue;
+            }
+            try {
+                if (!session.isOpen()) {
+                    close();
+                    onFailure.accept(session);
+                    continue;
+                }
+                session.sendMessage(next);
+                sent.incrementAndGet();
+            } catch (Exception e) {
+                logger.error("Error sending message to session {}: {}", session.getId(), e.getMessage());
+                close();
+                onFailure.accept(session);
+            }
+        }
+    }
+
+    private void disconnect(CloseStatus status) {
+        close();
+        try {
+            session.close(status);
+        } catch (Exception e) {
+            logger.debug("Error closing session {}: {}", session.getId(), e.getMessage());
+        }
+        onFailure.accept(session);
+    }
+
+    private static final class Outgoing {
+        private final String key;
+        private WebSocketMessage<?> frame;
+
+        Outgoing(WebSocketMessage<?> frame, String key) {
+            this.frame = frame;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.assembliestore.api.service.realtime.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Stream SSE presentado como sesión para {@link WebSocketSessionManager}: así recibe lo mismo
+ * que una sesión WebSocket suscrita a los mismos canales (secuencias, anillo de reenvío,
+ * cola de salida con prioridades y latidos) sin un camino de publicación aparte.
+ *
+ * Los envíos los hace la cola de salida de la sesión, uno por vez en un hilo virtual; mientras
+ * el stream está inactivo no retiene ningún hilo. El id de cada evento es la última secuencia
+ * vista de cada canal ({@code canal:seq,canal:seq}), que el navegador devuelve como
+ * Last-Event-ID al reconectar. Solo entran los canales pedidos por nombre exacto: los tópicos
+ * que llegan por un patrón no se reanudan y harían crecer el id sin límite.
+ */
+final class SseSession implements WebSocketSession {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final String id = "sse-" + UUID.randomUUID();
+    private final SseEmitter emitter;
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final Consumer<WebSocketSession> onPingWritten;
+    private final Set<String> resumableChannels;
+    // Última secuencia enviada por canal; solo la toca el hilo que drena la cola
+    private final Map<String, Long> lastSeqByChannel = new LinkedHashMap<>();
+    private volatile boolean open = true;
+
+    SseSession(SseEmitter emitter, Set<String> resumableChannels, Map<String, Long> resumeFrom,
+               Consumer<WebSocketSession> onPingWritten) {
+        this.emitter = emitter;
+        this.resumableChannels = resumableChannels;
+        this.onPingWritten = onPingWritten;
+        resumeFrom.forEach((channel, seq) -> {
+            if (resumableChannels.contains(channel)) {
+                lastSeqByChannel.put(channel, seq);
+            }
+        });
+    }
+
+    /**
+     * Interpreta un Last-Event-ID con la forma {@code canal:seq,canal:seq}; ignora lo que no entiende
+     */
+    static Map<String, Long> parseEventId(String eventId) {
+        Map<String, Long> seqByChannel = new LinkedHashMap<>();
+        if (eventId == null || eventId.isBlank()) {
+            return seqByChannel;
+        }
+        for (String part : eventId.split(",")) {
+            int colon = part.lastIndexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            try {
+                seqByChannel.put(part.substring(0, colon), Long.parseLong(part.substring(colon + 1)));
+            } catch (NumberFormatException e) {
+                // Id ajeno o corrupto: ese canal arranca sin reenvío
+            }
+        }
+        return seqByChannel;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (!open) {
+            throw new IOException("SSE stream closed");
+        }
+        try {
+            if (message instanceof PingMessage) {
+                // Un comentario mantiene viva la conexión; si se pudo escribir, el stream está vivo
+                emitter.send(SseEmitter.event().comment("ping"));
+                onPingWritten.accept(this);
+                return;
+            }
+            if (!(message instanceof TextMessage text)) {
+                return;
+            }
+            String payload = text.getPayload();
+            SseEmitter.SseEventBuilder event = SseEmitter.event();
+            if (recordSequences(payload)) {
+                event.id(currentEventId());
+            }
+            emitter.send(event.data(payload));
+        } catch (IOException | IllegalStateException e) {
+            open = false;
+            throw e instanceof IOException io ? io : new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Lee el {@code "seq":{...}} con el que el manager sella los mensajes de canal
+     * @return true si el mensaje traía la secuencia de algún canal reanudable
+     */
+    private boolean recordSequences(String payload) throws IOException {
+        if (!payload.startsWith("{\"seq\":{")) {
+            return false;
+        }
+        boolean recorded = false;
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            parser.nextToken();
+            parser.nextToken();
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String channel = parser.currentName();
+                parser.nextToken();
+                if (resumableChannels.contains(channel)) {
+                    lastSeqByChannel.put(channel, parser.getLongValue());
+                    recorded = true;
+                }
+            }
+        }
+        return recorded;
+    }
+
+    private String currentEventId() {
+        StringBuilder eventId = new StringBuilder();
+        for (Map.Entry<String, Long> entry : lastSeqByChannel.entrySet()) {
+            if (!eventId.isEmpty()) {
+                eventId.append(',');
+            }
+            eventId.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        return eventId.toString();
+    }
+
+    void markClosed() {
+        open = false;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public URI getUri() {
+        return null;
+    }
+
+    @Override
+    public HttpHeaders getHandshakeHeaders() {
+        return HttpHeaders.EMPTY;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return null;
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+        return 0;
+    }
+
+    @Override
+    public List<WebSocketExtension> getExtensions() {
+        return List.of();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        close(CloseStatus.NORMAL);
+    }
+
+    @Override
+    public void close(CloseStatus status) {
+        if (open) {
+            open = false;
+            emitter.complete();
+        }
+    }
+}
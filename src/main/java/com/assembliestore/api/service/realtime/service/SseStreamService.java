@@ -0,0 +1,122 @@
+package com.assembliestore.api.service.realtime.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams de notificaciones por Server-Sent Events, para consumidores que no pueden usar
+ * WebSocket (herramientas internas, proxies que no dejan pasar el upgrade).
+ *
+ * Cada stream se registra en {@link WebSocketSessionManager} como una sesión más de tipo SSE,
+ * suscrita a los canales pedidos, así recibe exactamente lo mismo que un cliente WebSocket.
+ * La respuesta es asíncrona: un stream inactivo no ocupa un hilo del contenedor, y los envíos
+ * los hace la cola de salida de la sesión en un hilo virtual.
+ */
+@Service
+public class SseStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SseStreamService.class);
+
+    public static final String CONNECTION_TYPE = "SSE";
+    static final int MAX_CHANNELS_PER_STREAM = 32;
+
+    private final WebSocketSessionManager sessionManager;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    public SseStreamService(WebSocketSessionManager sessionManager) {
+        this.sessionManager = sessionManager;
+    }
+
+    /**
+     * Abre un stream suscrito a los canales (o patrones de tópico) indicados. Con Last-Event-ID
+     * reenvía lo publicado en cada canal después de la última secuencia recibida; si ya no está
+     * en el anillo, el primer evento de ese canal es un RESYNC_REQUIRED.
+     * @throws IllegalArgumentException si no hay canales, son demasiados o un patrón no es válido
+     */
+    public SseEmitter open(List<String> channels, String lastEventId) {
+        return open(channels, lastEventId, null);
+    }
+
+    /**
+     * Abre un stream para un usuario con el rol indicado; los canales de administración
+     * (admin-kpis) solo se abren para ADMIN o MANAGEMENT
+     * @throws IllegalArgumentException si no hay canales, son demasiados o un patrón no es válido
+     * @throws AccessDeniedException si pide un canal de administración sin el rol
+     */
+    public SseEmitter open(List<String> channels, String lastEventId, String role) {
+        if (channels == null || channels.isEmpty()) {
+            throw new IllegalArgumentException("At least one channel is required");
+        }
+        if (channels.size() > MAX_CHANNELS_PER_STREAM) {
+            throw new IllegalArgumentException("At most " + MAX_CHANNELS_PER_STREAM + " channels per stream");
+        }
+        Set<String> exactChannels = new HashSet<>();
+        for (String channel : channels) {
+            if (TopicTrie.isPattern(channel)) {
+                TopicTrie.parsePattern(channel);
+            } else {
+                if (WebSocketSessionManager.requiresStaffRole(channel) && !WebSocketSessionManager.isStaffRole(role)) {
+                    throw new AccessDeniedException("Channel " + channel + " requires ADMIN or MANAGEMENT role");
+                }
+                exactChannels.add(channel);
+            }
+        }
+
+        // Sin timeout del contenedor: los latidos del manager detectan los streams muertos
+        SseEmitter emitter = createEmitter();
+        Map<String, Long> resumeFrom = SseSession.parseEventId(lastEventId);
+        SseSession session = new SseSession(emitter, exactChannels, resumeFrom, sessionManager::markActive);
+        if (role != null) {
+            session.getAttributes().put(WebSocketSessionManager.ROLE_ATTRIBUTE, role);
+        }
+        Runnable release = () -> {
+            session.markClosed();
+            sessionManager.removeSession(session);
+        };
+        emitter.onCompletion(release);
+        emitter.onTimeout(release);
+        emitter.onError(e -> release.run());
+
+        sessionManager.addSession(session, CONNECTION_TYPE);
+        for (String channel : channels) {
+            Long lastSeq = resumeFrom.get(channel);
+            if (lastSeq == null) {
+                sessionManager.subscribeToChannel(session, channel);
+            } else if (sessionManager.subscribeToChannel(session, channel, lastSeq + 1) < 0) {
+                sendResyncRequired(session, channel, lastSeq);
+            }
+        }
+        logger.info("SSE stream {} opened - Channels: {} - Resumed: {}", session.getId(), channels, !resumeFrom.isEmpty());
+        return emitter;
+    }
+
+    SseEmitter createEmitter() {
+        return new SseEmitter(0L);
+    }
+
+    private void sendResyncRequired(SseSession session, String channel, long lastSeq) {
+        try {
+            Map<String, Object> resync = new LinkedHashMap<>();
+            resync.put("type", "RESYNC_REQUIRED");
+            resync.put("channel", channel);
+            resync.put("fromSeq", lastSeq + 1);
+            resync.put("lastSeq", sessionManager.getLastSequence(channel));
+            resync.put("message", "Requested messages are no longer available, reload a snapshot of channel: " + channel);
+            sessionManager.send(session, objectMapper.writeValueAsString(resync));
+        } catch (Exception e) {
+            logger.error("Error sending resync notice to SSE stream {}: {}", session.getId(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.assembliestore.api.service.realtime.service;
+
+import com.assembliestore.api.service.realtime.dto.StockUpdateMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Codificación binaria de ancho fijo para las actualizaciones de stock, usada por las sesiones
+ * que negocian el subprotocolo {@link #SUBPROTOCOL}.
+ *
+ * Todos los enteros son big-endian:
+ * <pre>
+ * byte   tipo de frame (1 = STOCK_DELTA)
+ * long   secuencia del canal stock-updates (0 si no se publicó por canal)
+ * long   timestamp en milisegundos
+ * short  cantidad de productos
+ * por producto:
+ *   byte   largo del productId en UTF-8, seguido de sus bytes
+ *   int    stock actual
+ *   int    cambio (el anterior es actual - cambio)
+ *   byte   motivo (índice en {@link #REASONS} + 1; 0 si no se conoce)
+ * </pre>
+ * El nombre del producto y el tipo de cambio no viajan: el cliente ya tiene el catálogo y el
+ * tipo se deduce del stock anterior y el actual.
+ */
+public final class StockDeltaCodec {
+
+    public static final String SUBPROTOCOL = "assemblies.stock-binary.v1";
+
+    public static final byte STOCK_DELTA = 1;
+
+    // Motivos conocidos; el orden es parte del formato, agregar solo al final
+    static final List<String> REASONS = List.of(
+            "SALE", "RESTORE", "HOLD", "RELEASE", "HOLD_EXPIRED", "PURCHASE", "ADJUSTMENT", "RETURN");
+
+    private static final int SEQUENCE_OFFSET = 1;
+    private static final int HEADER_SIZE = 1 + 8 + 8 + 2;
+    private static final int MAX_ID_BYTES = 255;
+
+    private StockDeltaCodec() {
+    }
+
+    public static byte[] encode(List<StockUpdateMessage> updates) {
+        if (updates.size() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many updates for one frame: " + updates.size());
+        }
+        List<byte[]> ids = new ArrayList<>(updates.size());
+        int size = HEADER_SIZE;
+        for (StockUpdateMessage update : updates) {
+            byte[] id = update.getProductId().getBytes(StandardCharsets.UTF_8);
+            if (id.length > MAX_ID_BYTES) {
+                throw new IllegalArgumentException("productId too long for binary frame: " + update.getProductId());
+            }
+            ids.add(id);
+            size += 1 + id.length + 4 + 4 + 1;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(STOCK_DELTA);
+        buffer.putLong(0L);
+        buffer.putLong(System.currentTimeMillis());
+        buffer.putShort((short) updates.size());
+        for (int i = 0; i < updates.size(); i++) {
+            StockUpdateMessage update = updates.get(i);
+            int current = update.getCurrentStock() != null ? update.getCurrentStock() : 0;
+            int previous = update.getPreviousStock() != null ? update.getPreviousStock() : current;
+            byte[] id = ids.get(i);
+            buffer.put((byte) id.length);
+            buffer.put(id);
+            buffer.putInt(current);
+            buffer.putInt(current - previous);
+            buffer.put((byte) (REASONS.indexOf(update.getReason()) + 1));
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Escribe la secuencia del canal en la cabecera de un frame ya codificado
+     */
+    static void writeSequence(byte[] frame, long seq) {
+        ByteBuffer.wrap(frame).putLong(SEQUENCE_OFFSET, seq);
+    }
+
+    public static long readSequence(ByteBuffer frame) {
+        return frame.getLong(frame.position() + SEQUENCE_OFFSET);
+    }
+
+    public static List<StockUpdateMessage> decode(ByteBuffer frame) {
+        ByteBuffer buffer = frame.duplicate();
+        byte type = buffer.get();
+        if (type != STOCK_DELTA) {
+            throw new IllegalArgumentException("Unknown binary frame type: " + type);
+        }
+        buffer.getLong();
+        long timestamp = buffer.getLong();
+        int count = buffer.getShort();
+        List<StockUpdateMessage> updates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] id = new byte[buffer.get() & 0xFF];
+            buffer.get(id);
+            int current = buffer.getInt();
+            int change = buffer.getInt();
+            int reason = buffer.get();
+            StockUpdateMessage update = new StockUpdateMessage(new String(id, StandardCharsets.UTF_8), null,
+                    current - change, current);
+            update.setReason(reason > 0 && reason <= REASONS.size() ? REASONS.get(reason - 1) : null);
+            update.setTimestamp(timestamp);
+            updates.add(update);
+        }
+        return updates;
+    }
+}
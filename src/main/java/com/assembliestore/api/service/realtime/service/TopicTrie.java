@@ -0,0 +1,175 @@
+package com.assembliestore.api.service.realtime.service;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Suscripciones con comodines sobre tópicos jerárquicos separados por puntos, por ejemplo
+ * {@code stock.<subCategoryId>.<productId>}.
+ *
+ * {@code *} coincide con exactamente un segmento y {@code #} con cero o más segmentos, solo
+ * como último segmento del patrón. Cada patrón es un camino en el trie, así que resolver los
+ * suscriptores de un tópico recorre a lo sumo tres ramas por nivel (literal, * y #) y cuesta
+ * según la profundidad del tópico, no según la cantidad de suscripciones.
+ *
+ * Los patrones solo abarcan el espacio {@code stock.}: un {@code #} suelto alcanzaría canales
+ * privados como admin-kpis u order-queue-*, así que se rechaza cualquier otra raíz.
+ *
+ * Las altas y bajas se serializan; la búsqueda no toma locks.
+ */
+final class TopicTrie {
+
+    static final String SEPARATOR = ".";
+    static final String SINGLE_WILDCARD = "*";
+    static final String MULTI_WILDCARD = "#";
+    static final String NAMESPACE = "stock";
+
+    private final Node root = new Node();
+
+    /**
+     * Indica si el canal es un patrón con comodines
+     */
+    static boolean isPattern(String channel) {
+        return channel.contains(SINGLE_WILDCARD) || channel.contains(MULTI_WILDCARD);
+    }
+
+    /**
+     * Indica si el canal es un tópico del espacio que cubren los patrones
+     */
+    static boolean isTopic(String channel) {
+        return channel.startsWith(NAMESPACE + SEPARATOR);
+    }
+
+    /**
+     * Valida un patrón: raíz {@code stock} literal, sin segmentos vacíos, comodines como
+     * segmento completo y # solo al final
+     * @throws IllegalArgumentException si el patrón no es válido
+     */
+    static String[] parsePattern(String pattern) {
+        String[] segments = pattern.split("\\.", -1);
+        if (segments.length < 2 || !segments[0].equals(NAMESPACE)) {
+            throw new IllegalArgumentException("Topic patterns must start with '" + NAMESPACE + SEPARATOR + "': " + pattern);
+        }
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.isEmpty()) {
+                throw new IllegalArgumentException("Empty segment in topic pattern: " + pattern);
+            }
+            boolean wildcard = segment.equals(SINGLE_WILDCARD) || segment.equals(MULTI_WILDCARD);
+            if (!wildcard && isPattern(segment)) {
+                throw new IllegalArgumentException("Wildcards must be whole segments: " + pattern);
+            }
+            if (segment.equals(MULTI_WILDCARD) && i != segments.length - 1) {
+                throw new IllegalArgumentException("'#' is only allowed as the last segment: " + pattern);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Indica si un tópico concreto coincide con un patrón, sin pasar por el trie
+     */
+    static boolean matches(String pattern, String topic) {
+        return matches(pattern.split("\\.", -1), 0, topic.split("\\.", -1), 0);
+    }
+
+    synchronized void add(String pattern, WebSocketSession session) {
+        Node node = root;
+        for (String segment : parsePattern(pattern)) {
+            node = node.children.computeIfAbsent(segment, k -> new Node());
+        }
+        node.subscribers.add(session);
+    }
+
+    synchronized void remove(String pattern, WebSocketSession session) {
+        remove(root, pattern.split("\\.", -1), 0, session);
+    }
+
+    boolean isEmpty() {
+        return root.children.isEmpty();
+    }
+
+    /**
+     * Agrega al conjunto las sesiones cuyos patrones coinciden con el tópico; los canales fuera
+     * del espacio de tópicos no tienen suscriptores por patrón
+     */
+    void collect(String topic, Set<WebSocketSession> target) {
+        if (isEmpty() || !isTopic(topic)) {
+            return;
+        }
+        collect(root, topic.split("\\.", -1), 0, target);
+    }
+
+    /**
+     * Suscriptores por patrón, para las estadísticas
+     */
+    Map<String, Integer> getSubscriberCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        count(root, "", counts);
+        return counts;
+    }
+
+    private static void collect(Node node, String[] segments, int depth, Set<WebSocketSession> target) {
+        // '#' también cubre cero segmentos restantes
+        Node multi = node.children.get(MULTI_WILDCARD);
+        if (multi != null) {
+            target.addAll(multi.subscribers);
+        }
+        if (depth == segments.length) {
+            target.addAll(node.subscribers);
+            return;
+        }
+        Node literal = node.children.get(segments[depth]);
+        if (literal != null) {
+            collect(literal, segments, depth + 1, target);
+        }
+        Node single = node.children.get(SINGLE_WILDCARD);
+        if (single != null) {
+            collect(single, segments, depth + 1, target);
+        }
+    }
+
+    private static boolean matches(String[] pattern, int p, String[] topic, int t) {
+        if (p == pattern.length) {
+            return t == topic.length;
+        }
+        if (pattern[p].equals(MULTI_WILDCARD)) {
+            return true;
+        }
+        if (t == topic.length) {
+            return false;
+        }
+        return (pattern[p].equals(SINGLE_WILDCARD) || pattern[p].equals(topic[t]))
+                && matches(pattern, p + 1, topic, t + 1);
+    }
+
+    private static boolean remove(Node node, String[] segments, int depth, WebSocketSession session) {
+        if (depth == segments.length) {
+            node.subscribers.remove(session);
+        } else {
+            Node child = node.children.get(segments[depth]);
+            if (child != null && remove(child, segments, depth + 1, session)) {
+                node.children.remove(segments[depth]);
+            }
+        }
+        // Se poda la rama que quedó sin suscriptores
+        return node.subscribers.isEmpty() && node.children.isEmpty();
+    }
+
+    private static void count(Node node, String prefix, Map<String, Integer> counts) {
+        if (!node.subscribers.isEmpty()) {
+            counts.put(prefix, node.subscribers.size());
+        }
+        node.children.forEach((segment, child) ->
+                count(child, prefix.isEmpty() ? segment : prefix + SEPARATOR + segment, counts));
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+        private final Set<WebSocketSession> subscribers = ConcurrentHashMap.newKeySet();
+    }
+}
@@ -1,19 +1,54 @@
 package com.assembliestore.api.service.realtime.service;
 
+import com.assembliestore.api.common.scheduling.HashedTimingWheel;
+import com.assembliestore.api.service.realtime.service.SessionOutboundQueue.OverflowPolicy;
+import com.assembliestore.api.service.realtime.service.SessionOutboundQueue.Priority;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class WebSocketSessionManager {
 
     private static final Logger logger = LoggerFactory.getLogger(WebSocketSessionManager.class);
 
+    /**
+     * Atributo de sesión con el userId resuelto en el handshake
+     */
+    public static final String USER_ID_ATTRIBUTE = "userId";
+
+    /**
+     * Atributo de sesión con el rol (ADMIN, MANAGEMENT o CLIENT) resuelto al conectar
+     */
+    public static final String ROLE_ATTRIBUTE = "role";
+
+    // Canales internos (admin-kpis): solo se suscriben sesiones de ADMIN o MANAGEMENT
+    static final String ADMIN_CHANNEL_PREFIX = "admin-";
+
+    static final int DEFAULT_REPLAY_CAPACITY = 128;
+    static final Duration DEFAULT_HEARTBEAT_INTERVAL = Duration.ofSeconds(25);
+    static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(60);
+
     // Mapa para guardar las sesiones activas por tipo de conexión
     private final Map<String, Set<WebSocketSession>> sessionsByType = new ConcurrentHashMap<>();
     
@@ -23,6 +58,83 @@ public class WebSocketSessionManager {
     // Mapa para suscripciones a canales específicos
     private final Map<String, Set<WebSocketSession>> channelSubscriptions = new ConcurrentHashMap<>();
 
+    // Suscripciones con comodines (stock.*.P-1, stock.#); se resuelven por profundidad del tópico
+    private final TopicTrie topicSubscriptions = new TopicTrie();
+
+    // Sesiones abiertas de cada usuario autenticado, para mensajes personales
+    private final Map<String, Set<WebSocketSession>> sessionsByUser = new ConcurrentHashMap<>();
+
+    // Secuencia y anillo de reenvío de cada canal en el que se publicó algo
+    private final Map<String, ChannelReplayBuffer> channelStreams = new ConcurrentHashMap<>();
+
+    // Cada anillo tiene su lock: la secuencia asignada, el anillo y el orden en que cada sesión
+    // recibe los frames de ese canal coinciden, y un SUBSCRIBE con fromSeq no pierde ni repite nada
+    private final int replayCapacity;
+
+    // Sesiones en modo conflado: solo quieren el último valor por clave
+    private final AtomicInteger conflatedSessions = new AtomicInteger();
+
+    // Sesiones que negociaron el subprotocolo binario de stock
+    private final AtomicInteger binarySessions = new AtomicInteger();
+
+    // Cada sesión envía desde su propia cola; los hilos que difunden solo encolan
+    private final ExecutorService outboundExecutor;
+    private final int outboundCapacity;
+    private final OverflowPolicy overflowPolicy;
+
+    // Latidos del servidor: una sola rueda para todas las sesiones. Cada sesión tiene un timeout
+    // que, al vencer, envía un ping si estuvo callada o la cierra si superó idleTimeout.
+    private final HashedTimingWheel<SessionInfo> heartbeats;
+    private final long heartbeatIntervalNanos;
+    private final long idleTimeoutNanos;
+    private final AtomicLong pingsSent = new AtomicLong();
+    private final AtomicLong reapedSessions = new AtomicLong();
+
+    @Autowired
+    public WebSocketSessionManager(@Value("${app.realtime.outbound.capacity:256}") int outboundCapacity,
+                                   @Value("${app.realtime.outbound.overflow-policy:DROP_OLDEST}") OverflowPolicy overflowPolicy,
+                                   @Value("${app.realtime.replay.capacity:" + DEFAULT_REPLAY_CAPACITY + "}") int replayCapacity,
+                                   @Value("${app.realtime.heartbeat.interval:25s}") Duration heartbeatInterval,
+                                   @Value("${app.realtime.heartbeat.idle-timeout:60s}") Duration idleTimeout) {
+        this(outboundCapacity, overflowPolicy, replayCapacity, heartbeatInterval, idleTimeout,
+                Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    WebSocketSessionManager(int outboundCapacity, OverflowPolicy overflowPolicy, ExecutorService outboundExecutor) {
+        this(outboundCapacity, overflowPolicy, DEFAULT_REPLAY_CAPACITY, outboundExecutor);
+    }
+
+    WebSocketSessionManager(int outboundCapacity, OverflowPolicy overflowPolicy, int replayCapacity,
+                            ExecutorService outboundExecutor) {
+        this(outboundCapacity, overflowPolicy, replayCapacity, DEFAULT_HEARTBEAT_INTERVAL, DEFAULT_IDLE_TIMEOUT,
+                outboundExecutor);
+    }
+
+    WebSocketSessionManager(int outboundCapacity, OverflowPolicy overflowPolicy, int replayCapacity,
+                            Duration heartbeatInterval, Duration idleTimeout, ExecutorService outboundExecutor) {
+        if (outboundCapacity <= 0) {
+            throw new IllegalArgumentException("outboundCapacity must be positive");
+        }
+        if (replayCapacity <= 0) {
+            throw new IllegalArgumentException("replayCapacity must be positive");
+        }
+        if (heartbeatInterval.isNegative() || heartbeatInterval.isZero() || idleTimeout.compareTo(heartbeatInterval) <= 0) {
+            throw new IllegalArgumentException("idleTimeout must be greater than a positive heartbeatInterval");
+        }
+        this.outboundCapacity = outboundCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.replayCapacity = replayCapacity;
+        this.outboundExecutor = outboundExecutor;
+        this.heartbeatIntervalNanos = heartbeatInterval.toNanos();
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        // Resolución de una décima del intervalo (máximo 1s); la vuelta cubre el intervalo completo
+        Duration tick = Duration.ofNanos(Math.max(Duration.ofMillis(10).toNanos(),
+                Math.min(Duration.ofSeconds(1).toNanos(), heartbeatIntervalNanos / 10)));
+        this.heartbeats = new HashedTimingWheel<>("realtime-heartbeat", tick,
+                (int) Math.min(4096, heartbeatIntervalNanos / tick.toNanos() + 1), this::heartbeat);
+        this.heartbeats.start();
+    }
+
     /**
      * Agregar una nueva sesión WebSocket
      */
@@ -33,11 +145,24 @@ public class WebSocketSessionManager {
         sessionsByType.computeIfAbsent(connectionType, k -> ConcurrentHashMap.newKeySet()).add(session);
         
         // Guardar información de la sesión
-        SessionInfo sessionInfo = new SessionInfo(sessionId, connectionType, System.currentTimeMillis());
+        SessionOutboundQueue outbound = new SessionOutboundQueue(session, outboundCapacity, overflowPolicy,
+                outboundExecutor, this::removeSession);
+        String userId = resolveUserId(session);
+        boolean binary = StockDeltaCodec.SUBPROTOCOL.equals(session.getAcceptedProtocol());
+        SessionInfo sessionInfo = new SessionInfo(session, connectionType, userId, binary,
+                System.currentTimeMillis(), outbound);
         sessionInfoMap.put(sessionId, sessionInfo);
+        sessionInfo.heartbeat = heartbeats.schedule(sessionInfo, Duration.ofNanos(heartbeatIntervalNanos));
+        if (binary) {
+            binarySessions.incrementAndGet();
+        }
+
+        if (userId != null) {
+            sessionsByUser.computeIfAbsent(userId, k -> ConcurrentHashMap.newKeySet()).add(session);
+        }
         
-        logger.info("Session added: {} - Type: {} - Total sessions: {}", 
-                   sessionId, connectionType, getTotalActiveSessions());
+        logger.info("Session added: {} - Type: {} - User: {} - Total sessions: {}", 
+                   sessionId, connectionType, userId, getTotalActiveSessions());
     }
 
     /**
@@ -48,6 +173,21 @@ public class WebSocketSessionManager {
         SessionInfo sessionInfo = sessionInfoMap.remove(sessionId);
         
         if (sessionInfo != null) {
+            sessionInfo.getOutbound().close();
+            HashedTimingWheel.Timeout<SessionInfo> heartbeat = sessionInfo.heartbeat;
+            if (heartbeat != null) {
+                heartbeat.cancel();
+            }
+            if (sessionInfo.isBinary()) {
+                binarySessions.decrementAndGet();
+            }
+            synchronized (sessionInfo) {
+                if (sessionInfo.getOutbound().isConflating()) {
+                    sessionInfo.getOutbound().setConflating(false);
+                    conflatedSessions.decrementAndGet();
+                }
+            }
+            
             // Remover de la lista por tipo
             Set<WebSocketSession> sessions = sessionsByType.get(sessionInfo.getConnectionType());
             if (sessions != null) {
@@ -57,8 +197,17 @@ public class WebSocketSessionManager {
                 }
             }
             
-            // Remover de todas las suscripciones de canales
-            channelSubscriptions.values().forEach(subs -> subs.remove(session));
+            // Remover solo de los canales a los que estaba suscrita
+            for (String channel : sessionInfo.getChannels()) {
+                removeSubscriber(channel, session);
+            }
+
+            if (sessionInfo.getUserId() != null) {
+                sessionsByUser.computeIfPresent(sessionInfo.getUserId(), (userId, userSessions) -> {
+                    userSessions.remove(session);
+                    return userSessions.isEmpty() ? null : userSessions;
+                });
+            }
             
             logger.info("Session removed: {} - Type: {} - Duration: {}ms - Total sessions: {}", 
                        sessionId, sessionInfo.getConnectionType(), 
@@ -68,23 +217,182 @@ public class WebSocketSessionManager {
     }
 
     /**
-     * Suscribir una sesión a un canal específico
+     * Registra actividad del cliente (cualquier mensaje o pong); posterga el próximo ping
+     */
+    public void markActive(WebSocketSession session) {
+        SessionInfo sessionInfo = sessionInfoMap.get(session.getId());
+        if (sessionInfo != null) {
+            sessionInfo.lastActivityNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Vence el timeout de latido de una sesión: si superó idleTimeout sin actividad se cierra y
+     * se quita de los índices; si no, se le envía un ping cuando estuvo callada un intervalo y
+     * se reprograma. Corre en el hilo de la rueda, así que no hace nada bloqueante.
+     */
+    private void heartbeat(SessionInfo sessionInfo) {
+        WebSocketSession session = sessionInfo.getSession();
+        if (sessionInfoMap.get(session.getId()) != sessionInfo) {
+            return;
+        }
+        long idle = System.nanoTime() - sessionInfo.lastActivityNanos;
+        if (idle >= idleTimeoutNanos || !session.isOpen()) {
+            reapedSessions.incrementAndGet();
+            logger.info("Reaping idle session {} after {}ms without activity", session.getId(),
+                    Duration.ofNanos(idle).toMillis());
+            removeSession(session);
+            outboundExecutor.execute(() -> closeQuietly(session));
+            return;
+        }
+        if (idle >= heartbeatIntervalNanos) {
+            // En el carril HIGH: el ping no espera detrás de lo acumulado
+            sessionInfo.getOutbound().enqueue(new PingMessage(ByteBuffer.allocate(0)), null, Priority.HIGH);
+            pingsSent.incrementAndGet();
+        }
+        // Próximo chequeo: al completar un intervalo sin actividad o al vencer idleTimeout
+        long untilPing = heartbeatIntervalNanos - idle;
+        long next = untilPing > 0 ? untilPing : Math.min(heartbeatIntervalNanos, idleTimeoutNanos - idle);
+        sessionInfo.heartbeat = heartbeats.schedule(sessionInfo, Duration.ofNanos(next));
+    }
+
+    private static void closeQuietly(WebSocketSession session) {
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            logger.debug("Error closing reaped session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Suscribir una sesión a un canal específico o a un patrón de tópicos con * (un segmento)
+     * o # (cero o más segmentos, al final)
+     * @throws IllegalArgumentException si el patrón no es válido
+     * @throws AccessDeniedException si es un canal de administración y la sesión no es de ADMIN
+     *         ni MANAGEMENT
      */
     public void subscribeToChannel(WebSocketSession session, String channel) {
-        channelSubscriptions.computeIfAbsent(channel, k -> ConcurrentHashMap.newKeySet()).add(session);
+        if (requiresStaffRole(channel) && !isStaffRole(resolveRole(session))) {
+            throw new AccessDeniedException("Channel " + channel + " requires ADMIN or MANAGEMENT role");
+        }
+        if (TopicTrie.isPattern(channel)) {
+            topicSubscriptions.add(channel, session);
+        } else {
+            channelSubscriptions.computeIfAbsent(channel, k -> ConcurrentHashMap.newKeySet()).add(session);
+        }
+        SessionInfo sessionInfo = sessionInfoMap.get(session.getId());
+        if (sessionInfo != null) {
+            sessionInfo.getChannels().add(channel);
+        }
         logger.info("Session {} subscribed to channel: {}", session.getId(), channel);
     }
 
+    /**
+     * Indica si el canal es de administración y exige una sesión de ADMIN o MANAGEMENT
+     */
+    public static boolean requiresStaffRole(String channel) {
+        return channel.startsWith(ADMIN_CHANNEL_PREFIX);
+    }
+
+    /**
+     * Indica si el rol puede suscribirse a los canales de administración
+     */
+    public static boolean isStaffRole(String role) {
+        return "ADMIN".equals(role) || "MANAGEMENT".equals(role);
+    }
+
+    /**
+     * Suscribir una sesión a un canal y reenviarle lo publicado desde fromSeq (inclusive), para
+     * que un cliente que reconecta recupere el hueco sin recargar todo. La suscripción y el
+     * reenvío ocurren bajo el lock del canal: lo siguiente que reciba ya es en vivo.
+     * @return cantidad de mensajes reenviados, o -1 si el hueco ya no está en el anillo y el
+     *         cliente debe resincronizar desde un snapshot (queda suscrito igual). Los patrones
+     *         abarcan varios canales con secuencias propias, así que siempre piden resincronizar.
+     * @throws AccessDeniedException si es un canal de administración y la sesión no es de ADMIN
+     *         ni MANAGEMENT
+     */
+    public int subscribeToChannel(WebSocketSession session, String channel, long fromSeq) {
+        if (TopicTrie.isPattern(channel) || requiresStaffRole(channel) && !isStaffRole(resolveRole(session))) {
+            subscribeToChannel(session, channel);
+            return -1;
+        }
+        // Un canal sin publicaciones arranca su anillo vacío: la secuencia 1 es la primera en vivo
+        ChannelReplayBuffer stream = channelStreams.computeIfAbsent(channel, k -> new ChannelReplayBuffer(replayCapacity));
+        stream.lock().lock();
+        try {
+            subscribeToChannel(session, channel);
+            List<TextMessage> gap = stream.since(fromSeq);
+            if (gap == null) {
+                logger.info("Session {} requested {} from seq {} but it is no longer buffered, resync required",
+                        session.getId(), channel, fromSeq);
+                return -1;
+            }
+            for (TextMessage frame : gap) {
+                enqueue(session, frame, null);
+            }
+            logger.info("Session {} resumed {} from seq {} - Replayed: {}", session.getId(), channel, fromSeq, gap.size());
+            return gap.size();
+        } finally {
+            stream.lock().unlock();
+        }
+    }
+
+    /**
+     * Última secuencia publicada en un canal; 0 si todavía no publicó nada
+     */
+    public long getLastSequence(String channel) {
+        ChannelReplayBuffer stream = channelStreams.get(channel);
+        return stream != null ? stream.lastSeq() : 0;
+    }
+
+    /**
+     * Activar o desactivar el modo conflado de una sesión: mientras un frame está en vuelo solo
+     * se conserva el último valor pendiente por clave (stock:productId), y lo pendiente queda
+     * acotado por la cantidad de productos en lugar del atraso.
+     * @return false si la sesión no está registrada
+     */
+    public boolean setConflated(WebSocketSession session, boolean conflated) {
+        SessionInfo sessionInfo = sessionInfoMap.get(session.getId());
+        if (sessionInfo == null) {
+            return false;
+        }
+        synchronized (sessionInfo) {
+            SessionOutboundQueue outbound = sessionInfo.getOutbound();
+            if (outbound.isConflating() != conflated) {
+                outbound.setConflating(conflated);
+                if (conflated) {
+                    conflatedSessions.incrementAndGet();
+                } else {
+                    conflatedSessions.decrementAndGet();
+                }
+            }
+        }
+        logger.info("Session {} conflated mode: {}", session.getId(), conflated);
+        return true;
+    }
+
+    /**
+     * Indica si hay sesiones en modo conflado, para no codificar frames por clave sin destino
+     */
+    public boolean hasConflatedSessions() {
+        return conflatedSessions.get() > 0;
+    }
+
+    /**
+     * Indica si hay sesiones con el subprotocolo binario, para no codificar frames sin destino
+     */
+    public boolean hasBinarySessions() {
+        return binarySessions.get() > 0;
+    }
+
     /**
      * Desuscribir una sesión de un canal específico
      */
     public void unsubscribeFromChannel(WebSocketSession session, String channel) {
-        Set<WebSocketSession> subscribers = channelSubscriptions.get(channel);
-        if (subscribers != null) {
-            subscribers.remove(session);
-            if (subscribers.isEmpty()) {
-                channelSubscriptions.remove(channel);
-            }
+        removeSubscriber(channel, session);
+        SessionInfo sessionInfo = sessionInfoMap.get(session.getId());
+        if (sessionInfo != null) {
+            sessionInfo.getChannels().remove(channel);
         }
         logger.info("Session {} unsubscribed from channel: {}", session.getId(), channel);
     }
@@ -93,9 +401,17 @@ public class WebSocketSessionManager {
      * Enviar mensaje a todas las sesiones de un tipo específico
      */
     public void broadcastToType(String connectionType, String message) {
+        broadcastToType(connectionType, message, null);
+    }
+
+    /**
+     * Enviar mensaje a todas las sesiones de un tipo, indicando la clave con la que puede
+     * reemplazar a un pendiente equivalente si la política de desborde es CONFLATE
+     */
+    public void broadcastToType(String connectionType, String message, String conflationKey) {
         Set<WebSocketSession> sessions = sessionsByType.get(connectionType);
         if (sessions != null && !sessions.isEmpty()) {
-            broadcastToSessions(sessions, message);
+            broadcastToSessions(sessions, new TextMessage(message), conflationKey);
             logger.info("Message broadcasted to {} sessions of type: {}", sessions.size(), connectionType);
         }
     }
@@ -104,31 +420,219 @@ public class WebSocketSessionManager {
      * Enviar mensaje a todas las sesiones suscritas a un canal
      */
     public void broadcastToChannel(String channel, String message) {
-        Set<WebSocketSession> subscribers = channelSubscriptions.get(channel);
-        if (subscribers != null && !subscribers.isEmpty()) {
-            broadcastToSessions(subscribers, message);
-            logger.info("Message broadcasted to {} subscribers of channel: {}", subscribers.size(), channel);
+        broadcastToChannel(channel, message, null);
+    }
+
+    /**
+     * Enviar mensaje a los suscriptores de un canal con clave de conflación
+     */
+    public void broadcastToChannel(String channel, String message, String conflationKey) {
+        int recipients = broadcast(List.of(), List.of(channel), message, conflationKey);
+        if (recipients > 0) {
+            logger.info("Message broadcasted to {} subscribers of channel: {}", recipients, channel);
         }
     }
 
     /**
-     * Enviar mensaje a una sesión específica
+     * Enviar un mensaje a la unión de varios tipos de conexión y canales. El payload se
+     * envuelve en un único frame compartido y cada sesión lo recibe una sola vez aunque esté
+     * en varios de los destinos.
+     *
+     * Si hay canales, el mensaje se sella con la secuencia de cada uno
+     * ({@code "seq":{"canal":n}}) y queda en sus anillos de reenvío.
+     * @return cantidad de sesiones a las que se encoló
      */
-    public boolean sendToSession(String sessionId, String message) {
-        for (Set<WebSocketSession> sessions : sessionsByType.values()) {
+    public int broadcast(List<String> connectionTypes, List<String> channels, String message, String conflationKey) {
+        return broadcast(connectionTypes, channels, message, conflationKey, Priority.MEDIUM);
+    }
+
+    /**
+     * Difusión con prioridad: cada sesión envía lo HIGH antes que lo acumulado y, bajo presión,
+     * descarta primero lo LOW
+     */
+    public int broadcast(List<String> connectionTypes, List<String> channels, String message, String conflationKey,
+                         Priority priority) {
+        return broadcast(connectionTypes, channels, message, conflationKey, null, priority);
+    }
+
+    /**
+     * Difusión con variantes por sesión: las confladas reciben latestByKey y las que negociaron
+     * {@link StockDeltaCodec#SUBPROTOCOL} reciben binaryFrame; el resto, el mensaje JSON.
+     *
+     * En modo conflado llega un frame por clave (por ejemplo uno por producto de un lote de
+     * stock) que reemplaza al pendiente con la misma clave; esos frames no llevan secuencia y
+     * un consumidor conflado resincroniza desde un snapshot. La cabecera del frame binario se
+     * completa con la secuencia del primer canal. El anillo de reenvío guarda solo la versión JSON.
+     * @param latestByKey mensaje por clave de conflación; puede ser null
+     * @param binaryFrame frame codificado con {@link StockDeltaCodec}; puede ser null
+     */
+    public int broadcast(List<String> connectionTypes, List<String> channels, String message, String conflationKey,
+                         Map<String, String> latestByKey, byte[] binaryFrame) {
+        Variants variants = null;
+        boolean conflated = latestByKey != null && !latestByKey.isEmpty() && conflatedSessions.get() > 0;
+        boolean binary = binaryFrame != null && binarySessions.get() > 0;
+        if (conflated || binary) {
+            variants = new Variants(conflated ? encodeLatestValues(latestByKey) : null, binary ? binaryFrame : null);
+        }
+        return broadcast(connectionTypes, channels, message, conflationKey, variants, Priority.MEDIUM);
+    }
+
+    private int broadcast(List<String> connectionTypes, List<String> channels, String message, String conflationKey,
+                          Variants variants, Priority priority) {
+        if (channels.isEmpty()) {
+            return deliver(connectionTypes, channels, new TextMessage(message), conflationKey, variants, priority);
+        }
+        List<ChannelReplayBuffer> streams = new ArrayList<>(channels.size());
+        // Locks tomados en orden de nombre de canal: dos publicaciones multicanal no se bloquean en cruz
+        Map<String, ChannelReplayBuffer> lockOrder = new TreeMap<>();
+        for (String channel : channels) {
+            ChannelReplayBuffer stream = channelStreams.computeIfAbsent(channel, k -> new ChannelReplayBuffer(replayCapacity));
+            streams.add(stream);
+            lockOrder.put(channel, stream);
+        }
+        List<ChannelReplayBuffer> locked = new ArrayList<>(lockOrder.size());
+        try {
+            for (ChannelReplayBuffer stream : lockOrder.values()) {
+                stream.lock().lock();
+                locked.add(stream);
+            }
+            TextMessage frame = new TextMessage(stamp(channels, streams, message));
+            if (variants != null && variants.binaryFrame != null) {
+                StockDeltaCodec.writeSequence(variants.binaryFrame, streams.get(0).nextSeq());
+            }
+            for (ChannelReplayBuffer stream : streams) {
+                stream.append(frame);
+            }
+            return deliver(connectionTypes, channels, frame, conflationKey, variants, priority);
+        } finally {
+            for (int i = locked.size() - 1; i >= 0; i--) {
+                locked.get(i).lock().unlock();
+            }
+        }
+    }
+
+    private int deliver(List<String> connectionTypes, List<String> channels, TextMessage frame, String conflationKey,
+                        Variants variants, Priority priority) {
+        int recipients = 0;
+        List<WebSocketSession> toRemove = null;
+
+        for (String connectionType : connectionTypes) {
+            Set<WebSocketSession> sessions = sessionsByType.get(connectionType);
+            if (sessions == null) {
+                continue;
+            }
             for (WebSocketSession session : sessions) {
-                if (session.getId().equals(sessionId)) {
-                    try {
-                        session.sendMessage(new TextMessage(message));
-                        return true;
-                    } catch (Exception e) {
-                        logger.error("Error sending message to session {}: {}", sessionId, e.getMessage());
-                        return false;
-                    }
+                if (enqueue(session, frame, conflationKey, variants, priority)) {
+                    recipients++;
+                } else {
+                    toRemove = addClosed(toRemove, session);
                 }
             }
         }
-        return false;
+
+        for (int i = 0; i < channels.size(); i++) {
+            Set<WebSocketSession> subscribers = subscribersOf(channels.get(i));
+            if (subscribers == null) {
+                continue;
+            }
+            for (WebSocketSession session : subscribers) {
+                SessionInfo sessionInfo = sessionInfoMap.get(session.getId());
+                // Ya lo recibió por su tipo de conexión o por un canal anterior
+                if (sessionInfo != null && (connectionTypes.contains(sessionInfo.getConnectionType())
+                        || subscribedToAny(sessionInfo, channels, i))) {
+                    continue;
+                }
+                if (enqueue(session, frame, conflationKey, variants, priority)) {
+                    recipients++;
+                } else {
+                    toRemove = addClosed(toRemove, session);
+                }
+            }
+        }
+
+        if (toRemove != null) {
+            toRemove.forEach(this::removeAbandoned);
+        }
+        logger.debug("Message broadcasted to {} sessions - Types: {} - Channels: {}", recipients, connectionTypes, channels);
+        return recipients;
+    }
+
+    /**
+     * Enviar un mensaje personal a todas las sesiones abiertas de un usuario. Se busca en el
+     * índice por userId, sin recorrer tipos ni canales, y se comparte un único frame.
+     * @return cantidad de sesiones a las que se encoló; 0 si el usuario no está conectado
+     */
+    public int sendToUser(String userId, String message) {
+        return sendToUser(userId, message, Priority.MEDIUM);
+    }
+
+    /**
+     * Enviar un mensaje personal con prioridad a las sesiones de un usuario
+     */
+    public int sendToUser(String userId, String message, Priority priority) {
+        Set<WebSocketSession> sessions = userId != null ? sessionsByUser.get(userId) : null;
+        if (sessions == null || sessions.isEmpty()) {
+            return 0;
+        }
+        TextMessage frame = new TextMessage(message);
+        int recipients = 0;
+        List<WebSocketSession> toRemove = null;
+        for (WebSocketSession session : sessions) {
+            if (enqueue(session, frame, null, null, priority)) {
+                recipients++;
+            } else {
+                toRemove = addClosed(toRemove, session);
+            }
+        }
+        if (toRemove != null) {
+            toRemove.forEach(this::removeAbandoned);
+        }
+        logger.debug("Message sent to {} sessions of user: {}", recipients, userId);
+        return recipients;
+    }
+
+    /**
+     * Indica si alguna sesión recibiría lo publicado en el canal, por nombre exacto o por patrón.
+     * Permite no armar mensajes por tópico que nadie escucha.
+     */
+    public boolean hasSubscribers(String channel) {
+        Set<WebSocketSession> subscribers = subscribersOf(channel);
+        return subscribers != null && !subscribers.isEmpty();
+    }
+
+    /**
+     * Indica si el usuario tiene al menos una sesión abierta
+     */
+    public boolean isUserConnected(String userId) {
+        Set<WebSocketSession> sessions = sessionsByUser.get(userId);
+        return sessions != null && !sessions.isEmpty();
+    }
+
+    /**
+     * Enviar mensaje a una sesión específica
+     */
+    public boolean sendToSession(String sessionId, String message) {
+        SessionInfo sessionInfo = sessionInfoMap.get(sessionId);
+        return sessionInfo != null && sessionInfo.getOutbound().enqueue(message, null);
+    }
+
+    /**
+     * Enviar mensaje a una sesión a través de su cola de salida. Las respuestas del handler
+     * (bienvenida, PONG, confirmaciones) pasan por aquí para no competir con los envíos en curso.
+     */
+    public boolean send(WebSocketSession session, String message) {
+        SessionInfo sessionInfo = sessionInfoMap.get(session.getId());
+        if (sessionInfo != null) {
+            return sessionInfo.getOutbound().enqueue(message, null);
+        }
+        // Sesión no registrada: envío directo
+        try {
+            session.sendMessage(new TextMessage(message));
+            return true;
+        } catch (Exception e) {
+            logger.error("Error sending message to session {}: {}", session.getId(), e.getMessage());
+            return false;
+        }
     }
 
     /**
@@ -140,6 +644,47 @@ public class WebSocketSessionManager {
         stats.put("sessionsByType", getSessionCountByType());
         stats.put("activeChannels", channelSubscriptions.keySet());
         stats.put("channelSubscribers", getChannelSubscriberCounts());
+        stats.put("topicPatternSubscribers", topicSubscriptions.getSubscriberCounts());
+        stats.put("authenticatedUsers", sessionsByUser.size());
+        stats.put("conflatedSessions", conflatedSessions.get());
+        stats.put("binarySessions", binarySessions.get());
+        stats.put("reapedSessions", reapedSessions.get());
+        stats.put("heartbeatPingsSent", pingsSent.get());
+        Map<String, Long> sequences = new HashMap<>();
+        channelStreams.forEach((channel, stream) -> sequences.put(channel, stream.lastSeq()));
+        stats.put("channelSequences", sequences);
+        stats.put("outbound", getOutboundStats());
+        return stats;
+    }
+
+    /**
+     * Obtener métricas de las colas de salida: profundidad actual y máxima, enviados y descartados
+     */
+    public Map<String, Object> getOutboundStats() {
+        int queued = 0;
+        int maxDepth = 0;
+        long sent = 0;
+        long dropped = 0;
+        long conflated = 0;
+        long shed = 0;
+        for (SessionInfo sessionInfo : sessionInfoMap.values()) {
+            SessionOutboundQueue outbound = sessionInfo.getOutbound();
+            queued += outbound.depth();
+            maxDepth = Math.max(maxDepth, outbound.maxDepth());
+            sent += outbound.sent();
+            dropped += outbound.dropped();
+            conflated += outbound.conflated();
+            shed += outbound.shed();
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("capacityPerSession", outboundCapacity);
+        stats.put("overflowPolicy", overflowPolicy.name());
+        stats.put("queuedMessages", queued);
+        stats.put("maxQueueDepth", maxDepth);
+        stats.put("sentMessages", sent);
+        stats.put("droppedMessages", dropped);
+        stats.put("conflatedMessages", conflated);
+        stats.put("shedLowPriorityMessages", shed);
         return stats;
     }
 
@@ -168,45 +713,238 @@ public class WebSocketSessionManager {
         return counts;
     }
 
+    @PreDestroy
+    public void shutdown() {
+        heartbeats.stop();
+        outboundExecutor.shutdownNow();
+    }
+
     /**
-     * Método helper para enviar mensaje a un conjunto de sesiones
+     * Método helper para encolar un mensaje en un conjunto de sesiones. No bloquea: cada
+     * cola de salida se drena en su propio hilo virtual.
      */
-    private void broadcastToSessions(Set<WebSocketSession> sessions, String message) {
-        Set<WebSocketSession> toRemove = new HashSet<>();
+    private void broadcastToSessions(Set<WebSocketSession> sessions, TextMessage frame, String conflationKey) {
+        List<WebSocketSession> toRemove = null;
         
         for (WebSocketSession session : sessions) {
-            try {
-                if (session.isOpen()) {
-                    session.sendMessage(new TextMessage(message));
-                } else {
-                    toRemove.add(session);
-                }
-            } catch (Exception e) {
-                logger.error("Error sending message to session {}: {}", session.getId(), e.getMessage());
-                toRemove.add(session);
+            if (!enqueue(session, frame, conflationKey)) {
+                toRemove = addClosed(toRemove, session);
             }
         }
         
         // Limpiar sesiones cerradas
-        toRemove.forEach(this::removeSession);
+        if (toRemove != null) {
+            toRemove.forEach(this::removeAbandoned);
+        }
+    }
+
+    /**
+     * Encola el frame compartido en la cola de la sesión
+     * @return false si la sesión ya no está registrada o está cerrada
+     */
+    private boolean enqueue(WebSocketSession session, TextMessage frame, String conflationKey) {
+        return enqueue(session, frame, conflationKey, null, Priority.MEDIUM);
+    }
+
+    /**
+     * Encola el frame compartido, o la variante que corresponde a la sesión: los frames por
+     * clave si está en modo conflado, o el frame binario si negoció el subprotocolo binario
+     */
+    private boolean enqueue(WebSocketSession session, TextMessage frame, String conflationKey, Variants variants,
+                            Priority priority) {
+        SessionInfo sessionInfo = sessionInfoMap.get(session.getId());
+        if (sessionInfo == null || !session.isOpen()) {
+            return false;
+        }
+        SessionOutboundQueue outbound = sessionInfo.getOutbound();
+        if (variants != null && variants.latestValues != null && outbound.isConflating()) {
+            for (Map.Entry<String, TextMessage> latest : variants.latestValues) {
+                outbound.enqueue(latest.getValue(), latest.getKey(), priority);
+            }
+        } else if (variants != null && variants.binaryFrame != null && sessionInfo.isBinary()) {
+            // Cada sesión envuelve el mismo arreglo en su propio buffer
+            outbound.enqueue(new BinaryMessage(variants.binaryFrame), conflationKey, priority);
+        } else {
+            outbound.enqueue(frame, conflationKey, priority);
+        }
+        return true;
+    }
+
+    private static List<Map.Entry<String, TextMessage>> encodeLatestValues(Map<String, String> latestByKey) {
+        List<Map.Entry<String, TextMessage>> latestValues = new ArrayList<>(latestByKey.size());
+        for (Map.Entry<String, String> entry : latestByKey.entrySet()) {
+            latestValues.add(Map.entry(entry.getKey(), new TextMessage(entry.getValue())));
+        }
+        return latestValues;
+    }
+
+    /**
+     * Versiones alternativas de un mismo mensaje para sesiones confladas o binarias
+     */
+    private static final class Variants {
+        private final List<Map.Entry<String, TextMessage>> latestValues;
+        private final byte[] binaryFrame;
+
+        Variants(List<Map.Entry<String, TextMessage>> latestValues, byte[] binaryFrame) {
+            this.latestValues = latestValues;
+            this.binaryFrame = binaryFrame;
+        }
+    }
+
+    private boolean subscribedToAny(SessionInfo sessionInfo, List<String> channels, int before) {
+        for (int j = 0; j < before; j++) {
+            if (sessionInfo.getChannels().contains(channels.get(j))) {
+                return true;
+            }
+        }
+        if (before > 0 && !topicSubscriptions.isEmpty()) {
+            for (String subscription : sessionInfo.getChannels()) {
+                if (!TopicTrie.isPattern(subscription)) {
+                    continue;
+                }
+                for (int j = 0; j < before; j++) {
+                    if (TopicTrie.isTopic(channels.get(j)) && TopicTrie.matches(subscription, channels.get(j))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Suscriptores exactos del canal más los de patrones que lo cubren. Los patrones solo se
+     * consultan para tópicos stock.*; sin patrones registrados o fuera de ese espacio devuelve
+     * el conjunto exacto sin copiarlo.
+     */
+    private Set<WebSocketSession> subscribersOf(String channel) {
+        Set<WebSocketSession> exact = channelSubscriptions.get(channel);
+        if (topicSubscriptions.isEmpty() || !TopicTrie.isTopic(channel)) {
+            return exact;
+        }
+        Set<WebSocketSession> matched = new HashSet<>();
+        topicSubscriptions.collect(channel, matched);
+        if (matched.isEmpty()) {
+            return exact;
+        }
+        if (exact != null) {
+            matched.addAll(exact);
+        }
+        return matched;
+    }
+
+    /**
+     * Antepone al objeto JSON las secuencias asignadas en cada canal. Los mensajes que no son
+     * un objeto JSON se publican sin sellar.
+     */
+    private static String stamp(List<String> channels, List<ChannelReplayBuffer> streams, String message) {
+        if (message.isEmpty() || message.charAt(0) != '{') {
+            return message;
+        }
+        JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+        StringBuilder stamped = new StringBuilder(message.length() + 32 * channels.size());
+        stamped.append("{\"seq\":{");
+        for (int i = 0; i < channels.size(); i++) {
+            if (i > 0) {
+                stamped.append(',');
+            }
+            stamped.append('"');
+            encoder.quoteAsString(channels.get(i), stamped);
+            stamped.append("\":").append(streams.get(i).nextSeq());
+        }
+        stamped.append('}');
+        if (!"{}".equals(message)) {
+            stamped.append(',');
+        }
+        return stamped.append(message, 1, message.length()).toString();
+    }
+
+    private void removeSubscriber(String channel, WebSocketSession session) {
+        if (TopicTrie.isPattern(channel)) {
+            topicSubscriptions.remove(channel, session);
+            return;
+        }
+        channelSubscriptions.computeIfPresent(channel, (key, subscribers) -> {
+            subscribers.remove(session);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    private static String resolveUserId(WebSocketSession session) {
+        Object userId = session.getAttributes() != null ? session.getAttributes().get(USER_ID_ATTRIBUTE) : null;
+        return userId != null ? userId.toString() : null;
+    }
+
+    private static String resolveRole(WebSocketSession session) {
+        Object role = session.getAttributes() != null ? session.getAttributes().get(ROLE_ATTRIBUTE) : null;
+        return role != null ? role.toString() : null;
+    }
+
+    private static List<WebSocketSession> addClosed(List<WebSocketSession> closed, WebSocketSession session) {
+        List<WebSocketSession> list = closed != null ? closed : new ArrayList<>();
+        list.add(session);
+        return list;
+    }
+
+    /**
+     * Quita una sesión cerrada de los índices aunque ya no tenga información registrada
+     */
+    private void removeAbandoned(WebSocketSession session) {
+        if (sessionInfoMap.containsKey(session.getId())) {
+            removeSession(session);
+            return;
+        }
+        sessionsByType.values().forEach(sessions -> sessions.remove(session));
+        channelSubscriptions.values().forEach(subs -> subs.remove(session));
     }
 
     /**
      * Clase interna para guardar información de la sesión
      */
     private static class SessionInfo {
-        private final String sessionId;
+        private final WebSocketSession session;
         private final String connectionType;
+        private final String userId;
+        private final boolean binary;
         private final long connectedAt;
+        private final SessionOutboundQueue outbound;
+        // Índice inverso sesión -> canales, para limpiar al desconectar sin recorrer todos los canales
+        private final Set<String> channels = ConcurrentHashMap.newKeySet();
+        private volatile long lastActivityNanos = System.nanoTime();
+        private volatile HashedTimingWheel.Timeout<SessionInfo> heartbeat;
 
-        public SessionInfo(String sessionId, String connectionType, long connectedAt) {
-            this.sessionId = sessionId;
+        public SessionInfo(WebSocketSession session, String connectionType, String userId, boolean binary,
+                           long connectedAt, SessionOutboundQueue outbound) {
+            this.session = session;
             this.connectionType = connectionType;
+            this.userId = userId;
+            this.binary = binary;
             this.connectedAt = connectedAt;
+            this.outbound = outbound;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public boolean isBinary() {
+            return binary;
+        }
+
+        public Set<String> getChannels() {
+            return channels;
         }
 
         public String getSessionId() {
-            return sessionId;
+            return session.getId();
+        }
+
+        public WebSocketSession getSession() {
+            return session;
+        }
+
+        public SessionOutboundQueue getOutbound() {
+            return outbound;
         }
 
         public String getConnectionType() {
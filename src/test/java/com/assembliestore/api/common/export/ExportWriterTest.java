@@ -0,0 +1,53 @@
+package com.assembliestore.api.common.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExportWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void writesGzippedNdjsonOneDocumentPerLine() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ExportWriter<Map<String, Object>> writer = new ExportWriter<>(out, ExportFormat.NDJSON, true, objectMapper, List.of())) {
+            writer.sink().accept(Map.of("id", "o1"));
+            writer.sink().accept(Map.of("id", "o2"));
+            assertEquals(2, writer.getRows());
+        }
+
+        String content;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertEquals("{\"id\":\"o1\"}\n{\"id\":\"o2\"}\n", content);
+    }
+
+    @Test
+    void writesCsvWithHeaderAndQuotedValues() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<ExportWriter.Column<String[]>> columns = List.of(
+                new ExportWriter.Column<>("id", row -> row[0]),
+                new ExportWriter.Column<>("name", row -> row[1]));
+        try (ExportWriter<String[]> writer = new ExportWriter<>(out, ExportFormat.CSV, false, objectMapper, columns)) {
+            writer.write(new String[]{"p1", "Silla, \"gamer\""});
+            writer.write(new String[]{"p2", null});
+        }
+
+        assertEquals("id,name\r\np1,\"Silla, \"\"gamer\"\"\"\r\np2,\r\n", out.toString(StandardCharsets.UTF_8));
+        assertTrue(ExportWriter.acceptsGzip("deflate, gzip;q=0.8"));
+        assertFalse(ExportWriter.acceptsGzip("gzip;q=0, br"));
+        assertFalse(ExportWriter.acceptsGzip(null));
+    }
+}
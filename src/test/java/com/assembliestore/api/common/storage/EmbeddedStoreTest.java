@@ -0,0 +1,68 @@
+package com.assembliestore.api.common.storage;
+
+import com.assembliestore.api.module.product.domain.entity.Gallery;
+import com.assembliestore.api.module.product.domain.entity.Product;
+import com.assembliestore.api.module.product.infrastructure.adapter.out.persistence.EmbeddedProductRepository;
+import com.assembliestore.api.module.user.domain.entities.OTPVerification;
+import com.assembliestore.api.module.user.infrastructure.adapter.out.persistence.EmbeddedOTPRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddedStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void adaptersRebuildTheirStateFromDisk() throws Exception {
+        EmbeddedStore store = open();
+        EmbeddedProductRepository products = new EmbeddedProductRepository(store);
+        Gallery image = new Gallery("g1", "https://img/1.png", "front", true, true, false, new Date(), null, null);
+        products.upsertBatch(List.of(
+                Product.builder().id("p1").name("Chair").subCategoryId("sub").stockQuantity(4).gallery(List.of(image)).build(),
+                Product.builder().id("p2").name("Desk").subCategoryId("sub").visible(false).build()));
+
+        EmbeddedOTPRepository otps = new EmbeddedOTPRepository(store);
+        otps.save(new OTPVerification("u1", "ana@example.com", "111111"));
+        otps.deactivatePreviousOTPs("ana@example.com");
+        OTPVerification current = otps.save(new OTPVerification("u1", "ana@example.com", "222222"));
+        store.close();
+
+        store = open();
+        products = new EmbeddedProductRepository(store);
+        Product chair = products.findById("p1").orElseThrow();
+        assertEquals(4, chair.getStockQuantity());
+        assertEquals(image, chair.getGallery().get(0));
+        assertEquals(List.of("p1"), products.findAllForClient().stream().map(Product::getId).toList());
+        assertTrue(products.findByIdForManagement("p2").isPresent());
+
+        otps = new EmbeddedOTPRepository(store);
+        OTPVerification active = otps.findActiveByEmail("ana@example.com").orElseThrow();
+        assertEquals(current.getId(), active.getId());
+        assertEquals(current.getExpiresAt(), active.getExpiresAt());
+        assertFalse(otps.findByEmailAndOtpCode("ana@example.com", "111111").orElseThrow().isActive());
+        store.close();
+    }
+
+    @Test
+    void segmentSizesThatDoNotFitAMappingAreRejected() {
+        assertEquals(64 * 1024 * 1024, EmbeddedStore.segmentBytes(DataSize.ofMegabytes(64)));
+        assertThrows(IllegalArgumentException.class, () -> EmbeddedStore.segmentBytes(DataSize.ofGigabytes(2)));
+        assertThrows(IllegalArgumentException.class, () -> EmbeddedStore.segmentBytes(DataSize.ofGigabytes(4)));
+    }
+
+    private EmbeddedStore open() throws Exception {
+        return new EmbeddedStore(new LogStore(directory, 1 << 16, true, 0.5, Duration.ZERO));
+    }
+}
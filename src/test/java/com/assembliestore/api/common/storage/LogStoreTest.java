@@ -0,0 +1,222 @@
+package com.assembliestore.api.common.storage;
+
+import com.assembliestore.api.common.error.InfrastructureException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopeningReplaysTheLogAndDropsATornTail() throws Exception {
+        try (LogStore store = open(4096)) {
+            store.put("users", "u1", bytes("ana"));
+            store.put("users", "u2", bytes("bob"));
+            store.put("users", "u1", bytes("ana v2"));
+            store.delete("users", "u2");
+            store.put("orders", "o1", bytes("order"));
+        }
+
+        // Una escritura que no llegó a completarse: un registro a medias al final del segmento
+        Path segment = segments().get(0);
+        long end = recordsEnd(segment);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(end);
+            file.write(LogStore.encode(bytes("users\0u3"), bytes("torn")), 0, 20);
+        }
+
+        try (LogStore store = open(4096)) {
+            assertArrayEquals(bytes("ana v2"), store.get("users", "u1"));
+            assertNull(store.get("users", "u2"));
+            assertNull(store.get("users", "u3"));
+            assertEquals(List.of("u1"), List.copyOf(store.keys("users")));
+            assertArrayEquals(bytes("order"), store.get("orders", "o1"));
+
+            // Lo nuevo se escribe sobre la cola limpiada y sobrevive a otra reapertura
+            store.put("users", "u3", bytes("carla"));
+        }
+        try (LogStore store = open(4096)) {
+            assertArrayEquals(bytes("carla"), store.get("users", "u3"));
+            assertEquals(List.of("u1", "u3"), List.copyOf(store.keys("users")));
+        }
+    }
+
+    @Test
+    void compactionReclaimsSegmentsWithoutResurrectingDeletes() throws Exception {
+        try (LogStore store = open(1024)) {
+            for (int round = 0; round < 20; round++) {
+                for (int i = 0; i < 5; i++) {
+                    store.put("products", "p" + i, bytes("product " + i + " round " + round));
+                }
+            }
+            store.delete("products", "p0");
+            int before = segments().size();
+
+            store.compact();
+
+            assertTrue(segments().size() < before, "compaction should drop segments");
+            assertTrue((long) store.getStats().get("compactedSegments") > 0);
+            assertNull(store.get("products", "p0"));
+            for (int i = 1; i < 5; i++) {
+                assertArrayEquals(bytes("product " + i + " round 19"), store.get("products", "p" + i));
+            }
+        }
+
+        try (LogStore store = open(1024)) {
+            assertNull(store.get("products", "p0"));
+            assertEquals(List.of("p1", "p2", "p3", "p4"), List.copyOf(store.keys("products")));
+            assertArrayEquals(bytes("product 4 round 19"), store.get("products", "p4"));
+        }
+    }
+
+    @Test
+    void compactionDropsTombstonesOnceNoOlderVersionRemains() throws Exception {
+        try (LogStore store = open(1024)) {
+            // Un primer segmento casi todo vivo que la compactación no toca y no tiene la clave borrada
+            for (int i = 0; i < 18; i++) {
+                store.put("products", "keep" + i, bytes("kept product " + i));
+            }
+            churn(store, 10);
+            store.put("products", "gone", bytes("short lived"));
+            churn(store, 20);
+            store.delete("products", "gone");
+            churn(store, 40);
+            assertEquals(1, store.getStats().get("tombstones"));
+
+            store.compact();
+            long compacted = (long) store.getStats().get("compactedSegments");
+
+            assertEquals(0, store.getStats().get("tombstones"));
+            assertNull(store.get("products", "gone"));
+
+            // Sin borrados que arrastrar, otra pasada no encuentra nada que compactar
+            store.compact();
+            assertEquals(compacted, store.getStats().get("compactedSegments"));
+        }
+
+        try (LogStore store = open(1024)) {
+            assertNull(store.get("products", "gone"));
+            assertEquals(0, store.getStats().get("tombstones"));
+            assertEquals(21, store.keys("products").size());
+            assertArrayEquals(bytes("kept product 17"), store.get("products", "keep17"));
+        }
+    }
+
+    @Test
+    void concurrentWritersShareFsyncs() throws Exception {
+        int writers = 8;
+        int writesPerWriter = 50;
+        try (LogStore store = open(1 << 20)) {
+            ExecutorService executor = Executors.newFixedThreadPool(writers);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < writesPerWriter; i++) {
+                        store.put("tokens", writer + "-" + i, bytes("token " + i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+
+            assertEquals(writers * writesPerWriter, store.keys("tokens").size());
+            long syncs = (long) store.getStats().get("syncs");
+            assertTrue(syncs < writers * writesPerWriter, "expected grouped fsyncs, got " + syncs);
+        }
+    }
+
+    @Test
+    void failedFsyncStopsTheStoreInsteadOfExposingTheWrite() throws Exception {
+        AtomicBoolean failing = new AtomicBoolean(false);
+        try (LogStore store = new LogStore(directory, 4096, true, 0.5, Duration.ZERO) {
+            @Override
+            void forceRange(MappedByteBuffer buffer, int offset, int length) {
+                if (failing.get()) {
+                    throw new UncheckedIOException(new IOException("simulated fsync failure"));
+                }
+                super.forceRange(buffer, offset, length);
+            }
+        }) {
+            store.put("users", "u0", bytes("durable"));
+            failing.set(true);
+
+            assertThrows(InfrastructureException.class, () -> store.put("users", "u1", bytes("ana")));
+
+            // La escritura fallida no se puede leer, y nada más se atiende hasta reabrir
+            failing.set(false);
+            assertThrows(InfrastructureException.class, () -> store.get("users", "u1"));
+            assertThrows(InfrastructureException.class, () -> store.get("users", "u0"));
+            assertThrows(InfrastructureException.class, () -> store.put("users", "u2", bytes("bob")));
+            assertThrows(InfrastructureException.class, store::compact);
+        }
+
+        try (LogStore store = open(4096)) {
+            assertArrayEquals(bytes("durable"), store.get("users", "u0"));
+            assertNull(store.get("users", "u2"));
+        }
+    }
+
+    private LogStore open(int segmentBytes) throws IOException {
+        return new LogStore(directory, segmentBytes, true, 0.5, Duration.ZERO);
+    }
+
+    /**
+     * Reescribe unas pocas claves muchas veces para llenar segmentos de versiones viejas
+     */
+    private static void churn(LogStore store, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < 3; i++) {
+                store.put("products", "hot" + i, bytes("hot product " + i + " round " + round));
+            }
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    /**
+     * Posición del primer byte libre: los registros van seguidos y el resto del archivo es cero
+     */
+    private static long recordsEnd(Path segment) throws IOException {
+        byte[] content = Files.readAllBytes(segment);
+        int end = content.length;
+        while (end > 0 && content[end - 1] == 0) {
+            end--;
+        }
+        return end;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,31 @@
+package com.assembliestore.api.common.type;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CursorPageTest {
+
+    @Test
+    void cursorPointsAfterTheLastReturnedItem() {
+        CursorPage<String> page = CursorPage.of(List.of("a", "b", "c"), 2, item -> item);
+        assertEquals(List.of("a", "b"), page.items());
+        assertEquals("b", CursorPage.decode(page.nextCursor()));
+
+        CursorPage<String> last = CursorPage.of(List.of("c"), 2, item -> item);
+        assertNull(last.nextCursor());
+        assertNull(CursorPage.decode(null));
+    }
+
+    @Test
+    void limitsAreClampedAndBadCursorsRejected() {
+        assertEquals(CursorPage.DEFAULT_LIMIT, CursorPage.limit(null));
+        assertEquals(1, CursorPage.limit(0));
+        assertEquals(CursorPage.MAX_LIMIT, CursorPage.limit(10_000));
+        assertThrows(IllegalArgumentException.class, () -> CursorPage.decode("not base64!"));
+    }
+}
@@ -0,0 +1,63 @@
+package com.assembliestore.api.module.product.application.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara el contador único contra el contador repartido con muchos hilos
+ * descontando del mismo producto (escenario de venta flash).
+ *
+ * Ejecutar con: mvn test-compile y luego la clase main con el classpath de test,
+ * por ejemplo {@code java -cp <classpath> ...StockCounterBenchmark -wi 2 -i 3}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class StockCounterBenchmark {
+
+    private static final int INITIAL_STOCK = Integer.MAX_VALUE / 2;
+
+    @Param({ "single", "sharded" })
+    public String mode;
+
+    private StockCounter counter;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        counter = "sharded".equals(mode)
+                ? new ShardedStockCounter(INITIAL_STOCK)
+                : new StockCounter.Single(INITIAL_STOCK);
+    }
+
+    @Benchmark
+    public int reserve() {
+        return counter.tryTake(1);
+    }
+
+    @Benchmark
+    public int reserveAndRestore() {
+        counter.tryTake(2);
+        return counter.give(2);
+    }
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args.length > 0 ? args : new String[] { StockCounterBenchmark.class.getSimpleName() });
+    }
+}
@@ -0,0 +1,258 @@
+package com.assembliestore.api.module.product.application.service;
+
+import com.assembliestore.api.module.product.domain.entity.Product;
+import com.assembliestore.api.module.product.infrastructure.adapter.out.persistence.InMemoryProductRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class StockEngineConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS_PER_THREAD = 5_000;
+
+    @Test
+    void concurrentReservationsNeverOversell() throws Exception {
+        InMemoryProductRepository repository = new InMemoryProductRepository();
+        repository.upsert(product("A", 2_000));
+        repository.upsert(product("B", 1_500));
+        StockEngine engine = new StockEngine(repository);
+
+        AtomicInteger soldA = new AtomicInteger();
+        AtomicInteger soldB = new AtomicInteger();
+        AtomicInteger attempts = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    int quantityA = random.nextInt(1, 4);
+                    int quantityB = random.nextInt(1, 4);
+                    attempts.incrementAndGet();
+                    if (engine.reserve(Map.of("A", quantityA, "B", quantityB)).isPresent()) {
+                        soldA.addAndGet(quantityA);
+                        soldB.addAndGet(quantityB);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long startedAt = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        double seconds = (System.nanoTime() - startedAt) / 1_000_000_000.0;
+        pool.shutdown();
+
+        // Nunca se vende más de lo que había y el contador refleja exactamente lo vendido
+        assertTrue(soldA.get() <= 2_000);
+        assertTrue(soldB.get() <= 1_500);
+        assertEquals(2_000 - soldA.get(), engine.getAvailable("A"));
+        assertEquals(1_500 - soldB.get(), engine.getAvailable("B"));
+        assertTrue(attempts.get() / seconds > 1_000, "throughput below 1000 reservations/s");
+
+        // El write-through termina reflejando el contador en el repositorio
+        engine.shutdown();
+        assertEquals(engine.getAvailable("A"), repository.findById("A").get().getStockQuantity());
+        assertEquals(engine.getAvailable("B"), repository.findById("B").get().getStockQuantity());
+    }
+
+    @Test
+    void shardedModeNeverOversellsWhileSwitchingModes() throws Exception {
+        InMemoryProductRepository repository = new InMemoryProductRepository();
+        repository.upsert(product("HOT", 3_000));
+        StockEngine engine = new StockEngine(repository);
+        engine.setSharded("HOT", true);
+
+        AtomicInteger sold = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    if (engine.reserve(Map.of("HOT", 1)).isPresent()) {
+                        sold.incrementAndGet();
+                        // Una de cada diez ventas se devuelve para ejercitar give() durante el cambio de modo
+                        if (i % 10 == 0) {
+                            engine.release(Map.of("HOT", 1));
+                            sold.decrementAndGet();
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        for (int i = 0; i < 50; i++) {
+            engine.setSharded("HOT", i % 2 == 0);
+            Thread.sleep(1);
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertTrue(sold.get() <= 3_000);
+        assertEquals(3_000 - sold.get(), engine.getAvailable("HOT"));
+        engine.shutdown();
+        assertEquals(engine.getAvailable("HOT"), repository.findById("HOT").get().getStockQuantity());
+    }
+
+    @Test
+    void stockIsConservedAcrossModeSwitches() throws Exception {
+        InMemoryProductRepository repository = new InMemoryProductRepository();
+        repository.upsert(product("HOT", 64));
+        StockEngine engine = new StockEngine(repository);
+
+        // Poco stock repartido entre muchas porciones: casi todo intento toma prestado y muchos
+        // fallan y devuelven lo tomado mientras el modo cambia
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    if (engine.reserve(Map.of("HOT", 7)).isPresent()) {
+                        engine.release(Map.of("HOT", 7));
+                    }
+                }
+                return null;
+            }));
+        }
+        for (int i = 0; futures.stream().anyMatch(future -> !future.isDone()); i++) {
+            engine.setSharded("HOT", i % 2 == 0);
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        // Todo lo reservado se devolvió: el total tiene que ser exactamente el inicial
+        assertEquals(64, engine.getAvailable("HOT"));
+        engine.shutdown();
+    }
+
+    @Test
+    void shardedCounterBorrowsAcrossSlicesUntilExhausted() throws Exception {
+        ShardedStockCounter counter = new ShardedStockCounter(10, 8);
+        assertTrue(counter.tryTake(5) >= 0);
+        assertEquals(-1, counter.tryTake(6));
+        assertEquals(5, counter.get());
+
+        ShardedStockCounter hot = new ShardedStockCounter(20_000, 8);
+        AtomicInteger taken = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                while (hot.tryTake(3) >= 0) {
+                    taken.addAndGet(3);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(20_000, taken.get() + hot.get());
+        assertTrue(hot.get() >= 0);
+    }
+
+    @Test
+    void failedReservationLeavesEveryProductUntouched() {
+        InMemoryProductRepository repository = new InMemoryProductRepository();
+        repository.upsert(product("A", 10));
+        repository.upsert(product("B", 1));
+        StockEngine engine = new StockEngine(repository);
+
+        assertFalse(engine.reserve(Map.of("A", 5, "B", 2)).isPresent());
+        assertFalse(engine.reserve(Map.of("A", 1, "missing", 1)).isPresent());
+        assertEquals(10, engine.getAvailable("A"));
+        assertEquals(1, engine.getAvailable("B"));
+        assertEquals(-1, engine.getAvailable("missing"));
+    }
+
+    @Test
+    void cartIsLoadedAndPersistedInOneBatch() {
+        InMemoryProductRepository repository = spy(new InMemoryProductRepository());
+        Map<String, Integer> cart = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            repository.upsert(product("P" + i, 50));
+            cart.put("P" + i, 2);
+        }
+        StockEngine engine = new StockEngine(repository);
+        clearInvocations(repository);
+
+        assertTrue(engine.reserve(cart).isPresent());
+        engine.shutdown();
+
+        // Una lectura para cargar el carrito y una sola escritura de existencias por lote
+        verify(repository, times(1)).findAllById(anyCollection());
+        verify(repository, times(1)).updateStock(anyMap());
+        assertEquals(48, repository.findById("P7").get().getStockQuantity());
+    }
+
+    @Test
+    void writeThroughKeepsConcurrentProductEdits() {
+        InMemoryProductRepository repository = new InMemoryProductRepository();
+        repository.upsert(product("A", 10));
+        // Sin hilo de escritura: cada write-through se hace a mano con flush()
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        writer.shutdown();
+        StockEngine engine = new StockEngine(repository, writer, false);
+
+        // Edición de management leída antes de la reserva y guardada después del write-through
+        Product edited = repository.findById("A").get();
+        assertTrue(engine.reserve(Map.of("A", 3)).isPresent());
+        engine.flush();
+        edited.setName("Renamed");
+        repository.upsert(edited);
+        engine.persistStock("A");
+        engine.flush();
+
+        Product stored = repository.findById("A").get();
+        assertEquals("Renamed", stored.getName());
+        assertEquals(7, stored.getStockQuantity());
+
+        // El write-through solo escribe la existencia: una edición posterior no se pisa
+        edited = repository.findById("A").get();
+        edited.setName("Renamed again");
+        repository.upsert(edited);
+        assertTrue(engine.reserve(Map.of("A", 1)).isPresent());
+        engine.flush();
+
+        stored = repository.findById("A").get();
+        assertEquals("Renamed again", stored.getName());
+        assertEquals(6, stored.getStockQuantity());
+    }
+
+    private static Product product(String id, int stock) {
+        return Product.builder().id(id).name("Product " + id).stockQuantity(stock).build();
+    }
+}
@@ -0,0 +1,123 @@
+package com.assembliestore.api.module.product.application.service;
+
+import com.assembliestore.api.common.error.StockHoldException;
+import com.assembliestore.api.module.product.domain.entity.Product;
+import com.assembliestore.api.module.product.infrastructure.adapter.out.persistence.InMemoryProductRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StockHoldTest {
+
+    private final InMemoryProductRepository repository = new InMemoryProductRepository();
+    private final StockEngine engine = new StockEngine(repository, Executors.newSingleThreadExecutor(), false);
+
+    StockHoldTest() {
+        repository.upsert(Product.builder().id("A").name("Product A").stockQuantity(10).build());
+    }
+
+    @Test
+    void holdReducesAvailableToSellButNotOnHand() {
+        Optional<StockEngine.Hold> hold = engine.hold("user-1", Map.of("A", 4), Duration.ofMinutes(5), 5);
+
+        assertTrue(hold.isPresent());
+        assertEquals(6, engine.getAvailable("A"));
+        assertFalse(engine.hold("user-1", Map.of("A", 7), Duration.ofMinutes(5), 5).isPresent());
+
+        engine.flush();
+        assertEquals(10, repository.findById("A").get().getStockQuantity());
+    }
+
+    @Test
+    void confirmedHoldIsDeductedFromOnHand() {
+        String holdId = engine.hold("user-1", Map.of("A", 4), Duration.ofMinutes(5), 5).get().holdId();
+
+        assertFalse(engine.confirmHold(holdId, "user-1", Map.of("A", 5)));
+        assertTrue(engine.confirmHold(holdId, "user-1", Map.of("A", 4)));
+        assertFalse(engine.confirmHold(holdId, "user-1", null));
+        assertEquals(6, engine.getAvailable("A"));
+
+        engine.flush();
+        assertEquals(6, repository.findById("A").get().getStockQuantity());
+    }
+
+    @Test
+    void expiredHoldReturnsStockAndCannotBeConfirmed() {
+        List<StockEngine.StockChange> expired = new ArrayList<>();
+        engine.onHoldExpired(expired::addAll);
+        String holdId = engine.hold("user-1", Map.of("A", 3), Duration.ofSeconds(2), 5).get().holdId();
+
+        engine.advanceHoldExpiry();
+        assertEquals(7, engine.getAvailable("A"));
+        engine.advanceHoldExpiry();
+
+        assertEquals(10, engine.getAvailable("A"));
+        assertEquals(0, engine.getActiveHolds());
+        assertEquals(1, expired.size());
+        assertFalse(engine.confirmHold(holdId, "user-1", null));
+        assertFalse(engine.releaseHold(holdId, "user-1").isPresent());
+    }
+
+    @Test
+    void releasedHoldDoesNotExpireLater() {
+        List<StockEngine.StockChange> expired = new ArrayList<>();
+        engine.onHoldExpired(expired::addAll);
+        String holdId = engine.hold("user-1", Map.of("A", 3), Duration.ofSeconds(1), 5).get().holdId();
+
+        assertTrue(engine.releaseHold(holdId, "user-1").isPresent());
+        engine.advanceHoldExpiry();
+        engine.advanceHoldExpiry();
+
+        assertEquals(10, engine.getAvailable("A"));
+        assertTrue(expired.isEmpty());
+    }
+
+    @Test
+    void holdBelongsToItsOwnerAndActiveHoldsAreCapped() {
+        String holdId = engine.hold("user-1", Map.of("A", 2), Duration.ofMinutes(5), 2).get().holdId();
+        engine.hold("user-1", Map.of("A", 2), Duration.ofMinutes(5), 2);
+
+        assertThrows(StockHoldException.class, () -> engine.hold("user-1", Map.of("A", 1), Duration.ofMinutes(5), 2));
+        assertTrue(engine.hold("user-2", Map.of("A", 1), Duration.ofMinutes(5), 2).isPresent());
+
+        // Otro usuario no puede liberar ni confirmar la reserva
+        assertFalse(engine.releaseHold(holdId, "user-2").isPresent());
+        assertFalse(engine.confirmHold(holdId, "user-2", Map.of("A", 2)));
+        assertEquals(5, engine.getAvailable("A"));
+
+        // Al terminar una reserva el dueño recupera su lugar
+        assertTrue(engine.releaseHold(holdId, "user-1").isPresent());
+        assertEquals(1, engine.getActiveHolds("user-1"));
+        assertTrue(engine.hold("user-1", Map.of("A", 1), Duration.ofMinutes(5), 2).isPresent());
+    }
+
+    @Test
+    void stockCannotBeSetBelowWhatIsHeld() {
+        String holdId = engine.hold("user-1", Map.of("A", 4), Duration.ofMinutes(5), 5).get().holdId();
+        Product lowered = Product.builder().id("A").name("Product A").stockQuantity(2).build();
+
+        StockHoldException rejected = assertThrows(StockHoldException.class, () -> engine.ensureCoversHolds(List.of(lowered)));
+        assertEquals(StockHoldException.Reason.BELOW_HELD, rejected.getReason());
+
+        // Si igual llega (una reserva entró después de validar), se conserva lo apartado
+        repository.upsert(lowered);
+        engine.overwrite(lowered);
+        assertEquals(0, engine.getAvailable("A"));
+        engine.flush();
+        assertEquals(4, repository.findById("A").get().getStockQuantity());
+
+        assertTrue(engine.confirmHold(holdId, "user-1", Map.of("A", 4)));
+        engine.flush();
+        assertEquals(0, repository.findById("A").get().getStockQuantity());
+    }
+}
@@ -0,0 +1,61 @@
+package com.assembliestore.api.module.product.application.service;
+
+import com.assembliestore.api.module.product.domain.entity.Product;
+import com.assembliestore.api.module.product.infrastructure.adapter.out.persistence.InMemoryProductRepository;
+import com.assembliestore.api.service.realtime.dto.StockUpdateMessage;
+import com.assembliestore.api.service.realtime.service.RealtimeNotificationService;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class StockUpdateCoalescerTest {
+
+    @Test
+    void tenLineOrderIsPublishedAsOneBatchPerWindow() {
+        InMemoryProductRepository repository = new InMemoryProductRepository();
+        repository.upsert(Product.builder().id("A").name("Product A").stockQuantity(100).build());
+        repository.upsert(Product.builder().id("B").name("Product B").stockQuantity(5).build());
+        StockEngine engine = new StockEngine(repository);
+        RealtimeNotificationService realtime = mock(RealtimeNotificationService.class);
+        StockUpdateCoalescer coalescer = new StockUpdateCoalescer(engine, realtime, 100, false);
+
+        // Diez cambios sobre A y uno sobre B dentro de la misma ventana
+        for (int i = 0; i < 10; i++) {
+            engine.reserve(Map.of("A", 1)).get().forEach(change -> coalescer.submit(change, "SALE"));
+        }
+        engine.release(Map.of("B", 2)).forEach(change -> coalescer.submit(change, "RESTORE"));
+        assertEquals(2, coalescer.getPendingProducts());
+        verify(realtime, never()).sendStockUpdateBatch(anyList());
+
+        coalescer.flush();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<StockUpdateMessage>> batch = ArgumentCaptor.forClass(List.class);
+        verify(realtime, times(1)).sendStockUpdateBatch(batch.capture());
+        List<StockUpdateMessage> updates = batch.getValue().stream()
+                .sorted(Comparator.comparing(StockUpdateMessage::getProductId))
+                .toList();
+        assertEquals(2, updates.size());
+        assertEquals(100, updates.get(0).getPreviousStock());
+        assertEquals(90, updates.get(0).getCurrentStock());
+        assertEquals("SALE", updates.get(0).getReason());
+        assertEquals(5, updates.get(1).getPreviousStock());
+        assertEquals(7, updates.get(1).getCurrentStock());
+        assertEquals("RESTORE", updates.get(1).getReason());
+
+        // Una ventana sin cambios no envía nada
+        coalescer.flush();
+        verify(realtime, times(1)).sendStockUpdateBatch(anyList());
+        engine.shutdown();
+    }
+}
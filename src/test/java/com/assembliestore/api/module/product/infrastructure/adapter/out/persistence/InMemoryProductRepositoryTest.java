@@ -0,0 +1,85 @@
+package com.assembliestore.api.module.product.infrastructure.adapter.out.persistence;
+
+import com.assembliestore.api.module.product.domain.entity.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryProductRepositoryTest {
+
+    private final InMemoryProductRepository repository = new InMemoryProductRepository();
+
+    @Test
+    void roleListingsFollowEachUpsertInIdOrder() {
+        repository.upsertBatch(List.of(product("p3", 3), product("p1", 1), product("p2", 2)));
+        assertEquals(List.of("p1", "p2", "p3"), ids(repository.findAllForClient()));
+
+        // Oculto: sale de cliente; borrado: sale también de management
+        Product hidden = repository.findById("p2").orElseThrow();
+        hidden.setVisible(false);
+        Product deleted = repository.findById("p3").orElseThrow();
+        deleted.setDeleted(true);
+        repository.upsertBatch(List.of(hidden, deleted));
+
+        assertEquals(List.of("p1"), ids(repository.findAllForClient()));
+        assertEquals(List.of("p1", "p2"), ids(repository.findAllForManagement()));
+        assertEquals(List.of("p1", "p2", "p3"), ids(repository.findAll()));
+        assertTrue(repository.findByIdForClient("p2").isEmpty());
+        assertTrue(repository.findByIdForManagement("p3").isEmpty());
+
+        hidden.setVisible(true);
+        repository.upsert(hidden);
+        assertEquals(List.of("p1", "p2"), ids(repository.findAllForClient()));
+
+        // La vista de cliente no expone stock ni estado interno
+        Product clientView = repository.findByIdForClient("p2").orElseThrow();
+        assertEquals(0, clientView.getStockQuantity());
+        assertNull(clientView.getSubCategoryId());
+        assertEquals(2, repository.findByIdForManagement("p2").orElseThrow().getStockQuantity());
+    }
+
+    @Test
+    void listingsAreSharedSnapshotsAndLookupsAreCopies() {
+        repository.upsert(product("p1", 5));
+        List<Product> listing = repository.findAllForClient();
+        assertSame(listing, repository.findAllForClient());
+        assertThrows(UnsupportedOperationException.class, () -> listing.add(product("x", 0)));
+
+        Product copy = repository.findById("p1").orElseThrow();
+        copy.setStockQuantity(99);
+        assertEquals(5, repository.findAllForManagement().get(0).getStockQuantity());
+
+        repository.upsert(copy);
+        // La lectura anterior sigue viendo su snapshot
+        assertEquals(1, listing.size());
+        assertEquals(99, repository.findAllForManagement().get(0).getStockQuantity());
+    }
+
+    @Test
+    void pagesStartAfterTheGivenIdEvenIfItWasRemoved() {
+        repository.upsertBatch(List.of(product("p1", 1), product("p2", 2), product("p3", 3), product("p4", 4)));
+        assertEquals(List.of("p1", "p2"), ids(repository.findPageForClient(null, 2)));
+        assertEquals(List.of("p3", "p4"), ids(repository.findPageForClient("p2", 2)));
+
+        Product hidden = repository.findById("p2").orElseThrow();
+        hidden.setVisible(false);
+        repository.upsert(hidden);
+        assertEquals(List.of("p3", "p4"), ids(repository.findPageForClient("p2", 5)));
+        assertEquals(List.of("p2", "p3"), ids(repository.findPage("p1", 2)));
+        assertTrue(repository.findPageForManagement("p4", 2).isEmpty());
+    }
+
+    private static Product product(String id, int stock) {
+        return Product.builder().id(id).name("Product " + id).subCategoryId("sub").stockQuantity(stock).build();
+    }
+
+    private static List<String> ids(List<Product> products) {
+        return products.stream().map(Product::getId).toList();
+    }
+}
@@ -0,0 +1,195 @@
+package com.assembliestore.api.module.sale.application.service;
+
+import com.assembliestore.api.common.error.OrderAdmissionException;
+import com.assembliestore.api.module.product.domain.port.StockPort;
+import com.assembliestore.api.module.sale.application.dto.response.OrderPaymentResponse;
+import com.assembliestore.api.module.sale.domain.entity.Order;
+import com.assembliestore.api.module.sale.domain.entity.OrderProduct;
+import com.assembliestore.api.service.realtime.service.RealtimeNotificationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderAdmissionServiceTest {
+
+    private OrderService orderService;
+    private StockPort stockPort;
+    private RealtimeNotificationService realtimeNotificationService;
+    private ExecutorService worker;
+    private OrderAdmissionService admission;
+
+    @BeforeEach
+    void setUp() {
+        orderService = mock(OrderService.class);
+        stockPort = mock(StockPort.class);
+        realtimeNotificationService = mock(RealtimeNotificationService.class);
+        worker = Executors.newSingleThreadExecutor();
+        when(orderService.createOrder(any(Order.class), any()))
+                .thenAnswer(invocation -> new OrderPaymentResponse(invocation.getArgument(0), null));
+        // 20 órdenes/s: dos turnos por ciclo de drenado de 100 ms
+        admission = new OrderAdmissionService(orderService, stockPort, realtimeNotificationService,
+                100, 20, Duration.ofSeconds(1), worker, false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        admission.shutdown();
+    }
+
+    @Test
+    void ordersWithoutHotProductsSkipTheQueue() throws Exception {
+        admission.enable("HOT", 0);
+
+        CompletableFuture<OrderPaymentResponse> result = admission.submit(order("u1", "COLD", 1), null);
+
+        assertTrue(result.isDone());
+        assertEquals("u1", result.get().getOrder().getUserId());
+        verify(stockPort, never()).getCurrentStock("COLD");
+    }
+
+    @Test
+    void queueDrainsInOrderAtTheConfiguredRate() throws Exception {
+        when(stockPort.getCurrentStock("HOT")).thenReturn(10);
+        admission.enable("HOT", 0);
+
+        List<CompletableFuture<OrderPaymentResponse>> results = List.of(
+                admission.submit(order("u1", "HOT", 1), null),
+                admission.submit(order("u2", "HOT", 1), null),
+                admission.submit(order("u3", "HOT", 1), null));
+        assertFalse(results.get(0).isDone());
+        verify(realtimeNotificationService).sendQueuePosition(eq("u3"), eq("HOT"), eq(3L), eq(3L), eq(1L));
+
+        admission.drain();
+        assertEquals("u1", results.get(0).get(5, TimeUnit.SECONDS).getOrder().getUserId());
+        assertEquals("u2", results.get(1).get(5, TimeUnit.SECONDS).getOrder().getUserId());
+        worker.submit(() -> null).get(5, TimeUnit.SECONDS);
+        assertFalse(results.get(2).isDone());
+        assertEquals(2L, admission.getStatus("HOT").get().get("nowServing"));
+
+        admission.drain();
+        assertEquals("u3", results.get(2).get(5, TimeUnit.SECONDS).getOrder().getUserId());
+    }
+
+    @Test
+    void rejectsImmediatelyWhenQueuedUnitsExceedRemainingStock() {
+        when(stockPort.getCurrentStock("HOT")).thenReturn(3);
+        admission.enable("HOT", 0);
+
+        admission.submit(order("u1", "HOT", 2), null);
+        admission.submit(order("u2", "HOT", 1), null);
+        CompletableFuture<OrderPaymentResponse> rejected = admission.submit(order("u3", "HOT", 1), null);
+
+        assertTrue(rejected.isDone());
+        ExecutionException error = assertThrows(ExecutionException.class, rejected::get);
+        OrderAdmissionException cause = assertInstanceOf(OrderAdmissionException.class, error.getCause());
+        assertEquals(OrderAdmissionException.Reason.SOLD_OUT, cause.getReason());
+        assertEquals(3, admission.getStatus("HOT").get().get("queuedUnits"));
+        verify(realtimeNotificationService, times(2))
+                .sendQueuePosition(any(), eq("HOT"), anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    void expiredTicketsReleaseTheirUnitsAndAreSkipped() throws Exception {
+        when(stockPort.getCurrentStock("HOT")).thenReturn(1);
+        admission.enable("HOT", 0);
+
+        CompletableFuture<OrderPaymentResponse> waiting = admission.submit(order("u1", "HOT", 1), null);
+        admission.advanceWaitExpiry();
+        admission.advanceWaitExpiry();
+
+        ExecutionException error = assertThrows(ExecutionException.class, waiting::get);
+        assertEquals(OrderAdmissionException.Reason.TIMEOUT,
+                ((OrderAdmissionException) error.getCause()).getReason());
+
+        // La unidad liberada vuelve a estar disponible para el siguiente en llegar
+        CompletableFuture<OrderPaymentResponse> next = admission.submit(order("u2", "HOT", 1), null);
+        admission.drain();
+        assertEquals("u2", next.get(5, TimeUnit.SECONDS).getOrder().getUserId());
+        verify(orderService, times(1)).createOrder(any(Order.class), any());
+    }
+
+    @Test
+    void onlyAConfirmableHoldOfTheSameUserSkipsTheQueue() throws Exception {
+        when(stockPort.getCurrentStock("HOT")).thenReturn(10);
+        when(stockPort.isHeldBy("hold-1", "u1", Map.of("HOT", 1))).thenReturn(true);
+        admission.enable("HOT", 0);
+
+        CompletableFuture<OrderPaymentResponse> own = admission.submit(order("u1", "HOT", 1), "hold-1");
+        CompletableFuture<OrderPaymentResponse> foreign = admission.submit(order("u2", "HOT", 1), "hold-1");
+        CompletableFuture<OrderPaymentResponse> madeUp = admission.submit(order("u3", "HOT", 1), "made-up");
+
+        assertTrue(own.isDone());
+        assertFalse(foreign.isDone());
+        assertFalse(madeUp.isDone());
+        assertEquals(2, admission.getStatus("HOT").get().get("queued"));
+    }
+
+    @Test
+    void boundedQueueRejectsWhenFull() {
+        when(stockPort.getCurrentStock("HOT")).thenReturn(1_000);
+        admission.enable("HOT", 0);
+        for (int i = 0; i < 100; i++) {
+            admission.submit(order("u" + i, "HOT", 1), null);
+        }
+
+        CompletableFuture<OrderPaymentResponse> rejected = admission.submit(order("late", "HOT", 1), null);
+
+        ExecutionException error = assertThrows(ExecutionException.class, rejected::get);
+        assertEquals(OrderAdmissionException.Reason.QUEUE_FULL,
+                ((OrderAdmissionException) error.getCause()).getReason());
+        assertEquals(100, admission.getStatus("HOT").get().get("queuedUnits"));
+        verify(realtimeNotificationService, never()).sendQueueProgress(any(), anyLong(), anyInt(), anyInt());
+    }
+
+    @Test
+    void abandonedTicketsFreeTheirPlaceInTheQueue() {
+        when(stockPort.getCurrentStock("HOT")).thenReturn(1_000);
+        admission.enable("HOT", 0);
+        List<CompletableFuture<OrderPaymentResponse>> waiting = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            waiting.add(admission.submit(order("u" + i, "HOT", 1), null));
+        }
+
+        // Clientes que se desconectan: sus turnos dejan lugar sin esperar al drenado
+        for (int i = 0; i < 50; i++) {
+            waiting.get(i).cancel(false);
+        }
+        CompletableFuture<OrderPaymentResponse> late = admission.submit(order("late", "HOT", 1), null);
+
+        assertFalse(late.isDone());
+        assertEquals(51, admission.getStatus("HOT").get().get("queued"));
+        verify(realtimeNotificationService).sendQueuePosition(eq("late"), eq("HOT"), eq(101L), eq(51L), anyLong());
+    }
+
+    private static Order order(String userId, String productId, int quantity) {
+        return Order.builder()
+                .userId(userId)
+                .products(List.of(OrderProduct.builder().productId(productId).quantity(quantity).build()))
+                .build();
+    }
+}
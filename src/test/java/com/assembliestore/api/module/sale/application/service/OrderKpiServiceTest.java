@@ -0,0 +1,81 @@
+package com.assembliestore.api.module.sale.application.service;
+
+import com.assembliestore.api.module.sale.domain.entity.OrderStatus;
+import com.assembliestore.api.service.realtime.service.RealtimeNotificationService;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class OrderKpiServiceTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final RealtimeNotificationService notifications = mock(RealtimeNotificationService.class);
+
+    @Test
+    void aggregatesOverTheWindowAndForgetsExpiredBuckets() {
+        OrderKpiService kpis = new OrderKpiService(notifications, Duration.ofMinutes(1), Duration.ofSeconds(10),
+                Duration.ofSeconds(5), now::get, false);
+
+        kpis.recordOrderCreated(OrderStatus.PROCESSING, new BigDecimal("10.50"));
+        kpis.recordOrderCreated(OrderStatus.PROCESSING, new BigDecimal("4.25"));
+        kpis.recordStatusChange(OrderStatus.PAYMENT_FAILED);
+        now.addAndGet(Duration.ofSeconds(30).toMillis());
+        kpis.recordOrderCreated(OrderStatus.PROCESSING, new BigDecimal("20"));
+        kpis.recordStatusChange(OrderStatus.CONFIRMED);
+        kpis.recordStatusChange(OrderStatus.CONFIRMED);
+        kpis.recordStatusChange(OrderStatus.CONFIRMED);
+
+        Map<String, Object> snapshot = kpis.getSnapshot();
+        assertEquals(3L, snapshot.get("orders"));
+        assertEquals(3.0, snapshot.get("ordersPerMinute"));
+        assertEquals(new BigDecimal("34.75"), snapshot.get("revenue"));
+        assertEquals(0.25, snapshot.get("paymentFailureRate"));
+        assertEquals(3L, byStatus(snapshot).get("PROCESSING"));
+        assertEquals(3L, byStatus(snapshot).get("CONFIRMED"));
+
+        // Las dos primeras órdenes y el pago fallido salen de la ventana
+        now.addAndGet(Duration.ofSeconds(40).toMillis());
+        snapshot = kpis.getSnapshot();
+        assertEquals(1L, snapshot.get("orders"));
+        assertEquals(new BigDecimal("20.00"), snapshot.get("revenue"));
+        assertEquals(0.0, snapshot.get("paymentFailureRate"));
+        assertEquals(0L, byStatus(snapshot).get("PAYMENT_FAILED"));
+
+        // Una vuelta entera del anillo sin eventos deja todo en cero
+        now.addAndGet(Duration.ofMinutes(5).toMillis());
+        kpis.recordStatusChange(OrderStatus.SHIPPED);
+        snapshot = kpis.getSnapshot();
+        assertEquals(0L, snapshot.get("orders"));
+        assertEquals(1L, byStatus(snapshot).get("SHIPPED"));
+        assertEquals(0L, byStatus(snapshot).get("CONFIRMED"));
+    }
+
+    @Test
+    void publishesOnlyWhenTheSnapshotChanges() {
+        OrderKpiService kpis = new OrderKpiService(notifications, Duration.ofMinutes(1), Duration.ofSeconds(10),
+                Duration.ofSeconds(5), now::get, false);
+
+        kpis.recordOrderCreated(OrderStatus.PROCESSING, BigDecimal.TEN);
+        kpis.publish();
+        kpis.publish();
+        verify(notifications, times(1)).sendOrderKpis(anyMap());
+
+        kpis.recordStatusChange(OrderStatus.CONFIRMED);
+        kpis.publish();
+        verify(notifications, times(2)).sendOrderKpis(anyMap());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> byStatus(Map<String, Object> snapshot) {
+        return (Map<String, Object>) snapshot.get("ordersByStatus");
+    }
+}
@@ -0,0 +1,69 @@
+package com.assembliestore.api.module.sale.infrastructure.adapter.out.persistence;
+
+import com.assembliestore.api.module.sale.application.port.OrderPageKey;
+import com.assembliestore.api.module.sale.domain.entity.Order;
+import com.assembliestore.api.module.sale.domain.entity.OrderStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderIndexTest {
+
+    private final OrderIndex index = new OrderIndex();
+
+    @Test
+    void keepsUserDateAndStatusIndexesInStepWithWrites() {
+        index.put(order("o2", "ana", OrderStatus.PROCESSING, 200));
+        index.put(order("o1", "ana", OrderStatus.PROCESSING, 100));
+        index.put(order("o3", "bob", OrderStatus.CONFIRMED, 300));
+
+        assertEquals(List.of("o1", "o2"), index.idsByUser("ana"));
+        assertEquals(List.of("o1", "o2"), index.idsByStatus(OrderStatus.PROCESSING));
+        assertEquals(List.of("o2", "o3"), index.idsBetween(150, 301));
+        assertEquals(List.of("o1"), index.idsBetween(100, 200));
+
+        // Cambio de estado: pasa de un conjunto al otro sin tocar su posición
+        index.put(order("o2", "ana", OrderStatus.CONFIRMED, 200));
+        assertEquals(List.of("o1"), index.idsByStatus(OrderStatus.PROCESSING));
+        assertEquals(List.of("o2", "o3"), index.idsByStatus(OrderStatus.CONFIRMED));
+        assertEquals(List.of("o1", "o2"), index.idsByUser("ana"));
+
+        // Borrado lógico: sale de todos los índices
+        Order deleted = order("o1", "ana", OrderStatus.PROCESSING, 100);
+        deleted.setDeleted(true);
+        index.put(deleted);
+        assertEquals(List.of("o2"), index.idsByUser("ana"));
+        assertTrue(index.idsByStatus(OrderStatus.PROCESSING).isEmpty());
+        assertEquals(List.of("o2", "o3"), index.allIds());
+
+        index.remove("o3");
+        assertTrue(index.idsByUser("bob").isEmpty());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void pagesResumeAfterTheLastKeyEvenWhenOrdersMove() {
+        for (int i = 1; i <= 5; i++) {
+            index.put(order("o" + i, "ana", OrderStatus.PROCESSING, i * 100L));
+        }
+        List<String> first = index.idsByStatus(OrderStatus.PROCESSING, null, 2);
+        assertEquals(List.of("o1", "o2"), first);
+
+        // o1 sale del estado y o3 se confirma entre página y página: no se repite ni se salta nada
+        index.put(order("o1", "ana", OrderStatus.CONFIRMED, 100));
+        index.put(order("o3", "ana", OrderStatus.CONFIRMED, 300));
+        OrderPageKey last = new OrderPageKey(200, "o2");
+        assertEquals(List.of("o4", "o5"), index.idsByStatus(OrderStatus.PROCESSING, last, 2));
+        assertEquals(List.of("o3", "o4"), index.idsByUser("ana", last, 2));
+        assertEquals(List.of("o5"), index.allIds(new OrderPageKey(400, "o4"), 10));
+        assertEquals(List.of("o4"), index.idsBetween(200, 500, new OrderPageKey(300, "o3"), 10));
+    }
+
+    private static Order order(String id, String userId, OrderStatus status, long orderDate) {
+        return Order.builder().id(id).userId(userId).status(status).orderDate(new Date(orderDate)).build();
+    }
+}
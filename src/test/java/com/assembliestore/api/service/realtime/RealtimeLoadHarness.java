@@ -0,0 +1,354 @@
+package com.assembliestore.api.service.realtime;
+
+import com.assembliestore.api.module.user.application.dto.JwtTokenDto;
+import com.assembliestore.api.module.user.application.dto.UserDto;
+import com.assembliestore.api.module.user.application.port.TokenPort;
+import com.assembliestore.api.service.realtime.broker.LoopbackRealtimeBroker;
+import com.assembliestore.api.service.realtime.config.WebSocketAuthHandshakeInterceptor;
+import com.assembliestore.api.service.realtime.config.WebSocketConfig;
+import com.assembliestore.api.service.realtime.dto.NotificationMessage;
+import com.assembliestore.api.service.realtime.dto.StockUpdateMessage;
+import com.assembliestore.api.service.realtime.handler.WebSocketHandler;
+import com.assembliestore.api.service.realtime.service.NotificationInbox;
+import com.assembliestore.api.service.realtime.service.RealtimeNotificationService;
+import com.assembliestore.api.service.realtime.service.WebSocketSessionManager;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.websocket.servlet.WebSocketServletAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prueba de carga del subsistema realtime: levanta solo los beans de realtime (sin seguridad,
+ * Firebase ni el resto de la API) en un Tomcat embebido con puerto aleatorio, abre miles de
+ * sesiones WebSocket repartidas entre /ws/stock, /ws/notifications y /ws/general, las suscribe
+ * a canales y publica por {@link RealtimeNotificationService} como lo haría la aplicación.
+ *
+ * Cada publicación alterna una actualización de stock y una notificación, y las suscripciones
+ * están armadas para que ambas lleguen a todas las sesiones: lo esperado es sesiones por
+ * publicaciones. Cada mensaje lleva una marca {@code LOAD#<n>#} con la que el cliente busca la
+ * hora de envío; como cliente y servidor comparten el proceso, la latencia es de punta a punta
+ * con el mismo reloj. Se informan percentiles de latencia, mensajes entregados por segundo,
+ * pérdidas (colas de salida desbordadas) y heap por sesión. El heap incluye el lado cliente
+ * (HttpClient del JDK), así que es una cota superior de lo que cuesta una sesión en el servidor.
+ *
+ * No corre con mvn test. Ejecutar con mvn test-compile y luego la clase main con el classpath
+ * de test, por ejemplo {@code java -Xmx1g -cp <classpath> ...RealtimeLoadHarness --sessions=3000}.
+ * Parámetros (todos opcionales): --sessions=3000 --rate=20 (publicaciones por segundo)
+ * --warmup=5 --duration=20 (segundos) --connect-concurrency=200.
+ */
+public class RealtimeLoadHarness {
+
+    private static final String[] ENDPOINTS = { "/ws/stock", "/ws/notifications", "/ws/general" };
+    private static final String MARKER = "LOAD#";
+    private static final String LOAD_CHANNEL = "load-alerts";
+
+    private final int sessions;
+    private final int rate;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final int connectConcurrency;
+
+    // Hora de envío por número de publicación; las de calentamiento no se miden
+    private final long[] sentAtNanos;
+    private volatile int firstMeasured = Integer.MAX_VALUE;
+    private volatile long measureStart;
+    private final long[] latencies;
+    private final AtomicInteger latencyCount = new AtomicInteger();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong lastDeliveryNanos = new AtomicLong();
+
+    RealtimeLoadHarness(Map<String, String> options) {
+        this.sessions = Integer.parseInt(options.getOrDefault("sessions", "3000"));
+        this.rate = Integer.parseInt(options.getOrDefault("rate", "20"));
+        this.warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        this.durationSeconds = Integer.parseInt(options.getOrDefault("duration", "20"));
+        this.connectConcurrency = Integer.parseInt(options.getOrDefault("connect-concurrency", "200"));
+        this.sentAtNanos = new long[rate * (warmupSeconds + durationSeconds) + 1];
+        this.latencies = new long[(int) Math.min(Integer.MAX_VALUE - 8, (long) sessions * rate * durationSeconds)];
+    }
+
+    public static void main(String[] args) throws Exception {
+        // DevTools reinicia main en otro classloader y se pierden los argumentos
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        new RealtimeLoadHarness(options).run();
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(HarnessServer.class)
+                .web(WebApplicationType.SERVLET)
+                .properties("server.port=0", "spring.main.banner-mode=off",
+                        "logging.level.com.assembliestore=WARN")
+                .run();
+        try {
+            int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+            RealtimeNotificationService notifications = context.getBean(RealtimeNotificationService.class);
+            WebSocketSessionManager sessionManager = context.getBean(WebSocketSessionManager.class);
+
+            long heapBefore = usedHeapAfterGc();
+            List<WebSocket> clients = connect(port);
+            long heapAfter = usedHeapAfterGc();
+
+            publish(notifications);
+            // Margen para que se vacíen las colas de salida
+            awaitDeliveries((long) sessions * (sentAtNanos.length - 1), TimeUnit.SECONDS.toNanos(10));
+
+            report(heapBefore, heapAfter, sessionManager);
+            for (WebSocket client : clients) {
+                client.sendClose(WebSocket.NORMAL_CLOSURE, "done");
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * Abre las sesiones de a connectConcurrency por vez y espera a que cada una confirme sus
+     * suscripciones, así la medición arranca con todas listas
+     */
+    private List<WebSocket> connect(int port) throws Exception {
+        HttpClient httpClient = HttpClient.newHttpClient();
+        Semaphore inFlight = new Semaphore(connectConcurrency);
+        CountDownLatch ready = new CountDownLatch(sessions);
+        List<CompletableFuture<WebSocket>> pending = new ArrayList<>(sessions);
+        long started = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            String endpoint = ENDPOINTS[i % ENDPOINTS.length];
+            List<String> channels = channelsFor(endpoint);
+            inFlight.acquire();
+            CompletableFuture<WebSocket> future = httpClient.newWebSocketBuilder()
+                    .connectTimeout(Duration.ofSeconds(30))
+                    .buildAsync(URI.create("ws://localhost:" + port + endpoint), new LoadListener(channels.size(), ready))
+                    .whenComplete((ws, error) -> inFlight.release());
+            pending.add(future.thenApply(ws -> {
+                for (String channel : channels) {
+                    ws.sendText("{\"type\":\"SUBSCRIBE\",\"channel\":\"" + channel + "\"}", true).join();
+                }
+                return ws;
+            }));
+        }
+        List<WebSocket> clients = new ArrayList<>(sessions);
+        for (CompletableFuture<WebSocket> future : pending) {
+            clients.add(future.get(60, TimeUnit.SECONDS));
+        }
+        if (!ready.await(60, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(ready.getCount() + " sessions did not confirm their subscriptions");
+        }
+        System.out.printf("Connected and subscribed %d sessions in %d ms%n",
+                sessions, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return clients;
+    }
+
+    /**
+     * Canales por endpoint: las sesiones de stock no reciben notificaciones ADMIN por tipo ni las
+     * generales el stock, así que se suscriben a lo que les falta; las de notificaciones reciben
+     * todo por tipo y su canal ejercita la unión sin duplicados
+     */
+    private static List<String> channelsFor(String endpoint) {
+        return switch (endpoint) {
+            case "/ws/stock" -> List.of(LOAD_CHANNEL);
+            case "/ws/notifications" -> List.of("inventory-alerts");
+            default -> List.of("stock-updates", LOAD_CHANNEL);
+        };
+    }
+
+    private void publish(RealtimeNotificationService notifications) throws InterruptedException {
+        int total = sentAtNanos.length - 1;
+        int warmup = rate * warmupSeconds;
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long next = System.nanoTime();
+        for (int n = 1; n <= total; n++) {
+            if (n == warmup + 1) {
+                firstMeasured = n;
+                measureStart = System.nanoTime();
+            }
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            next += intervalNanos;
+            sentAtNanos[n] = System.nanoTime();
+            if (n % 2 == 0) {
+                StockUpdateMessage update = new StockUpdateMessage("load-product-" + (n % 64), "Load product", 100, 99);
+                update.setReason(MARKER + n + "#");
+                notifications.sendStockUpdate(update);
+            } else {
+                NotificationMessage notification = new NotificationMessage("LOAD_TEST", "Load test", MARKER + n + "#");
+                notification.setTargetRole("ADMIN");
+                notification.setTargetChannel(LOAD_CHANNEL);
+                notifications.sendNotification(notification);
+            }
+        }
+    }
+
+    private void awaitDeliveries(long expected, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (delivered.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    private void report(long heapBefore, long heapAfter, WebSocketSessionManager sessionManager) {
+        int measuredPublishes = rate * durationSeconds;
+        long expected = (long) sessions * measuredPublishes;
+        int count = Math.min(latencyCount.get(), latencies.length);
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        double seconds = (lastDeliveryNanos.get() - measureStart) / 1e9;
+
+        System.out.println();
+        System.out.printf("Sessions: %d (%s) - Publishes: %d/s for %ds after %ds warmup%n",
+                sessions, String.join(", ", ENDPOINTS), rate, durationSeconds, warmupSeconds);
+        System.out.printf("Delivered: %d of %d expected (%.2f%%)%n", count, expected, 100.0 * count / expected);
+        System.out.printf("Throughput: %.0f messages/s%n", count / seconds);
+        System.out.printf("Latency ms: p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n",
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                percentile(sorted, 0.999), count == 0 ? 0 : sorted[count - 1] / 1e6);
+        System.out.printf("Heap per session (server + client): %.1f KB%n", (heapAfter - heapBefore) / 1024.0 / sessions);
+        Map<String, Object> stats = sessionManager.getConnectionStats();
+        System.out.println("Server stats: " + stats);
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1)] / 1e6;
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private void recordDelivery(CharSequence message) {
+        int markerAt = message.toString().indexOf(MARKER);
+        if (markerAt < 0) {
+            // Bienvenida, confirmaciones y demás mensajes de control
+            return;
+        }
+        int n = 0;
+        for (int i = markerAt + MARKER.length(); i < message.length() && message.charAt(i) != '#'; i++) {
+            n = n * 10 + (message.charAt(i) - '0');
+        }
+        long now = System.nanoTime();
+        delivered.incrementAndGet();
+        if (n < firstMeasured) {
+            return;
+        }
+        int slot = latencyCount.getAndIncrement();
+        if (slot < latencies.length) {
+            latencies[slot] = now - sentAtNanos[n];
+        }
+        lastDeliveryNanos.accumulateAndGet(now, Math::max);
+    }
+
+    /**
+     * Cliente de una sesión: cuenta confirmaciones de suscripción y mide cada mensaje marcado
+     */
+    private final class LoadListener implements WebSocket.Listener {
+        private final CountDownLatch ready;
+        private int pendingConfirmations;
+        private StringBuilder partial;
+
+        LoadListener(int subscriptions, CountDownLatch ready) {
+            this.pendingConfirmations = subscriptions;
+            this.ready = ready;
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            CharSequence message = data;
+            if (!last || partial != null) {
+                if (partial == null) {
+                    partial = new StringBuilder();
+                }
+                partial.append(data);
+                if (!last) {
+                    webSocket.request(1);
+                    return null;
+                }
+                message = partial;
+                partial = null;
+            }
+            if (pendingConfirmations > 0 && message.toString().contains("SUBSCRIPTION_CONFIRMED") && --pendingConfirmations == 0) {
+                ready.countDown();
+            } else {
+                recordDelivery(message);
+            }
+            webSocket.request(1);
+            return null;
+        }
+    }
+
+    /**
+     * Solo los beans de realtime y el contenedor web; sin usuarios, los handshakes son anónimos
+     */
+    @SpringBootConfiguration
+    @ImportAutoConfiguration({ PropertyPlaceholderAutoConfiguration.class, ServletWebServerFactoryAutoConfiguration.class,
+            DispatcherServletAutoConfiguration.class, WebSocketServletAutoConfiguration.class })
+    @Import({ WebSocketConfig.class, WebSocketAuthHandshakeInterceptor.class, WebSocketHandler.class,
+            WebSocketSessionManager.class, NotificationInbox.class, LoopbackRealtimeBroker.class,
+            RealtimeNotificationService.class })
+    static class HarnessServer {
+
+        @Bean
+        TokenPort tokenPort() {
+            return new TokenPort() {
+                @Override
+                public void updateToken(JwtTokenDto jwtTokenDto) {
+                }
+
+                @Override
+                public String getUserNameFromToken(String token) {
+                    return null;
+                }
+
+                @Override
+                public JwtTokenDto findByToken(String token) {
+                    return null;
+                }
+
+                @Override
+                public boolean validateToken(String token, UserDto user) {
+                    return false;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.assembliestore.api.service.realtime.broker;
+
+import com.assembliestore.api.service.realtime.dto.RealtimeEvent;
+import com.assembliestore.api.service.realtime.dto.StockUpdateMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TcpRelayRealtimeBrokerTest {
+
+    private static final String SECRET = "relay-secret";
+
+    private TcpRelayRealtimeBroker nodeA;
+    private TcpRelayRealtimeBroker nodeB;
+
+    @AfterEach
+    void tearDown() {
+        if (nodeA != null) {
+            nodeA.shutdown();
+        }
+        if (nodeB != null) {
+            nodeB.shutdown();
+        }
+    }
+
+    @Test
+    void eachNodeDeliversEveryEventExactlyOnceDespiteDuplicateLinks() throws Exception {
+        nodeA = relay(SECRET);
+        nodeB = relay(SECRET);
+        List<RealtimeEvent> deliveredOnA = new CopyOnWriteArrayList<>();
+        List<RealtimeEvent> deliveredOnB = new CopyOnWriteArrayList<>();
+        nodeA.onDelivery(deliveredOnA::add);
+        nodeB.onDelivery(deliveredOnB::add);
+
+        // A conoce a B dos veces y a sí mismo: cada evento de A llega dos veces a B y vuelve a A
+        InetSocketAddress addressA = new InetSocketAddress("localhost", nodeA.getLocalPort());
+        InetSocketAddress addressB = new InetSocketAddress("localhost", nodeB.getLocalPort());
+        nodeA.addPeer(addressB);
+        nodeA.addPeer(addressB);
+        nodeA.addPeer(addressA);
+        nodeB.addPeer(addressA);
+
+        int events = 50;
+        for (int i = 0; i < events; i++) {
+            nodeA.publish(RealtimeEvent.toUser("user-" + i, "{\"n\":" + i + "}"));
+            nodeB.publish(RealtimeEvent.broadcast(List.of("STOCK"), List.of("stock-updates"), "b" + i, null));
+        }
+
+        awaitSize(deliveredOnA, 2 * events);
+        awaitSize(deliveredOnB, 2 * events);
+        // Margen para que lleguen las copias duplicadas antes de contar
+        Thread.sleep(300);
+
+        assertEquals(2 * events, deliveredOnA.size());
+        assertEquals(2 * events, deliveredOnB.size());
+        assertEquals(events, deliveredOnB.stream().filter(e -> e.getType() == RealtimeEvent.Type.USER).count());
+        assertEquals(events, deliveredOnA.stream().filter(e -> e.getType() == RealtimeEvent.Type.BROADCAST).count());
+        assertTrue((long) nodeB.getStats().get("duplicateEvents") > 0);
+        assertTrue((long) nodeA.getStats().get("duplicateEvents") > 0);
+    }
+
+    @Test
+    void stockBatchKeepsItsContentAcrossNodes() throws Exception {
+        nodeA = relay(SECRET);
+        nodeB = relay(SECRET);
+        List<RealtimeEvent> deliveredOnB = new CopyOnWriteArrayList<>();
+        nodeB.onDelivery(deliveredOnB::add);
+        nodeA.addPeer(new InetSocketAddress("localhost", nodeB.getLocalPort()));
+
+        StockUpdateMessage update = new StockUpdateMessage("p1", "Producto 1", 10, 7);
+        update.setSubCategoryId("sub1");
+        update.setReason("SALE");
+        nodeA.publish(RealtimeEvent.stockBatch(List.of(update)));
+
+        awaitSize(deliveredOnB, 1);
+        RealtimeEvent received = deliveredOnB.get(0);
+        assertEquals(RealtimeEvent.Type.STOCK_BATCH, received.getType());
+        assertEquals(nodeA.getNodeId(), received.getOrigin());
+        StockUpdateMessage receivedUpdate = received.getStockUpdates().get(0);
+        assertEquals("p1", receivedUpdate.getProductId());
+        assertEquals("sub1", receivedUpdate.getSubCategoryId());
+        assertEquals(7, receivedUpdate.getCurrentStock());
+        assertEquals(-3, receivedUpdate.getStockChange());
+    }
+
+    @Test
+    void listensOnLoopbackAndRejectsUnauthenticatedPeers() throws Exception {
+        nodeA = new TcpRelayRealtimeBroker(InetAddress.getLoopbackAddress(), 0, "other-secret", List.of(), 1000);
+        nodeB = relay(SECRET);
+        List<RealtimeEvent> deliveredOnB = new CopyOnWriteArrayList<>();
+        nodeB.onDelivery(deliveredOnB::add);
+        assertTrue(InetAddress.getByName((String) nodeB.getStats().get("bindAddress")).isLoopbackAddress());
+
+        // Un par con otro secreto y un cliente que manda frames sin responder el desafío
+        nodeA.addPeer(new InetSocketAddress("localhost", nodeB.getLocalPort()));
+        nodeA.publish(RealtimeEvent.toUser("user-1", "{\"n\":1}"));
+        try (Socket intruder = new Socket(InetAddress.getLoopbackAddress(), nodeB.getLocalPort())) {
+            DataOutputStream out = new DataOutputStream(intruder.getOutputStream());
+            byte[] frame = "{\"type\":\"USER\",\"userId\":\"user-2\"}".getBytes(StandardCharsets.UTF_8);
+            out.writeInt(frame.length);
+            out.write(frame);
+            out.flush();
+            long deadline = System.currentTimeMillis() + 10_000;
+            while ((long) nodeB.getStats().get("rejectedConnections") < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+        }
+
+        assertTrue((long) nodeB.getStats().get("rejectedConnections") >= 2);
+        assertEquals(0, deliveredOnB.size());
+        assertThrows(IllegalArgumentException.class, () -> relay(" "));
+    }
+
+    @Test
+    void outboundLinkSendsNothingToAPeerThatCannotProveTheSecret() throws Exception {
+        nodeA = relay(SECRET);
+        try (ServerSocket impostor = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            nodeA.addPeer(new InetSocketAddress("localhost", impostor.getLocalPort()));
+            nodeA.publish(RealtimeEvent.toUser("user-1", "{\"order\":\"o1\"}"));
+
+            // Responde como un servidor sin el secreto; el nodo no debe firmar ni enviar eventos
+            try (Socket link = impostor.accept()) {
+                link.setSoTimeout(10_000);
+                DataInputStream in = new DataInputStream(link.getInputStream());
+                in.readFully(new byte[TcpRelayRealtimeBroker.NONCE_BYTES]);
+                link.getOutputStream().write(new byte[TcpRelayRealtimeBroker.NONCE_BYTES + TcpRelayRealtimeBroker.MAC_BYTES]);
+                link.getOutputStream().flush();
+                assertEquals(-1, in.read());
+            }
+        }
+
+        Map<?, ?> peer = (Map<?, ?>) ((List<?>) nodeA.getStats().get("peers")).get(0);
+        assertEquals(1L, peer.get("rejected"));
+        assertEquals(0L, peer.get("sent"));
+    }
+
+    private static TcpRelayRealtimeBroker relay(String secret) throws Exception {
+        return new TcpRelayRealtimeBroker(InetAddress.getLoopbackAddress(), 0, secret, List.of(), 1000);
+    }
+
+    private static void awaitSize(List<?> list, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (list.size() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, list.size());
+    }
+}
@@ -0,0 +1,256 @@
+package com.assembliestore.api.service.realtime.service;
+
+import com.assembliestore.api.service.realtime.service.SessionOutboundQueue.OverflowPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bytes asignados por broadcast de una actualización de stock con 10k sesiones.
+ *
+ * perTarget reproduce el camino anterior: cuatro difusiones (STOCK, NOTIFICATIONS,
+ * stock-updates, inventory-alerts) con un TextMessage nuevo por destinatario y envíos
+ * repetidos a quien está en varios destinos. sharedFrame usa
+ * {@link WebSocketSessionManager#broadcast}: un frame compartido y la unión sin duplicados.
+ *
+ * Ejecutar con el profiler de GC para ver gc.alloc.rate.norm (bytes por operación):
+ * {@code java -cp <classpath> ...BroadcastAllocationBenchmark -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastAllocationBenchmark {
+
+    private static final List<String> TYPES = List.of("STOCK", "NOTIFICATIONS");
+    private static final List<String> CHANNELS = List.of("stock-updates", "inventory-alerts");
+    private static final String PAYLOAD = "{\"productId\":\"P-1\",\"productName\":\"Producto 1\","
+            + "\"previousStock\":10,\"currentStock\":9,\"stockChange\":-1,\"changeType\":\"DECREASE\"}";
+
+    @Param({ "10000" })
+    public int sessions;
+
+    @Param({ "perTarget", "sharedFrame" })
+    public String path;
+
+    private WebSocketSessionManager manager;
+
+    // Índices equivalentes a los del manager para el camino anterior
+    private final Map<String, Set<WebSocketSession>> byType = new ConcurrentHashMap<>();
+    private final Map<String, Set<WebSocketSession>> byChannel = new ConcurrentHashMap<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        manager = new WebSocketSessionManager(1024, OverflowPolicy.DROP_OLDEST, new DirectExecutorService());
+        for (int i = 0; i < sessions; i++) {
+            // Mitad conexiones STOCK, mitad NOTIFICATIONS suscritas a stock-updates y la mitad de ellas
+            // también a inventory-alerts, como un panel de MANAGEMENT
+            WebSocketSession session = new NoopSession("s" + i);
+            String type = i % 2 == 0 ? "STOCK" : "NOTIFICATIONS";
+            manager.addSession(session, type);
+            byType.computeIfAbsent(type, k -> ConcurrentHashMap.newKeySet()).add(session);
+            if (i % 2 == 1) {
+                manager.subscribeToChannel(session, "stock-updates");
+                byChannel.computeIfAbsent("stock-updates", k -> ConcurrentHashMap.newKeySet()).add(session);
+                if (i % 4 == 1) {
+                    manager.subscribeToChannel(session, "inventory-alerts");
+                    byChannel.computeIfAbsent("inventory-alerts", k -> ConcurrentHashMap.newKeySet()).add(session);
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public int broadcastStockUpdate() throws Exception {
+        if ("sharedFrame".equals(path)) {
+            return manager.broadcast(TYPES, CHANNELS, PAYLOAD, null);
+        }
+        int sent = 0;
+        for (String type : TYPES) {
+            sent += sendEach(byType.get(type));
+        }
+        for (String channel : CHANNELS) {
+            sent += sendEach(byChannel.get(channel));
+        }
+        return sent;
+    }
+
+    private int sendEach(Set<WebSocketSession> targets) throws Exception {
+        int sent = 0;
+        for (WebSocketSession session : targets) {
+            session.sendMessage(new TextMessage(PAYLOAD));
+            sent++;
+        }
+        return sent;
+    }
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args.length > 0 ? args : new String[] { BroadcastAllocationBenchmark.class.getSimpleName(), "-prof", "gc" });
+    }
+
+    /**
+     * Ejecuta el drenado en el hilo que encola, para medir todo en el hilo del benchmark
+     */
+    private static final class DirectExecutorService extends AbstractExecutorService {
+        private volatile boolean shutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return new ArrayList<>();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+
+    /**
+     * Sesión que solo retiene el último mensaje, para que el frame escape como en un socket real
+     */
+    private static final class NoopSession implements WebSocketSession {
+        private final String id;
+        private WebSocketMessage<?> lastMessage;
+
+        NoopSession(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public URI getUri() {
+            return null;
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return HttpHeaders.EMPTY;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            lastMessage = message;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+        }
+    }
+}
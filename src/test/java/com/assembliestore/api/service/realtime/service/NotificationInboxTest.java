@@ -0,0 +1,95 @@
+package com.assembliestore.api.service.realtime.service;
+
+import com.assembliestore.api.service.realtime.dto.NotificationMessage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NotificationInboxTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    void pagesOldestFirstAndAcknowledgesWithTheCursor() {
+        NotificationInbox inbox = new NotificationInbox(10, Duration.ofHours(1), now::get, false);
+        for (int i = 1; i <= 5; i++) {
+            inbox.store("user-1", notification("n" + i));
+        }
+        inbox.store("user-2", notification("other"));
+
+        NotificationInbox.Page first = inbox.fetch("user-1", 0, 3);
+        assertEquals(List.of("n1", "n2", "n3"), titles(first));
+        assertTrue(first.hasMore());
+
+        NotificationInbox.Page second = inbox.fetch("user-1", first.nextCursor(), 3);
+        assertEquals(List.of("n4", "n5"), titles(second));
+        assertFalse(second.hasMore());
+
+        // Lo confirmado no vuelve aunque se pida desde el principio
+        assertEquals(List.of("n4", "n5"), titles(inbox.fetch("user-1", 0, 10)));
+        assertTrue(inbox.fetch("user-1", second.nextCursor(), 10).items().isEmpty());
+        assertEquals(List.of("other"), titles(inbox.fetch("user-2", 0, 10)));
+    }
+
+    @Test
+    void theSameEventReceivedTwiceIsDeliveredOnce() {
+        NotificationInbox inbox = new NotificationInbox(10, Duration.ofHours(1), now::get, false);
+        inbox.store("user-1", "node-a:1", notification("n1"));
+        inbox.store("user-1", "node-a:1", notification("n1"));
+        inbox.store("user-1", "node-b:1", notification("n2"));
+
+        NotificationInbox.Page page = inbox.fetch("user-1", 0, 10);
+        assertEquals(List.of("n1", "n2"), titles(page));
+        assertTrue(inbox.fetch("user-1", page.nextCursor(), 10).items().isEmpty());
+    }
+
+    @Test
+    void evictsByCountAndByTtl() {
+        NotificationInbox inbox = new NotificationInbox(3, Duration.ofMinutes(10), now::get, false);
+        inbox.store("user-1", notification("old"));
+        now.addAndGet(Duration.ofMinutes(6).toMillis());
+        for (int i = 1; i <= 3; i++) {
+            inbox.store("user-1", notification("n" + i));
+        }
+        // La cuarta pisó a la más vieja
+        assertEquals(List.of("n1", "n2", "n3"), titles(inbox.fetch("user-1", 0, 10)));
+
+        // Sin confirmar, la que llega pisa a n1; n2 y n3 vencen después
+        now.addAndGet(Duration.ofMinutes(5).toMillis());
+        inbox.store("user-1", notification("fresh"));
+        now.addAndGet(Duration.ofMinutes(6).toMillis());
+        assertEquals(List.of("fresh"), titles(inbox.fetch("user-1", 0, 10)));
+
+        now.addAndGet(Duration.ofMinutes(10).toMillis());
+        inbox.sweep();
+        assertEquals(0, inbox.getStats().get("users"));
+        assertEquals(2L, inbox.getStats().get("overwrittenNotifications"));
+    }
+
+    @Test
+    void cursorStaysValidAfterTheInboxIsReleased() {
+        NotificationInbox inbox = new NotificationInbox(5, Duration.ofHours(1), now::get, false);
+        inbox.store("user-1", notification("n1"));
+        NotificationInbox.Page page = inbox.fetch("user-1", 0, 10);
+        // Todo confirmado: la bandeja se libera
+        inbox.fetch("user-1", page.nextCursor(), 10);
+        assertEquals(0, inbox.getStats().get("users"));
+
+        inbox.store("user-1", notification("n2"));
+        assertEquals(List.of("n2"), titles(inbox.fetch("user-1", page.nextCursor(), 10)));
+    }
+
+    private static NotificationMessage notification(String title) {
+        return new NotificationMessage("ORDER_STATUS_UPDATE", title, "message");
+    }
+
+    private static List<String> titles(NotificationInbox.Page page) {
+        return page.items().stream().map(entry -> entry.notification().getTitle()).toList();
+    }
+}
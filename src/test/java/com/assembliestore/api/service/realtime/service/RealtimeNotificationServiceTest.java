@@ -0,0 +1,88 @@
+package com.assembliestore.api.service.realtime.service;
+
+import com.assembliestore.api.service.realtime.dto.RealtimeEvent;
+import com.assembliestore.api.service.realtime.port.RealtimeBroker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RealtimeNotificationServiceTest {
+
+    private final RealtimeBroker broker = mock(RealtimeBroker.class);
+    private final WebSocketSessionManager sessionManager = mock(WebSocketSessionManager.class);
+    private final NotificationInbox inbox = new NotificationInbox(10, Duration.ofHours(1), System::currentTimeMillis, false);
+    private final RealtimeNotificationService service = new RealtimeNotificationService();
+    private Consumer<RealtimeEvent> delivery;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(broker.isDistributed()).thenReturn(true);
+        ReflectionTestUtils.setField(service, "broker", broker);
+        ReflectionTestUtils.setField(service, "sessionManager", sessionManager);
+        ReflectionTestUtils.setField(service, "inbox", inbox);
+        service.registerLocalDelivery();
+        ArgumentCaptor<Consumer<RealtimeEvent>> captor = ArgumentCaptor.forClass(Consumer.class);
+        verify(broker).onDelivery(captor.capture());
+        delivery = captor.getValue();
+    }
+
+    @Test
+    void distributedNodesKeepNotificationsForUsersWithoutLocalSessions() {
+        service.sendOrderStatusUpdate("o1", "PENDING", "PAID", "user-1");
+        RealtimeEvent event = published();
+        assertTrue(event.isKeepIfOffline());
+
+        // Llega de otro nodo por dos enlaces y aquí el usuario no tiene sesiones
+        event.setOrigin("node-b");
+        event.setId(7);
+        delivery.accept(event);
+        delivery.accept(event);
+
+        NotificationInbox.Page page = inbox.fetch("user-1", 0, 10);
+        assertEquals(1, page.items().size());
+        assertEquals("node-b:7", page.items().get(0).eventId());
+        assertEquals("ORDER_STATUS_UPDATE", page.items().get(0).notification().getType());
+    }
+
+    @Test
+    void connectedUsersAndQueuePositionsAreNotKept() {
+        when(sessionManager.sendToUser(anyString(), anyString(), any())).thenReturn(1);
+        service.sendOrderStatusUpdate("o1", "PENDING", "PAID", "user-1");
+        delivery.accept(published());
+
+        when(sessionManager.sendToUser(anyString(), anyString(), any())).thenReturn(0);
+        service.sendQueuePosition("user-1", "HOT", 3, 2, 1);
+        RealtimeEvent position = lastPublished(2);
+        assertFalse(position.isKeepIfOffline());
+        delivery.accept(position);
+
+        assertTrue(inbox.fetch("user-1", 0, 10).items().isEmpty());
+    }
+
+    private RealtimeEvent published() {
+        return lastPublished(1);
+    }
+
+    private RealtimeEvent lastPublished(int publishes) {
+        ArgumentCaptor<RealtimeEvent> captor = ArgumentCaptor.forClass(RealtimeEvent.class);
+        verify(broker, times(publishes)).publish(captor.capture());
+        List<RealtimeEvent> events = captor.getAllValues();
+        return events.get(events.size() - 1);
+    }
+}
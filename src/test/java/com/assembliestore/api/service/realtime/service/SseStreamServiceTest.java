@@ -0,0 +1,151 @@
+package com.assembliestore.api.service.realtime.service;
+
+import com.assembliestore.api.service.realtime.service.SessionOutboundQueue.OverflowPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SseStreamServiceTest {
+
+    // Presupuesto de heap por stream inactivo: 20k streams en menos de 64 MB
+    private static final int IDLE_STREAMS = 20_000;
+    private static final long HEAP_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    private WebSocketSessionManager manager;
+
+    @AfterEach
+    void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    void resumesFromLastEventIdAndStampsEventIds() throws Exception {
+        manager = new WebSocketSessionManager(64, OverflowPolicy.DROP_OLDEST, Executors.newVirtualThreadPerTaskExecutor());
+        for (int i = 1; i <= 3; i++) {
+            manager.broadcastToChannel("stock-updates", "{\"n\":" + i + "}");
+        }
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        recordingService(emitter).open(List.of("stock-updates", "stock.#"), "stock-updates:1");
+        manager.broadcastToChannel("stock-updates", "{\"n\":4}");
+        manager.broadcastToChannel("inventory-alerts", "{\"ignored\":true}");
+
+        emitter.awaitEvents(3);
+        assertEquals(List.of(
+                "id:stock-updates:2\ndata:{\"seq\":{\"stock-updates\":2},\"n\":2}\n\n",
+                "id:stock-updates:3\ndata:{\"seq\":{\"stock-updates\":3},\"n\":3}\n\n",
+                "id:stock-updates:4\ndata:{\"seq\":{\"stock-updates\":4},\"n\":4}\n\n"), emitter.events);
+    }
+
+    @Test
+    void asksForResyncWhenTheGapIsNoLongerBuffered() throws Exception {
+        manager = new WebSocketSessionManager(64, OverflowPolicy.DROP_OLDEST, 2, Executors.newVirtualThreadPerTaskExecutor());
+        for (int i = 1; i <= 5; i++) {
+            manager.broadcastToChannel("stock-updates", "{\"n\":" + i + "}");
+        }
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        recordingService(emitter).open(List.of("stock-updates"), "stock-updates:1");
+
+        emitter.awaitEvents(1);
+        assertTrue(emitter.events.get(0).contains("\"type\":\"RESYNC_REQUIRED\""), emitter.events.get(0));
+    }
+
+    @Test
+    void rejectsInvalidPatterns() {
+        manager = new WebSocketSessionManager(64, OverflowPolicy.DROP_OLDEST, Executors.newVirtualThreadPerTaskExecutor());
+        SseStreamService service = new SseStreamService(manager);
+
+        assertThrows(IllegalArgumentException.class, () -> service.open(List.of("stock.#.x"), null));
+        assertThrows(IllegalArgumentException.class, () -> service.open(List.of(), null));
+        assertEquals(0, manager.getTotalActiveSessions());
+    }
+
+    @Test
+    void adminChannelsRequireAStaffRole() {
+        manager = new WebSocketSessionManager(64, OverflowPolicy.DROP_OLDEST, Executors.newVirtualThreadPerTaskExecutor());
+        RecordingEmitter emitter = new RecordingEmitter();
+        SseStreamService service = recordingService(emitter);
+
+        assertThrows(AccessDeniedException.class, () -> service.open(List.of("stock-updates", "admin-kpis"), null, "CLIENT"));
+        assertThrows(AccessDeniedException.class, () -> service.open(List.of("admin-kpis"), null));
+        assertEquals(0, manager.getTotalActiveSessions());
+
+        service.open(List.of("admin-kpis"), null, "MANAGEMENT");
+        assertEquals(Map.of("admin-kpis", 1), manager.getChannelSubscriberCounts());
+    }
+
+    @Test
+    void holdsTwentyThousandIdleStreamsWithinHeapBudget() {
+        manager = new WebSocketSessionManager(256, OverflowPolicy.DROP_OLDEST, Executors.newVirtualThreadPerTaskExecutor());
+        SseStreamService service = new SseStreamService(manager);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        long before = usedHeapAfterGc(memory);
+        List<SseEmitter> streams = new ArrayList<>(IDLE_STREAMS);
+        for (int i = 0; i < IDLE_STREAMS; i++) {
+            streams.add(service.open(List.of("stock-updates", "order-queue-P" + (i % 100)), null));
+        }
+        long used = usedHeapAfterGc(memory) - before;
+
+        assertEquals(IDLE_STREAMS, manager.getTotalActiveSessions());
+        assertTrue(used < HEAP_BUDGET_BYTES,
+                "20k idle streams used " + used / 1024 + " KB (" + used / IDLE_STREAMS + " bytes per stream)");
+        System.out.printf("%d idle SSE streams: %d KB of heap, %d bytes per stream%n",
+                IDLE_STREAMS, used / 1024, used / IDLE_STREAMS);
+        assertEquals(IDLE_STREAMS, streams.size());
+    }
+
+    private SseStreamService recordingService(RecordingEmitter emitter) {
+        return new SseStreamService(manager) {
+            @Override
+            SseEmitter createEmitter() {
+                return emitter;
+            }
+        };
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Emisor que guarda cada evento con el formato que vería el cliente
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            events.add(builder.build().stream()
+                    .map(part -> part.getData().toString())
+                    .collect(Collectors.joining()));
+        }
+
+        void awaitEvents(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (events.size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(count, events.size(), events.toString());
+        }
+    }
+}
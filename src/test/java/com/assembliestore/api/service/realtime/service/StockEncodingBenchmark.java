@@ -0,0 +1,132 @@
+package com.assembliestore.api.service.realtime.service;
+
+import com.assembliestore.api.service.realtime.dto.StockUpdateBatchMessage;
+import com.assembliestore.api.service.realtime.dto.StockUpdateMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Bytes en el cable y costo de codificación de un lote de stock con las tres codificaciones
+ * de /ws/stock:
+ * <ul>
+ *   <li>json: el STOCK_UPDATE_BATCH que se envía hoy</li>
+ *   <li>jsonDeflate: el mismo JSON comprimido como permessage-deflate (deflate crudo con
+ *       SYNC_FLUSH y contexto conservado entre mensajes, lo que hace Tomcat por defecto)</li>
+ *   <li>binary: {@link StockDeltaCodec}</li>
+ * </ul>
+ * El tamaño medio por frame se imprime al preparar cada combinación. Ojo al comparar tiempos:
+ * json y binary se codifican una vez por broadcast y se comparten, mientras que deflate se
+ * aplica por conexión, así que su costo se multiplica por la cantidad de sesiones.
+ *
+ * {@code java -cp <classpath> ...StockEncodingBenchmark -prof gc}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StockEncodingBenchmark {
+
+    private static final List<String> REASONS = List.of("SALE", "RESTORE", "HOLD", "RELEASE");
+
+    @Param({ "1", "10" })
+    public int products;
+
+    @Param({ "json", "jsonDeflate", "binary" })
+    public String encoding;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private List<StockUpdateMessage> updates;
+    private Deflater deflater;
+    private byte[] deflateBuffer;
+    private final Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        updates = new ArrayList<>(products);
+        for (int i = 0; i < products; i++) {
+            // Ids con la forma de los de Firestore
+            StockUpdateMessage update = new StockUpdateMessage("pR0duCt" + String.format("%013d", i),
+                    "Producto de ejemplo " + i, 100 + i, 99 + i);
+            update.setSubCategoryId("subCat" + (i % 3));
+            update.setReason(REASONS.get(i % REASONS.size()));
+            updates.add(update);
+        }
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflateBuffer = new byte[64 * 1024];
+
+        long total = 0;
+        int frames = 100;
+        for (int i = 0; i < frames; i++) {
+            total += encode();
+        }
+        System.out.printf("%n%s, %d products: %d bytes per frame on the wire%n", encoding, products, total / frames);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        deflater.end();
+    }
+
+    @Benchmark
+    public int encodeBatch() throws Exception {
+        return encode();
+    }
+
+    private int encode() throws Exception {
+        // Cada lote trae cantidades nuevas, como en producción; lotes idénticos comprimen de más
+        for (StockUpdateMessage update : updates) {
+            int previous = update.getCurrentStock();
+            int current = random.nextInt(500);
+            update.setPreviousStock(previous);
+            update.setCurrentStock(current);
+            update.setStockChange(current - previous);
+        }
+        switch (encoding) {
+            case "binary":
+                return StockDeltaCodec.encode(updates).length;
+            case "jsonDeflate":
+                byte[] json = toJson();
+                deflater.setInput(json);
+                int compressed = deflater.deflate(deflateBuffer, 0, deflateBuffer.length, Deflater.SYNC_FLUSH);
+                // permessage-deflate quita la cola 00 00 ff ff del flush
+                return compressed - 4;
+            default:
+                return toJson().length;
+        }
+    }
+
+    private byte[] toJson() throws Exception {
+        StockUpdateBatchMessage batch = new StockUpdateBatchMessage(updates, List.of("MANAGEMENT", "ADMIN"));
+        return objectMapper.writeValueAsString(batch).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args.length > 0 ? args : new String[] { StockEncodingBenchmark.class.getSimpleName(), "-prof", "gc" });
+    }
+}
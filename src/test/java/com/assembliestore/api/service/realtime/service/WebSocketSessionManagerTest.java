@@ -0,0 +1,571 @@
+package com.assembliestore.api.service.realtime.service;
+
+import com.assembliestore.api.service.realtime.dto.StockUpdateMessage;
+import com.assembliestore.api.service.realtime.service.SessionOutboundQueue.OverflowPolicy;
+import com.assembliestore.api.service.realtime.service.SessionOutboundQueue.Priority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WebSocketSessionManagerTest {
+
+    private WebSocketSessionManager manager;
+
+    @AfterEach
+    void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    void slowSessionDoesNotBlockBroadcastOrOtherSessions() throws Exception {
+        manager = new WebSocketSessionManager(4, OverflowPolicy.DROP_OLDEST, Executors.newVirtualThreadPerTaskExecutor());
+        CountDownLatch unblock = new CountDownLatch(1);
+        RecordingSession slow = new RecordingSession("slow", unblock);
+        RecordingSession fast = new RecordingSession("fast", null);
+        manager.addSession(slow.session, "STOCK");
+        manager.addSession(fast.session, "STOCK");
+
+        manager.broadcastToType("STOCK", "m0");
+        slow.awaitSendStarted();
+        long startedAt = System.nanoTime();
+        for (int i = 1; i < 10; i++) {
+            manager.broadcastToType("STOCK", "m" + i);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        assertTrue(elapsedMillis < 1_000, "broadcast blocked on the slow session");
+        // El rápido recibe hasta el último mensaje mientras el lento sigue bloqueado
+        fast.awaitLast("m9");
+        assertEquals(0, slow.received.size());
+
+        // El lento quedó bloqueado en el primer envío; de lo demás solo se conservan los 4 más nuevos
+        unblock.countDown();
+        slow.awaitMessages(5);
+        assertEquals(List.of("m0", "m6", "m7", "m8", "m9"), slow.received);
+        assertTrue(((Number) manager.getOutboundStats().get("droppedMessages")).longValue() >= 5);
+    }
+
+    @Test
+    void conflatePolicyKeepsLatestValuePerKey() throws Exception {
+        manager = new WebSocketSessionManager(8, OverflowPolicy.CONFLATE, Executors.newVirtualThreadPerTaskExecutor());
+        CountDownLatch unblock = new CountDownLatch(1);
+        RecordingSession slow = new RecordingSession("slow", unblock);
+        manager.addSession(slow.session, "STOCK");
+
+        manager.broadcastToType("STOCK", "first", null);
+        slow.awaitSendStarted();
+        for (int i = 0; i < 100; i++) {
+            manager.broadcastToType("STOCK", "A=" + i, "stock:A");
+            manager.broadcastToType("STOCK", "B=" + i, "stock:B");
+        }
+
+        unblock.countDown();
+        slow.awaitMessages(3);
+        assertEquals(List.of("first", "A=99", "B=99"), slow.received);
+    }
+
+    @Test
+    void disconnectPolicyClosesAndRemovesSlowConsumer() throws Exception {
+        manager = new WebSocketSessionManager(2, OverflowPolicy.DISCONNECT, Executors.newVirtualThreadPerTaskExecutor());
+        CountDownLatch unblock = new CountDownLatch(1);
+        RecordingSession slow = new RecordingSession("slow", unblock);
+        manager.addSession(slow.session, "NOTIFICATIONS");
+        manager.subscribeToChannel(slow.session, "stock-updates");
+
+        manager.broadcastToChannel("stock-updates", "m0");
+        slow.awaitSendStarted();
+        for (int i = 1; i <= 3; i++) {
+            manager.broadcastToChannel("stock-updates", "m" + i);
+        }
+
+        verify(slow.session, timeout(5_000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(0, manager.getTotalActiveSessions());
+        assertEquals(0, manager.getChannelSubscriberCounts().getOrDefault("stock-updates", 0));
+        unblock.countDown();
+    }
+
+    @Test
+    void unionBroadcastDeliversOneSharedFramePerSession() throws Exception {
+        manager = new WebSocketSessionManager(8, OverflowPolicy.DROP_OLDEST, Executors.newVirtualThreadPerTaskExecutor());
+        RecordingSession stock = new RecordingSession("stock", null);
+        RecordingSession management = new RecordingSession("management", null);
+        RecordingSession general = new RecordingSession("general", null);
+        manager.addSession(stock.session, "STOCK");
+        manager.addSession(management.session, "NOTIFICATIONS");
+        manager.addSession(general.session, "GENERAL");
+        manager.subscribeToChannel(management.session, "stock-updates");
+        manager.subscribeToChannel(management.session, "inventory-alerts");
+        manager.subscribeToChannel(general.session, "stock-updates");
+        manager.subscribeToChannel(general.session, "inventory-alerts");
+
+        int recipients = manager.broadcast(List.of("STOCK", "NOTIFICATIONS"),
+                List.of("stock-updates", "inventory-alerts"), "update", null);
+
+        assertEquals(3, recipients);
+        stock.awaitMessages(1);
+        management.awaitMessages(1);
+        general.awaitMessages(1);
+        Thread.sleep(50);
+        assertEquals(1, management.received.size());
+        assertEquals(1, general.received.size());
+        // Todas las sesiones reciben la misma instancia de frame
+        assertTrue(stock.frames.get(0) == management.frames.get(0) && management.frames.get(0) == general.frames.get(0));
+    }
+
+    @Test
+    void personalMessagesReachOnlyTheOwnersSessions() throws Exception {
+        manager = new WebSocketSessionManager(8, OverflowPolicy.DROP_OLDEST, Executors.newVirtualThreadPerTaskExecutor());
+        RecordingSession ownerPhone = new RecordingSession("phone", null, "user-1");
+        RecordingSession ownerLaptop = new RecordingSession("laptop", null, "user-1");
+        RecordingSession other = new RecordingSession("other", null, "user-2");
+        RecordingSession anonymous = new RecordingSession("anonymous", null);
+        for (RecordingSession session : List.of(ownerPhone, ownerLaptop, other, anonymous)) {
+            manager.addSession(session.session, "NOTIFICATIONS");
+        }
+
+        assertEquals(2, manager.sendToUser("user-1", "order-shipped"));
+        assertEquals(0, manager.sendToUser("user-3", "nobody"));
+
+        ownerPhone.awaitMessages(1);
+        ownerLaptop.awaitMessages(1);
+        Thread.sleep(50);
+        assertEquals(0, other.received.size());
+        assertEquals(0, anonymous.received.size());
+        assertEquals(2, manager.getConnectionStats().get("authenticatedUsers"));
+
+        manager.removeSession(ownerPhone.session);
+        manager.removeSession(ownerLaptop.session);
+        assertFalse(manager.isUserConnected("user-1"));
+        assertEquals(0, manager.sendToUser("user-1", "late"));
+    }
+
+    @Test
+    void removeSessionCleansOnlyItsOwnChannels() throws Exception {
+        manager = new WebSocketSessionManager(8, OverflowPolicy.DROP_OLDEST, Executors.newVirtualThreadPerTaskExecutor());
+        RecordingSession leaving = new RecordingSession("leaving", null);
+        RecordingSession staying = new RecordingSession("staying", null);
+        manager.addSession(leaving.session, "GENERAL");
+        manager.addSession(staying.session, "GENERAL");
+        manager.subscribeToChannel(leaving.session, "stock-updates");
+        manager.subscribeToChannel(leaving.session, "inventory-alerts");
+        manager.subscribeToChannel(staying.session, "stock-updates");
+        manager.unsubscribeFromChannel(leaving.session, "inventory-alerts");
+        manager.subscribeToChannel(leaving.session, "user-welcome");
+
+        manager.removeSession(leaving.session);
+
+        Map<String, Integer> counts = manager.getChannelSubscriberCounts();
+        assertEquals(Map.of("stock-updates", 1), counts);
+        manager.broadcastToChannel("stock-updates", "update");
+        staying.awaitMessages(1);
+        assertEquals(0, leaving.received.size());
+    }
+
+    @Test
+    void resumeReplaysGapFromChannelSequence() throws Exception {
+        manager = new WebSocketSessionManager(16, OverflowPolicy.DROP_OLDEST, 8, Executors.newVirtualThreadPerTaskExecutor());
+        for (int i = 1; i <= 5; i++) {
+            manager.broadcastToChannel("stock-updates", "{\"n\":" + i + "}");
+        }
+        assertEquals(5, manager.getLastSequence("stock-updates"));
+
+        // El cliente vio hasta la secuencia 3 antes de cortarse
+        RecordingSession reconnected = new RecordingSession("reconnected", null);
+        manager.addSession(reconnected.session, "STOCK");
+        assertEquals(2, manager.subscribeToChannel(reconnected.session, "stock-updates", 4));
+        manager.broadcast(List.of("STOCK"), List.of("stock-updates", "inventory-alerts"), "{\"n\":6}", null);
+
+        reconnected.awaitMessages(3);
+        assertEquals(List.of(
+                "{\"seq\":{\"stock-updates\":4},\"n\":4}",
+                "{\"seq\":{\"stock-updates\":5},\"n\":5}",
+                "{\"seq\":{\"stock-updates\":6,\"inventory-alerts\":1},\"n\":6}"), reconnected.received);
+    }
+
+    @Test
+    void resumeBeyondRingCapacityRequiresResync() throws Exception {
+        manager = new WebSocketSessionManager(16, OverflowPolicy.DROP_OLDEST, 4, Executors.newVirtualThreadPerTaskExecutor());
+        for (int i = 1; i <= 10; i++) {
+            manager.broadcastToChannel("stock-updates", "{\"n\":" + i + "}");
+        }
+        RecordingSession stale = new RecordingSession("stale", null);
+        manager.addSession(stale.session, "STOCK");
+
+        assertEquals(-1, manager.subscribeToChannel(stale.session, "stock-updates", 6));
+        // Una secuencia que el canal no conoce (servidor reiniciado) también pide resincronizar
+        assertEquals(-1, manager.subscribeToChannel(stale.session, "stock-updates", 42));
+        assertEquals(4, manager.subscribeToChannel(stale.session, "stock-updates", 7));
+        assertEquals(0, manager.subscribeToChannel(stale.session, "stock-updates", 11));
+        // Queda suscrito a lo nuevo aunque haya tenido que resincronizar
+        assertEquals(1, manager.getChannelSubscriberCounts().get("stock-updates"));
+    }
+
+    @Test
+    void crossingMultiChannelPublishesKeepEachChannelInSequence() throws Exception {
+        manager = new WebSocketSessionManager(1024, OverflowPolicy.DROP_OLDEST, Executors.newVirtualThreadPerTaskExecutor());
+        RecordingSession alerts = new RecordingSession("alerts", null);
+        manager.addSession(alerts.session, "GENERAL");
+        manager.subscribeToChannel(alerts.session, "inventory-alerts");
+
+        // Cada hilo publica en los dos canales en orden inverso: los locks se toman ordenados
+        Thread forward = Thread.ofVirtual().start(() -> {
+            for (int i = 0; i < 200; i++) {
+                manager.broadcast(List.of(), List.of("stock-updates", "inventory-alerts"), "{}", null);
+            }
+        });
+        Thread backward = Thread.ofVirtual().start(() -> {
+            for (int i = 0; i < 200; i++) {
+                manager.broadcast(List.of(), List.of("inventory-alerts", "stock-updates"), "{}", null);
+            }
+        });
+        forward.join(5_000);
+        backward.join(5_000);
+        assertFalse(forward.isAlive() || backward.isAlive(), "crossing publishes deadlocked");
+
+        alerts.awaitMessages(400);
+        Pattern seq = Pattern.compile("\"inventory-alerts\":(\\d+)");
+        for (int i = 0; i < 400; i++) {
+            Matcher matcher = seq.matcher(alerts.received.get(i));
+            assertTrue(matcher.find());
+            assertEquals(i + 1, Long.parseLong(matcher.group(1)));
+        }
+        assertEquals(400, manager.getLastSequence("stock-updates"));
+    }
+
+    @Test
+    void wildcardSubscriptionsReceiveMatchingTopicsOnce() throws Exception {
+        manager = new WebSocketSessionManager(16, OverflowPolicy.DROP_OLDEST, Executors.newVirtualThreadPerTaskExecutor());
+        RecordingSession subCategory = new RecordingSession("subCategory", null);
+        RecordingSession product = new RecordingSession("product", null);
+        RecordingSession everything = new RecordingSession("everything", null);
+        for (RecordingSession session : List.of(subCategory, product, everything)) {
+            manager.addSession(session.session, "GENERAL");
+        }
+        manager.subscribeToChannel(subCategory.session, "stock.SC1.*");
+        manager.subscribeToChannel(product.session, "stock.*.P2");
+        manager.subscribeToChannel(everything.session, "stock.#");
+        // Exacta y por patrón sobre el mismo tópico: se entrega una sola vez
+        manager.subscribeToChannel(everything.session, "stock.SC1.P1");
+        assertFalse(manager.hasSubscribers("admin-kpis"));
+
+        assertTrue(manager.hasSubscribers("stock.SC9.P9"));
+        manager.broadcastToChannel("stock.SC1.P1", "{\"p\":1}");
+        manager.broadcastToChannel("stock.SC2.P2", "{\"p\":2}");
+        manager.broadcastToChannel("stock.SC1", "{\"p\":0}");
+        manager.broadcastToChannel("orders.SC1.P1", "{\"p\":-1}");
+
+        subCategory.awaitMessages(1);
+        product.awaitMessages(1);
+        everything.awaitMessages(3);
+        Thread.sleep(50);
+        assertEquals(List.of("{\"seq\":{\"stock.SC1.P1\":1},\"p\":1}"), subCategory.received);
+        assertEquals(List.of("{\"seq\":{\"stock.SC2.P2\":1},\"p\":2}"), product.received);
+        assertEquals(3, everything.received.size());
+
+        manager.unsubscribeFromChannel(everything.session, "stock.#");
+        manager.removeSession(subCategory.session);
+        manager.removeSession(product.session);
+        assertFalse(manager.hasSubscribers("stock.SC2.P2"));
+        assertTrue(manager.hasSubscribers("stock.SC1.P1"));
+        assertEquals(Map.of(), manager.getConnectionStats().get("topicPatternSubscribers"));
+    }
+
+    @Test
+    void invalidTopicPatternsAreRejected() throws Exception {
+        manager = new WebSocketSessionManager(16, OverflowPolicy.DROP_OLDEST, Executors.newVirtualThreadPerTaskExecutor());
+        RecordingSession session = new RecordingSession("session", null);
+        manager.addSession(session.session, "GENERAL");
+
+        // Fuera de stock. un patrón alcanzaría canales privados (admin-kpis, order-queue-*)
+        for (String pattern : List.of("stock.#.P1", "stock..*", "stock.P*", "#", "*", "*.#", "order-queue-*")) {
+            assertThrows(IllegalArgumentException.class, () -> manager.subscribeToChannel(session.session, pattern));
+        }
+        assertFalse(manager.hasSubscribers("stock.SC1.P1"));
+        assertFalse(manager.hasSubscribers("admin-kpis"));
+    }
+
+    @Test
+    void adminChannelsOnlyAcceptStaffSessions() throws Exception {
+        manager = new WebSocketSessionManager(16, OverflowPolicy.DROP_OLDEST, Executors.newVirtualThreadPerTaskExecutor());
+        RecordingSession client = new RecordingSession("client", null, "user-1");
+        RecordingSession anonymous = new RecordingSession("anonymous", null);
+        RecordingSession admin = new RecordingSession("admin", null, "user-2");
+        client.session.getAttributes().put(WebSocketSessionManager.ROLE_ATTRIBUTE, "CLIENT");
+        admin.session.getAttributes().put(WebSocketSessionManager.ROLE_ATTRIBUTE, "ADMIN");
+        for (RecordingSession session : List.of(client, anonymous, admin)) {
+            manager.addSession(session.session, "GENERAL");
+        }
+
+        assertThrows(AccessDeniedException.class, () -> manager.subscribeToChannel(client.session, "admin-kpis"));
+        assertThrows(AccessDeniedException.class, () -> manager.subscribeToChannel(anonymous.session, "admin-kpis", 1));
+        manager.subscribeToChannel(admin.session, "admin-kpis");
+        manager.broadcastToChannel("admin-kpis", "{\"orders\":3}");
+
+        admin.awaitMessages(1);
+        Thread.sleep(50);
+        assertEquals(0, client.received.size());
+        assertEquals(0, anonymous.received.size());
+        assertEquals(Map.of("admin-kpis", 1), manager.getChannelSubscriberCounts());
+    }
+
+    @Test
+    void conflatedSessionKeepsOnlyLatestPendingValuePerProduct() throws Exception {
+        manager = new WebSocketSessionManager(4, OverflowPolicy.DROP_OLDEST, Executors.newVirtualThreadPerTaskExecutor());
+        CountDownLatch unblock = new CountDownLatch(1);
+        RecordingSession dashboard = new RecordingSession("dashboard", unblock);
+        RecordingSession full = new RecordingSession("full", null);
+        manager.addSession(dashboard.session, "STOCK");
+        manager.addSession(full.session, "STOCK");
+        assertTrue(manager.setConflated(dashboard.session, true));
+        assertTrue(manager.hasConflatedSessions());
+
+        manager.broadcastToType("STOCK", "welcome");
+        dashboard.awaitSendStarted();
+        for (int i = 0; i < 50; i++) {
+            Map<String, String> latest = new LinkedHashMap<>();
+            for (String product : List.of("A", "B", "C", "D", "E", "F")) {
+                latest.put("stock:" + product, product + "=" + i);
+            }
+            manager.broadcast(List.of("STOCK"), List.of(), "batch-" + i, null, latest, null);
+        }
+
+        // La sesión normal recibe los lotes; la conflada, un valor por producto aunque sean más que la capacidad
+        full.awaitLast("batch-49");
+        unblock.countDown();
+        dashboard.awaitMessages(7);
+        assertEquals(List.of("welcome", "A=49", "B=49", "C=49", "D=49", "E=49", "F=49"), dashboard.received);
+
+        manager.removeSession(dashboard.session);
+        assertFalse(manager.hasConflatedSessions());
+    }
+
+    @Test
+    void binarySessionsReceiveFixedLayoutStockFrames() throws Exception {
+        manager = new WebSocketSessionManager(16, OverflowPolicy.DROP_OLDEST, Executors.newVirtualThreadPerTaskExecutor());
+        RecordingSession binary = new RecordingSession("binary", null, null, StockDeltaCodec.SUBPROTOCOL);
+        RecordingSession json = new RecordingSession("json", null);
+        manager.addSession(binary.session, "STOCK");
+        manager.addSession(json.session, "STOCK");
+        assertTrue(manager.hasBinarySessions());
+
+        StockUpdateMessage sale = new StockUpdateMessage("P-1", "Producto 1", 10, 7);
+        sale.setReason("SALE");
+        StockUpdateMessage restock = new StockUpdateMessage("P-2", "Producto 2", 0, 25);
+        restock.setReason("RESTORE");
+        manager.broadcastToChannel("stock-updates", "{\"n\":1}");
+        manager.broadcast(List.of("STOCK"), List.of("stock-updates"), "{\"n\":2}", null, null,
+                StockDeltaCodec.encode(List.of(sale, restock)));
+
+        binary.awaitMessages(1);
+        json.awaitMessages(1);
+        assertEquals(List.of("{\"seq\":{\"stock-updates\":2},\"n\":2}"), json.received);
+        ByteBuffer frame = binary.binaryFrames.get(0);
+        assertEquals(2, StockDeltaCodec.readSequence(frame));
+        List<StockUpdateMessage> decoded = StockDeltaCodec.decode(frame);
+        assertEquals(2, decoded.size());
+        assertEquals("P-1", decoded.get(0).getProductId());
+        assertEquals(10, decoded.get(0).getPreviousStock());
+        assertEquals(7, decoded.get(0).getCurrentStock());
+        assertEquals("SALE", decoded.get(0).getReason());
+        assertEquals("RESTOCK", decoded.get(1).getChangeType());
+        assertEquals("RESTORE", decoded.get(1).getReason());
+    }
+
+    @Test
+    void silentSessionIsPingedThenReapedWhileActiveSessionStays() throws Exception {
+        manager = new WebSocketSessionManager(16, OverflowPolicy.DROP_OLDEST, 16, Duration.ofMillis(100),
+                Duration.ofMillis(400), Executors.newVirtualThreadPerTaskExecutor());
+        RecordingSession silent = new RecordingSession("silent", null);
+        RecordingSession active = new RecordingSession("active", null);
+        manager.addSession(silent.session, "STOCK");
+        manager.addSession(active.session, "STOCK");
+        manager.subscribeToChannel(silent.session, "stock-updates");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (manager.getTotalActiveSessions() > 1 && System.nanoTime() < deadline) {
+            manager.markActive(active.session);
+            Thread.sleep(20);
+        }
+
+        verify(silent.session, timeout(5_000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertTrue(silent.received.contains("<ping>"), "silent session was not pinged before reaping");
+        assertEquals(1, manager.getTotalActiveSessions());
+        assertEquals(0, manager.getChannelSubscriberCounts().getOrDefault("stock-updates", 0));
+        assertFalse(active.received.contains("<ping>"));
+        assertEquals(1L, manager.getConnectionStats().get("reapedSessions"));
+    }
+
+    @Test
+    void backlogShedsLowMessagesBeforeApplyingTheOverflowPolicy() throws Exception {
+        manager = new WebSocketSessionManager(4, OverflowPolicy.DROP_OLDEST, Executors.newVirtualThreadPerTaskExecutor());
+        CountDownLatch unblock = new CountDownLatch(1);
+        RecordingSession slow = new RecordingSession("slow", unblock);
+        manager.addSession(slow.session, "NOTIFICATIONS");
+
+        manager.broadcastToType("NOTIFICATIONS", "first");
+        slow.awaitSendStarted();
+        for (String low : List.of("low-1", "low-2", "low-3")) {
+            manager.broadcast(List.of("NOTIFICATIONS"), List.of(), low, null, Priority.LOW);
+        }
+        manager.broadcast(List.of("NOTIFICATIONS"), List.of(), "medium", null, Priority.MEDIUM);
+        // Cola llena: lo siguiente hace lugar descartando los LOW más viejos
+        manager.broadcast(List.of("NOTIFICATIONS"), List.of(), "high", null, Priority.HIGH);
+        manager.broadcast(List.of("NOTIFICATIONS"), List.of(), "low-4", null, Priority.LOW);
+        manager.broadcast(List.of("NOTIFICATIONS"), List.of(), "medium-2", null, Priority.MEDIUM);
+        manager.broadcast(List.of("NOTIFICATIONS"), List.of(), "high-2", null, Priority.HIGH);
+        // Sin LOW pendiente decide la política: DROP_OLDEST descarta el MEDIUM más viejo, y un
+        // HIGH tampoco pasa de la capacidad
+        manager.broadcast(List.of("NOTIFICATIONS"), List.of(), "high-3", null, Priority.HIGH);
+        manager.broadcast(List.of("NOTIFICATIONS"), List.of(), "low-5", null, Priority.LOW);
+        unblock.countDown();
+
+        slow.awaitMessages(5);
+        Thread.sleep(50);
+        assertEquals(List.of("first", "high", "high-2", "high-3", "medium-2"), slow.received);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> outbound = (Map<String, Object>) manager.getConnectionStats().get("outbound");
+        assertEquals(5L, outbound.get("shedLowPriorityMessages"));
+        assertEquals(6L, outbound.get("droppedMessages"));
+        assertEquals(4, outbound.get("maxQueueDepth"));
+    }
+
+    @Test
+    void disconnectPolicyAppliesOnceNoLowMessageIsPending() throws Exception {
+        manager = new WebSocketSessionManager(2, OverflowPolicy.DISCONNECT, Executors.newVirtualThreadPerTaskExecutor());
+        CountDownLatch unblock = new CountDownLatch(1);
+        RecordingSession slow = new RecordingSession("slow", unblock);
+        manager.addSession(slow.session, "NOTIFICATIONS");
+
+        manager.broadcastToType("NOTIFICATIONS", "first");
+        slow.awaitSendStarted();
+        manager.broadcast(List.of("NOTIFICATIONS"), List.of(), "low", null, Priority.LOW);
+        manager.broadcast(List.of("NOTIFICATIONS"), List.of(), "medium", null, Priority.MEDIUM);
+        // El primer HIGH entra descartando el LOW; el segundo ya no tiene qué descartar
+        manager.broadcast(List.of("NOTIFICATIONS"), List.of(), "high", null, Priority.HIGH);
+        assertEquals(1, manager.getTotalActiveSessions());
+        manager.broadcast(List.of("NOTIFICATIONS"), List.of(), "high-2", null, Priority.HIGH);
+
+        verify(slow.session, timeout(5_000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(0, manager.getTotalActiveSessions());
+        unblock.countDown();
+    }
+
+    @Test
+    void sustainedHighTrafficDoesNotStarveLowerLanes() throws Exception {
+        manager = new WebSocketSessionManager(64, OverflowPolicy.DROP_OLDEST, Executors.newVirtualThreadPerTaskExecutor());
+        CountDownLatch unblock = new CountDownLatch(1);
+        RecordingSession slow = new RecordingSession("slow", unblock);
+        manager.addSession(slow.session, "NOTIFICATIONS");
+
+        manager.broadcastToType("NOTIFICATIONS", "first");
+        slow.awaitSendStarted();
+        manager.broadcast(List.of("NOTIFICATIONS"), List.of(), "low", null, Priority.LOW);
+        int highs = SessionOutboundQueue.STARVATION_LIMIT + 4;
+        for (int i = 0; i < highs; i++) {
+            manager.broadcast(List.of("NOTIFICATIONS"), List.of(), "high-" + i, null, Priority.HIGH);
+        }
+        unblock.countDown();
+
+        slow.awaitMessages(highs + 2);
+        assertEquals(SessionOutboundQueue.STARVATION_LIMIT + 1, slow.received.indexOf("low"));
+    }
+
+    /**
+     * Sesión simulada que registra lo recibido y puede quedar bloqueada en el primer envío
+     */
+    private static final class RecordingSession {
+        private final WebSocketSession session = mock(WebSocketSession.class);
+        private final List<String> received = new CopyOnWriteArrayList<>();
+        private final List<TextMessage> frames = new CopyOnWriteArrayList<>();
+        private final List<ByteBuffer> binaryFrames = new CopyOnWriteArrayList<>();
+        private final CountDownLatch sendStarted = new CountDownLatch(1);
+
+        RecordingSession(String id, CountDownLatch blockFirstSend) throws Exception {
+            this(id, blockFirstSend, null);
+        }
+
+        RecordingSession(String id, CountDownLatch blockFirstSend, String userId) throws Exception {
+            this(id, blockFirstSend, userId, null);
+        }
+
+        RecordingSession(String id, CountDownLatch blockFirstSend, String userId, String protocol) throws Exception {
+            when(session.getId()).thenReturn(id);
+            when(session.getAcceptedProtocol()).thenReturn(protocol);
+            Map<String, Object> attributes = new HashMap<>();
+            if (userId != null) {
+                attributes.put(WebSocketSessionManager.USER_ID_ATTRIBUTE, userId);
+            }
+            when(session.getAttributes()).thenReturn(attributes);
+            when(session.isOpen()).thenReturn(true);
+            doAnswer(invocation -> {
+                sendStarted.countDown();
+                if (blockFirstSend != null && received.isEmpty()) {
+                    blockFirstSend.await(10, TimeUnit.SECONDS);
+                }
+                if (invocation.getArgument(0) instanceof PingMessage) {
+                    received.add("<ping>");
+                    return null;
+                }
+                if (invocation.getArgument(0) instanceof BinaryMessage binary) {
+                    binaryFrames.add(binary.getPayload());
+                    received.add("<binary>");
+                    return null;
+                }
+                TextMessage frame = invocation.getArgument(0);
+                frames.add(frame);
+                received.add(frame.getPayload());
+                return null;
+            }).when(session).sendMessage(any());
+        }
+
+        void awaitSendStarted() throws InterruptedException {
+            assertTrue(sendStarted.await(5, TimeUnit.SECONDS));
+        }
+
+        void awaitLast(String message) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while ((received.isEmpty() || !received.get(received.size() - 1).equals(message))
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(message, received.get(received.size() - 1));
+        }
+
+        void awaitMessages(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received.size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(count, received.size());
+        }
+    }
+}
@@ -116,6 +116,13 @@ class AssembliesWebSocketClient {
                 }
                 break;
                 
+            case 'STOCK_UPDATE_BATCH':
+                console.log(`📊 [${timestamp}] Actualización de Stock (${message.updates.length} productos):`.yellow);
+                message.updates.forEach(update => {
+                    console.log(`   ${update.productName}: ${update.previousStock} → ${update.currentStock} (${update.changeType})`);
+                });
+                break;
+                
             case 'productId': // Para mensajes de StockUpdateMessage directos
                 console.log(`📊 [${timestamp}] Actualización de Stock (Directo):`.yellow);
                 console.log(`   Producto: ${message.productName}`);
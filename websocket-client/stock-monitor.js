@@ -54,6 +54,11 @@ class StockMonitor {
                 this.displayStockUpdate(timestamp, message);
                 break;
                 
+            case 'STOCK_UPDATE_BATCH':
+                // Un elemento por producto con los cambios de la última ventana
+                message.updates.forEach(update => this.displayStockUpdate(timestamp, { data: update }));
+                break;
+                
             case 'OUT_OF_STOCK':
                 this.displayOutOfStock(timestamp, message);
                 break;